@@ -4,26 +4,36 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.LinkedList;
 
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.LockManager;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeException;
+import edu.berkeley.cs186.database.io.BufferPool;
+import edu.berkeley.cs186.database.io.IOMetrics;
+import edu.berkeley.cs186.database.io.MetricsRegistry;
 import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageFlusher;
+import edu.berkeley.cs186.database.io.ReplacementPolicy;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.RecordIterator;
+import edu.berkeley.cs186.database.table.RecordView;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -32,11 +42,16 @@ import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
 
 public class Database {
   private Map<String, Table> tableLookup;
+  // The files of the tables found when the database was opened that have not
+  // been loaded yet, by table name (see loadTable).
+  private Map<String, String> unloadedTables;
   private Map<String, BPlusTree> indexLookup;
   private long numTransactions;
   private String fileDir;
   private LockManager lockMan;
   private int numMemoryPages;
+  private BufferPool bufferPool;
+  private PageFlusher flusher;
 
   /**
    * Creates a new database.
@@ -58,10 +73,63 @@ public class Database {
    * @throws DatabaseException
    */
   public Database(String fileDir, int numMemoryPages) throws DatabaseException {
+    this(fileDir, numMemoryPages, BufferPool.DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a new database. All of the database's tables and indexes cache
+   * their pages in a single buffer pool of numBufferFrames frames, so at most
+   * numBufferFrames pages are cached at any one time.
+   *
+   * @param fileDir the directory to put the table files in
+   * @param numMemoryPages the number of pages of memory Database Operations should use when executing Queries
+   * @param numBufferFrames the number of frames in the database's buffer pool
+   * @throws DatabaseException
+   */
+  public Database(String fileDir, int numMemoryPages, int numBufferFrames) throws DatabaseException {
+    this(fileDir, numMemoryPages, numBufferFrames, BufferPool.DEFAULT_POLICY);
+  }
+
+  /**
+   * Creates a new database whose buffer pool evicts pages according to
+   * replacementPolicy. See BufferPool#getHitRatio for how well it is doing.
+   * Pages are forced synchronously as they are modified.
+   *
+   * @param fileDir the directory to put the table files in
+   * @param numMemoryPages the number of pages of memory Database Operations should use when executing Queries
+   * @param numBufferFrames the number of frames in the database's buffer pool
+   * @param replacementPolicy the buffer pool's replacement policy
+   * @throws DatabaseException
+   */
+  public Database(String fileDir, int numMemoryPages, int numBufferFrames,
+                  ReplacementPolicy.Kind replacementPolicy) throws DatabaseException {
+    this(fileDir, numMemoryPages, numBufferFrames, replacementPolicy, null);
+  }
+
+  /**
+   * Creates a new database whose file metadata is forced to disk in batches by
+   * flusher (group commit), e.g. new PageFlusher(). A write may then return
+   * before it is forced; ending a transaction waits for every page modified
+   * so far to be forced. If flusher is null, pages are forced synchronously
+   * as they are modified, as they are by the other constructors.
+   *
+   * @param fileDir the directory to put the table files in
+   * @param numMemoryPages the number of pages of memory Database Operations should use when executing Queries
+   * @param numBufferFrames the number of frames in the database's buffer pool
+   * @param replacementPolicy the buffer pool's replacement policy
+   * @param flusher the flusher to force pages with, or null
+   * @throws DatabaseException
+   */
+  public Database(String fileDir, int numMemoryPages, int numBufferFrames,
+                  ReplacementPolicy.Kind replacementPolicy, PageFlusher flusher)
+      throws DatabaseException {
     this.numMemoryPages = numMemoryPages;
+    this.flusher = flusher;
+    this.bufferPool = new BufferPool(numBufferFrames, replacementPolicy, flusher);
     this.fileDir = fileDir;
     numTransactions = 0;
     tableLookup = new ConcurrentHashMap<String, Table>();
+    unloadedTables = new ConcurrentHashMap<String, String>();
     indexLookup = new ConcurrentHashMap<String, BPlusTree>();
 
     File dir = new File(fileDir);
@@ -71,6 +139,8 @@ public class Database {
       dir.mkdirs();
     }
 
+    // Tables are only loaded when they are first used, so opening a
+    // database takes time in the number of its files rather than its size.
     File[] files = dir.listFiles();
 
     for (File f : files) {
@@ -78,12 +148,12 @@ public class Database {
       if (fName.endsWith(Table.FILENAME_EXTENSION)) {
         int lastIndex = fName.lastIndexOf(Table.FILENAME_EXTENSION);
         String tableName = fName.substring(0, lastIndex);
-        tableLookup.put(tableName, new Table(tableName, f.toPath().toString()));
+        unloadedTables.put(tableName, f.toPath().toString());
       } else if (fName.endsWith(BPlusTree.FILENAME_EXTENSION)) {
         int lastIndex = fName.lastIndexOf(BPlusTree.FILENAME_EXTENSION);
         String indexName = fName.substring(0, lastIndex);
         Path path = Paths.get(f.toPath().toString(), indexName + BPlusTree.FILENAME_EXTENSION);
-        indexLookup.put(indexName, new BPlusTree(path.toString()));
+        indexLookup.put(indexName, new BPlusTree(path.toString(), this.bufferPool));
       }
     }
   }
@@ -97,24 +167,69 @@ public class Database {
    * @throws DatabaseException
    */
   public synchronized void createTable(Schema s, String tableName) throws DatabaseException {
-    if (this.tableLookup.containsKey(tableName)) {
+    createTable(s, tableName, Page.pageSize);
+  }
+
+  /**
+   * Create a new table in this database whose pages are pageSize bytes.
+   *
+   * @param s the table schema
+   * @param tableName the name of the table
+   * @param pageSize the page size of the table (see PageAllocator)
+   * @throws DatabaseException
+   */
+  public synchronized void createTable(Schema s, String tableName, int pageSize)
+      throws DatabaseException {
+    createTable(s, tableName, pageSize, Table.Layout.ROW);
+  }
+
+  /**
+   * Create a new table in this database whose pages are pageSize bytes laid
+   * out with layout. Tables with the PAX layout suit analytic queries that
+   * read only a few columns of wide records.
+   *
+   * @param s the table schema
+   * @param tableName the name of the table
+   * @param pageSize the page size of the table (see PageAllocator)
+   * @param layout the layout of the table's data pages (see Table.Layout)
+   * @throws DatabaseException
+   */
+  public synchronized void createTable(Schema s, String tableName, int pageSize,
+                                       Table.Layout layout) throws DatabaseException {
+    if (hasTable(tableName)) {
       throw new DatabaseException("Table name already exists");
     }
 
     Path path = Paths.get(fileDir, tableName + Table.FILENAME_EXTENSION);
-    this.tableLookup.put(tableName, new Table(tableName, s, path.toString()));
+    this.tableLookup.put(tableName, new Table(tableName, s, path.toString(), this.bufferPool,
+                                              pageSize, layout));
   }
 
   /**
    * Create a new table in this database with an index on each of the given column names.
-   * NOTE: YOU CAN NOT DELETE/UPDATE FROM THIS TABLE IF YOU CHOOSE TO BUILD INDICES!!
+   * The columns need not be unique: an index maps each value to the record ids of every
+   * record with that value (see BPlusTree#scanEqual).
    * @param s the table schema
    * @param tableName the name of the table
-   * @param indexColumns the list of unique columnNames on the maintain an index on
+   * @param indexColumns the list of columnNames on the maintain an index on
    * @throws DatabaseException
    */
   public synchronized void createTableWithIndices(Schema s, String tableName, List<String> indexColumns) throws DatabaseException {
-    if (this.tableLookup.containsKey(tableName)) {
+    createTableWithIndices(s, tableName, indexColumns, Page.pageSize);
+  }
+
+  /**
+   * Create a new table in this database with an index on each of the given column names, where
+   * both the table and its indices use pages of pageSize bytes.
+   * @param s the table schema
+   * @param tableName the name of the table
+   * @param indexColumns the list of columnNames on the maintain an index on
+   * @param pageSize the page size of the table and its indices (see PageAllocator)
+   * @throws DatabaseException
+   */
+  public synchronized void createTableWithIndices(Schema s, String tableName, List<String> indexColumns,
+                                                  int pageSize) throws DatabaseException {
+    if (hasTable(tableName)) {
       throw new DatabaseException("Table name already exists");
     }
 
@@ -136,7 +251,8 @@ public class Database {
     }
 
     Path path = Paths.get(fileDir, tableName + Table.FILENAME_EXTENSION);
-    this.tableLookup.put(tableName, new Table(tableName, s, path.toString()));
+    this.tableLookup.put(tableName, new Table(tableName, s, path.toString(), this.bufferPool,
+                                              pageSize));
     for (int i : schemaColIndex) {
       String colName = schemaColNames.get(i);
       Type colType = schemaColType.get(i);
@@ -144,7 +260,8 @@ public class Database {
       Path p = Paths.get(this.fileDir, indexName + BPlusTree.FILENAME_EXTENSION);
       try {
       this.indexLookup.put(indexName, new BPlusTree(p.toString(), colType,
-                           BPlusTree.maxOrder(Page.pageSize, colType)));
+                           BPlusTree.maxOrder(pageSize, colType), this.bufferPool, pageSize,
+                           false /* unique */));
       } catch (BPlusTreeException e) {
         throw new DatabaseException(e.getMessage());
       }
@@ -158,15 +275,20 @@ public class Database {
    * @return true if the database was successfully deleted
    */
   public synchronized boolean deleteTable(String tableName) {
-    if (!this.tableLookup.containsKey(tableName)) {
+    if (!hasTable(tableName)) {
       return false;
     }
 
-    this.tableLookup.get(tableName).close();
-    this.tableLookup.remove(tableName);
+    if (this.tableLookup.containsKey(tableName)) {
+      this.tableLookup.get(tableName).close();
+      this.tableLookup.remove(tableName);
+    }
+    this.unloadedTables.remove(tableName);
 
     File f = new File(fileDir + tableName + Table.FILENAME_EXTENSION);
     f.delete();
+    new File(fileDir + tableName + Table.FILENAME_EXTENSION
+             + Table.FREE_SPACE_MAP_EXTENSION).delete();
 
     return true;
   }
@@ -176,6 +298,7 @@ public class Database {
    */
   public synchronized void deleteAllTables() {
     List<String> tableNames = new ArrayList<String>(tableLookup.keySet());
+    tableNames.addAll(unloadedTables.keySet());
 
     for (String s : tableNames) {
       deleteTable(s);
@@ -191,10 +314,61 @@ public class Database {
     }
 
     this.tableLookup.clear();
+    this.unloadedTables.clear();
+    if (this.flusher != null) {
+      this.flusher.close();
+    }
   }
 
-  public Table getTable(String tableName) {
-    return tableLookup.get(tableName);
+  /**
+   * Returns the table named tableName, loading it first if it has not been
+   * used since the database was opened, or null if there is no such table.
+   *
+   * @param tableName the name of the table
+   * @throws DatabaseException if the table's file cannot be loaded
+   */
+  public Table getTable(String tableName) throws DatabaseException {
+    Table table = tableLookup.get(tableName);
+    return table != null ? table : loadTable(tableName);
+  }
+
+  private boolean hasTable(String tableName) {
+    return tableLookup.containsKey(tableName) || unloadedTables.containsKey(tableName);
+  }
+
+  /**
+   * Loads the table named tableName from the file found for it when the
+   * database was opened, or returns null if there is no such file. Tables
+   * are loaded at most once, even if several transactions use one at the
+   * same time.
+   */
+  private synchronized Table loadTable(String tableName) throws DatabaseException {
+    Table table = tableLookup.get(tableName);
+    if (table != null) {
+      return table;
+    }
+    String filename = unloadedTables.get(tableName);
+    if (filename == null) {
+      return null;
+    }
+    table = new Table(tableName, filename, this.bufferPool);
+    tableLookup.put(tableName, table);
+    unloadedTables.remove(tableName);
+    return table;
+  }
+
+  /**
+   * @return the I/O counters of this database's files and running transactions
+   */
+  public MetricsRegistry getMetrics() {
+    return this.bufferPool.getMetrics();
+  }
+
+  /**
+   * @return the buffer pool shared by all of this database's tables and indexes
+   */
+  public BufferPool getBufferPool() {
+    return this.bufferPool;
   }
 
   /**
@@ -216,6 +390,8 @@ public class Database {
    */
   public synchronized AtomicTransaction createAtomicTransaction() {
     AtomicTransaction t = new AtomicTransaction(this.numTransactions);
+
+    this.numTransactions++;
     return t;
   }
 
@@ -226,13 +402,26 @@ public class Database {
     HashMap<String, Table> tempTables;
     HashMap<String, String> aliasMaps;
     long tempTableCounter;
+    IOMetrics metrics;
 
     private Transaction(long tNum) {
+      this(tNum, true);
+    }
+
+    /**
+     * @param bindMetrics whether to count the I/O of the calling thread against this transaction
+     * from now on (see MetricsRegistry)
+     */
+    private Transaction(long tNum, boolean bindMetrics) {
       this.transNum = tNum;
       this.active = true;
       this.tempTables = new HashMap<String, Table>();
       this.aliasMaps = new HashMap<String, String>();
       this.tempTableCounter = 0;
+      this.metrics = Database.this.bufferPool.getMetrics().beginTransaction(tNum);
+      if (bindMetrics) {
+        Database.this.bufferPool.getMetrics().bind(this.metrics);
+      }
     }
 
     public boolean isActive() {
@@ -243,10 +432,22 @@ public class Database {
       assert(this.active);
 
       deleteAllTempTables();
+      if (Database.this.flusher != null) {
+        Database.this.flusher.sync();
+      }
+      Database.this.bufferPool.getMetrics().endTransaction(this.transNum);
       this.active = false;
 
     }
 
+    /**
+     * @return the I/O this transaction has done so far, i.e. everything the thread running it has
+     * done since it began
+     */
+    public IOMetrics.Snapshot getIOMetrics() {
+      return this.metrics.snapshot();
+    }
+
     /**
      * Allows the user to query a table. See query#QueryPlan
      *
@@ -270,13 +471,13 @@ public class Database {
     public void queryAs(String tableName, String alias) throws DatabaseException {
       assert(this.active);
 
-      if (Database.this.tableLookup.containsKey(alias)
+      if (Database.this.hasTable(alias)
               || this.tempTables.containsKey(alias)
               || this.aliasMaps.containsKey(alias)) {
         throw new DatabaseException("Table name already exists");
       }
 
-      if (Database.this.tableLookup.containsKey(tableName)) {
+      if (Database.this.hasTable(tableName)) {
         this.aliasMaps.put(alias, tableName);
       } else if (tempTables.containsKey(tableName)) {
         this.aliasMaps.put(alias, tableName);
@@ -305,7 +506,7 @@ public class Database {
       }
 
       Path path = Paths.get(Database.this.fileDir, "temp", tempTableName + Table.FILENAME_EXTENSION);
-      this.tempTables.put(tempTableName, new Table(tempTableName, schema, path.toString()));
+      this.tempTables.put(tempTableName, new Table(tempTableName, schema, path.toString(), Database.this.bufferPool));
       return tempTableName;
     }
 
@@ -320,7 +521,7 @@ public class Database {
     public void createTempTable(Schema schema, String tempTableName) throws DatabaseException {
       assert(this.active);
 
-      if (Database.this.tableLookup.containsKey(tempTableName)
+      if (Database.this.hasTable(tempTableName)
               || this.tempTables.containsKey(tempTableName))  {
         throw new DatabaseException("Table name already exists");
       }
@@ -332,7 +533,7 @@ public class Database {
       }
 
       Path path = Paths.get(Database.this.fileDir, "temp", tempTableName + Table.FILENAME_EXTENSION);
-      this.tempTables.put(tempTableName, new Table(tempTableName, schema, path.toString()));
+      this.tempTables.put(tempTableName, new Table(tempTableName, schema, path.toString(), Database.this.bufferPool));
     }
 
 
@@ -364,6 +565,33 @@ public class Database {
       return new RecordIterator(tab, index.scanGreaterEqual(startValue));
     }
 
+    /**
+     * Returns the records of a table whose values of an indexed column are in a range, in
+     * ascending order of those values (see BPlusTree#scanRange). Records past the end of the
+     * range are not read.
+     */
+    public Iterator<Record> sortedScanRange(String tableName, String columnName,
+                                            Optional<DataBox> lo, boolean loInclusive,
+                                            Optional<DataBox> hi, boolean hiInclusive)
+        throws DatabaseException {
+      Table tab = getTable(tableName);
+      BPlusTree index = resolveIndexFromName(tableName, columnName);
+      return new RecordIterator(tab, index.scanRange(lo, loInclusive, hi, hiInclusive));
+    }
+
+    /**
+     * Returns the (value, RecordId) entries of the index on a column whose values are in a
+     * range, in ascending order of those values, read straight from the index's leaves. Unlike
+     * sortedScanRange, no record of the table is read.
+     */
+    public Iterator<Pair<DataBox, RecordId>> indexScanRange(String tableName, String columnName,
+                                                            Optional<DataBox> lo, boolean loInclusive,
+                                                            Optional<DataBox> hi, boolean hiInclusive)
+        throws DatabaseException {
+      BPlusTree index = resolveIndexFromName(tableName, columnName);
+      return index.scanRangeEntries(lo, loInclusive, hi, hiInclusive);
+    }
+
     public Iterator<Record> lookupKey(String tableName, String columnName, DataBox key) throws DatabaseException {
       Table tab = getTable(tableName);
       BPlusTree index = resolveIndexFromName(tableName, columnName);
@@ -404,6 +632,60 @@ public class Database {
     }
 
 
+    /**
+     * Adds many records to a table at once (see Table#insertRecords), and to
+     * the table's indices.
+     *
+     * @return the record ids of the new records, in order
+     */
+    public List<RecordId> addRecords(String tableName, List<List<DataBox>> rows)
+        throws DatabaseException {
+      assert(this.active);
+      return runAddRecords(tableName, rows);
+    }
+
+    private List<RecordId> runAddRecords(String tableName, List<List<DataBox>> rows)
+        throws DatabaseException {
+      assert(this.active);
+      Table tab = getTable(tableName);
+      List<RecordId> rids = tab.insertRecords(rows);
+      List<String> colNames = tab.getSchema().getFieldNames();
+
+      for (int i = 0; i < colNames.size(); i++) {
+        String col = colNames.get(i);
+        if (indexExists(tableName, col)) {
+          BPlusTree index = resolveIndexFromName(tableName, col);
+          try {
+            if (!index.isEmpty()) {
+              for (int j = 0; j < rows.size(); j++) {
+                index.put(rows.get(j).get(i), rids.get(j));
+              }
+            } else {
+              // The first batch of an index is sorted and loaded bottom up.
+              // Duplicate keys are sorted by record id, so that they are in
+              // the order of the table.
+              List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+              for (int j = 0; j < rows.size(); j++) {
+                entries.add(new Pair<>(rows.get(j).get(i), rids.get(j)));
+              }
+              Collections.sort(entries, new Comparator<Pair<DataBox, RecordId>>() {
+                @Override
+                public int compare(Pair<DataBox, RecordId> a, Pair<DataBox, RecordId> b) {
+                  int c = a.getFirst().compareTo(b.getFirst());
+                  return c != 0 ? c : a.getSecond().compareTo(b.getSecond());
+                }
+              });
+              index.bulkLoad(entries.iterator(), BPlusTree.DEFAULT_FILL_FACTOR);
+            }
+          } catch (BPlusTreeException e) {
+            throw new DatabaseException(e.getMessage());
+          }
+        }
+      }
+
+      return rids;
+    }
+
     public int getNumMemoryPages() throws DatabaseException {
       assert(this.active);
 
@@ -428,7 +710,7 @@ public class Database {
       for (int i = 0; i < colNames.size(); i++) {
         String col = colNames.get(i);
         if (indexExists(tableName, col)) {
-          resolveIndexFromName(tableName, col).remove(values.get(i));
+          resolveIndexFromName(tableName, col).remove(values.get(i), rid);
         }
       }
 
@@ -445,6 +727,11 @@ public class Database {
       return getTable(tableName).iterator();
     }
 
+    public Iterator<RecordView> getRecordViewIterator(String tableName) throws DatabaseException {
+      assert(this.active);
+      return getTable(tableName).viewIterator();
+    }
+
     public RecordId updateRecord(String tableName, List<DataBox> values, RecordId rid)  throws DatabaseException {
         return runUpdateRecord(tableName, values, rid);
     }
@@ -492,7 +779,7 @@ public class Database {
         String col = colNames.get(i);
         if (indexExists(tableName, col)) {
           BPlusTree tree = resolveIndexFromName(tableName, col);
-          tree.remove(oldValues.get(i));
+          tree.remove(oldValues.get(i), rid);
           try {
             tree.put(values.get(i), rid);
           } catch (BPlusTreeException e) {
@@ -515,6 +802,11 @@ public class Database {
       return getTable(tableName).getNumDataPages();
     }
 
+    public int getPageSize(String tableName) throws DatabaseException {
+      assert(this.active);
+      return getTable(tableName).getPageSize();
+    }
+
     public int getNumEntriesPerPage(String tableName) throws DatabaseException {
       assert(this.active);
       return getTable(tableName).getNumRecordsPerPage();
@@ -522,17 +814,32 @@ public class Database {
 
     public byte[] readPageHeader(String tableName, Page p) throws DatabaseException {
       assert(this.active);
-      return getTable(tableName).getBitMap(p);
+      return getBitmapTable(tableName).getBitMap(p);
     }
 
     public int getPageHeaderSize(String tableName) throws DatabaseException{
       assert(this.active);
-      return getTable(tableName).getBitmapSizeInBytes ();
+      return getBitmapTable(tableName).getBitmapSizeInBytes ();
     }
 
     public int getEntrySize(String tableName) throws DatabaseException {
       assert(this.active);
-      return getTable(tableName).getSchema().getSizeInBytes();
+      return getBitmapTable(tableName).getSchema().getSizeInBytes();
+    }
+
+    /**
+     * Returns the table tableName if its data pages are a bitmap followed by
+     * fixed size entries, which is what readPageHeader, getPageHeaderSize,
+     * and getEntrySize describe.
+     */
+    private Table getBitmapTable(String tableName) throws DatabaseException {
+      Table table = getTable(tableName);
+      if (table.getPageFormat() != Table.PageFormat.BITMAP) {
+        String msg = String.format("Table %s has slotted pages, which have no page header " +
+                                   "and no fixed size entries.", tableName);
+        throw new DatabaseException(msg);
+      }
+      return table;
     }
 
     public long getNumRecords(String tableName) throws DatabaseException {
@@ -594,11 +901,12 @@ public class Database {
         tableName = aliasMaps.get(tableName);
       }
 
-      if (!Database.this.tableLookup.containsKey(tableName)) {
+      Table table = Database.this.getTable(tableName);
+      if (table == null) {
         throw new DatabaseException("Table: " + tableName + "does not exist");
       }
 
-      return Database.this.tableLookup.get(tableName);
+      return table;
     }
 
 
@@ -614,6 +922,8 @@ public class Database {
 
       File f = new File(Database.this.fileDir + "temp/" + tempTableName + Table.FILENAME_EXTENSION);
       f.delete();
+      new File(Database.this.fileDir + "temp/" + tempTableName + Table.FILENAME_EXTENSION
+               + Table.FREE_SPACE_MAP_EXTENSION).delete();
     }
 
     private void deleteAllTempTables() {
@@ -634,6 +944,7 @@ public class Database {
         public RecordId rid;
         public String tableName;
         public List<DataBox> values;
+        public List<List<DataBox>> rows;
         public int type;
 
         public String targetColumnName;
@@ -645,12 +956,14 @@ public class Database {
         public static final int DELETE = 1;
         public static final int UPDATE = 2;
         public static final int UPDATE_WHERE = 3;
+        public static final int ADD_ALL = 4;
     }
 
 
 
     private AtomicTransaction(long tNum) {
-      super(tNum);
+      // The transaction runs later, possibly on another thread, which is bound then.
+      super(tNum, false);
       this.operationList = new LinkedList<Operation>();
     }
 
@@ -658,6 +971,8 @@ public class Database {
     public void run(){
       assert(this.active);
 
+      MetricsRegistry registry = Database.this.bufferPool.getMetrics();
+      IOMetrics previous = registry.bind(this.metrics);
       LinkedList<RecordId> newRecords =  new LinkedList<RecordId>();
 
       for (Operation op : this.operationList){
@@ -667,6 +982,7 @@ public class Database {
           try{
               switch (op.type) {
                 case Operation.ADD: newRecords.add(super.runAddRecord(op.tableName, op.values)); break;
+                case Operation.ADD_ALL: newRecords.addAll(super.runAddRecords(op.tableName, op.rows)); break;
                 case Operation.DELETE: newRecords.add(super.runDeleteRecord(op.tableName, op.rid)); break;
                 case Operation.UPDATE: newRecords.add(super.runUpdateRecord(op.tableName, op.values, op.rid)); break;
                 case Operation.UPDATE_WHERE: newRecords.add(super.runUpdateRecordWhere(op.tableName, op.targetColumnName, op.targetVaue, op.predColumnName, op.predValue)); break;
@@ -681,6 +997,8 @@ public class Database {
       }
 
       super.deleteAllTempTables();
+      registry.endTransaction(this.transNum);
+      registry.bind(previous);
       this.active = false;
     }
 
@@ -695,6 +1013,17 @@ public class Database {
     }
 
 
+    //stores the operation for execution in the future
+    public List<RecordId> addRecords(String tableName, List<List<DataBox>> rows)  throws DatabaseException {
+        Operation op = new Operation();
+        op.tableName = tableName;
+        op.rows = rows;
+        op.type = Operation.ADD_ALL;
+        this.operationList.add(op);
+        return null;
+    }
+
+
     //stores the operation for execution in the future
     public RecordId deleteRecord(String tableName, RecordId rid)  throws DatabaseException {
         Operation op = new Operation();
@@ -28,12 +28,17 @@ public class Bits {
    *   - getBit(new byte[]{0b00000000, 0b00000001}, 15) == ONE
    */
   public static Bit getBit(byte[] bytes, int i) {
-    String err = String.format("bytes.length = %d; i = %d.", bytes.length, i);
-    assert (bytes.length > 0) : err;
-    assert (0 <= i && i < bytes.length * 8) : err;
+    // The messages are only built if an assertion fails; building them
+    // eagerly would allocate on every call.
+    assert (bytes.length > 0) : errorMessage(bytes, i);
+    assert (0 <= i && i < bytes.length * 8) : errorMessage(bytes, i);
     return getBit(bytes[i/8], i % 8);
   }
 
+  private static String errorMessage(byte[] bytes, int i) {
+    return String.format("bytes.length = %d; i = %d.", bytes.length, i);
+  }
+
   /**
    * Set the ith bit of a byte where the 0th bit is the most significant bit
    * and the 7th bit is the least significant bit. Some examples:
@@ -84,4 +89,65 @@ public class Bits {
     b = setBit(b, i % 8, bit);
     buf.put(buf.position() + (i / 8), b);
   }
+
+  /**
+   * Find the first ZERO bit among the first numBytes bytes of a byte buffer,
+   * where bits are numbered as in setBit (relative to the current position of
+   * the buffer, which is left unchanged). Returns -1 if all of the bits are
+   * ONE. The bits are scanned eight bytes at a time. An example:
+   *
+   *   ByteBuffer buf = ByteBuffer.wrap(new byte[]{(byte) 0b11111111, 0b01111111});
+   *   firstZeroBit(buf, 2); // 8
+   *   firstZeroBit(buf, 1); // -1
+   */
+  public static int firstZeroBit(ByteBuffer buf, int numBytes) {
+    return nextZeroBit(buf, numBytes, 0);
+  }
+
+  /**
+   * Like firstZeroBit, but only considers bits fromBit and up, e.g. to find
+   * the next free slot of a bitmap after the one just filled.
+   */
+  public static int nextZeroBit(ByteBuffer buf, int numBytes, int fromBit) {
+    int start = buf.position();
+    int i = fromBit / 64 * 8;
+    // getLong reads big-endian by default, so bit 0 is the most significant
+    // bit of the word, just like it is of a byte. The bits of fromBit's word
+    // before fromBit are treated as ONE.
+    long mask = ~(-1L >>> (fromBit % 64));
+    for (; i + 8 <= numBytes; i += 8) {
+      long word = buf.getLong(start + i) | mask;
+      mask = 0;
+      if (word != -1L) {
+        return i * 8 + Long.numberOfLeadingZeros(~word);
+      }
+    }
+    for (i = Math.max(i, fromBit / 8); i < numBytes; i++) {
+      int b = buf.get(start + i) & 0xFF;
+      if (i == fromBit / 8) {
+        b |= (0xFF << (8 - fromBit % 8)) & 0xFF;
+      }
+      if (b != 0xFF) {
+        return i * 8 + Integer.numberOfLeadingZeros(~b & 0xFF) - 24;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Count the ONE bits among the first numBytes bytes of a byte buffer,
+   * relative to the current position of the buffer (which is left unchanged).
+   */
+  public static int countOnes(ByteBuffer buf, int numBytes) {
+    int start = buf.position();
+    int count = 0;
+    int i = 0;
+    for (; i + 8 <= numBytes; i += 8) {
+      count += Long.bitCount(buf.getLong(start + i));
+    }
+    for (; i < numBytes; i++) {
+      count += Integer.bitCount(buf.get(start + i) & 0xFF);
+    }
+    return count;
+  }
 }
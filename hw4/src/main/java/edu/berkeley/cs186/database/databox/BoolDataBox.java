@@ -25,6 +25,11 @@ public class BoolDataBox extends DataBox {
     return ByteBuffer.allocate(1).put(val).array();
   }
 
+  @Override
+  public void serialize(ByteBuffer buf) {
+    buf.put(b ? (byte) 1 : (byte) 0);
+  }
+
   @Override
   public String toString() {
     return new Boolean(b).toString();
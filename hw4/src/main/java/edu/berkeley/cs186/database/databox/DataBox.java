@@ -1,7 +1,7 @@
 package edu.berkeley.cs186.database.databox;
 
 import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A DataBox is an element of one of the primitive types specified in
@@ -56,6 +56,12 @@ public abstract class DataBox implements Comparable<DataBox> {
   // of a Databox in order to parse it.
   public abstract byte[] toBytes();
 
+  /**
+   * Serializes this DataBox (exactly like toBytes) straight into buf at its
+   * current position, advancing the position, without allocating anything.
+   */
+  public abstract void serialize(ByteBuffer buf);
+
   public static DataBox fromBytes(ByteBuffer buf, Type type) {
     switch (type.getTypeId()) {
       case BOOL: {
@@ -72,8 +78,9 @@ public abstract class DataBox implements Comparable<DataBox> {
       case STRING: {
         byte[] bytes = new byte[type.getSizeInBytes()];
         buf.get(bytes);
-        String s = new String(bytes, Charset.forName("UTF-8"));
-        return new StringDataBox(s, type.getSizeInBytes());
+        // The string was checked when it was serialized, and is exactly as
+        // long as its type, so it does not need to be checked or padded.
+        return new StringDataBox(new String(bytes, StandardCharsets.UTF_8));
       }
       default: {
         String err = String.format("Unhandled TypeId %s.",
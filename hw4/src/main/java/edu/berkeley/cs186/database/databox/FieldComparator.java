@@ -0,0 +1,118 @@
+package edu.berkeley.cs186.database.databox;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A FieldComparator compares serialized values of one type (see
+ * DataBox.toBytes) where they are, for example in the pages of a table,
+ * without decoding them into DataBoxes. It orders values exactly like
+ * DataBox.compareTo does, and tests them for equality like DataBox.equals
+ * does (see equals):
+ *
+ *   FieldComparator c = FieldComparator.forType(Type.intType());
+ *   ByteBuffer a = ByteBuffer.wrap(new IntDataBox(1).toBytes());
+ *   ByteBuffer b = ByteBuffer.wrap(new IntDataBox(2).toBytes());
+ *   c.compare(a, 0, b, 0) < 0; // like new IntDataBox(1).compareTo(new IntDataBox(2))
+ *
+ * Offsets are absolute, and comparisons do not move the positions of the
+ * buffers.
+ */
+public abstract class FieldComparator {
+  private static final FieldComparator BOOL = new FieldComparator() {
+    @Override
+    public int compare(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+      return Byte.compare(a.get(aOffset), b.get(bOffset));
+    }
+  };
+
+  private static final FieldComparator INT = new FieldComparator() {
+    @Override
+    public int compare(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+      return Integer.compare(a.getInt(aOffset), b.getInt(bOffset));
+    }
+  };
+
+  private static final FieldComparator FLOAT = new FieldComparator() {
+    @Override
+    public int compare(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+      return Float.compare(a.getFloat(aOffset), b.getFloat(bOffset));
+    }
+
+    // Like FloatDataBox.equals, which unlike compareTo finds -0.0 equal to 0.0
+    // and NaN equal to nothing.
+    @Override
+    public boolean equals(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+      return a.getFloat(aOffset) == b.getFloat(bOffset);
+    }
+  };
+
+  /**
+   * Compares n-byte strings. Strings only contain ASCII characters, which
+   * String.compareTo orders like their bytes, and are padded to the same
+   * length, so comparing them byte by byte (8 at a time) orders them like
+   * StringDataBox.compareTo.
+   */
+  private static class StringComparator extends FieldComparator {
+    private int n;
+
+    StringComparator(int n) {
+      this.n = n;
+    }
+
+    @Override
+    public int compare(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+      int i = 0;
+      for (; i + Long.BYTES <= n; i += Long.BYTES) {
+        long x = a.getLong(aOffset + i);
+        long y = b.getLong(bOffset + i);
+        if (x != y) {
+          // Buffers are big-endian, so the first byte is the most significant.
+          return Long.compareUnsigned(x, y);
+        }
+      }
+      for (; i < n; ++i) {
+        int cmp = Integer.compare(a.get(aOffset + i) & 0xFF, b.get(bOffset + i) & 0xFF);
+        if (cmp != 0) {
+          return cmp;
+        }
+      }
+      return 0;
+    }
+  }
+
+  /**
+   * Returns a comparator for serialized values of type `type`.
+   */
+  public static FieldComparator forType(Type type) {
+    switch (type.getTypeId()) {
+      case BOOL:
+        return BOOL;
+      case INT:
+        return INT;
+      case FLOAT:
+        return FLOAT;
+      case STRING:
+        return new StringComparator(type.getSizeInBytes());
+      default:
+        String err = String.format("Unknown TypeId %s.", type.getTypeId());
+        throw new IllegalArgumentException(err);
+    }
+  }
+
+  /**
+   * Compares the value serialized at offset aOffset of a with the value
+   * serialized at offset bOffset of b, returning a negative number, zero, or
+   * a positive number as the first is less than, equal to, or greater than
+   * the second.
+   */
+  public abstract int compare(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset);
+
+  /**
+   * Returns whether the value serialized at offset aOffset of a equals the
+   * value serialized at offset bOffset of b, like DataBox.equals. This is
+   * compare(...) == 0 for every type but floats.
+   */
+  public boolean equals(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+    return compare(a, aOffset, b, bOffset) == 0;
+  }
+}
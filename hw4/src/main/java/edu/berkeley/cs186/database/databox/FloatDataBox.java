@@ -23,6 +23,11 @@ public class FloatDataBox extends DataBox {
     return ByteBuffer.allocate(Float.BYTES).putFloat(f).array();
   }
 
+  @Override
+  public void serialize(ByteBuffer buf) {
+    buf.putFloat(f);
+  }
+
   @Override
   public String toString() {
     return new Float(f).toString();
@@ -23,6 +23,11 @@ public class IntDataBox extends DataBox {
     return ByteBuffer.allocate(Integer.BYTES).putInt(i).array();
   }
 
+  @Override
+  public void serialize(ByteBuffer buf) {
+    buf.putInt(i);
+  }
+
   @Override
   public String toString() {
     return new Integer(i).toString();
@@ -1,6 +1,8 @@
 package edu.berkeley.cs186.database.databox;
 
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class StringDataBox extends DataBox {
   // Strings are only allowed to contain the following characters. Note that
@@ -47,6 +49,12 @@ public class StringDataBox extends DataBox {
     assert(this.s.length() == m);
   }
 
+  // Construct a string from s as is, for strings read back from their
+  // serialized form, which have already been checked and padded.
+  StringDataBox(String s) {
+    this.s = s;
+  }
+
   @Override
   public Type type() {
     return Type.stringType(s.length());
@@ -59,7 +67,68 @@ public class StringDataBox extends DataBox {
 
   @Override
   public byte[] toBytes() {
-    return s.getBytes(Charset.forName("UTF-8"));
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void serialize(ByteBuffer buf) {
+    // Strings only contain ASCII characters, each of which is one byte of
+    // UTF-8.
+    for (int i = 0; i < s.length(); ++i) {
+      buf.put((byte) s.charAt(i));
+    }
+  }
+
+  // Strings are padded with spaces, so a string and its padding can be told
+  // apart and the padding need not be stored. In their compact form (see
+  // Record.serializeCompact), strings are serialized as a 2-byte unsigned
+  // length followed by the string without its trailing spaces:
+  //
+  //   - new StringDataBox("123", 5) is serialized to [0, 3, '1', '2', '3']
+  //   - new StringDataBox("", 5) is serialized to [0, 0]
+  //
+  // so only strings of at most MAX_COMPACT_SIZE bytes have a compact form.
+  public static final int MAX_COMPACT_SIZE = 0xFFFF;
+
+  /**
+   * Returns the number of bytes in the compact form of this string.
+   */
+  public int getCompactSizeInBytes() {
+    return Short.BYTES + trimmedLength();
+  }
+
+  /**
+   * Serializes the compact form of this string into buf at its current
+   * position, advancing the position.
+   */
+  public void serializeCompact(ByteBuffer buf) {
+    int n = trimmedLength();
+    buf.putShort((short) n);
+    for (int i = 0; i < n; ++i) {
+      buf.put((byte) s.charAt(i));
+    }
+  }
+
+  /**
+   * Decodes the compact form of an m-byte string from buf at its current
+   * position, advancing the position.
+   */
+  public static StringDataBox fromCompactBytes(ByteBuffer buf, int m) {
+    int n = buf.getShort() & 0xFFFF;
+    char[] chars = new char[m];
+    for (int i = 0; i < n; ++i) {
+      chars[i] = (char) buf.get();
+    }
+    Arrays.fill(chars, n, m, ' ');
+    return new StringDataBox(new String(chars));
+  }
+
+  private int trimmedLength() {
+    int n = s.length();
+    while (n > 0 && s.charAt(n - 1) == ' ') {
+      n--;
+    }
+    return n;
   }
 
   @Override
@@ -41,9 +41,23 @@ abstract class BPlusNode {
    *
    * Note that inner.get(4) would return leaf0 even though leaf0 doesn't
    * actually contain 4.
+   *
+   * If the tree is not unique (see BPlusTreeMetadata.isUnique), then a key
+   * may be on more than one leaf, and n.get(k) returns the leftmost of them:
+   * inner.get(x) would return leaf0 when x <= 10, leaf1 when 10 < x <= 20, and
+   * leaf2 when x > 20. The entries with key k then start on n.get(k), but may
+   * continue on its right siblings.
    */
   public abstract LeafNode get(DataBox key);
 
+  /**
+   * n.find(k) returns the record id of key k in the subtree rooted by n, like
+   * n.get(k).getKey(k) does, but without decoding the leaf that k may reside
+   * on: the leaf's page is searched in place (see LeafNode.find). n must
+   * belong to a unique tree.
+   */
+  public abstract Optional<RecordId> find(DataBox key);
+
   /**
    * n.getLeftmostLeaf() returns the leftmost leaf in the subtree rooted by n.
    * In the example above, inner.getLeftmostLeaf() would return leaf0, and
@@ -226,19 +240,43 @@ abstract class BPlusNode {
 
   /**
    * BPlusNode.fromBytes(m, p) loads a BPlusNode from page p of
-   * meta.getAllocator().
+   * meta.getAllocator(). Inner nodes are cached in m (see
+   * BPlusTreeMetadata.getCachedInnerNode), so a cached inner node is returned
+   * as is, and every change to it goes through the one cached object rather
+   * than leaving stale copies behind.
    */
   public static BPlusNode fromBytes(BPlusTreeMetadata metadata, int pageNum) {
+    InnerNode cached = metadata.getCachedInnerNode(pageNum);
+    if (cached != null) {
+      return cached;
+    }
     Page p = metadata.getAllocator().fetchPage(pageNum);
-    ByteBuffer buf = p.getByteBuffer();
-    byte b = buf.get();
+    byte b = p.getReadOnlyByteBuffer().get(0);
     if (b == 1) {
       return LeafNode.fromBytes(metadata, pageNum);
     } else if (b == 0) {
-      return InnerNode.fromBytes(metadata, pageNum);
+      InnerNode inner = InnerNode.fromBytes(metadata, pageNum);
+      metadata.cacheInnerNode(inner);
+      return inner;
     } else {
       String msg = String.format("Unexpected byte %b.", b);
       throw new IllegalArgumentException(msg);
     }
   }
+
+  /**
+   * BPlusNode.find(m, p, k) is BPlusNode.fromBytes(m, p).find(k), except that
+   * a leaf on page p is searched in place rather than decoded.
+   */
+  static Optional<RecordId> find(BPlusTreeMetadata metadata, int pageNum, DataBox key) {
+    InnerNode cached = metadata.getCachedInnerNode(pageNum);
+    if (cached != null) {
+      return cached.find(key);
+    }
+    Page p = metadata.getAllocator().fetchPage(pageNum);
+    if (p.getReadOnlyByteBuffer().get(0) == 1) {
+      return LeafNode.find(metadata, p, key);
+    }
+    return fromBytes(metadata, pageNum).find(key);
+  }
 }
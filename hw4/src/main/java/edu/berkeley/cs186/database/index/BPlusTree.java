@@ -1,7 +1,9 @@
 package edu.berkeley.cs186.database.index;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -10,6 +12,7 @@ import java.util.Optional;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.BufferPool;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
 import edu.berkeley.cs186.database.table.RecordId;
@@ -35,6 +38,14 @@ import edu.berkeley.cs186.database.table.RecordId;
  *   tree.scanEqual(new IntDataBox(2));        // [(2, 2)]
  *   tree.scanAll();                           // [(0, 0), (1, 1), (2, 2)]
  *   tree.scanGreaterEqual(new IntDataBox(1)); // [(1, 1), (2, 2)]
+ *   tree.scanRange(Optional.of(new IntDataBox(0)), false,
+ *                  Optional.of(new IntDataBox(2)), false); // [(1, 1)]
+ *   tree.scanRangeReverse(Optional.empty(), true,
+ *                         Optional.empty(), true); // [(2, 2), (1, 1), (0, 0)]
+ *
+ *   // Or, build a tree from (key, rid) pairs sorted by key all at once.
+ *   BPlusTree bulk = new BPlusTree("bulk.txt", Type.intType(), 2);
+ *   bulk.bulkLoad(sortedPairs.iterator(), 1.0f);
  *
  *   // Remove some elements from the tree.
  *   tree.get(new IntDataBox(0)); // Optional.of(RecordId(0, 0))
@@ -48,11 +59,25 @@ import edu.berkeley.cs186.database.table.RecordId;
  *   fromDisk.get(new IntDataBox(0)); // Optional.empty()
  *   fromDisk.get(new IntDataBox(1)); // Optional.of(RecordId(1, 1))
  *   fromDisk.get(new IntDataBox(2)); // Optional.of(RecordId(2, 2))
+ *
+ *   // A tree that is not unique maps a key to any number of record ids.
+ *   BPlusTree multi = new BPlusTree("multi.txt", Type.intType(), 2,
+ *                                   new BufferPool(), Page.pageSize, false);
+ *   multi.put(new IntDataBox(7), new RecordId(0, (short) 0));
+ *   multi.put(new IntDataBox(7), new RecordId(1, (short) 1));
+ *   multi.scanEqual(new IntDataBox(7)); // [(0, 0), (1, 1)]
+ *   multi.remove(new IntDataBox(7), new RecordId(0, (short) 0));
+ *   multi.scanEqual(new IntDataBox(7)); // [(1, 1)]
  */
 public class BPlusTree {
     public static final String FILENAME_PREFIX = "db";
     public static final String FILENAME_EXTENSION = ".index";
 
+    // The fill factor to bulk load with (see bulkLoad) when later puts are
+    // expected: nodes are left with room for a quarter of their entries, so
+    // that the first puts into a leaf do not split it.
+    public static final float DEFAULT_FILL_FACTOR = 0.75f;
+
     private BPlusTreeMetadata metadata;
     private Page headerPage;
     private BPlusNode root;
@@ -74,14 +99,50 @@ public class BPlusTree {
      * page which contains:
      *
      *   - the key schema of the tree,
-     *   - the order of the tree, and
-     *   - the page number of the root of the tree.
+     *   - the order of the tree,
+     *   - the page number of the root of the tree, and
+     *   - whether the keys of the tree are unique.
      *
      * All other pages are serializations of inner and leaf nodes. See
      * writeHeader for details.
      */
     public BPlusTree(String filename, Type keySchema, int order)
         throws BPlusTreeException {
+      this(filename, keySchema, order, new BufferPool());
+    }
+
+    /**
+     * Construct a new B+ tree like BPlusTree(filename, keySchema, order) whose
+     * pages are cached in the (possibly shared) buffer pool `bufferPool`.
+     */
+    public BPlusTree(String filename, Type keySchema, int order,
+                     BufferPool bufferPool) throws BPlusTreeException {
+      this(filename, keySchema, order, bufferPool, Page.pageSize);
+    }
+
+    /**
+     * Construct a new B+ tree like BPlusTree(filename, keySchema, order,
+     * bufferPool) whose nodes are stored on pages of `pageSize` bytes. The
+     * order is limited by BPlusTree.maxOrder(pageSize, keySchema) rather than
+     * by the default page size. The page size is recorded in the file, so
+     * reading the tree back does not need it.
+     */
+    public BPlusTree(String filename, Type keySchema, int order,
+                     BufferPool bufferPool, int pageSize)
+        throws BPlusTreeException {
+      this(filename, keySchema, order, bufferPool, pageSize, true);
+    }
+
+    /**
+     * Construct a new B+ tree like BPlusTree(filename, keySchema, order,
+     * bufferPool, pageSize) which, if `unique` is false, may map a key to any
+     * number of record ids, as an index on a column with duplicate values
+     * must. The entries with the same key are kept in the order that they were
+     * put in.
+     */
+    public BPlusTree(String filename, Type keySchema, int order,
+                     BufferPool bufferPool, int pageSize, boolean unique)
+        throws BPlusTreeException {
 
       // Sanity checks.
       if (order < 0) {
@@ -91,7 +152,7 @@ public class BPlusTree {
         throw new BPlusTreeException(msg);
       }
 
-      int maxOrder = BPlusTree.maxOrder(Page.pageSize, keySchema);
+      int maxOrder = BPlusTree.maxOrder(pageSize, keySchema);
       if (order > maxOrder) {
         String msg = String.format(
             "You cannot construct a B+ tree with order %d greater than the " +
@@ -101,8 +162,10 @@ public class BPlusTree {
       }
 
       // Initialize the page allocator.
-      PageAllocator allocator = new PageAllocator(filename, true /* wipe */);
-      this.metadata = new BPlusTreeMetadata(allocator, keySchema, order);
+      PageAllocator allocator = new PageAllocator(filename, true /* wipe */,
+                                                  true /* durable */, bufferPool,
+                                                  pageSize);
+      this.metadata = new BPlusTreeMetadata(allocator, keySchema, order, unique);
 
       // Allocate the header page.
       int headerPageNum = allocator.allocPage();
@@ -121,19 +184,29 @@ public class BPlusTree {
 
     /** Read a B+ tree that was previously serialized to filename. */
     public BPlusTree(String filename) {
+      this(filename, new BufferPool());
+    }
+
+    /**
+     * Read a B+ tree that was previously serialized to filename, caching its
+     * pages in the (possibly shared) buffer pool `bufferPool`.
+     */
+    public BPlusTree(String filename, BufferPool bufferPool) {
       // Initialize the page allocator and fetch the header page.
-      PageAllocator allocator = new PageAllocator(filename, false /* wipe */);
+      PageAllocator allocator =
+        new PageAllocator(filename, false /* wipe */, bufferPool);
       Page headerPage = allocator.fetchPage(0);
-      ByteBuffer buf = headerPage.getByteBuffer();
+      ByteBuffer buf = headerPage.getReadOnlyByteBuffer();
 
       // Read the contents of the header page. See writeHeader for information
       // on exactly what is written to the header page.
       Type keySchema = Type.fromBytes(buf);
       int order = buf.getInt();
       int rootPageNum = buf.getInt();
+      boolean unique = buf.get() == 0;
 
       // Initialize members.
-      this.metadata = new BPlusTreeMetadata(allocator, keySchema, order);
+      this.metadata = new BPlusTreeMetadata(allocator, keySchema, order, unique);
       this.headerPage = allocator.fetchPage(0);
       this.root = BPlusNode.fromBytes( this.metadata, rootPageNum);
     }
@@ -151,11 +224,17 @@ public class BPlusTree {
      *   // Get the value we put and also try to get a value we never put.
      *   tree.get(key);                 // Optional.of(rid)
      *   tree.get(new IntDataBox(100)); // Optional.empty()
+     *
+     * If the tree is not unique, then the first of the record ids associated
+     * with `key` (see scanEqual) is returned.
      */
     public Optional<RecordId> get(DataBox key) {
       typecheck(key);
-      LeafNode leaf = root.get(key);
-      return leaf.getKey(key);
+      if (!metadata.isUnique()) {
+        Iterator<RecordId> iter = scanEqual(key);
+        return iter.hasNext() ? Optional.of(iter.next()) : Optional.<RecordId>empty();
+      }
+      return root.find(key);
     }
 
     /**
@@ -164,9 +243,16 @@ public class BPlusTree {
      * then scanEqual(k) returns an empty iterator. If get(k) returns
      * Optional.of(rid) for some rid, then scanEqual(k) returns an iterator
      * over rid.
+     *
+     * If the tree is not unique, then scanEqual(k) returns an iterator over
+     * every record id associated with k, in the order that they were put in.
+     * Like scanAll, it lazily scans the leaves that k is on.
      */
     public Iterator<RecordId> scanEqual(DataBox key) {
       typecheck(key);
+      if (!metadata.isUnique()) {
+        return scanRange(Optional.of(key), true, Optional.of(key), true);
+      }
       Optional<RecordId> rid = get(key);
       if (rid.isPresent()) {
         ArrayList<RecordId> l = new ArrayList<>();
@@ -203,8 +289,7 @@ public class BPlusTree {
      * memory will receive 0 points.
      */
     public Iterator<RecordId> scanAll() {
-      LeafNode leaf = root.getLeftmostLeaf();
-      return new BPlusTreeIterator(leaf, leaf.scanAll());
+      return scanRange(Optional.empty(), true, Optional.empty(), true);
     }
 
     /**
@@ -233,13 +318,92 @@ public class BPlusTree {
      */
     public Iterator<RecordId> scanGreaterEqual(DataBox key) {
       typecheck(key);
-      LeafNode leaf = root.get(key);
-      return new BPlusTreeIterator(leaf, leaf.scanGreaterEqual(key));
+      return scanRange(Optional.of(key), true, Optional.empty(), true);
+    }
+
+    /**
+     * Returns an iterator over all the RecordIds stored in the B+ tree whose
+     * keys are greater than (or, if loInclusive, equal to) `lo` and less than
+     * (or, if hiInclusive, equal to) `hi`, in ascending order of their keys.
+     * An empty bound leaves its end of the range open.
+     *
+     *   // Create a B+ tree and insert some values into it.
+     *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 4);
+     *   for (int i = 1; i <= 5; ++i) {
+     *     tree.put(new IntDataBox(i), new RecordId(i, (short) i));
+     *   }
+     *
+     *   Iterator<RecordId> iter = tree.scanRange(
+     *       Optional.of(new IntDataBox(2)), false,
+     *       Optional.of(new IntDataBox(4)), true);
+     *   iter.next(); // RecordId(3, 3)
+     *   iter.next(); // RecordId(4, 4)
+     *   iter.next(); // NoSuchElementException
+     *
+     * Like scanAll, scanRange lazily scans the leaves of the B+ tree. The scan
+     * starts on the leaf that lo is on, and ends as soon as it reads a key
+     * beyond hi, so it reads no more leaves than the range spans.
+     */
+    public Iterator<RecordId> scanRange(Optional<DataBox> lo, boolean loInclusive,
+                                        Optional<DataBox> hi, boolean hiInclusive) {
+      return iterator(lo, loInclusive, hi, hiInclusive);
+    }
+
+    /**
+     * scanRangeEntries(lo, loInclusive, hi, hiInclusive) returns the same
+     * entries as scanRange(lo, loInclusive, hi, hiInclusive), but each with
+     * its key, so that a caller that only needs the keys of the range (e.g.
+     * an index-only scan) can read them straight from the leaves instead of
+     * fetching each RecordId's record.
+     *
+     *   Iterator<Pair<DataBox, RecordId>> iter = tree.scanRangeEntries(
+     *       Optional.of(new IntDataBox(2)), false,
+     *       Optional.of(new IntDataBox(4)), true);
+     *   iter.next(); // (3, RecordId(3, 3))
+     *   iter.next(); // (4, RecordId(4, 4))
+     */
+    public Iterator<Pair<DataBox, RecordId>> scanRangeEntries(Optional<DataBox> lo,
+                                                              boolean loInclusive,
+                                                              Optional<DataBox> hi,
+                                                              boolean hiInclusive) {
+      final BPlusTreeIterator iter = iterator(lo, loInclusive, hi, hiInclusive);
+      return new Iterator<Pair<DataBox, RecordId>>() {
+        @Override
+        public boolean hasNext() {
+          return iter.hasNext();
+        }
+
+        @Override
+        public Pair<DataBox, RecordId> next() {
+          DataBox key = iter.peekKey();
+          return new Pair<>(key, iter.next());
+        }
+      };
+    }
+
+    /**
+     * scanRangeReverse(lo, loInclusive, hi, hiInclusive) returns the same
+     * RecordIds as scanRange(lo, loInclusive, hi, hiInclusive) in the reverse
+     * order: in descending order of their keys (and, in a tree that is not
+     * unique, with equal keys in the reverse of the order they were put in).
+     * The scan starts on the leaf that hi is on and ends as soon as it reads a
+     * key beyond lo.
+     *
+     * Leaves only point to their right siblings, so the scan keeps the path
+     * from the root to its leaf, and finds the leaf before it through the
+     * path's inner nodes (which are cached; see BPlusNode.fromBytes).
+     */
+    public Iterator<RecordId> scanRangeReverse(Optional<DataBox> lo, boolean loInclusive,
+                                               Optional<DataBox> hi, boolean hiInclusive) {
+      typecheck(lo);
+      typecheck(hi);
+      return new ReverseBPlusTreeIterator(lo, loInclusive, hi, hiInclusive);
     }
 
     /**
      * Inserts a (key, rid) pair into a B+ tree. If the key already exists in
-     * the B+ tree, then the pair is not inserted and an exception is raised.
+     * the B+ tree, then the pair is not inserted and an exception is raised,
+     * unless the tree is not unique.
      *
      *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 4);
      *   DataBox key = new IntDataBox(42);
@@ -291,6 +455,153 @@ public class BPlusTree {
       writeHeader(headerPage.getByteBuffer());
     }
 
+    /**
+     * Loads the (key, rid) pairs of `data`, which must be sorted in strictly
+     * ascending order of key (or, if the tree is not unique, in ascending
+     * order of key), into an empty B+ tree. Calling put once per pair
+     * would descend from the root and rewrite a leaf for every pair. Instead,
+     * bulkLoad builds the tree bottom up: it fills leaves from left to right
+     * and then builds each level of inner nodes over the level below it,
+     * writing every node's page exactly once. Only the first key and page
+     * number of each node of the level below are kept in memory.
+     *
+     * Every node but the last of each level is filled to fillFactor of its
+     * capacity of 2d entries (but to no fewer than d entries), which leaves
+     * room for later puts before the nodes split. If the last node of a level
+     * would have fewer than d entries, it and the node before it are merged
+     * if their entries fit in one node, and share them evenly otherwise, so
+     * that no node has fewer than d entries.
+     *
+     *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 2);
+     *   List<Pair<DataBox, RecordId>> pairs = new ArrayList<>();
+     *   pairs.add(new Pair<>(new IntDataBox(1), new RecordId(1, (short) 1)));
+     *   pairs.add(new Pair<>(new IntDataBox(2), new RecordId(2, (short) 2)));
+     *   tree.bulkLoad(pairs.iterator(), 0.75f);
+     *   tree.get(new IntDataBox(2)); // Optional.of(RecordId(2, 2))
+     *
+     * A BPlusTreeException is thrown if the tree is not empty or if the keys
+     * are out of order, in which case the tree is left empty.
+     */
+    public void bulkLoad(Iterator<Pair<DataBox, RecordId>> data, float fillFactor)
+        throws BPlusTreeException {
+      if (!(fillFactor > 0 && fillFactor <= 1)) {
+        String msg = String.format("Fill factor %f is not in (0, 1].", fillFactor);
+        throw new IllegalArgumentException(msg);
+      }
+      if (!isEmpty()) {
+        throw new BPlusTreeException("You can only bulk load an empty B+ tree.");
+      }
+      int d = metadata.getOrder();
+      if (d == 0) {
+        throw new BPlusTreeException("You cannot bulk load a B+ tree of order 0.");
+      }
+      if (!data.hasNext()) {
+        return;
+      }
+      int perNode = Math.min(2 * d, Math.max(d, (int) Math.ceil(2 * d * fillFactor)));
+      PageAllocator allocator = metadata.getAllocator();
+
+      // The first key and page number of every node of the level built last.
+      List<Pair<DataBox, Integer>> level = new ArrayList<>();
+      BPlusNode top = null;
+
+      // Leaves are filled one at a time. A full leaf is only written once the
+      // leaf after it fills up too (or the data runs out), so that the last
+      // leaf can be merged with it or share its entries. By then, the page of
+      // its right sibling has been allocated.
+      List<DataBox> prevKeys = null;
+      List<RecordId> prevRids = null;
+      int prevPageNum = -1;
+      List<DataBox> keys = new ArrayList<>();
+      List<RecordId> rids = new ArrayList<>();
+      int pageNum = allocator.allocPage();
+      DataBox lastKey = null;
+      try {
+        while (data.hasNext()) {
+          Pair<DataBox, RecordId> p = data.next();
+          DataBox key = p.getFirst();
+          typecheck(key);
+          if (lastKey != null && key.compareTo(lastKey) < (metadata.isUnique() ? 1 : 0)) {
+            String msg = String.format("Bulk loaded key %s does not come after %s.", key, lastKey);
+            throw new BPlusTreeException(msg);
+          }
+          lastKey = key;
+
+          if (keys.size() == perNode) {
+            int nextPageNum = allocator.allocPage();
+            if (prevKeys != null) {
+              level.add(new Pair<>(prevKeys.get(0), prevPageNum));
+              new LeafNode(metadata, prevPageNum, prevKeys, prevRids, Optional.of(pageNum));
+            }
+            prevKeys = keys;
+            prevRids = rids;
+            prevPageNum = pageNum;
+            keys = new ArrayList<>();
+            rids = new ArrayList<>();
+            pageNum = nextPageNum;
+          }
+          keys.add(key);
+          rids.add(p.getSecond());
+        }
+      } catch (BPlusTreeException | RuntimeException e) {
+        // Give back the pages of the leaves, so that the tree is left empty.
+        for (Pair<DataBox, Integer> leaf : level) {
+          allocator.freePage(leaf.getSecond());
+        }
+        if (prevKeys != null) {
+          allocator.freePage(prevPageNum);
+        }
+        allocator.freePage(pageNum);
+        throw e;
+      }
+      if (prevKeys != null) {
+        List<Integer> sizes = nodeSizes(prevKeys.size() + keys.size(), perNode, d, 2 * d);
+        keys.addAll(0, prevKeys);
+        rids.addAll(0, prevRids);
+        if (sizes.size() == 1) {
+          // The last leaf is merged into the one before it.
+          allocator.freePage(pageNum);
+          pageNum = prevPageNum;
+        } else {
+          int n = sizes.get(0);
+          level.add(new Pair<>(keys.get(0), prevPageNum));
+          new LeafNode(metadata, prevPageNum, new ArrayList<>(keys.subList(0, n)),
+                       new ArrayList<>(rids.subList(0, n)), Optional.of(pageNum));
+          keys = new ArrayList<>(keys.subList(n, keys.size()));
+          rids = new ArrayList<>(rids.subList(n, rids.size()));
+        }
+      }
+      level.add(new Pair<>(keys.get(0), pageNum));
+      top = new LeafNode(metadata, pageNum, keys, rids, Optional.empty());
+
+      // Each inner node has one more child than it has keys. The keys of a
+      // node are the first keys of all of its children but the first.
+      while (level.size() > 1) {
+        List<Pair<DataBox, Integer>> nodes = new ArrayList<>();
+        int start = 0;
+        for (int size : nodeSizes(level.size(), perNode + 1, d + 1, 2 * d + 1)) {
+          List<DataBox> innerKeys = new ArrayList<>();
+          List<Integer> children = new ArrayList<>();
+          for (int i = start; i < start + size; ++i) {
+            if (i > start) {
+              innerKeys.add(level.get(i).getFirst());
+            }
+            children.add(level.get(i).getSecond());
+          }
+          top = new InnerNode(metadata, innerKeys, children);
+          nodes.add(new Pair<>(level.get(start).getFirst(), top.getPage().getPageNum()));
+          start += size;
+        }
+        level = nodes;
+      }
+
+      int oldRootPageNum = root.getPage().getPageNum();
+      this.root = top;
+      writeHeader(headerPage.getByteBuffer());
+      metadata.uncacheInnerNode(oldRootPageNum);
+      allocator.freePage(oldRootPageNum);
+    }
+
     /**
      * Deletes a (key, rid) pair from a B+ tree.
      *
@@ -302,10 +613,43 @@ public class BPlusTree {
      *   tree.get(key); // Optional.of(rid)
      *   tree.remove(key);
      *   tree.get(key); // Optional.empty()
+     *
+     * If the tree is not unique, then every pair with key `key` is removed.
      */
     public void remove(DataBox key) {
       typecheck(key);
-      root.remove(key);
+      if (metadata.isUnique()) {
+        root.remove(key);
+        return;
+      }
+      LeafNode leaf = root.get(key);
+      leaf.remove(key);
+      while (!leaf.hasKeyGreaterThan(key) && leaf.getRightSibling().isPresent()) {
+        leaf = leaf.getRightSibling().get();
+        leaf.remove(key);
+      }
+    }
+
+    /**
+     * Deletes the pair (key, rid) from a B+ tree, if it is there, and leaves
+     * any other pairs with key `key` alone. This is how an entry of an index
+     * that is not unique is removed.
+     *
+     *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 4,
+     *                                  new BufferPool(), Page.pageSize, false);
+     *   DataBox key = new IntDataBox(42);
+     *   tree.put(key, new RecordId(1, (short) 1));
+     *   tree.put(key, new RecordId(2, (short) 2));
+     *   tree.remove(key, new RecordId(1, (short) 1));
+     *   tree.scanEqual(key); // [(2, 2)]
+     */
+    public void remove(DataBox key, RecordId rid) {
+      typecheck(key);
+      LeafNode leaf = root.get(key);
+      while (!leaf.remove(key, rid) && !metadata.isUnique() &&
+             !leaf.hasKeyGreaterThan(key) && leaf.getRightSibling().isPresent()) {
+        leaf = leaf.getRightSibling().get();
+      }
     }
 
     // Helpers /////////////////////////////////////////////////////////////////
@@ -349,16 +693,57 @@ public class BPlusTree {
       return Math.min(leafOrder, innerOrder);
     }
 
+    /**
+     * Returns whether the tree is a single leaf without entries, e.g. a new
+     * tree. Only the root is looked at, so a tree whose entries have all been
+     * removed after it grew past a single leaf is not empty.
+     */
+    public boolean isEmpty() {
+      return root instanceof LeafNode && ((LeafNode) root).getKeys().isEmpty();
+    }
+
     /** Returns the number of pages used to serialize the tree. */
     public int getNumPages() {
       return metadata.getAllocator().getNumPages();
     }
 
+    /**
+     * Splits n entries into nodes of perNode entries, and returns the number
+     * of entries of each node. If the last node would have fewer than
+     * minPerNode entries, it and the node before it are merged if they have
+     * no more than maxPerNode entries between them, and share their entries
+     * evenly otherwise. Assumes that minPerNode <= perNode <= maxPerNode and
+     * that 2 * minPerNode <= maxPerNode + 1.
+     */
+    static List<Integer> nodeSizes(int n, int perNode, int minPerNode, int maxPerNode) {
+      List<Integer> sizes = new ArrayList<>();
+      for (int i = 0; i < n / perNode; ++i) {
+        sizes.add(perNode);
+      }
+      int last = n % perNode;
+      if (last == 0) {
+        return sizes;
+      }
+      if (last >= minPerNode || sizes.isEmpty()) {
+        sizes.add(last);
+        return sizes;
+      }
+      int total = sizes.remove(sizes.size() - 1) + last;
+      if (total <= maxPerNode) {
+        sizes.add(total);
+      } else {
+        sizes.add(total / 2);
+        sizes.add(total - total / 2);
+      }
+      return sizes;
+    }
+
     /** Serializes the header page to buf. */
     private void writeHeader(ByteBuffer buf) {
       buf.put(metadata.getKeySchema().toBytes());
       buf.putInt(metadata.getOrder());
       buf.putInt(root.getPage().getPageNum());
+      buf.put((byte) (metadata.isUnique() ? 0 : 1));
     }
 
     private void typecheck(DataBox key) {
@@ -369,44 +754,113 @@ public class BPlusTree {
       }
     }
 
+    private void typecheck(Optional<DataBox> key) {
+      if (key.isPresent()) {
+        typecheck(key.get());
+      }
+    }
+
+    /**
+     * Returns the number of keys of `keys` that are less than `key` or, if
+     * `after`, less than or equal to `key`. If key is empty, then that is
+     * none of them or, if `after`, all of them. In a leaf, this is the index
+     * of the first entry after the bound. In an inner node, this is the index
+     * of the child on which the entries before (or after) the bound end (or
+     * start).
+     */
+    private static int numBefore(Optional<DataBox> key, boolean after, List<DataBox> keys) {
+      if (!key.isPresent()) {
+        return after ? keys.size() : 0;
+      }
+      return after ? InnerNode.numLessThanEqual(key.get(), keys)
+                   : InnerNode.numLessThan(key.get(), keys);
+    }
+
+    /**
+     * Descends from `node` to a leaf through child numBefore(key, after, keys)
+     * of every inner node on the way, and returns the leaf. If `path` is not
+     * null, each inner node passed through is pushed onto it along with the
+     * index of the child taken.
+     */
+    private LeafNode descend(BPlusNode node, Optional<DataBox> key, boolean after,
+                             Deque<Pair<InnerNode, Integer>> path) {
+      while (node instanceof InnerNode) {
+        InnerNode inner = (InnerNode) node;
+        int index = numBefore(key, after, inner.getKeys());
+        if (path != null) {
+          path.push(new Pair<>(inner, index));
+        }
+        node = BPlusNode.fromBytes(metadata, inner.getChildren().get(index));
+      }
+      return (LeafNode) node;
+    }
+
+    // Returns a BPlusTreeIterator over the range (see scanRange).
+    private BPlusTreeIterator iterator(Optional<DataBox> lo, boolean loInclusive,
+                                       Optional<DataBox> hi, boolean hiInclusive) {
+      typecheck(lo);
+      typecheck(hi);
+      boolean after = lo.isPresent() && !loInclusive;
+      LeafNode leaf = descend(root, lo, after, null);
+      int index = numBefore(lo, after, leaf.getKeys());
+      return new BPlusTreeIterator(leaf, index, hi, hiInclusive);
+    }
+
     // Iterator ////////////////////////////////////////////////////////////////
     private class BPlusTreeIterator implements Iterator<RecordId> {
       // A BPlusTreeIterator iterates over the entries of a B+ tree leaf by
-      // leaf. We maintain the following invariants:
+      // leaf, starting at entry `index` of `leaf`, and stops before the first
+      // key greater than (or, unless hiInclusive, equal to) `hi`, if hi is
+      // present. We maintain the following invariants:
       //
-      //   - leaf is null if and only if iter is null
-      //   - iter is not null if and only if iter.hasNext()
+      //   - leaf is null if and only if there is no next entry, and
+      //   - otherwise, the next entry is entry `index` of `leaf`.
       private LeafNode leaf;
-      private Iterator<RecordId> iter;
+      private int index;
+      private final Optional<DataBox> hi;
+      private final boolean hiInclusive;
 
-      public BPlusTreeIterator(LeafNode leaf, Iterator<RecordId> iter) {
+      public BPlusTreeIterator(LeafNode leaf, int index, Optional<DataBox> hi,
+                               boolean hiInclusive) {
         assert(leaf != null);
-        assert(iter != null);
         this.leaf = leaf;
-        this.iter = iter;
-
-        if (!this.iter.hasNext()) {
-          advance();
-        }
+        this.index = index;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        advance();
       }
 
+      // Moves past the end of leaves (which may be empty) to the next entry,
+      // and ends the iteration if the next entry's key is past hi.
       private void advance() {
-        Optional<LeafNode> sibling = leaf.getRightSibling();
-        if (sibling.isPresent()) {
+        while (index == leaf.getKeys().size()) {
+          Optional<LeafNode> sibling = leaf.getRightSibling();
+          if (!sibling.isPresent()) {
+            this.leaf = null;
+            return;
+          }
           this.leaf = sibling.get();
-          this.iter = this.leaf.scanAll();
-          if (!this.iter.hasNext()) {
-            advance();
+          this.index = 0;
+        }
+        if (hi.isPresent()) {
+          int cmp = leaf.getKeys().get(index).compareTo(hi.get());
+          if (cmp > 0 || (cmp == 0 && !hiInclusive)) {
+            this.leaf = null;
           }
-        } else {
-          this.leaf = null;
-          this.iter = null;
         }
       }
 
       @Override
       public boolean hasNext() {
-        return iter != null;
+        return leaf != null;
+      }
+
+      // Returns the key of the next entry, without moving past it.
+      public DataBox peekKey() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return leaf.getKeys().get(index);
       }
 
       @Override
@@ -414,14 +868,78 @@ public class BPlusTree {
         if (!hasNext()) {
           throw new NoSuchElementException();
         }
-        assert(leaf != null);
-        assert(iter != null);
-        assert(iter.hasNext());
+        RecordId rid = leaf.getRids().get(index);
+        index++;
+        advance();
+        return rid;
+      }
+    }
 
-        RecordId rid = iter.next();
-        if (!iter.hasNext()) {
-          advance();
+    private class ReverseBPlusTreeIterator implements Iterator<RecordId> {
+      // A ReverseBPlusTreeIterator iterates backwards over the entries of a B+
+      // tree leaf by leaf, starting at entry `index` of `leaf`, and stops
+      // before the first key less than (or, unless loInclusive, equal to)
+      // `lo`, if lo is present. path holds the inner nodes from the root down
+      // to leaf, each with the index of the child that leads to leaf. We
+      // maintain the same invariants as BPlusTreeIterator.
+      private final Deque<Pair<InnerNode, Integer>> path = new ArrayDeque<>();
+      private LeafNode leaf;
+      private int index;
+      private final Optional<DataBox> lo;
+      private final boolean loInclusive;
+
+      public ReverseBPlusTreeIterator(Optional<DataBox> lo, boolean loInclusive,
+                                      Optional<DataBox> hi, boolean hiInclusive) {
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        boolean after = !hi.isPresent() || hiInclusive;
+        this.leaf = descend(root, hi, after, path);
+        this.index = numBefore(hi, after, leaf.getKeys()) - 1;
+        retreat();
+      }
+
+      // Moves back past the start of leaves (which may be empty) to the
+      // previous entry, and ends the iteration if its key is past lo.
+      private void retreat() {
+        while (index < 0) {
+          // The leaf before this one is the rightmost leaf of the child just
+          // left of the path, under the lowest inner node that has one.
+          while (!path.isEmpty() && path.peek().getSecond() == 0) {
+            path.pop();
+          }
+          if (path.isEmpty()) {
+            this.leaf = null;
+            return;
+          }
+          Pair<InnerNode, Integer> p = path.pop();
+          InnerNode inner = p.getFirst();
+          int child = p.getSecond() - 1;
+          path.push(new Pair<>(inner, child));
+          BPlusNode node = BPlusNode.fromBytes(metadata, inner.getChildren().get(child));
+          this.leaf = descend(node, Optional.<DataBox>empty(), true, path);
+          this.index = leaf.getKeys().size() - 1;
+        }
+        if (lo.isPresent()) {
+          int cmp = leaf.getKeys().get(index).compareTo(lo.get());
+          if (cmp < 0 || (cmp == 0 && !loInclusive)) {
+            this.leaf = null;
+          }
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        return leaf != null;
+      }
+
+      @Override
+      public RecordId next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
         }
+        RecordId rid = leaf.getRids().get(index);
+        index--;
+        retreat();
         return rid;
       }
     }
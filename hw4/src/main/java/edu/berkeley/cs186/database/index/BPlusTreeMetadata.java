@@ -1,10 +1,16 @@
 package edu.berkeley.cs186.database.index;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.berkeley.cs186.database.databox.FieldComparator;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.PageAllocator;
 
 /** Metadata about a B+ tree. */
 class BPlusTreeMetadata {
+  // The number of decoded inner nodes kept in innerNodes.
+  static final int INNER_NODE_CACHE_SIZE = 1024;
   // The page allocator used to persist the B+ tree. Every node of the B+ tree
   // is stored on a single page allocated by this allocator.
   private final PageAllocator allocator;
@@ -20,10 +26,47 @@ class BPlusTreeMetadata {
   // may contain fewer than d entries.
   private final int order;
 
+  // Whether every key of the tree is unique. A tree that is not unique maps a
+  // key to any number of record ids (e.g. an index on a column that has
+  // duplicate values).
+  private final boolean unique;
+
+  // Compares serialized keys in place (see LeafNode.find).
+  private final FieldComparator keyComparator;
+
+  // The most recently used decoded inner nodes, by page number (see
+  // BPlusNode.fromBytes), so that the inner nodes at the top of the tree,
+  // which every lookup passes through, are not parsed again on every lookup.
+  // There are about 1 / d as many inner nodes as leaves, so even a large
+  // tree has few of them.
+  private final Map<Integer, InnerNode> innerNodes;
+
   public BPlusTreeMetadata(PageAllocator allocator, Type keySchema, int order) {
+    this(allocator, keySchema, order, true);
+  }
+
+  public BPlusTreeMetadata(PageAllocator allocator, Type keySchema, int order,
+                           boolean unique) {
     this.allocator = allocator;
     this.keySchema = keySchema;
     this.order = order;
+    this.unique = unique;
+    this.keyComparator = FieldComparator.forType(keySchema);
+    this.innerNodes = new InnerNodeCache();
+  }
+
+  /** The INNER_NODE_CACHE_SIZE most recently used inner nodes, by page number. */
+  private static class InnerNodeCache extends LinkedHashMap<Integer, InnerNode> {
+    private static final long serialVersionUID = 1L;
+
+    private InnerNodeCache() {
+      super(16, 0.75f, true);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, InnerNode> eldest) {
+      return size() > INNER_NODE_CACHE_SIZE;
+    }
   }
 
   public PageAllocator getAllocator() {
@@ -37,4 +80,26 @@ class BPlusTreeMetadata {
   public int getOrder() {
     return order;
   }
+
+  public boolean isUnique() {
+    return unique;
+  }
+
+  public FieldComparator getKeyComparator() {
+    return keyComparator;
+  }
+
+  /** Returns the cached inner node on page pageNum, or null. */
+  synchronized InnerNode getCachedInnerNode(int pageNum) {
+    return innerNodes.get(pageNum);
+  }
+
+  synchronized void cacheInnerNode(InnerNode node) {
+    innerNodes.put(node.getPage().getPageNum(), node);
+  }
+
+  /** Drops the inner node on page pageNum, if cached, e.g. when it is freed. */
+  synchronized void uncacheInnerNode(int pageNum) {
+    innerNodes.remove(pageNum);
+  }
 }
@@ -55,25 +55,40 @@ class InnerNode extends BPlusNode {
    */
   private InnerNode(BPlusTreeMetadata metadata, int pageNum, List<DataBox> keys,
                     List<Integer> children) {
+    this(metadata, metadata.getAllocator().fetchPage(pageNum), keys, children);
+    sync();
+  }
+
+  /**
+   * Construct an inner node that is already persisted to `page`.
+   */
+  private InnerNode(BPlusTreeMetadata metadata, Page page, List<DataBox> keys,
+                    List<Integer> children) {
     assert(keys.size() <= 2 * metadata.getOrder());
     assert(keys.size() + 1 == children.size());
 
     this.metadata = metadata;
-    this.page = metadata.getAllocator().fetchPage(pageNum);
+    this.page = page;
     this.keys = keys;
     this.children = children;
-    sync();
   }
 
   // Core API //////////////////////////////////////////////////////////////////
   // See BPlusNode.get.
   @Override
   public LeafNode get(DataBox key) {
-    int index = numLessThanEqual(key, keys);
+    int index = metadata.isUnique() ? numLessThanEqual(key, keys) : numLessThan(key, keys);
     BPlusNode child = getChild(index);
     return child.get(key);
   }
 
+  // See BPlusNode.find.
+  @Override
+  public Optional<RecordId> find(DataBox key) {
+    int index = numLessThanEqual(key, keys);
+    return BPlusNode.find(metadata, children.get(index), key);
+  }
+
   // See BPlusNode.getLeftmostLeaf.
   @Override
   public LeafNode getLeftmostLeaf() {
@@ -180,12 +195,12 @@ class InnerNode extends BPlusNode {
     page.getByteBuffer().put(toBytes());
   }
 
-  // Just for testing.
+  // For testing and for BPlusTree's range scans, which must not modify them.
   List<DataBox> getKeys() {
     return keys;
   }
 
-  // Just for testing.
+  // For testing and for BPlusTree's range scans, which must not modify them.
   List<Integer> getChildren() {
     return children;
   }
@@ -247,30 +262,37 @@ class InnerNode extends BPlusNode {
    * If we're searching the tree for value c, then we need to visit child 3.
    * Not coincidentally, there are also 3 values less than or equal to c (i.e.
    * a, b, c).
+   *
+   * Since ys is sorted, we binary search it for the first element greater
+   * than x, so ys should support fast random access (e.g. an ArrayList).
    */
   public static <T extends Comparable<T>> int numLessThanEqual(T x, List<T> ys) {
-    int n = 0;
-    for (T y : ys) {
-      if (y.compareTo(x) <= 0) {
-        ++n;
+    int lo = 0;
+    int hi = ys.size();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (ys.get(mid).compareTo(x) <= 0) {
+        lo = mid + 1;
       } else {
-        break;
+        hi = mid;
       }
     }
-    return n;
+    return lo;
   }
 
   /** Same as numLessThanEqual but for < instead of <= */
   public static <T extends Comparable<T>> int numLessThan(T x, List<T> ys) {
-    int n = 0;
-    for (T y : ys) {
-      if (y.compareTo(x) < 0) {
-        ++n;
+    int lo = 0;
+    int hi = ys.size();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (ys.get(mid).compareTo(x) < 0) {
+        lo = mid + 1;
       } else {
-        break;
+        hi = mid;
       }
     }
-    return n;
+    return lo;
   }
 
   // Pretty Printing ///////////////////////////////////////////////////////////
@@ -378,9 +400,12 @@ class InnerNode extends BPlusNode {
    */
   public static InnerNode fromBytes(BPlusTreeMetadata metadata, int pageNum) {
     Page page = metadata.getAllocator().fetchPage(pageNum);
-    ByteBuffer buf = page.getByteBuffer();
+    ByteBuffer buf = page.getReadOnlyByteBuffer();
 
-    assert(buf.get() == (byte) 0);
+    // The node type is read outside of the assert, so that it is skipped
+    // even when assertions are disabled.
+    byte nodeType = buf.get();
+    assert(nodeType == (byte) 0);
 
     List<DataBox> keys = new ArrayList<>();
     List<Integer> children = new ArrayList<>();
@@ -391,7 +416,7 @@ class InnerNode extends BPlusNode {
     for (int i = 0; i < n + 1; ++i) {
       children.add(buf.getInt());
     }
-    return new InnerNode(metadata, pageNum, keys, children);
+    return new InnerNode(metadata, page, keys, children);
   }
 
   // Builtins //////////////////////////////////////////////////////////////////
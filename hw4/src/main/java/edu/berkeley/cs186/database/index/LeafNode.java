@@ -114,19 +114,28 @@ class LeafNode extends BPlusNode {
 
   /**
    * Construct a leaf node that is persisted to page `pageNum` allocated by
-   * metadata.getAllocator().
+   * metadata.getAllocator(). BPlusTree.bulkLoad uses this to write leaves
+   * whose right siblings' pages are allocated before they are.
    */
-  private LeafNode(BPlusTreeMetadata metadata, int pageNum, List<DataBox> keys,
+  LeafNode(BPlusTreeMetadata metadata, int pageNum, List<DataBox> keys,
+                   List<RecordId> rids, Optional<Integer> rightSibling) {
+    this(metadata, metadata.getAllocator().fetchPage(pageNum), keys, rids, rightSibling);
+    sync();
+  }
+
+  /**
+   * Construct a leaf node that is already persisted to `page`.
+   */
+  private LeafNode(BPlusTreeMetadata metadata, Page page, List<DataBox> keys,
                    List<RecordId> rids, Optional<Integer> rightSibling) {
     assert(keys.size() <= 2 * metadata.getOrder());
     assert(keys.size() == rids.size());
 
     this.metadata = metadata;
-    this.page = metadata.getAllocator().fetchPage(pageNum);
+    this.page = page;
     this.keys = keys;
     this.rids = rids;
     this.rightSibling = rightSibling;
-    sync();
   }
 
   // Core API //////////////////////////////////////////////////////////////////
@@ -136,6 +145,12 @@ class LeafNode extends BPlusNode {
     return this;
   }
 
+  // See BPlusNode.find.
+  @Override
+  public Optional<RecordId> find(DataBox key) {
+    return getKey(key);
+  }
+
   // See BPlusNode.getLeftmostLeaf.
   @Override
   public LeafNode getLeftmostLeaf() {
@@ -146,8 +161,9 @@ class LeafNode extends BPlusNode {
   @Override
   public Optional<Pair<DataBox, Integer>> put(DataBox key, RecordId rid)
       throws BPlusTreeException {
-    // Our implementation of B+ trees does not support duplicates!
-    if (keys.contains(key)) {
+    // Unique trees do not support duplicates! In other trees, the new entry
+    // goes after the entries that have the same key.
+    if (metadata.isUnique() && indexOf(key) != -1) {
       String message = String.format("Duplicate key %s inserted.", key);
       throw new BPlusTreeException(message);
     }
@@ -209,21 +225,37 @@ class LeafNode extends BPlusNode {
     return Optional.of(new Pair<>(rightKeys.get(0), pageNum));
   }
 
-  // See BPlusNode.remove.
+  // See BPlusNode.remove. Every entry of this leaf with key `key` is removed.
   @Override
   public void remove(DataBox key) {
-    int index = keys.indexOf(key);
-    if (index != -1) {
-      keys.remove(index);
-      rids.remove(index);
-    }
+    int from = InnerNode.numLessThan(key, keys);
+    int to = InnerNode.numLessThanEqual(key, keys);
+    keys.subList(from, to).clear();
+    rids.subList(from, to).clear();
     sync();
   }
 
+  /**
+   * Removes the entry (key, rid) from this leaf, if there is one, and returns
+   * whether there was.
+   */
+  boolean remove(DataBox key, RecordId rid) {
+    int to = InnerNode.numLessThanEqual(key, keys);
+    for (int i = InnerNode.numLessThan(key, keys); i < to; ++i) {
+      if (rids.get(i).equals(rid)) {
+        keys.remove(i);
+        rids.remove(i);
+        sync();
+        return true;
+      }
+    }
+    return false;
+  }
+
   // Iterators /////////////////////////////////////////////////////////////////
   /** Return the record id associated with `key`. */
   public Optional<RecordId> getKey(DataBox key) {
-    int index = keys.indexOf(key);
+    int index = indexOf(key);
     return index == -1 ? Optional.empty() : Optional.of(rids.get(index));
   }
 
@@ -261,6 +293,52 @@ class LeafNode extends BPlusNode {
     return Optional.of(LeafNode.fromBytes(metadata, pageNum));
   }
 
+  /**
+   * Returns whether this leaf has a key greater than `key`. In a tree that is
+   * not unique, the entries with key `key` may continue on the right sibling
+   * of a leaf only if it does not.
+   */
+  boolean hasKeyGreaterThan(DataBox key) {
+    return !keys.isEmpty() && keys.get(keys.size() - 1).compareTo(key) > 0;
+  }
+
+  /** Returns the index of `key` in keys, or -1 if it is not there. */
+  private int indexOf(DataBox key) {
+    int index = InnerNode.numLessThan(key, keys);
+    return index < keys.size() && keys.get(index).equals(key) ? index : -1;
+  }
+
+  /**
+   * LeafNode.find(m, p, k) returns the record id of key k on leaf page p, like
+   * LeafNode.fromBytes(m, p).getKey(k), but binary searches the serialized
+   * entries on the page for k (see toBytes) rather than decoding them.
+   */
+  static Optional<RecordId> find(BPlusTreeMetadata metadata, Page page, DataBox key) {
+    ByteBuffer buf = page.getReadOnlyByteBuffer();
+    ByteBuffer keyBuf = ByteBuffer.wrap(key.toBytes());
+    int keySize = metadata.getKeySchema().getSizeInBytes();
+    int entrySize = keySize + RecordId.getSizeInBytes();
+    // The entries follow isLeaf (1 byte), the sibling pointer (4 bytes), and
+    // the number of entries (4 bytes).
+    int entriesOffset = 1 + Integer.BYTES + Integer.BYTES;
+    int lo = 0;
+    int hi = buf.getInt(1 + Integer.BYTES) - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int offset = entriesOffset + mid * entrySize;
+      int cmp = metadata.getKeyComparator().compare(buf, offset, keyBuf, 0);
+      if (cmp < 0) {
+        lo = mid + 1;
+      } else if (cmp > 0) {
+        hi = mid - 1;
+      } else {
+        buf.position(offset + keySize);
+        return Optional.of(RecordId.fromBytes(buf));
+      }
+    }
+    return Optional.empty();
+  }
+
   /** Serializes this leaf to its page. */
   private void sync() {
     page.getByteBuffer().put(toBytes());
@@ -299,12 +377,12 @@ class LeafNode extends BPlusNode {
     return n / 2;
   }
 
-  // For testing only.
+  // For testing and for BPlusTree's iterators, which must not modify them.
   List<DataBox> getKeys() {
     return keys;
   }
 
-  // For testing only.
+  // For testing and for BPlusTree's iterators, which must not modify them.
   List<RecordId> getRids() {
     return rids;
   }
@@ -394,9 +472,12 @@ class LeafNode extends BPlusNode {
    */
   public static LeafNode fromBytes(BPlusTreeMetadata metadata, int pageNum) {
     Page page = metadata.getAllocator().fetchPage(pageNum);
-    ByteBuffer buf = page.getByteBuffer();
+    ByteBuffer buf = page.getReadOnlyByteBuffer();
 
-    assert(buf.get() == (byte) 1);
+    // The node type is read outside of the assert, so that it is skipped
+    // even when assertions are disabled.
+    byte nodeType = buf.get();
+    assert(nodeType == (byte) 1);
 
     int s = buf.getInt();
     Optional<Integer> rightSibling = s == -1 ? Optional.empty() : Optional.of(s);
@@ -409,7 +490,7 @@ class LeafNode extends BPlusNode {
       rids.add(RecordId.fromBytes(buf));
     }
 
-    return new LeafNode(metadata, pageNum, keys, rids, rightSibling);
+    return new LeafNode(metadata, page, keys, rids, rightSibling);
   }
 
   // Builtins //////////////////////////////////////////////////////////////////
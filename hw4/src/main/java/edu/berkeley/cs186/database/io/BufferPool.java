@@ -0,0 +1,441 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongPredicate;
+
+/**
+ * A cache of Pages keyed by virtual page number (see
+ * PageAllocator.translatePageNum). The pool is split into a fixed number of
+ * lock stripes. A virtual page number always maps to the same stripe, and every
+ * stripe is an independent cache guarded by its own lock, so lookups of pages
+ * that live on different stripes never contend with one another:
+ *
+ *   BufferPool pool = new BufferPool(1024);
+ *   pool.put(vPageNum, page);
+ *   pool.get(vPageNum); // page
+ *   pool.remove(vPageNum);
+ *   pool.get(vPageNum); // null
+ *
+ * Eviction is done per stripe. Each stripe holds at most
+ * ceil(capacity / numStripes) pages and, when it overflows, evicts (and
+ * flushes) the unpinned page chosen by its ReplacementPolicy (LRU unless
+ * another ReplacementPolicy.Kind is given). A page is pinned from the moment
+ * pin or putIfAbsent(..., true) returns it until the matching unpin, and
+ * pinned pages are never evicted, so the pool never holds more than capacity
+ * pages. If every page of a stripe is pinned, caching another page in that
+ * stripe throws a PageException.
+ *
+ * A single pool may be shared by many PageAllocators (see Database), in which
+ * case it bounds the number of pages cached across all of them.
+ *
+ * If the pool is given a PageFlusher, pages are not forced synchronously when
+ * they are evicted, and durable PageAllocators that cache their pages in the
+ * pool schedule their metadata pages with the flusher rather than forcing them
+ * on every allocation (see PageFlusher).
+ *
+ * The pool counts its hits (get or pin found the page), misses (get or pin did
+ * not find the page), and evictions so that policies can be compared under a
+ * real workload. Finer grained I/O counts, per file and per transaction, are
+ * kept in the pool's MetricsRegistry (see getMetrics).
+ */
+public class BufferPool {
+  public static final int DEFAULT_CAPACITY = 1024;
+  public static final ReplacementPolicy.Kind DEFAULT_POLICY = ReplacementPolicy.Kind.LRU;
+  private static final int DEFAULT_NUM_STRIPES = 16;
+
+  // Small pools get fewer stripes so that a stripe is never so small that a
+  // handful of pinned pages exhausts it.
+  private static final int MIN_STRIPE_CAPACITY = 8;
+
+  private final Stripe[] stripes;
+  private final int capacity;
+  private final ReplacementPolicy.Kind policyKind;
+  private final PageFlusher flusher;
+  private final MetricsRegistry metrics = new MetricsRegistry();
+
+  private final LongAdder numHits = new LongAdder();
+  private final LongAdder numMisses = new LongAdder();
+  private final LongAdder numEvictions = new LongAdder();
+
+  /**
+   * Create a new LRU BufferPool that holds at most DEFAULT_CAPACITY pages.
+   */
+  public BufferPool() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Create a new LRU BufferPool that holds at most capacity pages.
+   *
+   * @param capacity the number of pages the pool can hold
+   */
+  public BufferPool(int capacity) {
+    this(capacity, DEFAULT_POLICY);
+  }
+
+  /**
+   * Create a new BufferPool that holds at most capacity pages and evicts pages
+   * according to policyKind.
+   *
+   * @param capacity the number of pages the pool can hold
+   * @param policyKind the replacement policy of every stripe
+   */
+  public BufferPool(int capacity, ReplacementPolicy.Kind policyKind) {
+    this(capacity, policyKind, null);
+  }
+
+  /**
+   * Create a new BufferPool that holds at most capacity pages, evicts pages
+   * according to policyKind, and defers forcing pages to flusher.
+   *
+   * @param capacity the number of pages the pool can hold
+   * @param policyKind the replacement policy of every stripe
+   * @param flusher the flusher to schedule dirty pages with, or null to force
+   * them synchronously
+   */
+  public BufferPool(int capacity, ReplacementPolicy.Kind policyKind, PageFlusher flusher) {
+    this(capacity, Math.max(1, Math.min(DEFAULT_NUM_STRIPES, capacity / MIN_STRIPE_CAPACITY)),
+         policyKind, flusher);
+  }
+
+  /**
+   * Create a new LRU BufferPool that holds at most capacity pages split across
+   * numStripes independently locked stripes.
+   *
+   * @param capacity the number of pages the pool can hold
+   * @param numStripes the number of lock stripes
+   */
+  public BufferPool(int capacity, int numStripes) {
+    this(capacity, numStripes, DEFAULT_POLICY);
+  }
+
+  /**
+   * Create a new BufferPool that holds at most capacity pages split across
+   * numStripes independently locked stripes, each of which evicts pages
+   * according to its own instance of policyKind.
+   *
+   * @param capacity the number of pages the pool can hold
+   * @param numStripes the number of lock stripes
+   * @param policyKind the replacement policy of every stripe
+   */
+  public BufferPool(int capacity, int numStripes, ReplacementPolicy.Kind policyKind) {
+    this(capacity, numStripes, policyKind, null);
+  }
+
+  /**
+   * Create a new BufferPool that holds at most capacity pages split across
+   * numStripes independently locked stripes, each of which evicts pages
+   * according to its own instance of policyKind, and that defers forcing pages
+   * to flusher.
+   *
+   * @param capacity the number of pages the pool can hold
+   * @param numStripes the number of lock stripes
+   * @param policyKind the replacement policy of every stripe
+   * @param flusher the flusher to schedule dirty pages with, or null to force
+   * them synchronously
+   */
+  public BufferPool(int capacity, int numStripes, ReplacementPolicy.Kind policyKind,
+                    PageFlusher flusher) {
+    if (capacity <= 0 || numStripes <= 0) {
+      throw new IllegalArgumentException("capacity and numStripes must be positive");
+    }
+    numStripes = Math.min(numStripes, capacity);
+
+    // Split capacity as evenly as possible so the stripes sum to exactly capacity.
+    this.capacity = capacity;
+    this.policyKind = policyKind;
+    this.flusher = flusher;
+    this.stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      int stripeCapacity = capacity / numStripes + (i < capacity % numStripes ? 1 : 0);
+      this.stripes[i] = new Stripe(stripeCapacity, policyKind.create(stripeCapacity));
+    }
+  }
+
+  /**
+   * @param vPageNum the virtual page number
+   * @return the cached page, or null if it is not in the pool
+   */
+  public Page get(long vPageNum) {
+    Stripe stripe = stripeFor(vPageNum);
+    synchronized (stripe) {
+      return stripe.get(vPageNum);
+    }
+  }
+
+  /**
+   * Pins and returns the page cached under vPageNum.
+   *
+   * @param vPageNum the virtual page number
+   * @return the cached page, or null (and nothing is pinned) if it is not in
+   * the pool
+   */
+  public Page pin(long vPageNum) {
+    Stripe stripe = stripeFor(vPageNum);
+    synchronized (stripe) {
+      Page page = stripe.get(vPageNum);
+      if (page != null) {
+        page.pin();
+      }
+      return page;
+    }
+  }
+
+  /**
+   * Releases one pin on page, which must have been returned by pin or
+   * putIfAbsent(vPageNum, ..., true).
+   *
+   * @param vPageNum the virtual page number page is cached under
+   * @param page the pinned page
+   */
+  public void unpin(long vPageNum, Page page) {
+    Stripe stripe = stripeFor(vPageNum);
+    synchronized (stripe) {
+      page.unpin();
+    }
+  }
+
+  /**
+   * Caches page under vPageNum, possibly evicting a page of the stripe
+   * vPageNum maps to.
+   *
+   * @param vPageNum the virtual page number
+   * @param page the page to cache
+   */
+  public void put(long vPageNum, Page page) {
+    Stripe stripe = stripeFor(vPageNum);
+    synchronized (stripe) {
+      stripe.put(vPageNum, page);
+    }
+  }
+
+  /**
+   * Caches page under vPageNum unless some other page is already cached there,
+   * in which case the cached page is returned instead. This lets two threads
+   * that raced on the same miss agree on a single Page object.
+   *
+   * @param vPageNum the virtual page number
+   * @param page the page to cache
+   * @return the page that is cached under vPageNum after the call
+   */
+  public Page putIfAbsent(long vPageNum, Page page) {
+    return putIfAbsent(vPageNum, page, false);
+  }
+
+  /**
+   * Like putIfAbsent(vPageNum, page), but also pins the returned page if pin
+   * is true.
+   *
+   * @param vPageNum the virtual page number
+   * @param page the page to cache
+   * @param pin whether to pin the returned page
+   * @return the page that is cached under vPageNum after the call
+   */
+  public Page putIfAbsent(long vPageNum, Page page, boolean pin) {
+    Stripe stripe = stripeFor(vPageNum);
+    synchronized (stripe) {
+      Page cached = stripe.pages.get(vPageNum);
+      if (cached == null) {
+        stripe.put(vPageNum, page);
+        cached = page;
+      }
+      if (pin) {
+        cached.pin();
+      }
+      return cached;
+    }
+  }
+
+  /**
+   * @param vPageNum the virtual page number
+   * @return the page that was cached under vPageNum, or null if there was none
+   */
+  public Page remove(long vPageNum) {
+    Stripe stripe = stripeFor(vPageNum);
+    synchronized (stripe) {
+      return stripe.remove(vPageNum);
+    }
+  }
+
+  /**
+   * Empties the pool without flushing anything.
+   *
+   * @return the pages that were cached
+   */
+  public List<Page> clear() {
+    List<Page> pages = new ArrayList<Page>();
+    for (Stripe stripe : this.stripes) {
+      synchronized (stripe) {
+        for (long vPageNum : new ArrayList<Long>(stripe.pages.keySet())) {
+          pages.add(stripe.remove(vPageNum));
+        }
+      }
+    }
+    return pages;
+  }
+
+  /**
+   * Removes every page cached on behalf of the allocator with id allocID (i.e.
+   * every page whose virtual page number has allocID as its upper 32 bits)
+   * without flushing anything.
+   *
+   * @param allocID the id of the allocator
+   * @return the pages that were removed
+   */
+  public List<Page> removeAll(int allocID) {
+    List<Page> pages = new ArrayList<Page>();
+    for (Stripe stripe : this.stripes) {
+      synchronized (stripe) {
+        Iterator<Map.Entry<Long, Page>> iter = stripe.pages.entrySet().iterator();
+        while (iter.hasNext()) {
+          Map.Entry<Long, Page> entry = iter.next();
+          if ((int) (entry.getKey() >>> 32) == allocID) {
+            pages.add(entry.getValue());
+            stripe.policy.recordRemove(entry.getKey());
+            iter.remove();
+          }
+        }
+      }
+    }
+    return pages;
+  }
+
+  /**
+   * @return the number of pages currently cached
+   */
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : this.stripes) {
+      synchronized (stripe) {
+        size += stripe.pages.size();
+      }
+    }
+    return size;
+  }
+
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  public int getNumStripes() {
+    return this.stripes.length;
+  }
+
+  public ReplacementPolicy.Kind getPolicyKind() {
+    return this.policyKind;
+  }
+
+  /**
+   * @return the flusher that dirty pages are scheduled with, or null if they are forced
+   * synchronously
+   */
+  public PageFlusher getFlusher() {
+    return this.flusher;
+  }
+
+  /**
+   * @return the I/O counters of the files cached in this pool and of the
+   * transactions using them
+   */
+  public MetricsRegistry getMetrics() {
+    return this.metrics;
+  }
+
+  public long getNumHits() {
+    return this.numHits.sum();
+  }
+
+  public long getNumMisses() {
+    return this.numMisses.sum();
+  }
+
+  public long getNumEvictions() {
+    return this.numEvictions.sum();
+  }
+
+  /**
+   * @return the fraction of lookups that hit, or 0 if there were none
+   */
+  public double getHitRatio() {
+    long hits = getNumHits();
+    long lookups = hits + getNumMisses();
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  private Stripe stripeFor(long vPageNum) {
+    // Consecutive page numbers differ in their low bits, so a sequential scan
+    // is spread round-robin across the stripes.
+    int h = (int) (vPageNum ^ (vPageNum >>> 32));
+    return this.stripes[(h & 0x7FFFFFFF) % this.stripes.length];
+  }
+
+  /**
+   * One lock stripe of the pool. All methods must be called while holding the
+   * stripe's monitor.
+   */
+  private class Stripe {
+    private final int capacity;
+    private final ReplacementPolicy policy;
+    private final Map<Long, Page> pages = new HashMap<Long, Page>();
+
+    Stripe(int capacity, ReplacementPolicy policy) {
+      this.capacity = capacity;
+      this.policy = policy;
+    }
+
+    Page get(long vPageNum) {
+      Page page = this.pages.get(vPageNum);
+      if (page == null) {
+        BufferPool.this.numMisses.increment();
+      } else {
+        BufferPool.this.numHits.increment();
+        this.policy.recordAccess(vPageNum);
+      }
+      return page;
+    }
+
+    void put(long vPageNum, Page page) {
+      if (this.pages.containsKey(vPageNum)) {
+        this.pages.put(vPageNum, page);
+        this.policy.recordAccess(vPageNum);
+        return;
+      }
+      if (this.pages.size() >= this.capacity) {
+        evict();
+      }
+      this.pages.put(vPageNum, page);
+      this.policy.recordInsert(vPageNum);
+    }
+
+    Page remove(long vPageNum) {
+      this.policy.recordRemove(vPageNum);
+      return this.pages.remove(vPageNum);
+    }
+
+    private void evict() {
+      long victim = this.policy.evict(new LongPredicate() {
+        @Override
+        public boolean test(long vPageNum) {
+          return !Stripe.this.pages.get(vPageNum).isPinned();
+        }
+      });
+      if (victim == ReplacementPolicy.NO_VICTIM) {
+        throw new PageException("No free frames -- all " + this.capacity
+                                + " pages of the stripe are pinned");
+      }
+      Page page = this.pages.remove(victim);
+      if (BufferPool.this.flusher == null) {
+        page.flush();
+      } else {
+        BufferPool.this.flusher.schedule(page);
+      }
+      BufferPool.this.numEvictions.increment();
+      page.countEviction();
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads every Page into a direct ByteBuffer of its own with a positional FileChannel read, and
+ * writes it back with a positional write when it is flushed. This is the POSITIONAL kind of
+ * PageStorage.
+ *
+ * Callers may keep using a Page after the BufferPool has evicted it (e.g. B+ tree nodes hold on to
+ * their pages), which for mapped pages is harmless since every view of a block sees the same bytes.
+ * To get the same guarantee here, there is at most one Page per block: opening a block whose Page
+ * is still reachable returns that Page rather than reading the block again. Dirty pages are held
+ * strongly until they are written back, so a page modified after it was evicted is never lost;
+ * clean pages are only held weakly.
+ *
+ * A Page's buffer is a duplicate of a buffer the storage keeps. Every view of a direct buffer
+ * (getByteBuffer, getReadOnlyByteBuffer, and their slices and duplicates) holds on to the buffer it
+ * was made from, so the Page's duplicate is only garbage collected once the Page and every view of
+ * it are. Only then does the buffer behind it go back to a small free list for the next page that
+ * is opened, so a view that outlives its Page never sees another block's bytes. The free list is
+ * bounded, but the buffers in use are not: there is one per reachable Page or view, which the
+ * BufferPool only bounds for the pages it caches.
+ *
+ * Reads go through the OS page cache like any other FileChannel read (JDK 8 has no way to open a
+ * file with O_DIRECT), but unlike with mapped pages, nothing is read or written behind the buffer
+ * pool's back.
+ */
+class ChannelPageStorage implements PageStorage {
+  // The number of free buffers kept for reuse. Buffers beyond that are left to the garbage
+  // collector.
+  private static final int MAX_FREE_BUFFERS = 32;
+
+  private final FileChannel fc;
+  private final IOMetrics metrics;
+
+  // The live Page of each block, by offset in the file. Guarded by this.
+  private final Map<Long, WeakReference<Page>> pages;
+  // Every page that has been modified since it was last written back. Guarded by this.
+  private final Map<Long, Page> dirtyPages;
+  // The buffers of pages that may still be in use, and the queue they are enqueued on once
+  // neither their Page nor any view of it is reachable. Guarded by this.
+  private final Set<BufferRef> buffers;
+  private final ReferenceQueue<ByteBuffer> collected;
+  private final ArrayDeque<ByteBuffer> freeBuffers;
+
+  /**
+   * @param fc the file to read and write
+   * @param metrics the counters the pages of the file count against, or null
+   */
+  ChannelPageStorage(FileChannel fc, IOMetrics metrics) {
+    this.fc = fc;
+    this.metrics = metrics;
+    this.pages = new HashMap<Long, WeakReference<Page>>();
+    this.dirtyPages = new HashMap<Long, Page>();
+    this.buffers = new HashSet<BufferRef>();
+    this.collected = new ReferenceQueue<ByteBuffer>();
+    this.freeBuffers = new ArrayDeque<ByteBuffer>();
+  }
+
+  /**
+   * Returns the live Page for the size bytes at position of the file, reading them into a new
+   * Page if there is none. The file is not grown until the page is written back.
+   */
+  public synchronized Page openPage(long position, int size, int pageNum, boolean durable) {
+    reclaim();
+    WeakReference<Page> ref = this.pages.get(position);
+    Page page = ref == null ? null : ref.get();
+    if (page != null) {
+      if (page.getPageSize() == size) {
+        return page;
+      }
+      // The block was last opened with a different page size (the file was wiped and recreated).
+      page.flush();
+    }
+
+    ByteBuffer buffer = allocate(size);
+    read(position, buffer);
+    ByteBuffer data = buffer.duplicate();
+    page = new Page(this, position, data, pageNum, durable, this.metrics);
+    this.pages.put(position, new WeakReference<Page>(page));
+    this.buffers.add(new BufferRef(data, position, buffer, this.collected));
+    return page;
+  }
+
+  /**
+   * Positional writes grow the file as needed, so there is nothing to prepare.
+   */
+  public void reserve(long end) {
+  }
+
+  /**
+   * Writes back every dirty page, including pages that were evicted from the buffer pool and
+   * modified afterwards.
+   */
+  public void close() {
+    List<Page> toFlush;
+    synchronized (this) {
+      toFlush = new ArrayList<Page>(this.dirtyPages.values());
+    }
+    for (Page page : toFlush) {
+      page.flush();
+    }
+    synchronized (this) {
+      this.pages.clear();
+      this.buffers.clear();
+      this.freeBuffers.clear();
+    }
+  }
+
+  /**
+   * Called by page the first time it is modified after being opened or written back.
+   */
+  synchronized void pageDirtied(long position, Page page) {
+    this.dirtyPages.put(position, page);
+  }
+
+  /**
+   * Forces everything written back so far to disk, counting numPages pages as forced. Called by
+   * Page#flushAll after it wrote back a batch of durable pages without forcing each of them.
+   */
+  void force(int numPages) {
+    try {
+      this.fc.force(false);
+    } catch (IOException e) {
+      throw new PageException("Can't force file ; " + e.getMessage());
+    }
+    if (this.metrics != null) {
+      this.metrics.add(IOMetrics.Counter.FLUSHES, numPages);
+    }
+  }
+
+  /**
+   * Writes data, the bytes of page, back to position, and forces them to disk if force is set.
+   * Called by Page#flush.
+   */
+  void writeBack(Page page, long position, ByteBuffer data, boolean force) {
+    synchronized (this) {
+      // Marking the page clean before writing it means a concurrent modification either makes it
+      // into this write or marks the page dirty again.
+      if (this.dirtyPages.get(position) == page) {
+        this.dirtyPages.remove(position);
+      }
+      page.markClean();
+    }
+
+    ByteBuffer src = data.duplicate();
+    src.clear();
+    try {
+      while (src.hasRemaining()) {
+        this.fc.write(src, position + src.position());
+      }
+      if (force) {
+        this.fc.force(false);
+      }
+    } catch (IOException e) {
+      page.markDirty();
+      throw new PageException("Can't write page at " + position + " ; " + e.getMessage());
+    }
+    if (this.metrics != null) {
+      this.metrics.increment(IOMetrics.Counter.WRITES);
+      if (force) {
+        this.metrics.increment(IOMetrics.Counter.FLUSHES);
+      }
+    }
+  }
+
+  /**
+   * @return the number of buffers whose page, or a view of it, may still be reachable
+   */
+  synchronized int getNumLivePages() {
+    reclaim();
+    return this.buffers.size();
+  }
+
+  private void read(long position, ByteBuffer buffer) {
+    buffer.clear();
+    try {
+      while (buffer.hasRemaining()) {
+        if (this.fc.read(buffer, position + buffer.position()) < 0) {
+          break;
+        }
+      }
+    } catch (IOException e) {
+      throw new PageException("Can't read page at " + position + " ; " + e.getMessage());
+    }
+    // Past the end of the file.
+    while (buffer.hasRemaining()) {
+      buffer.put((byte) 0);
+    }
+    buffer.clear();
+  }
+
+  private ByteBuffer allocate(int size) {
+    ByteBuffer buffer = takeFreeBuffer(size);
+    if (buffer != null) {
+      return buffer;
+    }
+    try {
+      return ByteBuffer.allocateDirect(size);
+    } catch (OutOfMemoryError e) {
+      // allocateDirect has run the garbage collector by now, so the buffers it collected may be
+      // waiting to be reclaimed.
+      reclaim();
+      buffer = takeFreeBuffer(size);
+      if (buffer == null) {
+        throw e;
+      }
+      return buffer;
+    }
+  }
+
+  private ByteBuffer takeFreeBuffer(int size) {
+    ByteBuffer buffer = this.freeBuffers.peekFirst();
+    if (buffer != null && buffer.capacity() == size) {
+      return this.freeBuffers.pollFirst();
+    }
+    return null;
+  }
+
+  /**
+   * Drops the entries of garbage collected pages, keeping their buffers for reuse.
+   */
+  private void reclaim() {
+    BufferRef ref;
+    while ((ref = (BufferRef) this.collected.poll()) != null) {
+      this.buffers.remove(ref);
+      WeakReference<Page> pageRef = this.pages.get(ref.position);
+      if (pageRef != null && pageRef.get() == null) {
+        this.pages.remove(ref.position);
+      }
+      if (this.freeBuffers.size() < MAX_FREE_BUFFERS) {
+        if (!this.freeBuffers.isEmpty()
+            && this.freeBuffers.peekFirst().capacity() != ref.buffer.capacity()) {
+          // Only keep buffers of one size, that of the pages most recently collected.
+          this.freeBuffers.clear();
+        }
+        this.freeBuffers.addFirst(ref.buffer);
+      }
+    }
+  }
+
+  /**
+   * A weak reference to the buffer of a Page, a duplicate of buffer, which is reused once the
+   * duplicate has been collected.
+   */
+  private static class BufferRef extends WeakReference<ByteBuffer> {
+    private final long position;
+    private final ByteBuffer buffer;
+
+    BufferRef(ByteBuffer data, long position, ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue) {
+      super(data, queue);
+      this.position = position;
+      this.buffer = buffer;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * CLOCK (second chance) replacement. Every tracked page sits in a frame with a
+ * reference bit that is set whenever the page is accessed. To evict, the clock
+ * hand sweeps over the frames, clearing set reference bits, and evicts the
+ * first unreferenced evictable page it finds.
+ */
+class ClockPolicy implements ReplacementPolicy {
+  private static final long EMPTY = -1L;
+
+  private long[] frames;
+  private boolean[] referenced;
+  private Map<Long, Integer> frameOf = new HashMap<Long, Integer>();
+  private Deque<Integer> freeFrames = new ArrayDeque<Integer>();
+  private int hand = 0;
+
+  ClockPolicy(int capacity) {
+    this.frames = new long[capacity];
+    this.referenced = new boolean[capacity];
+    for (int i = 0; i < capacity; i++) {
+      this.frames[i] = EMPTY;
+      this.freeFrames.add(i);
+    }
+  }
+
+  public void recordInsert(long vPageNum) {
+    if (this.freeFrames.isEmpty()) {
+      throw new PageException("CLOCK policy has no free frame for page " + vPageNum);
+    }
+    int frame = this.freeFrames.poll();
+    this.frames[frame] = vPageNum;
+    this.referenced[frame] = true;
+    this.frameOf.put(vPageNum, frame);
+  }
+
+  public void recordAccess(long vPageNum) {
+    Integer frame = this.frameOf.get(vPageNum);
+    if (frame != null) {
+      this.referenced[frame] = true;
+    }
+  }
+
+  public void recordRemove(long vPageNum) {
+    Integer frame = this.frameOf.remove(vPageNum);
+    if (frame != null) {
+      this.frames[frame] = EMPTY;
+      this.referenced[frame] = false;
+      this.freeFrames.add(frame);
+    }
+  }
+
+  public long evict(LongPredicate evictable) {
+    // The first sweep clears every reference bit, so if there is an evictable
+    // page at all, the second sweep is guaranteed to find it.
+    for (int i = 0; i < 2 * this.frames.length; i++) {
+      int frame = this.hand;
+      this.hand = (this.hand + 1) % this.frames.length;
+
+      long vPageNum = this.frames[frame];
+      if (vPageNum == EMPTY || !evictable.test(vPageNum)) {
+        continue;
+      }
+      if (this.referenced[frame]) {
+        this.referenced[frame] = false;
+        continue;
+      }
+      recordRemove(vPageNum);
+      return vPageNum;
+    }
+    return NO_VICTIM;
+  }
+}
@@ -0,0 +1,170 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps a file into memory in large segments and hands out Pages that are slices of them, so that
+ * once a segment is mapped, creating a Page for any block in it does not map anything.
+ *
+ * Segment i covers bytes [i * segmentSize, (i + 1) * segmentSize) of the file. A segment does not
+ * map all of its bytes up front. When a Page past the end of a segment's mapping is requested, the
+ * segment is mapped again, at least twice as long as before (but never past the end of the
+ * segment), so that a file that grows a page at a time remaps each segment only a logarithmic
+ * number of times. The file itself still only grows as far as its pages reach: mapping past its
+ * end would grow it, so it is cut back after mapping, and grown a page at a time as pages are
+ * requested. Pages keep the mapping they were sliced from alive, so remapping a segment never
+ * invalidates them.
+ *
+ * This is the MAPPED kind of PageStorage.
+ */
+class FileMapping implements PageStorage {
+  static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+  private final FileChannel fc;
+  private final long segmentSize;
+  private final List<Segment> segments;
+  private final IOMetrics metrics;
+  private int numMappings;
+  // The size of the file. Only this FileMapping changes it.
+  private long fileSize;
+
+  /**
+   * A segment of the file and its latest mapping, which is the longest so far.
+   */
+  static class Segment {
+    private volatile MappedByteBuffer mapping;
+
+    /**
+     * Forces the segment to disk. The mappings of a segment all share the file's pages, so
+     * forcing the latest one forces the pages written through any of them.
+     */
+    void force() {
+      this.mapping.force();
+    }
+  }
+
+  FileMapping(FileChannel fc) {
+    this(fc, DEFAULT_SEGMENT_SIZE);
+  }
+
+  FileMapping(FileChannel fc, long segmentSize) {
+    this(fc, segmentSize, null);
+  }
+
+  /**
+   * @param fc the file to map
+   * @param segmentSize the size of each segment, a positive multiple of the size of the pages
+   * mapped from the file
+   * @param metrics the counters the pages of the file count against, or null
+   */
+  FileMapping(FileChannel fc, long segmentSize, IOMetrics metrics) {
+    if (segmentSize <= 0 || segmentSize % Page.pageSize != 0
+        || segmentSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("segmentSize must be a positive multiple of "
+                                         + Page.pageSize);
+    }
+    this.fc = fc;
+    this.segmentSize = segmentSize;
+    this.metrics = metrics;
+    this.segments = new ArrayList<Segment>();
+    try {
+      this.fileSize = fc.size();
+    } catch (IOException e) {
+      throw new PageException("Can't read the size of the file ; " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns a new Page for the size bytes at position of the file, growing the file if it does not
+   * reach that far yet. The page must not straddle two segments.
+   *
+   * @param position the offset in the file of the page
+   * @param size the size of the page in bytes
+   * @param pageNum the virtual page number
+   * @param durable whether flushing the page forces it to disk
+   * @return a Page backed by the segment containing position
+   */
+  public synchronized Page openPage(long position, int size, int pageNum, boolean durable) {
+    int offset = (int) (position % this.segmentSize);
+    if (offset + size > this.segmentSize) {
+      throw new PageException("page at " + position + " straddles two segments");
+    }
+    Segment segment = getSegment((int) (position / this.segmentSize), offset + size);
+    return new Page(segment.mapping, segment, offset, size, pageNum, durable, this.metrics);
+  }
+
+  /**
+   * Grows the file (if needed) and maps the segment containing byte end - 1 through that byte, so
+   * that a run of new pages ending at end can be created without remapping once per page. (A run
+   * that starts in an earlier segment remaps that segment at most once, in full, since the file
+   * already reaches past it.)
+   *
+   * @param end the offset in the file just past the last page to map
+   */
+  public synchronized void reserve(long end) {
+    int index = (int) ((end - 1) / this.segmentSize);
+    getSegment(index, (int) (end - index * this.segmentSize));
+  }
+
+  /**
+   * The kernel writes mapped pages back on its own, so there is nothing left to write back.
+   */
+  public void close() {
+  }
+
+  /**
+   * @return the number of times a segment has been mapped (or remapped) so far
+   */
+  synchronized int getNumMappings() {
+    return this.numMappings;
+  }
+
+  private Segment getSegment(int index, int minLength) {
+    while (this.segments.size() <= index) {
+      this.segments.add(new Segment());
+    }
+    Segment segment = this.segments.get(index);
+    MappedByteBuffer mapping = segment.mapping;
+    long start = index * this.segmentSize;
+    try {
+      if (mapping != null && mapping.capacity() >= minLength) {
+        growFile(start + minLength);
+        return segment;
+      }
+
+      // Map everything the file already has in this segment, but at least minLength bytes, and
+      // at least twice what was mapped before. Mapping grows the file to the end of the mapping,
+      // so the file is cut back to what it needs, which the mapping keeps covering as it grows.
+      long fileSize = Math.max(this.fileSize, start + minLength);
+      long available = Math.min(this.segmentSize, Math.max(0, this.fileSize - start));
+      long grown = mapping == null ? 0 : Math.min(this.segmentSize, 2L * mapping.capacity());
+      long length = Math.max(minLength, Math.max(available, grown));
+      mapping = this.fc.map(FileChannel.MapMode.READ_WRITE, start, length);
+      if (start + length > fileSize) {
+        this.fc.truncate(fileSize);
+      }
+      this.fileSize = fileSize;
+    } catch (IOException e) {
+      throw new PageException("Can't mmap segment " + index + " ; " + e.getMessage());
+    }
+    segment.mapping = mapping;
+    this.numMappings++;
+    return segment;
+  }
+
+  /**
+   * Grows the file to end bytes, if it is shorter, without mapping anything. The bytes it gains
+   * are zeros.
+   */
+  private void growFile(long end) throws IOException {
+    if (end > this.fileSize) {
+      this.fc.write(ByteBuffer.allocate(1), end - 1);
+      this.fileSize = end;
+    }
+  }
+}
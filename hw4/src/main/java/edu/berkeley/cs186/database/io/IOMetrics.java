@@ -0,0 +1,148 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A set of I/O counters for one file or one transaction (see MetricsRegistry). Every counter is a
+ * LongAdder, so threads counting against the same file do not contend, and the counters are cheap
+ * enough to leave on all the time.
+ *
+ * Counters are read through immutable snapshots:
+ *
+ *   IOMetrics.Snapshot before = metrics.snapshot();
+ *   ... // Do some work.
+ *   IOMetrics.Snapshot delta = metrics.snapshot().minus(before);
+ *   long misses = delta.get(IOMetrics.Counter.PHYSICAL_READS);
+ */
+public class IOMetrics {
+  public enum Counter {
+    /** Pages requested with fetchPage or pinPage. */
+    LOGICAL_READS,
+    /** Requested (or read-ahead) pages that were not in the buffer pool and had to be read in. */
+    PHYSICAL_READS,
+    /** Dirty pages written back to the file. */
+    WRITES,
+    /** Pages forced to disk. */
+    FLUSHES,
+    /** Pages evicted from the buffer pool. */
+    EVICTIONS,
+    /** Nanoseconds spent in pinPage waiting for a page to be pinned. */
+    PIN_WAIT_NANOS
+  }
+
+  private static final Counter[] COUNTERS = Counter.values();
+
+  private final LongAdder[] counters;
+
+  // Counts are also added to the transaction bound to the counting thread, if any.
+  private final MetricsRegistry registry;
+
+  /**
+   * Create a set of counters that counts only against itself.
+   */
+  public IOMetrics() {
+    this(null);
+  }
+
+  IOMetrics(MetricsRegistry registry) {
+    this.registry = registry;
+    this.counters = new LongAdder[COUNTERS.length];
+    for (int i = 0; i < this.counters.length; i++) {
+      this.counters[i] = new LongAdder();
+    }
+  }
+
+  public void increment(Counter counter) {
+    add(counter, 1);
+  }
+
+  public void add(Counter counter, long n) {
+    this.counters[counter.ordinal()].add(n);
+    if (this.registry != null) {
+      IOMetrics transaction = this.registry.getBoundTransaction();
+      if (transaction != null) {
+        transaction.add(counter, n);
+      }
+    }
+  }
+
+  public long get(Counter counter) {
+    return this.counters[counter.ordinal()].sum();
+  }
+
+  /**
+   * @return the current value of every counter. Counts that race with the snapshot may or may not
+   * be included.
+   */
+  public Snapshot snapshot() {
+    long[] values = new long[this.counters.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = this.counters[i].sum();
+    }
+    return new Snapshot(values);
+  }
+
+  /**
+   * The values of a set of counters at some point in time.
+   */
+  public static class Snapshot {
+    /** A snapshot in which every counter is 0. */
+    public static final Snapshot EMPTY = new Snapshot(new long[COUNTERS.length]);
+
+    private final long[] values;
+
+    private Snapshot(long[] values) {
+      this.values = values;
+    }
+
+    public long get(Counter counter) {
+      return this.values[counter.ordinal()];
+    }
+
+    /**
+     * @return a snapshot whose counters are the sums of this snapshot's and other's
+     */
+    public Snapshot plus(Snapshot other) {
+      long[] sums = new long[this.values.length];
+      for (int i = 0; i < sums.length; i++) {
+        sums[i] = this.values[i] + other.values[i];
+      }
+      return new Snapshot(sums);
+    }
+
+    /**
+     * @return a snapshot whose counters are the differences between this snapshot's and other's,
+     * e.g. the counts between two snapshots of the same counters
+     */
+    public Snapshot minus(Snapshot other) {
+      long[] differences = new long[this.values.length];
+      for (int i = 0; i < differences.length; i++) {
+        differences[i] = this.values[i] - other.values[i];
+      }
+      return new Snapshot(differences);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Snapshot && Arrays.equals(this.values, ((Snapshot) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(this.values);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("{");
+      for (int i = 0; i < this.values.length; i++) {
+        if (i > 0) {
+          sb.append(", ");
+        }
+        sb.append(COUNTERS[i]).append('=').append(this.values[i]);
+      }
+      return sb.append('}').toString();
+    }
+  }
+}
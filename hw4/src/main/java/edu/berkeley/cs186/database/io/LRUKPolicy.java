@@ -0,0 +1,134 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.LongPredicate;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum). Every page remembers the
+ * times of its last K accesses. The victim is the page whose K-th most recent
+ * access is the oldest; pages with fewer than K accesses count as infinitely
+ * old and are evicted first, least recently used first. This keeps pages that
+ * were touched once by a scan from pushing out pages that are used over and
+ * over.
+ *
+ * The access history of evicted pages is retained for a bounded number of
+ * pages so that a page that is evicted and quickly fetched again does not lose
+ * its history.
+ */
+class LRUKPolicy implements ReplacementPolicy {
+  private int k;
+  private long clock = 0;
+
+  // The last k access times of every tracked page, and the tracked pages in
+  // the order they are to be evicted in (see isOlder). A page's times only
+  // change while it is out of order.
+  private Map<Long, History> history = new HashMap<Long, History>();
+  private TreeSet<History> order = new TreeSet<History>(new Comparator<History>() {
+    @Override
+    public int compare(History a, History b) {
+      if (a == b) {
+        return 0;
+      }
+      return isOlder(a.times, b.times) ? -1 : 1;
+    }
+  });
+
+  // The access history of recently evicted pages.
+  private RetainedHistory retained;
+
+  /** The page number and last k access times, most recent first, of a page. */
+  private static class History {
+    private final long vPageNum;
+    private final long[] times;
+
+    private History(long vPageNum, long[] times) {
+      this.vPageNum = vPageNum;
+      this.times = times;
+    }
+  }
+
+  /** The access times of at most capacity pages, least recently evicted first. */
+  private static class RetainedHistory extends LinkedHashMap<Long, long[]> {
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+
+    private RetainedHistory(int capacity) {
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest) {
+      return size() > this.capacity;
+    }
+  }
+
+  LRUKPolicy(int k, int capacity) {
+    this.k = k;
+    this.retained = new RetainedHistory(capacity);
+  }
+
+  public void recordInsert(long vPageNum) {
+    long[] times = this.retained.remove(vPageNum);
+    if (times == null) {
+      times = new long[this.k];
+    }
+    History h = new History(vPageNum, times);
+    this.history.put(vPageNum, h);
+    touch(times);
+    this.order.add(h);
+  }
+
+  public void recordAccess(long vPageNum) {
+    History h = this.history.get(vPageNum);
+    if (h != null) {
+      this.order.remove(h);
+      touch(h.times);
+      this.order.add(h);
+    }
+  }
+
+  public void recordRemove(long vPageNum) {
+    History h = this.history.remove(vPageNum);
+    if (h != null) {
+      this.order.remove(h);
+    }
+  }
+
+  public long evict(LongPredicate evictable) {
+    Iterator<History> iter = this.order.iterator();
+    while (iter.hasNext()) {
+      History h = iter.next();
+      if (evictable.test(h.vPageNum)) {
+        iter.remove();
+        this.history.remove(h.vPageNum);
+        this.retained.put(h.vPageNum, h.times);
+        return h.vPageNum;
+      }
+    }
+    return NO_VICTIM;
+  }
+
+  private void touch(long[] times) {
+    this.clock++;
+    System.arraycopy(times, 0, times, 1, times.length - 1);
+    times[0] = this.clock;
+  }
+
+  // Whether a should be evicted before b. Access times start at 1, so a 0
+  // means "never accessed", which is the infinite backward K-distance. No two
+  // pages were last accessed at the same time, so this orders all pages.
+  private boolean isOlder(long[] a, long[] b) {
+    long aK = a[this.k - 1];
+    long bK = b[this.k - 1];
+    if (aK != bK) {
+      return aK < bK;
+    }
+    return a[0] < b[0];
+  }
+}
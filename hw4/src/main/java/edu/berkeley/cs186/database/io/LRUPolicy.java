@@ -0,0 +1,39 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.LongPredicate;
+
+/**
+ * Least-recently used replacement. Pages are kept in a LinkedHashSet ordered
+ * from least to most recently used; an access moves a page to the back.
+ */
+class LRUPolicy implements ReplacementPolicy {
+  private LinkedHashSet<Long> pages = new LinkedHashSet<Long>();
+
+  public void recordInsert(long vPageNum) {
+    this.pages.add(vPageNum);
+  }
+
+  public void recordAccess(long vPageNum) {
+    if (this.pages.remove(vPageNum)) {
+      this.pages.add(vPageNum);
+    }
+  }
+
+  public void recordRemove(long vPageNum) {
+    this.pages.remove(vPageNum);
+  }
+
+  public long evict(LongPredicate evictable) {
+    Iterator<Long> iter = this.pages.iterator();
+    while (iter.hasNext()) {
+      long vPageNum = iter.next();
+      if (evictable.test(vPageNum)) {
+        iter.remove();
+        return vPageNum;
+      }
+    }
+    return NO_VICTIM;
+  }
+}
@@ -0,0 +1,158 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the I/O counters (see IOMetrics) of every file cached in a BufferPool, and of every
+ * running transaction. Each PageAllocator counts against the IOMetrics of its file, which stay
+ * registered (and keep counting) across reopens of the file.
+ *
+ * A transaction is bound to the thread that runs it: while it is bound, everything a thread counts
+ * against any file is also counted against the transaction.
+ *
+ *   MetricsRegistry registry = bufferPool.getMetrics();
+ *   IOMetrics metrics = registry.beginTransaction(transNum);
+ *   registry.bind(metrics);
+ *   ... // Every page fetched by this thread is counted against metrics.
+ *   registry.endTransaction(transNum);
+ *
+ *   MetricsRegistry.Snapshot snapshot = registry.snapshot();
+ *   snapshot.getTotal().get(IOMetrics.Counter.PHYSICAL_READS);
+ *   snapshot.getFile("t.table").get(IOMetrics.Counter.LOGICAL_READS);
+ */
+public class MetricsRegistry {
+  private final ConcurrentHashMap<String, IOMetrics> files;
+  private final ConcurrentHashMap<Long, IOMetrics> transactions;
+  private final ThreadLocal<IOMetrics> boundTransaction;
+
+  public MetricsRegistry() {
+    this.files = new ConcurrentHashMap<String, IOMetrics>();
+    this.transactions = new ConcurrentHashMap<Long, IOMetrics>();
+    this.boundTransaction = new ThreadLocal<IOMetrics>();
+  }
+
+  /**
+   * @return the counters of the file named fileName, registering them if needed
+   */
+  public IOMetrics getFileMetrics(String fileName) {
+    IOMetrics metrics = this.files.get(fileName);
+    if (metrics == null) {
+      IOMetrics created = new IOMetrics(this);
+      metrics = this.files.putIfAbsent(fileName, created);
+      if (metrics == null) {
+        metrics = created;
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * Registers new counters for transaction transNum. They only count once bound to a thread.
+   *
+   * @return the counters of the transaction
+   */
+  public IOMetrics beginTransaction(long transNum) {
+    IOMetrics metrics = new IOMetrics();
+    this.transactions.put(transNum, metrics);
+    return metrics;
+  }
+
+  /**
+   * Unregisters the counters of transaction transNum, and unbinds them from the calling thread if
+   * they are bound to it. The counters themselves stay usable.
+   */
+  public void endTransaction(long transNum) {
+    IOMetrics metrics = this.transactions.remove(transNum);
+    if (metrics != null && this.boundTransaction.get() == metrics) {
+      this.boundTransaction.remove();
+    }
+  }
+
+  /**
+   * Binds transaction counters to the calling thread (or, if metrics is null, unbinds the thread),
+   * e.g. to run part of a transaction on another thread.
+   *
+   * @return the counters that were bound to the calling thread before, or null
+   */
+  public IOMetrics bind(IOMetrics metrics) {
+    IOMetrics previous = this.boundTransaction.get();
+    if (metrics == null) {
+      this.boundTransaction.remove();
+    } else {
+      this.boundTransaction.set(metrics);
+    }
+    return previous;
+  }
+
+  IOMetrics getBoundTransaction() {
+    return this.boundTransaction.get();
+  }
+
+  /**
+   * @return the current counts of every file and running transaction
+   */
+  public Snapshot snapshot() {
+    Map<String, IOMetrics.Snapshot> fileSnapshots = new HashMap<String, IOMetrics.Snapshot>();
+    IOMetrics.Snapshot total = IOMetrics.Snapshot.EMPTY;
+    for (Map.Entry<String, IOMetrics> entry : this.files.entrySet()) {
+      IOMetrics.Snapshot snapshot = entry.getValue().snapshot();
+      fileSnapshots.put(entry.getKey(), snapshot);
+      total = total.plus(snapshot);
+    }
+    Map<Long, IOMetrics.Snapshot> transactionSnapshots = new HashMap<Long, IOMetrics.Snapshot>();
+    for (Map.Entry<Long, IOMetrics> entry : this.transactions.entrySet()) {
+      transactionSnapshots.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return new Snapshot(total, fileSnapshots, transactionSnapshots);
+  }
+
+  /**
+   * The counts of a MetricsRegistry at some point in time.
+   */
+  public static class Snapshot {
+    private final IOMetrics.Snapshot total;
+    private final Map<String, IOMetrics.Snapshot> files;
+    private final Map<Long, IOMetrics.Snapshot> transactions;
+
+    private Snapshot(IOMetrics.Snapshot total, Map<String, IOMetrics.Snapshot> files,
+                     Map<Long, IOMetrics.Snapshot> transactions) {
+      this.total = total;
+      this.files = Collections.unmodifiableMap(files);
+      this.transactions = Collections.unmodifiableMap(transactions);
+    }
+
+    /**
+     * @return the sums of the counts of every file
+     */
+    public IOMetrics.Snapshot getTotal() {
+      return this.total;
+    }
+
+    /**
+     * @return the counts of the file named fileName (all 0 if it was never opened)
+     */
+    public IOMetrics.Snapshot getFile(String fileName) {
+      IOMetrics.Snapshot snapshot = this.files.get(fileName);
+      return snapshot == null ? IOMetrics.Snapshot.EMPTY : snapshot;
+    }
+
+    /**
+     * @return the counts of transaction transNum (all 0 if it is not running)
+     */
+    public IOMetrics.Snapshot getTransaction(long transNum) {
+      IOMetrics.Snapshot snapshot = this.transactions.get(transNum);
+      return snapshot == null ? IOMetrics.Snapshot.EMPTY : snapshot;
+    }
+
+    public Map<String, IOMetrics.Snapshot> getFiles() {
+      return this.files;
+    }
+
+    public Map<Long, IOMetrics.Snapshot> getTransactions() {
+      return this.transactions;
+    }
+  }
+}
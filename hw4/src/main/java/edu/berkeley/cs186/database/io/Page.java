@@ -4,19 +4,60 @@ import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * General-purpose wrapper for interacting with the memory-mapped bytes on a page.
  *
+ * A page is a view of getPageSize() bytes of a mapping, which is either a mapping of just this
+ * page or a segment of the file shared with other pages (see FileMapping). Each Page has its own
+ * position, so pages sharing a segment do not interfere with each other. Pages are Page.pageSize
+ * bytes unless the PageAllocator they come from was created with a larger page size.
+ *
+ * Pages of a PageAllocator with POSITIONAL storage (see ChannelPageStorage) are instead a buffer
+ * of their own, which flush writes back to the file.
+ *
  * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
  */
 public class Page {
+  /**
+   * The default (and smallest) page size.
+   */
   public static final int pageSize = 4096;
 
-  private MappedByteBuffer pageData;
+  // The smallest page size of the platforms we run on.
+  private static final int OS_PAGE_SIZE = 4096;
+
+  // The mapping this page is a slice of, which is what has to be forced to flush the page, or null
+  // if the page is a buffer that storage writes back to position.
+  private MappedByteBuffer mapping;
+  // The segment of a FileMapping that mapping is (an older) mapping of, or null.
+  private FileMapping.Segment segment;
+  private ChannelPageStorage storage;
+  private long position;
+  private ByteBuffer pageData;
+  private int size;
   private int pageNum;
   private boolean durable;
 
+  // The counters of the file this page belongs to, or null for pages created
+  // directly from a FileChannel.
+  private IOMetrics metrics;
+
+  // Set whenever the page may have been modified since it was last flushed.
+  // getByteBuffer hands out a writable buffer, so it conservatively sets this
+  // too.
+  private volatile boolean dirty;
+
+  // The number of outstanding PageAllocator.pinPage calls on this page. Only
+  // read and written by BufferPool while holding the lock of the stripe that
+  // caches this page.
+  private int pinCount;
+
   /**
    * Create a new page using fc with at offset blockNum with virtual page number pageNum
    *
@@ -31,19 +72,79 @@ public class Page {
   public Page(FileChannel fc, int blockNum, int pageNum, boolean durable) {
     this.pageNum = pageNum;
     this.durable = durable;
-    PageAllocator.incrementCacheMisses();
+    this.size = Page.pageSize;
     try {
-      this.pageData = fc.map(FileChannel.MapMode.READ_WRITE, blockNum*Page.pageSize, Page.pageSize);
+      this.mapping = fc.map(FileChannel.MapMode.READ_WRITE, (long) blockNum*Page.pageSize, Page.pageSize);
     } catch (IOException e) {
       throw new PageException("Can't mmap page: " + pageNum + "at block: " + blockNum + " ; " + e.getMessage());
     }
+    this.pageData = this.mapping;
+  }
+
+  /**
+   * Create a new page for the size bytes at offset of mapping, without mapping anything.
+   *
+   * @param mapping the (shared) mapping containing the page
+   * @param segment the segment that mapping maps
+   * @param offset the offset of the page in mapping
+   * @param size the size of the page in bytes
+   * @param pageNum the virtual page number
+   * @param durable whether flush forces the page to disk
+   * @param metrics the counters to count flushes and evictions of the page against, or null
+   */
+  Page(MappedByteBuffer mapping, FileMapping.Segment segment, int offset, int size, int pageNum,
+       boolean durable, IOMetrics metrics) {
+    this.segment = segment;
+    this.pageNum = pageNum;
+    this.durable = durable;
+    this.size = size;
+    this.metrics = metrics;
+    this.mapping = mapping;
+    // Slice a duplicate so that the shared mapping's position is never touched.
+    ByteBuffer view = mapping.duplicate();
+    view.position(offset);
+    view.limit(offset + size);
+    this.pageData = view.slice();
+  }
+
+  /**
+   * Create a new page whose bytes are buffer, which storage reads from and writes back to position.
+   *
+   * @param storage the storage that reads and writes the page
+   * @param position the offset in the file of the page
+   * @param buffer the bytes of the page, owned by the page from now on
+   * @param pageNum the virtual page number
+   * @param durable whether flush forces the page to disk
+   * @param metrics the counters to count flushes and evictions of the page against, or null
+   */
+  Page(ChannelPageStorage storage, long position, ByteBuffer buffer, int pageNum,
+       boolean durable, IOMetrics metrics) {
+    this.pageNum = pageNum;
+    this.durable = durable;
+    this.size = buffer.capacity();
+    this.metrics = metrics;
+    this.storage = storage;
+    this.position = position;
+    this.pageData = buffer;
   }
 
   public ByteBuffer getByteBuffer() {
+    setDirty();
     pageData.position(0);
     return pageData;
   }
 
+  /**
+   * Returns a read-only view of this page's data. Unlike getByteBuffer, this
+   * does not mark the page dirty, and the view has a position of its own,
+   * starting at 0.
+   */
+  public ByteBuffer getReadOnlyByteBuffer() {
+    ByteBuffer view = pageData.asReadOnlyBuffer();
+    view.position(0);
+    return view;
+  }
+
   /**
    * Reads num bytes from offset position into buf.
    *
@@ -52,7 +153,7 @@ public class Page {
    * @param buf the buffer to put the bytes into
    */
   public void readBytes(int position, int num, byte[] buf) {
-    if (Page.pageSize < position + num) {
+    if (this.size < position + num) {
       throw new PageException("readBytes is out of bounds");
     }
     if (buf.length < num) {
@@ -70,7 +171,7 @@ public class Page {
    * @return a new byte array with the bytes read
    */
   public byte[] readBytes(int position, int num) {
-    if (Page.pageSize < position + num) {
+    if (this.size < position + num) {
       throw new PageException("readBytes is out of bounds");
     }
     byte[] data = new byte[num];
@@ -84,7 +185,7 @@ public class Page {
    * @return a new byte array with all the bytes in the file
    */
   public byte[] readBytes() {
-    return readBytes(0, Page.pageSize);
+    return readBytes(0, this.size);
   }
 
   /**
@@ -94,7 +195,7 @@ public class Page {
    * @return the byte at offset position
    */
   public byte readByte(int position) {
-    if (position < 0 || position >= Page.pageSize) {
+    if (position < 0 || position >= this.size) {
       throw new PageException("readByte is out of bounds of page");
     }
     return pageData.get(position);
@@ -116,10 +217,11 @@ public class Page {
       throw new PageException("position or num can't be negative");
     }
 
-    if (Page.pageSize < num + position) {
+    if (this.size < num + position) {
       throw new PageException("writeBytes would go out of bounds");
     }
 
+    setDirty();
     pageData.position(position);
     pageData.put(buf, 0, num);
   }
@@ -131,9 +233,10 @@ public class Page {
    * @param b the byte to write
    */
   public void writeByte(int position, byte b) {
-    if (position < 0 || position >= Page.pageSize) {
+    if (position < 0 || position >= this.size) {
       throw new PageException("readByte is out of bounds of page");
     }
+    setDirty();
     pageData.put(position, b);
   }
 
@@ -161,18 +264,208 @@ public class Page {
    * Completely wipe (zero out) the page.
    */
   public void wipe() {
-    byte[] zeros = new byte[Page.pageSize];
-    this.writeBytes(0, Page.pageSize, zeros);
+    byte[] zeros = new byte[this.size];
+    this.writeBytes(0, this.size, zeros);
   }
 
   /**
-   * Force the page to disk.
+   * Force the page to disk. Pages that have not been modified since they were
+   * last flushed are not forced again. A page sharing a segment forces the
+   * whole segment, which only writes the segment's dirty pages.
+   *
+   * A page with POSITIONAL storage is written back even if it is not durable
+   * (nothing else would write it), and then forced only if it is durable.
    */
   public void flush() {
-    if (this.durable) {
-      PageAllocator.incrementCacheMisses();
-      this.pageData.force();
+    if (this.storage != null) {
+      if (this.dirty) {
+        this.storage.writeBack(this, this.position, this.pageData, this.durable);
+      }
+      return;
+    }
+    if (this.durable && this.dirty) {
+      this.dirty = false;
+      this.mapping.force();
+      if (this.metrics != null) {
+        // Forcing a mapping is what writes it back.
+        this.metrics.increment(IOMetrics.Counter.WRITES);
+        this.metrics.increment(IOMetrics.Counter.FLUSHES);
+      }
+    }
+  }
+
+  /**
+   * Flushes every page of pages, like calling flush on each of them, but forces each mapping (or,
+   * with POSITIONAL storage, each file) that the pages share only once. This is how PageFlusher
+   * forces a batch: n dirty pages of one segment cost one force of the segment rather than n.
+   * Every page is tried, even if some fail.
+   *
+   * @return the number of mappings and files forced
+   * @throws PageException the last failure, if some page could not be flushed
+   */
+  static int flushAll(Collection<Page> pages) {
+    // Pages of a FileMapping are grouped by segment, whichever of the segment's mappings they are
+    // slices of. Other mapped pages are grouped by mapping; MappedByteBuffers are equal if their
+    // contents are, so they are grouped by identity.
+    Map<FileMapping.Segment, List<Page>> bySegment =
+        new IdentityHashMap<FileMapping.Segment, List<Page>>();
+    Map<MappedByteBuffer, List<Page>> byMapping = new IdentityHashMap<MappedByteBuffer, List<Page>>();
+    Map<ChannelPageStorage, List<Page>> byStorage =
+        new IdentityHashMap<ChannelPageStorage, List<Page>>();
+    PageException failure = null;
+    for (Page page : pages) {
+      if (page.storage != null) {
+        if (!page.dirty) {
+          continue;
+        }
+        try {
+          page.storage.writeBack(page, page.position, page.pageData, false);
+        } catch (PageException e) {
+          failure = e;
+          continue;
+        }
+        if (page.durable) {
+          group(byStorage, page.storage, page);
+        }
+      } else if (page.durable && page.dirty) {
+        page.dirty = false;
+        if (page.segment != null) {
+          group(bySegment, page.segment, page);
+        } else {
+          group(byMapping, page.mapping, page);
+        }
+      }
+    }
+
+    List<List<Page>> forced = new ArrayList<List<Page>>();
+    for (Map.Entry<FileMapping.Segment, List<Page>> e : bySegment.entrySet()) {
+      try {
+        e.getKey().force();
+        forced.add(e.getValue());
+      } catch (RuntimeException ex) {
+        failure = new PageException("Could not force a segment: " + ex.getMessage());
+        for (Page page : e.getValue()) {
+          page.dirty = true;
+        }
+      }
+    }
+    for (Map.Entry<MappedByteBuffer, List<Page>> e : byMapping.entrySet()) {
+      try {
+        e.getKey().force();
+        forced.add(e.getValue());
+      } catch (RuntimeException ex) {
+        failure = new PageException("Could not force a mapping: " + ex.getMessage());
+        for (Page page : e.getValue()) {
+          page.dirty = true;
+        }
+      }
+    }
+    for (List<Page> group : forced) {
+      for (Page page : group) {
+        if (page.metrics != null) {
+          // Forcing a mapping is what writes it back.
+          page.metrics.increment(IOMetrics.Counter.WRITES);
+          page.metrics.increment(IOMetrics.Counter.FLUSHES);
+        }
+      }
+    }
+    for (Map.Entry<ChannelPageStorage, List<Page>> e : byStorage.entrySet()) {
+      try {
+        e.getKey().force(e.getValue().size());
+      } catch (PageException ex) {
+        failure = ex;
+        for (Page page : e.getValue()) {
+          page.markDirty();
+        }
+      }
     }
+    if (failure != null) {
+      throw failure;
+    }
+    return bySegment.size() + byMapping.size() + byStorage.size();
+  }
+
+  private static <K> void group(Map<K, List<Page>> groups, K key, Page page) {
+    List<Page> group = groups.get(key);
+    if (group == null) {
+      group = new ArrayList<Page>();
+      groups.put(key, group);
+    }
+    group.add(page);
+  }
+
+  /**
+   * Asks the OS to read the page into physical memory, so that later reads of
+   * it do not fault. Like MappedByteBuffer#load (which only works on whole
+   * mappings), this touches one byte of every OS page. Does not change the
+   * page's contents or position.
+   */
+  public void load() {
+    for (int i = 0; i < this.size; i += OS_PAGE_SIZE) {
+      this.pageData.get(i);
+    }
+  }
+
+  /**
+   * Marks the page as modified so that the next flush forces it to disk.
+   */
+  public void markDirty() {
+    setDirty();
+  }
+
+  private void setDirty() {
+    if (!this.dirty) {
+      this.dirty = true;
+      if (this.storage != null) {
+        this.storage.pageDirtied(this.position, this);
+      }
+    }
+  }
+
+  /**
+   * Marks the page as written back. Only called by ChannelPageStorage, which counts the write.
+   */
+  void markClean() {
+    this.dirty = false;
+  }
+
+  /**
+   * @return whether the page may have been modified since it was last flushed
+   */
+  public boolean isDirty() {
+    return this.dirty;
+  }
+
+  /**
+   * @return whether some caller of PageAllocator.pinPage has not yet unpinned
+   * this page
+   */
+  public boolean isPinned() {
+    return this.pinCount > 0;
+  }
+
+  void countEviction() {
+    if (this.metrics != null) {
+      this.metrics.increment(IOMetrics.Counter.EVICTIONS);
+    }
+  }
+
+  void pin() {
+    this.pinCount++;
+  }
+
+  void unpin() {
+    if (this.pinCount <= 0) {
+      throw new PageException("page " + this.pageNum + " is not pinned");
+    }
+    this.pinCount--;
+  }
+
+  /**
+   * @return the size of this page in bytes
+   */
+  public int getPageSize() {
+    return this.size;
   }
 
   /**
@@ -17,31 +17,115 @@ import java.util.ArrayList;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.io.Closeable;
 
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 
 /**
  * A PageAllocation system for an OS paging system. Provides memory-mapped paging from the OS, an
- * interface to individual pages with the Page objects, an LRU cache for pages, 16GB worth of paging,
- * and virtual page translation.
+ * interface to individual pages with the Page objects, a lock-striped buffer pool for pages,
+ * 16GB worth of paging, and virtual page translation.
+ *
+ * Pages are Page.pageSize bytes by default. A file can instead be created with any larger power
+ * of two page size up to MAX_PAGE_SIZE, which is recorded in its master page (and multiplies the
+ * amount of paging available accordingly). The page size of an existing file never changes.
+ *
+ * By default the file is mapped in large segments (see FileMapping) and Pages are views of them,
+ * so fetching a page that is not in the buffer pool does not map anything once its segment is
+ * mapped. An allocator can instead be created with POSITIONAL storage (see PageStorage), which
+ * reads pages into buffers and writes them back when they are flushed or evicted.
+ *
+ * By default every PageAllocator owns its own BufferPool, so fetches against different files never
+ * contend on a shared lock, and a cache hit in fetchPage takes no lock other than the pool stripe's.
+ * Allocators can instead share one BufferPool, which then bounds the number of pages cached across
+ * all of them.
+ *
+ * A durable allocator forces its master and header pages every time it allocates or frees a page.
+ * If its BufferPool has a PageFlusher, those pages are instead scheduled with the flusher, which
+ * forces them in batches; call sync to wait for them to be forced.
+ *
+ * There are two ways to get at a page. fetchPage returns an unpinned page which may be evicted from
+ * the pool at any time (the Page object itself stays usable). pinPage returns a pinned page which
+ * cannot be evicted until it is released with unpinPage:
+ *
+ *   Page page = allocator.pinPage(pageNum);
+ *   try {
+ *     page.writeInt(0, 42);
+ *   } finally {
+ *     allocator.unpinPage(page, true);
+ *   }
+ *
+ * Every allocator counts its page requests, reads, writes, and flushes against the IOMetrics of its
+ * file in its BufferPool's MetricsRegistry.
+ *
+ * The iterator skips unallocated pages using the in-memory allocation bits. Once it has returned a
+ * few pages in a row, it also reads ahead: a background thread maps the next pages into the pool
+ * and loads them into memory while the caller works on the current one.
  *
  * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
  */
 public class PageAllocator implements Iterable<Page>, Closeable {
+  // The master page holds one page count per header page in its first Page.pageSize bytes.
   private static final int numHeaderPages = 1024;
-  private static final int cacheSize = 1024;
+
+  // A page count is at most MAX_PAGE_SIZE, so the top byte of the first one is free. It holds
+  // log2(pageSize / Page.pageSize), which is 0 in files of Page.pageSize pages (including all files
+  // written before the page size could be chosen).
+  private static final int pageSizeShift = 24;
+  private static final int pageCountMask = (1 << pageSizeShift) - 1;
+
+  /**
+   * The largest page size a PageAllocator can be created with.
+   */
+  public static final int MAX_PAGE_SIZE = 1 << 20;
+
+  /**
+   * The number of pages a PageIterator keeps read ahead of its cursor by default.
+   */
+  public static final int DEFAULT_READ_AHEAD_PAGES = 16;
+
+  // The number of pages a PageIterator has to return without a reset before it starts reading ahead.
+  static final int SEQUENTIAL_THRESHOLD = 2;
+
+  // Shared by all allocators; read-ahead is only a hint, so a single thread is enough.
+  private static final ExecutorService readAheadExecutor =
+    Executors.newSingleThreadExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "PageAllocator-ReadAhead");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
 
   private static AtomicInteger pACounter = new AtomicInteger(0);
-  private static LRUCache<Long, Page> pageLRU = new LRUCache<Long, Page>(cacheSize);
-  private static AtomicLong numIOs = new AtomicLong(0);
-  private static AtomicLong cacheMisses = new AtomicLong(0);
 
+  private BufferPool pageCache;
+  private PageFlusher flusher;
   private Page masterPage;
+  private Page[] headerPages;
+
+  // In-memory copies of the allocation metadata. headerCounts mirrors the master page and
+  // headerBits[i] mirrors the valid bytes of header page i, one bit per data page (loaded lazily).
+  // Both are written through to the mapped pages on every change, so the file is always up to date.
+  private int[] headerCounts;
+  private long[][] headerBits;
+
+  // Every header page below headerHint is full, and every word of headerBits[i] below
+  // wordHints[i] is full, so free page searches can start there.
+  private int headerHint;
+  private int[] wordHints;
   private FileChannel fc;
+  private PageStorage storage;
   private int numPages;
   private int allocID;
   private boolean durable;
+  private int pageSize;
+  private IOMetrics metrics;
+  private AtomicLong numPagesReadAhead = new AtomicLong(0);
+
   /**
    * Create a new PageAllocator that writes its bytes into a file named fName. If wipe is true, the
    * data in the page is completely removed.
@@ -54,6 +138,68 @@ public class PageAllocator implements Iterable<Page>, Closeable {
   }
 
   public PageAllocator(String fName, boolean wipe, boolean durable) {
+    this(fName, wipe, durable, new BufferPool());
+  }
+
+  /**
+   * Create a new PageAllocator that caches its pages in the (possibly shared) bufferPool.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param bufferPool the pool to cache pages in
+   */
+  public PageAllocator(String fName, boolean wipe, BufferPool bufferPool) {
+    this(fName, wipe, true, bufferPool);
+  }
+
+  public PageAllocator(String fName, boolean wipe, boolean durable, BufferPool bufferPool) {
+    this(fName, wipe, durable, bufferPool, Page.pageSize);
+  }
+
+  /**
+   * Create a new PageAllocator whose pages are pageSize bytes. The page size is recorded in the
+   * file, so pageSize only matters when the file is new or wiped; an existing file is always
+   * opened with the page size it was created with (see getPageSize).
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param durable whether modified pages are forced to disk
+   * @param bufferPool the pool to cache pages in
+   * @param pageSize the page size of a new file: a power of two between Page.pageSize and
+   * MAX_PAGE_SIZE
+   */
+  public PageAllocator(String fName, boolean wipe, boolean durable, BufferPool bufferPool,
+                       int pageSize) {
+    this(fName, wipe, durable, bufferPool, pageSize, PageStorage.Kind.MAPPED);
+  }
+
+  /**
+   * Create a new PageAllocator that keeps its pages in storage of the given kind. Unlike the page
+   * size, the kind of storage is not recorded in the file, so a file can be reopened with either.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param durable whether modified pages are forced to disk
+   * @param bufferPool the pool to cache pages in
+   * @param pageSize the page size of a new file (see above)
+   * @param storageKind how pages are read from and written to the file
+   */
+  public PageAllocator(String fName, boolean wipe, boolean durable, BufferPool bufferPool,
+                       int pageSize, PageStorage.Kind storageKind) {
+    this(fName, wipe, durable, bufferPool, pageSize, storageKind,
+         FileMapping.DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Create a new PageAllocator that, if its storage is MAPPED, maps its file segmentSize bytes at a
+   * time. A segmentSize equal to the page size maps every page separately.
+   */
+  PageAllocator(String fName, boolean wipe, boolean durable, BufferPool bufferPool,
+                int pageSize, PageStorage.Kind storageKind, long segmentSize) {
+    if (pageSize < Page.pageSize || pageSize > MAX_PAGE_SIZE || Integer.bitCount(pageSize) != 1) {
+      throw new IllegalArgumentException("page size must be a power of two between "
+                                         + Page.pageSize + " and " + MAX_PAGE_SIZE);
+    }
     this.durable = durable;
     try {
       this.fc = new RandomAccessFile(fName, "rw").getChannel();
@@ -61,8 +207,29 @@ public class PageAllocator implements Iterable<Page>, Closeable {
       throw new PageException("Could not open File: " + e.getMessage());
     }
 
-    this.masterPage = new Page(this.fc, 0, -1);
+    this.metrics = bufferPool.getMetrics().getFileMetrics(fName);
+    if (storageKind == PageStorage.Kind.POSITIONAL) {
+      this.storage = new ChannelPageStorage(this.fc, this.metrics);
+    } else {
+      this.storage = new FileMapping(this.fc, segmentSize, this.metrics);
+    }
+    this.pageCache = bufferPool;
+    this.flusher = bufferPool.getFlusher();
+    this.headerPages = new Page[numHeaderPages];
+    // Only the first Page.pageSize bytes of the master page are used, so it can be read before
+    // the page size is known.
+    boolean isNew;
+    try {
+      isNew = this.fc.size() == 0;
+    } catch (IOException e) {
+      throw new PageException("Could not read File size: " + e.getMessage());
+    }
+    this.masterPage = this.storage.openPage(0, Page.pageSize, -1, durable);
     this.allocID = pACounter.getAndIncrement();
+    this.pageSize = readPageSize();
+    if (segmentSize % Math.max(this.pageSize, pageSize) != 0) {
+      throw new IllegalArgumentException("segment size must be a multiple of the page size");
+    }
 
     if (wipe) {
       // Nukes masterPage and headerPages
@@ -71,6 +238,7 @@ public class PageAllocator implements Iterable<Page>, Closeable {
 
       int[] pageCounts = new int[ib.capacity()];
       ib.get(pageCounts);
+      pageCounts[0] &= pageCountMask;
 
       this.numPages = 0;
 
@@ -81,17 +249,51 @@ public class PageAllocator implements Iterable<Page>, Closeable {
       }
 
       this.masterPage.wipe();
+      // The header pages were mapped with the old page size.
+      this.headerPages = new Page[numHeaderPages];
+      this.pageSize = readPageSize();
     }
 
     byte[] masterBytes = masterPage.readBytes();
-    IntBuffer ib = ByteBuffer.wrap(masterBytes).asIntBuffer();
-    int[] pageCounts = new int[ib.capacity()];
-    ib.get(pageCounts);
+    this.headerCounts = new int[numHeaderPages];
+    ByteBuffer.wrap(masterBytes).asIntBuffer().get(this.headerCounts);
+    this.headerCounts[0] &= pageCountMask;
+    this.headerBits = new long[numHeaderPages][];
+    this.headerHint = 0;
+    this.wordHints = new int[numHeaderPages];
 
     this.numPages = 0;
     for (int i = 0; i < numHeaderPages; i++) {
-      this.numPages += pageCounts[i];
+      this.numPages += this.headerCounts[i];
+    }
+
+    if ((isNew || wipe) && this.pageSize != pageSize) {
+      // A new (or wiped) file takes the requested page size; an existing one keeps its own.
+      this.pageSize = pageSize;
+      writeHeaderCount(0);
+      flush(this.masterPage);
+    }
+  }
+
+  private int readPageSize() {
+    int shift = this.masterPage.readInt(0) >>> pageSizeShift;
+    if (shift > Integer.numberOfTrailingZeros(MAX_PAGE_SIZE / Page.pageSize)) {
+      throw new PageException("invalid page size shift " + shift + " in master page");
+    }
+    return Page.pageSize << shift;
+  }
+
+  /**
+   * Writes the in-memory page count of header page headerIndex through to the master page, along
+   * with the page size if it is the first one.
+   */
+  private void writeHeaderCount(int headerIndex) {
+    int value = this.headerCounts[headerIndex];
+    if (headerIndex == 0) {
+      int shift = Integer.numberOfTrailingZeros(this.pageSize / Page.pageSize);
+      value |= shift << pageSizeShift;
     }
+    this.masterPage.writeInt(headerIndex * 4, value);
   }
 
   /**
@@ -100,106 +302,179 @@ public class PageAllocator implements Iterable<Page>, Closeable {
    * @return the virtual page number of the page
    */
   public synchronized int allocPage() {
-    byte[] masterBytes = this.masterPage.readBytes();
-    IntBuffer ib = ByteBuffer.wrap(masterBytes).asIntBuffer();
-    int[] pageCounts = new int[ib.capacity()];
-    ib.get(pageCounts);
-
-    Page headerPage = null;
-    int headerIndex = -1;
-    for (int i = 0; i < numHeaderPages; i++) {
-      if (pageCounts[i] < Page.pageSize) {
-        // Found header page with space
-        headerPage = getHeadPage(i);
-        headerIndex = i;
-        break;
-      }
+    while (this.headerHint < numHeaderPages
+           && this.headerCounts[this.headerHint] >= this.pageSize) {
+      this.headerHint++;
     }
-
-    if (headerPage == null) {
+    if (this.headerHint == numHeaderPages) {
       throw new PageException("No free Pages Available");
     }
 
-    byte[] headerBytes = headerPage.readBytes();
-    int pageIndex = -1;
-
-    for (int i = 0; i < Page.pageSize; i++) {
-      if (headerBytes[i] == 0) {
-        pageIndex = i;
-        break;
-      }
-    }
-
+    int headerIndex = this.headerHint;
+    int pageIndex = findFreePageIndex(headerIndex);
     if (pageIndex == -1) {
      throw new PageException("Header page should have free page but doesnt");
     }
 
-    int newCount = pageCounts[headerIndex] + 1;
-    byte[] newCountBytes = ByteBuffer.allocate(4).putInt(newCount).array();
-    this.masterPage.writeBytes(headerIndex*4, 4, newCountBytes);
+    Page headerPage = getHeadPage(headerIndex);
+    setAllocated(headerIndex, pageIndex, true);
     headerPage.writeByte(pageIndex, (byte) 1);
+    writeHeaderCount(headerIndex);
 
-    if (this.durable) {
-      this.masterPage.flush();
-      headerPage.flush();
-    }
+    flush(this.masterPage);
+    flush(headerPage);
 
-    int pageNum = headerIndex * Page.pageSize + pageIndex;
-    fetchPage(pageNum).wipe();
+    int pageNum = headerIndex * this.pageSize + pageIndex;
+    // Wiping a new page is not a request for it, so it does not count as a logical read.
+    lookupPage(pageNum, false).wipe();
     this.numPages += 1;
     return pageNum;
   }
 
+  /**
+   * Allocates n new pages that are physically contiguous in the file, with a single update to the
+   * allocation metadata (and, if the allocator is durable, a single flush of it). All n pages are
+   * managed by the same header page, so n can be at most the page size.
+   *
+   *   int first = allocator.allocExtent(4);
+   *   // Pages first, first + 1, first + 2, and first + 3 are now allocated.
+   *
+   * @param n the number of pages to allocate
+   * @return the virtual page number of the first page of the extent
+   */
+  public synchronized int allocExtent(int n) {
+    if (n < 1 || n > this.pageSize) {
+      throw new IllegalArgumentException("extent size must be between 1 and " + this.pageSize);
+    }
+
+    int headerIndex = -1;
+    int pageIndex = -1;
+    for (int i = this.headerHint; i < numHeaderPages; i++) {
+      if (this.pageSize - this.headerCounts[i] >= n) {
+        pageIndex = findFreeRun(i, n);
+        if (pageIndex != -1) {
+          headerIndex = i;
+          break;
+        }
+      }
+    }
+    if (headerIndex == -1) {
+      throw new PageException("No free extent of " + n + " Pages Available");
+    }
+
+    Page headerPage = getHeadPage(headerIndex);
+    byte[] valid = new byte[n];
+    for (int i = 0; i < n; i++) {
+      setAllocated(headerIndex, pageIndex + i, true);
+      valid[i] = 1;
+    }
+    headerPage.writeBytes(pageIndex, n, valid);
+    writeHeaderCount(headerIndex);
+
+    flush(this.masterPage);
+    flush(headerPage);
+
+    int firstPageNum = headerIndex * this.pageSize + pageIndex;
+    // Grow the file for the whole extent at once rather than one page at a time.
+    this.storage.reserve(blockPosition(dataBlockID(firstPageNum + n - 1) + 1));
+    for (int i = 0; i < n; i++) {
+      lookupPage(firstPageNum + i, false).wipe();
+    }
+    this.numPages += n;
+    return firstPageNum;
+  }
+
   /**
    * Fetches the page corresponding to virtual page number pageNum.
    *
    * @param pageNum the virtual page number
    * @return a Page object wrapping the page corresponding to pageNum
    */
-  public synchronized Page fetchPage(int pageNum) {
+  public Page fetchPage(int pageNum) {
+    return fetchPage(pageNum, false);
+  }
+
+  /**
+   * Fetches and pins the page corresponding to virtual page number pageNum. The page will not be
+   * evicted from the buffer pool until it is released with unpinPage. Every call to pinPage must
+   * be matched by exactly one call to unpinPage.
+   *
+   * @param pageNum the virtual page number
+   * @return a pinned Page object wrapping the page corresponding to pageNum
+   */
+  public Page pinPage(int pageNum) {
+    return fetchPage(pageNum, true);
+  }
+
+  /**
+   * Releases a page previously returned by pinPage.
+   *
+   * @param page the pinned page
+   * @param dirty whether the caller modified the page
+   */
+  public void unpinPage(Page page, boolean dirty) {
+    if (dirty) {
+      page.markDirty();
+    }
+    this.pageCache.unpin(translatePageNum(page.getPageNum()), page);
+  }
+
+  private Page fetchPage(int pageNum, boolean pin) {
     if (pageNum < 0) {
       throw new PageException("invalid page number -- out of bounds");
     }
 
-    numIOs.getAndIncrement();
+    this.metrics.increment(IOMetrics.Counter.LOGICAL_READS);
+    if (!pin) {
+      return lookupPage(pageNum, false);
+    }
+    long start = System.nanoTime();
+    try {
+      return lookupPage(pageNum, true);
+    } finally {
+      this.metrics.add(IOMetrics.Counter.PIN_WAIT_NANOS, System.nanoTime() - start);
+    }
+  }
 
-    synchronized(PageAllocator.class) {
-      if (pageLRU.containsKey(translatePageNum(pageNum))) {
-        return pageLRU.get(translatePageNum(pageNum));
-      }
+  private Page lookupPage(int pageNum, boolean pin) {
+    // Cache hits only take the lock of the pool stripe that pageNum maps to.
+    long vPageNum = translatePageNum(pageNum);
+    Page cached = pin ? this.pageCache.pin(vPageNum) : this.pageCache.get(vPageNum);
+    if (cached != null) {
+      return cached;
+    }
+    return fetchUncachedPage(pageNum, pin);
+  }
+
+  private synchronized Page fetchUncachedPage(int pageNum, boolean pin) {
+    if (this.masterPage == null) {
+      throw new PageException("PageAllocator is closed");
     }
 
-    int headPageIndex = pageNum/Page.pageSize;
+    int headPageIndex = pageNum/this.pageSize;
 
     if (headPageIndex >= numHeaderPages) {
       throw new PageException("invalid page number -- out of bounds");
     }
 
-    byte[] headCountBytes = this.masterPage.readBytes(headPageIndex*4, 4);
-    int headCount = ByteBuffer.wrap(headCountBytes).getInt();
-
-    if (headCount < 1) {
+    if (this.headerCounts[headPageIndex] < 1) {
       throw new PageException("invalid page number -- page not allocated");
     }
 
-    Page headPage = getHeadPage(headPageIndex);
-
-    int dataPageIndex = pageNum % Page.pageSize;
+    int dataPageIndex = pageNum % this.pageSize;
 
-    byte validByte = headPage.readByte(dataPageIndex);
-
-    if (validByte == 0) {
+    if (!isAllocated(headPageIndex, dataPageIndex)) {
       throw new PageException("invalid page number -- page not allocated");
     }
 
-    int dataBlockID = 2 + headPageIndex*(Page.pageSize + 1) + dataPageIndex;
-    Page dataPage = new Page(this.fc, dataBlockID, pageNum, this.durable);
-
-    synchronized(PageAllocator.class) {
-      pageLRU.put(translatePageNum(pageNum), dataPage);
+    Page dataPage = this.storage.openPage(blockPosition(dataBlockID(pageNum)), this.pageSize,
+                                          pageNum, this.durable);
+    // Another thread may have cached the page since our lookup missed.
+    Page cached = this.pageCache.putIfAbsent(translatePageNum(pageNum), dataPage, pin);
+    if (cached == dataPage) {
+      this.metrics.increment(IOMetrics.Counter.PHYSICAL_READS);
     }
-
-    return dataPage;
+    return cached;
   }
 
   /**
@@ -210,38 +485,23 @@ public class PageAllocator implements Iterable<Page>, Closeable {
    * @return whether or not the page was freed
    */
   public synchronized boolean freePage(Page p) {
-    if (this.durable) {
-      p.flush();
-    }
+    flush(p);
     int pageNum = p.getPageNum();
-    int headPageIndex = pageNum/Page.pageSize;
-    int dataPageIndex = pageNum % Page.pageSize;
-
-    Page headPage = getHeadPage(headPageIndex);
+    int headPageIndex = pageNum/this.pageSize;
+    int dataPageIndex = pageNum % this.pageSize;
 
-    if (headPage.readByte(dataPageIndex) == 0) {
+    if (!isAllocated(headPageIndex, dataPageIndex)) {
       return false;
     }
 
+    Page headPage = getHeadPage(headPageIndex);
+    setAllocated(headPageIndex, dataPageIndex, false);
     headPage.writeByte(dataPageIndex, (byte) 0);
-    if (this.durable) {
-      headPage.flush();
-    }
-    byte[] countBytes = masterPage.readBytes(4*headPageIndex,4);
-    int oldCount = ByteBuffer.wrap(countBytes).getInt();
+    flush(headPage);
+    writeHeaderCount(headPageIndex);
+    flush(masterPage);
 
-    int newCount = oldCount - 1;
-    byte[] newCountBytes = ByteBuffer.allocate(4).putInt(newCount).array();
-    masterPage.writeBytes(headPageIndex*4, 4, newCountBytes);
-    if (this.durable) {
-      masterPage.flush();
-    }
-
-    synchronized(PageAllocator.class) {
-      if (pageLRU.containsKey(translatePageNum(pageNum))) {
-        pageLRU.remove(translatePageNum(pageNum));
-      }
-    }
+    this.pageCache.remove(translatePageNum(pageNum));
 
     this.numPages -= 1;
     return true;
@@ -271,75 +531,253 @@ public class PageAllocator implements Iterable<Page>, Closeable {
     if (this.masterPage == null) {
       return;
     }
-    if (this.durable) {
-      this.masterPage.flush();
+    // Page#flush only forces durable pages, but also writes back pages that are not mapped.
+    this.masterPage.flush();
+    List<Page> toFlush = this.pageCache.removeAll(this.allocID);
+    for (Page p : this.headerPages) {
+      if (p != null) {
+        toFlush.add(p);
+      }
+    }
+    for (Page p : toFlush) {
+      p.flush();
+    }
+    if (this.flusher != null) {
+      // Pages of this allocator may still be waiting to be forced.
+      this.flusher.sync();
+    }
+    this.storage.close();
+    this.masterPage = null;
+    this.headerPages = null;
+    try {
+      this.fc.close();
+    } catch (IOException e) {
+      throw new PageException("Could not close Page Alloc " + e.getMessage());
     }
-    List<Long> toRemove = new ArrayList<Long>();
-    Set<Long> vPageNums = null;
-    List<Page> toFlush = new ArrayList<Page>();
+  }
 
-    synchronized(PageAllocator.class) {
-      vPageNums = pageLRU.keySet();
+  /**
+   * Blocks until every page this allocator has modified and handed to its PageFlusher has been
+   * forced to disk. Allocators without a PageFlusher force pages synchronously, so this is a no-op.
+   */
+  public void sync() {
+    if (this.flusher != null) {
+      this.flusher.sync();
     }
+  }
 
-    for (Long l : vPageNums) {
-      if (translateAllocator(l) == this.allocID) {
-        toRemove.add(l);
-      }
+  /**
+   * Forces p to disk if this allocator is durable, or schedules it to be forced if this allocator
+   * has a PageFlusher.
+   */
+  private void flush(Page p) {
+    if (!this.durable) {
+      return;
+    }
+    if (this.flusher == null) {
+      p.flush();
+    } else {
+      this.flusher.schedule(p);
     }
+  }
+
+  private synchronized Page getHeadPage(int headIndex) {
+    // Header pages are mapped once and kept for the lifetime of the allocator
+    // rather than being cached in (and competing for frames in) the pool.
+    if (this.headerPages[headIndex] == null) {
+      int headBlockID = 1 + headIndex*(this.pageSize + 1);
+      this.headerPages[headIndex] = this.storage.openPage(blockPosition(headBlockID), this.pageSize,
+                                                          -1, this.durable);
+    }
+    return this.headerPages[headIndex];
+  }
+
+  /**
+   * @return the block of the file that holds data page pageNum
+   */
+  private int dataBlockID(int pageNum) {
+    return 2 + (pageNum / this.pageSize)*(this.pageSize + 1) + pageNum % this.pageSize;
+  }
 
-    synchronized(PageAllocator.class) {
-      for (Long vPageNum : toRemove) {
-        if (pageLRU.containsKey(vPageNum)) {
-          toFlush.add(pageLRU.get(vPageNum));
-          pageLRU.remove(vPageNum);
+  /**
+   * @return the offset in the file of block blockID
+   */
+  private long blockPosition(int blockID) {
+    return (long) blockID * this.pageSize;
+  }
+
+  /**
+   * @return the bits recording which data pages of header page headIndex are allocated, reading
+   * them from the header page the first time they are needed
+   */
+  private long[] getHeaderBits(int headIndex) {
+    long[] bits = this.headerBits[headIndex];
+    if (bits == null) {
+      bits = new long[this.pageSize / Long.SIZE];
+      if (this.headerCounts[headIndex] > 0) {
+        byte[] valid = getHeadPage(headIndex).readBytes();
+        for (int i = 0; i < valid.length; i++) {
+          if (valid[i] != 0) {
+            bits[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+          }
         }
       }
+      this.headerBits[headIndex] = bits;
     }
-    if (this.durable) {
-      for (Page p : toFlush) {
-        p.flush();
+    return bits;
+  }
+
+  private boolean isAllocated(int headIndex, int pageIndex) {
+    long[] bits = getHeaderBits(headIndex);
+    return (bits[pageIndex / Long.SIZE] & (1L << (pageIndex % Long.SIZE))) != 0;
+  }
+
+  private void setAllocated(int headIndex, int pageIndex, boolean allocated) {
+    long[] bits = getHeaderBits(headIndex);
+    int word = pageIndex / Long.SIZE;
+    if (allocated) {
+      bits[word] |= 1L << (pageIndex % Long.SIZE);
+      this.headerCounts[headIndex]++;
+    } else {
+      bits[word] &= ~(1L << (pageIndex % Long.SIZE));
+      this.headerCounts[headIndex]--;
+      this.wordHints[headIndex] = Math.min(this.wordHints[headIndex], word);
+      this.headerHint = Math.min(this.headerHint, headIndex);
+    }
+  }
+
+  /**
+   * @return the lowest unallocated page index of header page headIndex, or -1 if it is full
+   */
+  private int findFreePageIndex(int headIndex) {
+    long[] bits = getHeaderBits(headIndex);
+    for (int word = this.wordHints[headIndex]; word < bits.length; word++) {
+      long free = ~bits[word];
+      if (free != 0) {
+        this.wordHints[headIndex] = word;
+        return word * Long.SIZE + Long.numberOfTrailingZeros(free);
       }
     }
-    this.masterPage = null;
-    try {
-      this.fc.close();
-    } catch (IOException e) {
-      throw new PageException("Could not close Page Alloc " + e.getMessage());
+    this.wordHints[headIndex] = bits.length;
+    return -1;
+  }
+
+  /**
+   * @return the lowest page index of header page headIndex that starts a run of n unallocated
+   * pages, or -1 if there is no such run
+   */
+  private int findFreeRun(int headIndex, int n) {
+    long[] bits = getHeaderBits(headIndex);
+    int runStart = -1;
+    int runLength = 0;
+    int i = this.wordHints[headIndex] * Long.SIZE;
+    while (i < this.pageSize) {
+      long word = bits[i / Long.SIZE];
+      if (i % Long.SIZE == 0 && (word == 0 || word == -1L)) {
+        // Skip over entirely free or entirely allocated words in one step.
+        if (word == -1L) {
+          runLength = 0;
+        } else {
+          runStart = runLength == 0 ? i : runStart;
+          runLength += Long.SIZE;
+          if (runLength >= n) {
+            return runStart;
+          }
+        }
+        i += Long.SIZE;
+        continue;
+      }
+
+      if ((word & (1L << (i % Long.SIZE))) == 0) {
+        runStart = runLength == 0 ? i : runStart;
+        runLength++;
+        if (runLength >= n) {
+          return runStart;
+        }
+      } else {
+        runLength = 0;
+      }
+      i++;
     }
+    return -1;
   }
 
-  private synchronized Page getHeadPage(int headIndex) {
-    int headBlockID = 1 + headIndex*(Page.pageSize + 1);
-    return new Page(this.fc, headBlockID, -1);
+  /**
+   * @return the lowest allocated page number that is at least pageNum, or -1 if there is none
+   */
+  private synchronized int nextAllocatedPageNum(int pageNum) {
+    if (this.masterPage == null) {
+      throw new PageException("PageAllocator is closed");
+    }
+    for (int h = pageNum / this.pageSize; h < numHeaderPages; h++) {
+      int start = Math.max(0, pageNum - h * this.pageSize);
+      if (this.headerCounts[h] == 0) {
+        continue;
+      }
+      long[] bits = getHeaderBits(h);
+      for (int word = start / Long.SIZE; word < bits.length; word++) {
+        long allocated = bits[word];
+        if (word == start / Long.SIZE) {
+          allocated &= -1L << (start % Long.SIZE);
+        }
+        if (allocated != 0) {
+          return h * this.pageSize + word * Long.SIZE + Long.numberOfTrailingZeros(allocated);
+        }
+      }
+    }
+    return -1;
   }
 
-  public synchronized int getNumPages() {
-    return this.numPages;
+  /**
+   * Maps pageNums into the pool and loads them into memory, ignoring pages that have been freed
+   * (or an allocator that has been closed) in the meantime. Runs on the read-ahead thread.
+   */
+  private void readAhead(int[] pageNums) {
+    for (int pageNum : pageNums) {
+      try {
+        // Read-ahead is not a request for the page, so it only counts as a physical read.
+        lookupPage(pageNum, false).load();
+        this.numPagesReadAhead.incrementAndGet();
+      } catch (PageException e) {
+        return;
+      }
+    }
   }
 
-  public synchronized static long getNumIOs() {
-    return PageAllocator.numIOs.get();
+  /**
+   * @return the number of pages this allocator's iterators have read ahead so far
+   */
+  public long getNumPagesReadAhead() {
+    return this.numPagesReadAhead.get();
   }
 
-  static synchronized void incrementNumIOs() {
-    PageAllocator.numIOs.getAndIncrement();
+  /**
+   * @return the storage the pages of this file are kept in (for testing)
+   */
+  PageStorage getStorage() {
+    return this.storage;
   }
 
-  static synchronized void incrementCacheMisses() {
-    PageAllocator.cacheMisses.getAndIncrement();
+  /**
+   * @return the size in bytes of every page of this allocator except the master page
+   */
+  public int getPageSize() {
+    return this.pageSize;
   }
 
-  public synchronized static long getNumCacheMisses() {
-    return PageAllocator.cacheMisses.get();
+  public synchronized int getNumPages() {
+    return this.numPages;
   }
 
-  private synchronized long translatePageNum(int pageNum) {
-    return (((long) this.allocID) << 32) | (((long) pageNum) & 0xFFFFFFFFL);
+  /**
+   * @return the I/O counters of this allocator's file (see MetricsRegistry)
+   */
+  public IOMetrics getMetrics() {
+    return this.metrics;
   }
 
-  static synchronized private int translateAllocator(long vPageNum) {
-    return (int) ((vPageNum & 0xFFFFFFFF00000000L) >> 32);
+  private long translatePageNum(int pageNum) {
+    return (((long) this.allocID) << 32) | (((long) pageNum) & 0xFFFFFFFFL);
   }
 
   /**
@@ -349,40 +787,100 @@ public class PageAllocator implements Iterable<Page>, Closeable {
       return new PageIterator();
   }
 
+  /**
+   * @param readAheadPages the number of pages to keep read ahead of the cursor, or 0 to disable
+   * read-ahead
+   * @return an iterator of the valid pages managed by this PageAllocator.
+   */
+  public PageIterator iterator(int readAheadPages) {
+      return new PageIterator(readAheadPages);
+  }
+
   public class PageIterator implements BacktrackingIterator<Page> {
+    private final int readAheadPages;
     private int pageNum;
     private int cursor;
     private int markedPageNum;
     private int markedCursor;
 
+    // The number of pages returned since the iterator was created or last reset.
+    private int runLength;
+    // Read-ahead has been requested for every allocated page below readAheadCursor.
+    private int readAheadCursor;
+
     public PageIterator() {
+      this(DEFAULT_READ_AHEAD_PAGES);
+    }
+
+    public PageIterator(int readAheadPages) {
+      if (readAheadPages < 0) {
+        throw new IllegalArgumentException("readAheadPages can't be negative");
+      }
+      this.readAheadPages = readAheadPages;
       this.pageNum = 0;
       this.cursor = 0;
       this.markedPageNum = 0;
       this.markedCursor = 0;
+      this.runLength = 0;
+      this.readAheadCursor = 0;
     }
 
     public boolean hasNext() {
-      return this.pageNum < PageAllocator.this.numPages;
+      return this.pageNum < PageAllocator.this.getNumPages();
     }
 
     public Page next() {
       if (this.hasNext()) {
-        while (true) {
-          Page p;
-          try {
-            p = PageAllocator.this.fetchPage(cursor);
-            cursor++;
-            pageNum++;
-            return p;
-          } catch (PageException e) {
-            cursor++;
-          }
+        int next = PageAllocator.this.nextAllocatedPageNum(this.cursor);
+        if (next != -1) {
+          Page p = PageAllocator.this.fetchPage(next);
+          this.cursor = next + 1;
+          this.pageNum++;
+          this.runLength++;
+          readAhead();
+          return p;
         }
       }
       throw new NoSuchElementException();
     }
 
+    /**
+     * Once the access pattern looks sequential, hands the next window of allocated pages to the
+     * read-ahead thread whenever fewer than half a window remain read ahead of the cursor.
+     */
+    private void readAhead() {
+      if (this.readAheadPages == 0 || this.runLength < SEQUENTIAL_THRESHOLD) {
+        return;
+      }
+      if (this.readAheadCursor - this.cursor > this.readAheadPages / 2) {
+        return;
+      }
+
+      int from = Math.max(this.cursor, this.readAheadCursor);
+      int[] window = new int[this.readAheadPages];
+      int n = 0;
+      while (n < window.length) {
+        int next = PageAllocator.this.nextAllocatedPageNum(from);
+        if (next == -1) {
+          break;
+        }
+        window[n++] = next;
+        from = next + 1;
+      }
+      // Past the last allocated page, there is nothing left to read ahead of.
+      this.readAheadCursor = n < window.length ? Integer.MAX_VALUE : from;
+      if (n == 0) {
+        return;
+      }
+
+      final int[] pageNums = Arrays.copyOf(window, n);
+      readAheadExecutor.execute(new Runnable() {
+        public void run() {
+          PageAllocator.this.readAhead(pageNums);
+        }
+      });
+    }
+
     public void remove() {
       throw new UnsupportedOperationException();
     }
@@ -416,6 +914,9 @@ public class PageAllocator implements Iterable<Page>, Closeable {
      public void reset() {
       this.pageNum = this.markedPageNum - 1;
       this.cursor = this.markedCursor - 1;
+      // A reset breaks the sequential run, so read-ahead starts over.
+      this.runLength = 0;
+      this.readAheadCursor = this.cursor;
     }
   }
 }
@@ -0,0 +1,218 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.Closeable;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A background thread that forces dirty pages to disk in batches (group
+ * commit). Instead of forcing a page as soon as it is modified, a durable
+ * PageAllocator whose BufferPool has a PageFlusher schedules the page with the
+ * flusher and moves on. The flusher wakes up every intervalMillis
+ * milliseconds, or as soon as batchSize distinct pages are waiting, and forces
+ * every waiting page once. A page that is scheduled many times between two
+ * batches (e.g. the master page during a bulk load) is only forced once, and
+ * the pages of a batch that share a segment (or file) force it only once
+ * between them (see Page.flushAll).
+ *
+ * Callers that need their writes to be durable call sync, which blocks until
+ * every page scheduled before the call has been forced:
+ *
+ *   PageFlusher flusher = new PageFlusher(10, 64);
+ *   BufferPool pool = new BufferPool(1024, ReplacementPolicy.Kind.LRU, flusher);
+ *   PageAllocator allocator = new PageAllocator("f.data", true, pool);
+ *   allocator.allocPage(); // Metadata pages are scheduled, not forced.
+ *   allocator.sync();      // Now they are forced.
+ *   flusher.close();
+ */
+public class PageFlusher implements Closeable {
+  public static final long DEFAULT_INTERVAL_MILLIS = 10;
+  public static final int DEFAULT_BATCH_SIZE = 64;
+
+  private final long intervalMillis;
+  private final int batchSize;
+  private final Thread thread;
+
+  // All of the following are guarded by this.
+  private Set<Page> dirtyPages = new LinkedHashSet<Page>();
+  private long requestedEpoch = 0;
+  private long flushedEpoch = 0;
+  private boolean closed = false;
+  private PageException failure = null;
+
+  private final AtomicLong numBatches = new AtomicLong(0);
+  private final AtomicLong numPagesFlushed = new AtomicLong(0);
+  private final AtomicLong numForces = new AtomicLong(0);
+
+  /**
+   * Create and start a PageFlusher with the default interval and batch size.
+   */
+  public PageFlusher() {
+    this(DEFAULT_INTERVAL_MILLIS, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Create and start a PageFlusher.
+   *
+   * @param intervalMillis the longest a scheduled page waits before being forced
+   * @param batchSize the number of waiting pages that triggers a batch early
+   */
+  public PageFlusher(long intervalMillis, int batchSize) {
+    if (intervalMillis <= 0 || batchSize <= 0) {
+      throw new IllegalArgumentException("intervalMillis and batchSize must be positive");
+    }
+    this.intervalMillis = intervalMillis;
+    this.batchSize = batchSize;
+    this.thread = new Thread(new Runnable() {
+      public void run() {
+        PageFlusher.this.run();
+      }
+    }, "PageFlusher");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Schedules page to be forced to disk by the next batch.
+   *
+   * @param page the page to force
+   */
+  public synchronized void schedule(Page page) {
+    if (this.closed) {
+      page.flush();
+      return;
+    }
+    this.dirtyPages.add(page);
+    if (this.dirtyPages.size() == 1 || this.dirtyPages.size() >= this.batchSize) {
+      // Either start the interval timer of an idle flusher or cut a batch early.
+      notifyAll();
+    }
+  }
+
+  /**
+   * Blocks until every page scheduled before the call has been forced to disk.
+   *
+   * @throws PageException if forcing a page failed since the last sync
+   */
+  public synchronized void sync() {
+    long epoch = ++this.requestedEpoch;
+    notifyAll();
+    boolean interrupted = false;
+    while (this.flushedEpoch < epoch && !this.closed) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (this.failure != null) {
+      PageException e = this.failure;
+      this.failure = null;
+      throw e;
+    }
+  }
+
+  /**
+   * Forces every scheduled page and stops the flusher thread. Pages scheduled
+   * afterwards are forced synchronously.
+   */
+  public void close() {
+    sync();
+    synchronized (this) {
+      this.closed = true;
+      notifyAll();
+    }
+  }
+
+  public long getIntervalMillis() {
+    return this.intervalMillis;
+  }
+
+  public int getBatchSize() {
+    return this.batchSize;
+  }
+
+  /**
+   * @return the number of batches forced so far
+   */
+  public long getNumBatches() {
+    return this.numBatches.get();
+  }
+
+  /**
+   * @return the number of (distinct within their batch) pages forced so far
+   */
+  public long getNumPagesFlushed() {
+    return this.numPagesFlushed.get();
+  }
+
+  /**
+   * @return the number of times a mapping or file was forced so far
+   */
+  public long getNumForces() {
+    return this.numForces.get();
+  }
+
+  private void run() {
+    while (true) {
+      Set<Page> batch;
+      long epoch;
+      synchronized (this) {
+        // Sleep until there is something to do, then give the batch up to
+        // intervalMillis to fill up.
+        while (!this.closed
+               && this.dirtyPages.isEmpty()
+               && this.requestedEpoch == this.flushedEpoch) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            // Keep going; the flusher only stops when closed.
+          }
+        }
+        long deadline = System.currentTimeMillis() + this.intervalMillis;
+        while (!this.closed
+               && this.dirtyPages.size() < this.batchSize
+               && this.requestedEpoch == this.flushedEpoch) {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            break;
+          }
+          try {
+            wait(remaining);
+          } catch (InterruptedException e) {
+            // Keep going; the flusher only stops when closed.
+          }
+        }
+        if (this.closed) {
+          return;
+        }
+        batch = this.dirtyPages;
+        this.dirtyPages = new LinkedHashSet<Page>();
+        epoch = this.requestedEpoch;
+      }
+
+      PageException failure = null;
+      try {
+        this.numForces.addAndGet(Page.flushAll(batch));
+      } catch (PageException e) {
+        failure = e;
+      }
+      if (!batch.isEmpty()) {
+        this.numBatches.incrementAndGet();
+        this.numPagesFlushed.addAndGet(batch.size());
+      }
+
+      synchronized (this) {
+        if (failure != null) {
+          this.failure = failure;
+        }
+        this.flushedEpoch = Math.max(this.flushedEpoch, epoch);
+        notifyAll();
+      }
+    }
+  }
+}
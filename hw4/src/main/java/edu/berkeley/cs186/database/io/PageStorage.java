@@ -0,0 +1,49 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * Where the bytes of a PageAllocator's Pages live, and how they get to and from its file.
+ *
+ * MAPPED storage (the default) memory-maps the file (see FileMapping): Pages are views of the
+ * mapping, so the kernel decides when pages are read in and written back, and an I/O error shows
+ * up as a crash on some later access rather than as an exception.
+ *
+ * POSITIONAL storage (see ChannelPageStorage) reads every Page into a buffer of its own with a
+ * positional FileChannel read when the Page is created, and writes it back with a positional write
+ * when it is flushed (or evicted from the BufferPool). Reads and writes happen exactly when the
+ * buffer pool asks for them, and fail with a PageException.
+ *
+ *   PageAllocator allocator = new PageAllocator(fName, false, true, bufferPool, Page.pageSize,
+ *                                               PageStorage.Kind.POSITIONAL);
+ */
+public interface PageStorage {
+  enum Kind {
+    MAPPED,
+    POSITIONAL
+  }
+
+  /**
+   * Returns a Page for the size bytes at position of the file. Bytes past the end of the file read
+   * as zeros.
+   *
+   * @param position the offset in the file of the page
+   * @param size the size of the page in bytes
+   * @param pageNum the virtual page number
+   * @param durable whether flushing the page forces it to disk
+   * @return a Page for the bytes at position
+   */
+  Page openPage(long position, int size, int pageNum, boolean durable);
+
+  /**
+   * Prepares for a run of new pages ending at end to be opened, e.g. by growing the file once for
+   * all of them.
+   *
+   * @param end the offset in the file just past the last page of the run
+   */
+  void reserve(long end);
+
+  /**
+   * Writes back whatever the storage still holds that the file does not have yet. Called when the
+   * allocator is closed, after its pages have been flushed.
+   */
+  void close();
+}
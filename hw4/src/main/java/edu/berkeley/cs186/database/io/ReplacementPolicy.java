@@ -0,0 +1,80 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.function.LongPredicate;
+
+/**
+ * A page replacement policy used by a BufferPool stripe to decide which page to
+ * evict when the stripe is full. A policy only ever sees virtual page numbers;
+ * the stripe owns the pages themselves and tells the policy about every page
+ * that enters, is accessed in, or leaves the stripe:
+ *
+ *   ReplacementPolicy policy = ReplacementPolicy.Kind.LRU.create(2);
+ *   policy.recordInsert(1);
+ *   policy.recordInsert(2);
+ *   policy.recordAccess(1);
+ *   policy.evict(p -> true);  // 2
+ *   policy.recordRemove(1);
+ *   policy.evict(p -> true);  // NO_VICTIM
+ *
+ * Policies are not thread-safe. BufferPool only calls into a policy while
+ * holding the lock of the stripe that owns it.
+ */
+public interface ReplacementPolicy {
+  /** Returned by evict when no tracked page may be evicted. */
+  long NO_VICTIM = -1L;
+
+  /**
+   * The available replacement policies:
+   *
+   *   - LRU evicts the least recently used page.
+   *   - CLOCK approximates LRU with a reference bit per frame and a sweeping
+   *     clock hand, so that a hit never reorders anything.
+   *   - LRU_2 evicts the page whose second most recent access is the oldest.
+   *     Pages that were only accessed once (e.g. by a scan) go first.
+   *   - TWO_Q admits new pages into a small FIFO queue and only promotes a page
+   *     to the main LRU queue if it is fetched again shortly after being
+   *     evicted from the FIFO queue, so that a large scan cannot flush the
+   *     main queue.
+   */
+  enum Kind {
+    LRU, CLOCK, LRU_2, TWO_Q;
+
+    /**
+     * @param capacity the maximum number of pages that will be tracked at once
+     * @return a new, empty policy of this kind
+     */
+    public ReplacementPolicy create(int capacity) {
+      switch (this) {
+        case LRU: return new LRUPolicy();
+        case CLOCK: return new ClockPolicy(capacity);
+        case LRU_2: return new LRUKPolicy(2, capacity);
+        case TWO_Q: return new TwoQPolicy(capacity);
+        default: throw new IllegalArgumentException("unknown policy " + this);
+      }
+    }
+  }
+
+  /**
+   * Called when vPageNum enters the stripe. There is always room for it: the
+   * stripe evicts a page first if it is full.
+   */
+  void recordInsert(long vPageNum);
+
+  /** Called when vPageNum is found in the stripe. */
+  void recordAccess(long vPageNum);
+
+  /**
+   * Called when vPageNum is explicitly removed from the stripe (e.g. because
+   * its page was freed). Policies should forget vPageNum entirely.
+   */
+  void recordRemove(long vPageNum);
+
+  /**
+   * Chooses a page to evict among the tracked pages for which evictable
+   * returns true, and stops tracking it.
+   *
+   * @param evictable whether a page may be evicted (pinned pages may not)
+   * @return the evicted virtual page number, or NO_VICTIM
+   */
+  long evict(LongPredicate evictable);
+}
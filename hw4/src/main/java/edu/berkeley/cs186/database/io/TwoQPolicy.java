@@ -0,0 +1,83 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.LongPredicate;
+
+/**
+ * The full version of 2Q replacement (Johnson and Shasha).
+ *
+ *   - A1in is a small FIFO queue that every newly fetched page enters. Hits in
+ *     A1in do not reorder it.
+ *   - A1out is a FIFO queue of the page numbers (not the pages) most recently
+ *     evicted from A1in.
+ *   - Am is an LRU queue. A page only enters Am if it is fetched again while
+ *     its number is still in A1out, i.e. if it has proven to be reused.
+ *
+ * A sequential scan thus churns through A1in and A1out and leaves the pages in
+ * Am (e.g. the inner nodes of a B+ tree) alone.
+ */
+class TwoQPolicy implements ReplacementPolicy {
+  private int maxA1inSize;
+  private int maxA1outSize;
+
+  private LinkedHashSet<Long> a1in = new LinkedHashSet<Long>();
+  private LinkedHashSet<Long> a1out = new LinkedHashSet<Long>();
+  private LinkedHashSet<Long> am = new LinkedHashSet<Long>();
+
+  TwoQPolicy(int capacity) {
+    // The sizes suggested by the 2Q paper.
+    this.maxA1inSize = Math.max(1, capacity / 4);
+    this.maxA1outSize = Math.max(1, capacity / 2);
+  }
+
+  public void recordInsert(long vPageNum) {
+    if (this.a1out.remove(vPageNum)) {
+      this.am.add(vPageNum);
+    } else {
+      this.a1in.add(vPageNum);
+    }
+  }
+
+  public void recordAccess(long vPageNum) {
+    if (this.am.remove(vPageNum)) {
+      this.am.add(vPageNum);
+    }
+  }
+
+  public void recordRemove(long vPageNum) {
+    this.a1in.remove(vPageNum);
+    this.am.remove(vPageNum);
+  }
+
+  public long evict(LongPredicate evictable) {
+    boolean fromA1in = this.a1in.size() > this.maxA1inSize || this.am.isEmpty();
+    long victim = evictFrom(fromA1in ? this.a1in : this.am, evictable);
+    if (victim == NO_VICTIM) {
+      // Everything evictable in the preferred queue is pinned.
+      fromA1in = !fromA1in;
+      victim = evictFrom(fromA1in ? this.a1in : this.am, evictable);
+    }
+    if (victim != NO_VICTIM && fromA1in) {
+      this.a1out.add(victim);
+      if (this.a1out.size() > this.maxA1outSize) {
+        Iterator<Long> iter = this.a1out.iterator();
+        iter.next();
+        iter.remove();
+      }
+    }
+    return victim;
+  }
+
+  private static long evictFrom(LinkedHashSet<Long> queue, LongPredicate evictable) {
+    Iterator<Long> iter = queue.iterator();
+    while (iter.hasNext()) {
+      long vPageNum = iter.next();
+      if (evictable.test(vPageNum)) {
+        iter.remove();
+        return vPageNum;
+      }
+    }
+    return NO_VICTIM;
+  }
+}
@@ -77,8 +77,9 @@ public class BNLJOperator extends JoinOperator {
         if (this.leftRecord == null) {
           if (this.leftIterator.hasNext()) {
             this.leftRecord = this.leftIterator.next();
+            DataBox leftJoinValue = this.leftRecord.getValues().get(BNLJOperator.this.getLeftColumnIndex());
             try {
-              this.rightIterator = BNLJOperator.this.getRightSource().iterator();
+              this.rightIterator = BNLJOperator.this.getRightMatches(leftJoinValue);
             } catch (QueryPlanException q) {
               return false;
             } catch (DatabaseException e) {
@@ -89,16 +90,13 @@ public class BNLJOperator extends JoinOperator {
           }
         }
         while (this.rightIterator.hasNext()) {
+          // The right iterator only returns records that match leftRecord.
           Record rightRecord = this.rightIterator.next();
-          DataBox leftJoinValue = this.leftRecord.getValues().get(BNLJOperator.this.getLeftColumnIndex());
-          DataBox rightJoinValue = rightRecord.getValues().get(BNLJOperator.this.getRightColumnIndex());
-          if (leftJoinValue.equals(rightJoinValue)) {
-            List<DataBox> leftValues = new ArrayList<DataBox>(this.leftRecord.getValues());
-            List<DataBox> rightValues = new ArrayList<DataBox>(rightRecord.getValues());
-            leftValues.addAll(rightValues);
-            this.nextRecord = new Record(leftValues);
-            return true;
-          }
+          List<DataBox> leftValues = new ArrayList<DataBox>(this.leftRecord.getValues());
+          List<DataBox> rightValues = new ArrayList<DataBox>(rightRecord.getValues());
+          leftValues.addAll(rightValues);
+          this.nextRecord = new Record(leftValues);
+          return true;
         }
         this.leftRecord = null;
       }
@@ -0,0 +1,218 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * An index-only scan of the index on a column of a table. Where an index scan
+ * reads the record of every RecordId it finds in the index, an index-only scan
+ * yields records of just the indexed column, whose values it reads straight
+ * from the leaves of the index, and never reads the table. QueryPlan uses one
+ * when the index's column is the only column a query needs (see
+ * QueryPlan#execute).
+ */
+public class IndexOnlyScanOperator extends QueryOperator {
+  private Database.Transaction transaction;
+  private String tableName;
+  private String columnName;
+  private QueryPlan.PredicateOperator predicate;
+  private DataBox value;
+
+  private int columnIndex;
+
+  /**
+   * An index-only scan operator. Its output schema is the single, fully
+   * qualified, indexed column.
+   *
+   * @param transaction the transaction containing this operator
+   * @param tableName the table whose index to scan
+   * @param columnName the name of the column the index is on
+   * @throws QueryPlanException
+   * @throws DatabaseException
+   */
+  public IndexOnlyScanOperator(Database.Transaction transaction,
+                               String tableName,
+                               String columnName,
+                               QueryPlan.PredicateOperator predicate,
+                               DataBox value) throws QueryPlanException, DatabaseException {
+    super(OperatorType.INDEXONLYSCAN);
+    this.tableName = tableName;
+    this.transaction = transaction;
+    this.columnName = columnName;
+    this.predicate = predicate;
+    this.value = value;
+
+    Schema tableSchema = this.transaction.getFullyQualifiedSchema(this.tableName);
+    String qualifiedName = this.checkSchemaForColumn(tableSchema, columnName);
+    this.columnIndex = tableSchema.getFieldNames().indexOf(qualifiedName);
+    this.setOutputSchema(this.computeSchema());
+
+    this.stats = this.estimateStats();
+    this.cost = this.estimateIOCost();
+  }
+
+  public String str() {
+    return "type: " + this.getType() +
+        "\ntable: " + this.tableName +
+        "\ncolumn: " + this.columnName +
+        "\noperator: " + this.predicate +
+        "\nvalue: " + this.value;
+  }
+
+  /**
+   * Returns the column name that the index-only scan is on
+   *
+   * @return columnName
+   */
+  public String getColumnName() {
+    return this.columnName;
+  }
+
+  /**
+   * Estimates the fraction of the index's entries that the predicate selects,
+   * from the table's histogram on the column if it has one, or assumes all of
+   * them otherwise.
+   */
+  private float estimateReductionFactor() throws QueryPlanException {
+    TableStats stats;
+    try {
+      stats = this.transaction.getStats(this.tableName);
+    } catch (DatabaseException de) {
+      throw new QueryPlanException(de);
+    }
+    if (stats.getHistograms().size() <= this.columnIndex) {
+      return 1;
+    }
+    return stats.getHistograms().get(this.columnIndex).computeReductionFactor(this.predicate,
+                                                                              this.value);
+  }
+
+  /**
+   * Estimates the table statistics for the result of executing this query operator.
+   *
+   * @return estimated TableStats
+   */
+  public TableStats estimateStats() throws QueryPlanException {
+    long numRecords;
+    int pageSize;
+    try {
+      numRecords = this.transaction.getNumRecords(this.tableName);
+      pageSize = this.transaction.getPageSize(this.tableName);
+    } catch (DatabaseException de) {
+      throw new QueryPlanException(de);
+    }
+    return new TableStats(this.getOutputSchema(), pageSize,
+                          (int) Math.ceil(this.estimateReductionFactor() * numRecords));
+  }
+
+  /**
+   * Estimates the IO cost of executing this query operator: the pages of the
+   * index that the scan's range spans, and no pages of the table.
+   *
+   * @return estimate IO cost
+   * @throws QueryPlanException
+   */
+  public int estimateIOCost() throws QueryPlanException {
+    long numIndexPages;
+    try {
+      numIndexPages = this.transaction.getNumIndexPages(this.tableName, this.columnName);
+    } catch (DatabaseException de) {
+      throw new QueryPlanException(de);
+    }
+    return (int) Math.max(1, Math.ceil(this.estimateReductionFactor() * numIndexPages));
+  }
+
+  public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+    return new IndexOnlyScanIterator();
+  }
+
+  public Schema computeSchema() throws QueryPlanException {
+    try {
+      Schema tableSchema = this.transaction.getFullyQualifiedSchema(this.tableName);
+      return new Schema(Arrays.asList(tableSchema.getFieldNames().get(this.columnIndex)),
+                        Arrays.asList(tableSchema.getFieldTypes().get(this.columnIndex)));
+    } catch (DatabaseException de) {
+      throw new QueryPlanException(de);
+    }
+  }
+
+  /**
+   * An implementation of Iterator that provides an iterator interface for this operator.
+   */
+  private class IndexOnlyScanIterator implements Iterator<Record> {
+    private Iterator<Pair<DataBox, RecordId>> sourceIterator;
+
+    public IndexOnlyScanIterator() throws QueryPlanException, DatabaseException {
+      // The predicate is a range of the index, as in IndexScanOperator.
+      Optional<DataBox> value = Optional.of(IndexOnlyScanOperator.this.value);
+      Optional<DataBox> none = Optional.empty();
+      Optional<DataBox> lo = none;
+      Optional<DataBox> hi = none;
+      boolean loInclusive = true;
+      boolean hiInclusive = true;
+      switch (IndexOnlyScanOperator.this.predicate) {
+        case EQUALS:
+          lo = value;
+          hi = value;
+          break;
+        case LESS_THAN:
+          hi = value;
+          hiInclusive = false;
+          break;
+        case LESS_THAN_EQUALS:
+          hi = value;
+          break;
+        case GREATER_THAN:
+          lo = value;
+          loInclusive = false;
+          break;
+        case GREATER_THAN_EQUALS:
+          lo = value;
+          break;
+        default:
+          throw new QueryPlanException("Cannot scan an index with predicate " +
+                                       IndexOnlyScanOperator.this.predicate);
+      }
+      this.sourceIterator = IndexOnlyScanOperator.this.transaction.indexScanRange(
+              IndexOnlyScanOperator.this.tableName,
+              IndexOnlyScanOperator.this.columnName,
+              lo, loInclusive, hi, hiInclusive);
+    }
+
+    /**
+     * Checks if there are more record(s) to yield
+     *
+     * @return true if this iterator has another record to yield, otherwise false
+     */
+    public boolean hasNext() {
+      return this.sourceIterator.hasNext();
+    }
+
+    /**
+     * Yields the next record of this iterator.
+     *
+     * @return the next Record
+     * @throws NoSuchElementException if there are no more Records to yield
+     */
+    public Record next() {
+      List<DataBox> values = Arrays.asList(this.sourceIterator.next().getFirst());
+      return new Record(values);
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
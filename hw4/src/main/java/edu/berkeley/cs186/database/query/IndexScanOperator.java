@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 
 public class IndexScanOperator extends QueryOperator {
   private Database.Transaction transaction;
@@ -143,30 +144,30 @@ public class IndexScanOperator extends QueryOperator {
 
     public IndexScanIterator() throws QueryPlanException, DatabaseException {
       this.nextRecord = null;
+      // Range predicates are bounds of the index scan, so that the scan ends
+      // inside the index, before reading any record past the bound.
+      Optional<DataBox> value = Optional.of(IndexScanOperator.this.value);
+      Optional<DataBox> none = Optional.empty();
       if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.EQUALS) {
         this.sourceIterator = IndexScanOperator.this.transaction.lookupKey(
                 IndexScanOperator.this.tableName,
                 IndexScanOperator.this.columnName,
                 IndexScanOperator.this.value);
-      } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN ||
-              IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS) {
-        this.sourceIterator = IndexScanOperator.this.transaction.sortedScan(
+      } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN) {
+        this.sourceIterator = IndexScanOperator.this.transaction.sortedScanRange(
                 IndexScanOperator.this.tableName,
-                IndexScanOperator.this.columnName);
+                IndexScanOperator.this.columnName,
+                none, true, value, false);
+      } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS) {
+        this.sourceIterator = IndexScanOperator.this.transaction.sortedScanRange(
+                IndexScanOperator.this.tableName,
+                IndexScanOperator.this.columnName,
+                none, true, value, true);
       } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.GREATER_THAN) {
-        this.sourceIterator = IndexScanOperator.this.transaction.sortedScanFrom(
+        this.sourceIterator = IndexScanOperator.this.transaction.sortedScanRange(
                 IndexScanOperator.this.tableName,
                 IndexScanOperator.this.columnName,
-                IndexScanOperator.this.value);
-        while (this.sourceIterator.hasNext()) {
-          Record r = this.sourceIterator.next();
-
-          if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                  .compareTo(IndexScanOperator.this.value) > 0) {
-            this.nextRecord = r;
-            break;
-          }
-        }
+                value, false, none, true);
       } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.GREATER_THAN_EQUALS) {
         this.sourceIterator = IndexScanOperator.this.transaction.sortedScanFrom(
                 IndexScanOperator.this.tableName,
@@ -184,29 +185,6 @@ public class IndexScanOperator extends QueryOperator {
       if (this.nextRecord != null) {
         return true;
       }
-      if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN) {
-        if (this.sourceIterator.hasNext()) {
-          Record r = this.sourceIterator.next();
-          if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                  .compareTo(IndexScanOperator.this.value) >= 0) {
-            return false;
-          }
-          this.nextRecord = r;
-          return true;
-        }
-        return false;
-      } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS) {
-        if (this.sourceIterator.hasNext()) {
-          Record r = this.sourceIterator.next();
-          if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                  .compareTo(IndexScanOperator.this.value) > 0) {
-            return false;
-          }
-          this.nextRecord = r;
-          return true;
-        }
-        return false;
-      }
       if (this.sourceIterator.hasNext()) {
         this.nextRecord = this.sourceIterator.next();
         return true;
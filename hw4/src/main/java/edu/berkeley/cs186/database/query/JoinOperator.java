@@ -1,8 +1,10 @@
 package edu.berkeley.cs186.database.query;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
@@ -12,6 +14,7 @@ import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.RecordIterator;
+import edu.berkeley.cs186.database.table.RecordView;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -208,6 +211,24 @@ public abstract class JoinOperator extends QueryOperator {
     return this.joinType;
   }
 
+  /**
+   * Returns an iterator over the records of the right source whose join value
+   * equals leftJoinValue. If the right source is a sequential scan and the
+   * join columns are of the same type, the join values of the right records
+   * are compared in place (see RecordView), and only matching records are
+   * decoded.
+   */
+  public Iterator<Record> getRightMatches(DataBox leftJoinValue)
+      throws QueryPlanException, DatabaseException {
+    QueryOperator right = this.getRightSource();
+    Type rightType = right.getOutputSchema().getFieldTypes().get(this.rightColumnIndex);
+    if (right.isSequentialScan() && leftJoinValue.type().equals(rightType)) {
+      return new ViewMatchIterator(((SequentialScanOperator) right).viewIterator(),
+                                   ByteBuffer.wrap(leftJoinValue.toBytes()));
+    }
+    return new RecordMatchIterator(right.iterator(), leftJoinValue);
+  }
+
   /**
    * All iterators for subclasses of JoinOperator should subclass from
    * JoinIterator; JoinIterator handles temp table creation as needed.
@@ -245,4 +266,82 @@ public abstract class JoinOperator extends QueryOperator {
       return this.rightTableName;
     }
   }
+
+  /**
+   * An iterator over the records of an iterator of views whose join value
+   * equals a serialized value.
+   */
+  private class ViewMatchIterator implements Iterator<Record> {
+    private Iterator<RecordView> views;
+    private ByteBuffer value;
+    private Record nextRecord;
+
+    ViewMatchIterator(Iterator<RecordView> views, ByteBuffer value) {
+      this.views = views;
+      this.value = value;
+      this.nextRecord = null;
+    }
+
+    public boolean hasNext() {
+      if (this.nextRecord != null) {
+        return true;
+      }
+      while (this.views.hasNext()) {
+        RecordView view = this.views.next();
+        if (view.fieldEquals(JoinOperator.this.rightColumnIndex, this.value, 0)) {
+          this.nextRecord = view.toRecord();
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public Record next() {
+      if (this.hasNext()) {
+        Record r = this.nextRecord;
+        this.nextRecord = null;
+        return r;
+      }
+      throw new NoSuchElementException();
+    }
+  }
+
+  /**
+   * An iterator over the records of an iterator of records whose join value
+   * equals a value.
+   */
+  private class RecordMatchIterator implements Iterator<Record> {
+    private Iterator<Record> records;
+    private DataBox value;
+    private Record nextRecord;
+
+    RecordMatchIterator(Iterator<Record> records, DataBox value) {
+      this.records = records;
+      this.value = value;
+      this.nextRecord = null;
+    }
+
+    public boolean hasNext() {
+      if (this.nextRecord != null) {
+        return true;
+      }
+      while (this.records.hasNext()) {
+        Record r = this.records.next();
+        if (r.getValues().get(JoinOperator.this.rightColumnIndex).equals(this.value)) {
+          this.nextRecord = r;
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public Record next() {
+      if (this.hasNext()) {
+        Record r = this.nextRecord;
+        this.nextRecord = null;
+        return r;
+      }
+      throw new NoSuchElementException();
+    }
+  }
 }
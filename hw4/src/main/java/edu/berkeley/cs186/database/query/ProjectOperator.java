@@ -1,6 +1,7 @@
 package edu.berkeley.cs186.database.query;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -13,6 +14,7 @@ import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordView;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -195,7 +197,14 @@ public class ProjectOperator extends QueryOperator {
     private List<DataBox> baseValues;
 
     public ProjectIterator() throws QueryPlanException, DatabaseException {
-      this.sourceIterator = ProjectOperator.this.getSource().iterator();
+      QueryOperator source = ProjectOperator.this.getSource();
+      if (source.isSequentialScan()) {
+        int numFields = source.getOutputSchema().getFieldNames().size();
+        this.sourceIterator = new ColumnIterator(((SequentialScanOperator) source).viewIterator(),
+                                                 numFields);
+      } else {
+        this.sourceIterator = source.iterator();
+      }
       this.markerRecord = MarkerRecord.getMarker();
       this.nextRecord = null;
       this.prevWasMarker = true;
@@ -313,4 +322,48 @@ public class ProjectOperator extends QueryOperator {
       throw new UnsupportedOperationException();
     }
   }
+
+  /**
+   * An iterator over the records of a sequential scan in which only the
+   * fields this operator reads (the projected columns and the columns it sums
+   * or averages) are decoded; the other fields are null. It reads records
+   * through views (see RecordView), so on a table with the PAX layout (see
+   * Table.Layout), the other columns are not even read.
+   */
+  private class ColumnIterator implements Iterator<Record> {
+    private Iterator<RecordView> views;
+    private List<Integer> columns;
+    private int numFields;
+
+    public ColumnIterator(Iterator<RecordView> views, int numFields) {
+      this.views = views;
+      this.numFields = numFields;
+      this.columns = new ArrayList<Integer>(ProjectOperator.this.indices);
+      if (ProjectOperator.this.sumColumnIndex != -1) {
+        this.columns.add(ProjectOperator.this.sumColumnIndex);
+      }
+      if (ProjectOperator.this.averageColumnIndex != -1) {
+        this.columns.add(ProjectOperator.this.averageColumnIndex);
+      }
+    }
+
+    public boolean hasNext() {
+      return this.views.hasNext();
+    }
+
+    public Record next() {
+      RecordView view = this.views.next();
+      List<DataBox> values = new ArrayList<DataBox>(Collections.nCopies(this.numFields, (DataBox) null));
+      for (int column : this.columns) {
+        if (values.get(column) == null) {
+          values.set(column, view.getField(column));
+        }
+      }
+      return new Record(values);
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
 }
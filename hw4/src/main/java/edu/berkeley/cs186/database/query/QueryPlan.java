@@ -475,8 +475,16 @@ public class QueryPlan {
     PredicateOperator operator = this.selectOperators.get(selectIndex);
     DataBox value = this.selectDataBoxes.get(selectIndex);
 
-    this.finalOperator = new IndexScanOperator(this.transaction, this.startTableName, indexColumn, operator,
-        value);
+    if (this.isCoveredBy(indexColumn)) {
+      // The index has every value the query needs, so the scan need not read the table. An
+      // index-only scan reads no more pages than an index scan, which also reads a record for
+      // each entry it finds.
+      this.finalOperator = new IndexOnlyScanOperator(this.transaction, this.startTableName,
+          indexColumn, operator, value);
+    } else {
+      this.finalOperator = new IndexScanOperator(this.transaction, this.startTableName, indexColumn,
+          operator, value);
+    }
 
     this.selectColumnNames.remove(selectIndex);
     this.selectOperators.remove(selectIndex);
@@ -486,6 +494,36 @@ public class QueryPlan {
     this.addProjects();
   }
 
+  /**
+   * Returns whether a query without joins or a group by is covered by the index on indexColumn:
+   * whether the index's predicate is its only select, and it projects or aggregates no column
+   * other than indexColumn (a count alone needs no columns at all).
+   */
+  private boolean isCoveredBy(String indexColumn) {
+    if (this.selectColumnNames.size() != 1) {
+      return false;
+    }
+    if (this.projectColumns.isEmpty() && !this.hasCount && this.sumColumnName == null
+        && this.averageColumnName == null) {
+      return false;
+    }
+    for (String column : this.projectColumns) {
+      if (!this.sameColumn(column, indexColumn)) {
+        return false;
+      }
+    }
+    return (this.sumColumnName == null || this.sameColumn(this.sumColumnName, indexColumn))
+        && (this.averageColumnName == null || this.sameColumn(this.averageColumnName, indexColumn));
+  }
+
+  /**
+   * Returns whether two names of columns of the start table, each with or without its table's
+   * name (e.g. "t.x" and "x"), name the same column.
+   */
+  private boolean sameColumn(String a, String b) {
+    return a.substring(a.indexOf('.') + 1).equals(b.substring(b.indexOf('.') + 1));
+  }
+
   private void addJoins() throws QueryPlanException, DatabaseException {
     int index = 0;
 
@@ -86,8 +86,9 @@ public class SNLJOperator extends JoinOperator {
         if (this.leftRecord == null) {
           if (this.leftIterator.hasNext()) {
             this.leftRecord = this.leftIterator.next();
+            DataBox leftJoinValue = this.leftRecord.getValues().get(SNLJOperator.this.getLeftColumnIndex());
             try {
-              this.rightIterator = SNLJOperator.this.getRightSource().iterator();
+              this.rightIterator = SNLJOperator.this.getRightMatches(leftJoinValue);
             } catch (QueryPlanException q) {
               return false;
             } catch (DatabaseException e) {
@@ -98,16 +99,13 @@ public class SNLJOperator extends JoinOperator {
           }
         }
         while (this.rightIterator.hasNext()) {
+          // The right iterator only returns records that match leftRecord.
           Record rightRecord = this.rightIterator.next();
-          DataBox leftJoinValue = this.leftRecord.getValues().get(SNLJOperator.this.getLeftColumnIndex());
-          DataBox rightJoinValue = rightRecord.getValues().get(SNLJOperator.this.getRightColumnIndex());
-          if (leftJoinValue.equals(rightJoinValue)) {
-            List<DataBox> leftValues = new ArrayList<DataBox>(this.leftRecord.getValues());
-            List<DataBox> rightValues = new ArrayList<DataBox>(rightRecord.getValues());
-            leftValues.addAll(rightValues);
-            this.nextRecord = new Record(leftValues);
-            return true;
-          }
+          List<DataBox> leftValues = new ArrayList<DataBox>(this.leftRecord.getValues());
+          List<DataBox> rightValues = new ArrayList<DataBox>(rightRecord.getValues());
+          leftValues.addAll(rightValues);
+          this.nextRecord = new Record(leftValues);
+          return true;
         }
         this.leftRecord = null;
       }
@@ -1,12 +1,15 @@
 package edu.berkeley.cs186.database.query;
 
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordView;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -15,6 +18,7 @@ public class SelectOperator extends QueryOperator {
   private String columnName;
   private QueryPlan.PredicateOperator operator;
   private DataBox value;
+  private ByteBuffer serializedValue;
 
   /**
    * Creates a new SelectOperator that pulls from source and only returns tuples for which the
@@ -33,6 +37,7 @@ public class SelectOperator extends QueryOperator {
     super(OperatorType.SELECT, source);
     this.operator = operator;
     this.value = value;
+    this.serializedValue = ByteBuffer.wrap(value.toBytes());
 
     this.columnName = this.checkSchemaForColumn(source.getOutputSchema(), columnName);
     this.columnIndex = this.getOutputSchema().getFieldNames().indexOf(this.columnName);
@@ -71,16 +76,81 @@ public class SelectOperator extends QueryOperator {
 
   public Iterator<Record> iterator() throws QueryPlanException, DatabaseException { return new SelectIterator(); }
 
+  /**
+   * Returns whether the predicate holds of a field that compares to value as
+   * cmp says (see Comparable#compareTo).
+   */
+  private boolean satisfies(int cmp) {
+    switch (this.operator) {
+      case EQUALS:
+        return cmp == 0;
+      case NOT_EQUALS:
+        return cmp != 0;
+      case LESS_THAN:
+        return cmp < 0;
+      case LESS_THAN_EQUALS:
+        return cmp <= 0;
+      case GREATER_THAN:
+        return cmp > 0;
+      case GREATER_THAN_EQUALS:
+        return cmp >= 0;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns whether the predicate holds of a record.
+   */
+  private boolean satisfies(Record record) {
+    DataBox field = record.getValues().get(this.columnIndex);
+    switch (this.operator) {
+      case EQUALS:
+        return field.equals(this.value);
+      case NOT_EQUALS:
+        return !field.equals(this.value);
+      default:
+        return satisfies(field.compareTo(this.value));
+    }
+  }
+
+  /**
+   * Returns whether the predicate holds of the record that view is on,
+   * comparing the field with the serialized value in place. Only called if
+   * value is of the type of the column.
+   */
+  private boolean satisfies(RecordView view) {
+    switch (this.operator) {
+      case EQUALS:
+        return view.fieldEquals(this.columnIndex, this.serializedValue, 0);
+      case NOT_EQUALS:
+        return !view.fieldEquals(this.columnIndex, this.serializedValue, 0);
+      default:
+        return satisfies(view.compareField(this.columnIndex, this.serializedValue, 0));
+    }
+  }
+
   /**
    * An implementation of Iterator that provides an iterator interface for this operator.
+   *
+   * When the source is a sequential scan, the iterator tests the predicate on
+   * views of the records of the table (see RecordView), and only decodes the
+   * records it returns.
    */
   private class SelectIterator implements Iterator<Record> {
     private Iterator<Record> sourceIterator;
+    private Iterator<RecordView> viewIterator;
     private MarkerRecord markerRecord;
     private Record nextRecord;
 
     public SelectIterator() throws QueryPlanException, DatabaseException {
-      this.sourceIterator = SelectOperator.this.getSource().iterator();
+      QueryOperator source = SelectOperator.this.getSource();
+      Type columnType = source.getOutputSchema().getFieldTypes().get(SelectOperator.this.columnIndex);
+      if (source.isSequentialScan() && SelectOperator.this.value.type().equals(columnType)) {
+        this.viewIterator = ((SequentialScanOperator) source).viewIterator();
+      } else {
+        this.sourceIterator = source.iterator();
+      }
       this.markerRecord = MarkerRecord.getMarker();
       this.nextRecord = null;
     }
@@ -94,58 +164,22 @@ public class SelectOperator extends QueryOperator {
       if (this.nextRecord != null) {
         return true;
       }
+      if (this.viewIterator != null) {
+        while (this.viewIterator.hasNext()) {
+          RecordView view = this.viewIterator.next();
+          if (SelectOperator.this.satisfies(view)) {
+            this.nextRecord = view.toRecord();
+            return true;
+          }
+        }
+        return false;
+      }
       while (this.sourceIterator.hasNext()) {
         Record r = this.sourceIterator.next();
-        if (r == this.markerRecord) {
+        if (r == this.markerRecord || SelectOperator.this.satisfies(r)) {
           this.nextRecord = r;
           return true;
         }
-        switch (SelectOperator.this.operator) {
-          case EQUALS:
-            if (r.getValues().get(SelectOperator.this.columnIndex).equals(value)) {
-              this.nextRecord = r;
-              return true;
-            }
-            break;
-          case NOT_EQUALS:
-            if (!r.getValues().get(SelectOperator.this.columnIndex).equals(value)) {
-              this.nextRecord = r;
-              return true;
-            }
-            break;
-          case LESS_THAN:
-            if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == -1) {
-              this.nextRecord = r;
-              return true;
-            }
-            break;
-          case LESS_THAN_EQUALS:
-            if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == -1) {
-              this.nextRecord = r;
-              return true;
-            } else if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 0) {
-              this.nextRecord = r;
-              return true;
-            }
-            break;
-          case GREATER_THAN:
-            if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 1) {
-              this.nextRecord = r;
-              return true;
-            }
-            break;
-          case GREATER_THAN_EQUALS:
-            if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 1) {
-              this.nextRecord = r;
-              return true;
-            } else if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 0) {
-              this.nextRecord = r;
-              return true;
-            }
-            break;
-          default:
-            break;
-        }
       }
       return false;
     }
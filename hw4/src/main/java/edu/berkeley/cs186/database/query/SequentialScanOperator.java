@@ -5,6 +5,7 @@ import java.util.Iterator;
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordView;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -41,6 +42,15 @@ public class SequentialScanOperator extends QueryOperator {
     return this.transaction.getRecordIterator(tableName);
   }
 
+  /**
+   * Returns an iterator over views of the records of the table (see
+   * RecordView), for operators that only need to read a few fields of each
+   * record to decide whether to output it.
+   */
+  public Iterator<RecordView> viewIterator() throws DatabaseException {
+    return this.transaction.getRecordViewIterator(tableName);
+  }
+
   public Schema computeSchema() throws QueryPlanException {
     try {
       return this.transaction.getFullyQualifiedSchema(this.tableName);
@@ -0,0 +1,456 @@
+package edu.berkeley.cs186.database.table;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+
+/**
+ * A CompressedPageFormat reads and writes the data pages of a compressed table
+ * (see Table.Layout). A compressed page is written once, with as many records
+ * as fit, and never changes after. Its records are stored column by column,
+ * and each column is compressed according to its type.
+ *
+ * # Storage Format
+ *   1. A page begins with an int: the number n of records on the page. A page
+ *      of all zeros is an empty page.
+ *   2. A column chunk for each field follows, holding that field of each of
+ *      the n records:
+ *      - Ints are frame-of-reference encoded: the smallest of the ints (4
+ *        bytes), a width w (1 byte), and then each int minus the smallest,
+ *        packed into w bits.
+ *      - Strings are dictionary encoded, unless most of them are distinct:
+ *        a byte saying which (DICTIONARY or PLAIN) comes first. A dictionary
+ *        encoded chunk holds the number d of distinct strings (4 bytes), each
+ *        distinct string in its compact form (see
+ *        StringDataBox.serializeCompact), and then the index of each string
+ *        in the dictionary, packed into just enough bits to count to d - 1.
+ *        A plain chunk holds each string as is.
+ *      - Bools are run-length encoded: the number of runs (4 bytes), and then
+ *        each run as its value (1 byte) and length (2 bytes).
+ *      - Floats are stored as is.
+ *
+ * Bits are packed most significant bit first. A column whose values are all
+ * the same takes up no bits per value.
+ *
+ * Pages are decoded into a PAX buffer (see decode), which RecordView reads
+ * like a PAX page.
+ */
+class CompressedPageFormat {
+  private static final int HEADER_SIZE = Integer.BYTES;
+  private static final int RUN_SIZE = Byte.BYTES + Short.BYTES;
+
+  // The encodings of string column chunks.
+  private static final byte DICTIONARY = 0;
+  private static final byte PLAIN = 1;
+
+  private Schema schema;
+  private int pageSize;
+
+  CompressedPageFormat(Schema schema, int pageSize) {
+    this.schema = schema;
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * Returns the number of records on the page.
+   */
+  int getNumRecords(ByteBuffer buf) {
+    return buf.getInt(0);
+  }
+
+  /**
+   * Compresses as many of records[from:] as fit (but at least one) into the
+   * empty page buf, and returns how many it wrote. Throws an
+   * IllegalArgumentException if not even records[from] fits.
+   */
+  int encode(List<Record> records, int from, ByteBuffer buf) {
+    List<Type> fieldTypes = schema.getFieldTypes();
+    ColumnEncoder[] encoders = new ColumnEncoder[fieldTypes.size()];
+    for (int i = 0; i < encoders.length; ++i) {
+      encoders[i] = ColumnEncoder.forType(fieldTypes.get(i));
+    }
+
+    int to = from;
+    while (to < records.size() && to - from < Table.MAX_RECORDS_PER_PAGE) {
+      List<DataBox> values = records.get(to).getValues();
+      int size = HEADER_SIZE;
+      for (int i = 0; i < encoders.length; ++i) {
+        size += encoders[i].getSizeInBytesWith(values.get(i));
+      }
+      if (size > pageSize) {
+        break;
+      }
+      for (int i = 0; i < encoders.length; ++i) {
+        encoders[i].add(values.get(i));
+      }
+      to++;
+    }
+    if (to == from) {
+      String msg = String.format("Record %s does not fit on a %d-byte page.",
+                                 records.get(from), pageSize);
+      throw new IllegalArgumentException(msg);
+    }
+
+    buf.position(0);
+    buf.putInt(to - from);
+    for (int i = 0; i < encoders.length; ++i) {
+      encoders[i].write(buf, records, from, to, i);
+    }
+    return to - from;
+  }
+
+  /**
+   * Decodes the page in into the PAX buffer out, which must have room for
+   * getNumRecords(in) full-width records, and sets columnOffsets[i] to the
+   * offset of the minipage of field i in out.
+   */
+  void decode(ByteBuffer in, ByteBuffer out, int[] columnOffsets) {
+    List<Type> fieldTypes = schema.getFieldTypes();
+    int n = getNumRecords(in);
+    in.position(HEADER_SIZE);
+    for (int i = 0; i < fieldTypes.size(); ++i) {
+      Type type = fieldTypes.get(i);
+      int offset = n * schema.getFieldOffset(i);
+      columnOffsets[i] = offset;
+      switch (type.getTypeId()) {
+        case BOOL:
+          decodeBools(in, out, offset);
+          break;
+        case INT:
+          decodeInts(in, out, offset, n);
+          break;
+        case FLOAT:
+          for (int j = 0; j < n; ++j) {
+            out.putFloat(offset + j * Float.BYTES, in.getFloat());
+          }
+          break;
+        case STRING:
+          decodeStrings(in, out, offset, n, type.getSizeInBytes());
+          break;
+        default:
+          String err = String.format("Unknown TypeId %s.", type.getTypeId());
+          throw new IllegalArgumentException(err);
+      }
+    }
+  }
+
+  // Decoders //////////////////////////////////////////////////////////////////
+  private static void decodeBools(ByteBuffer in, ByteBuffer out, int offset) {
+    int numRuns = in.getInt();
+    for (int r = 0; r < numRuns; ++r) {
+      byte value = in.get();
+      int length = in.getShort() & 0xFFFF;
+      for (int j = 0; j < length; ++j) {
+        out.put(offset++, value);
+      }
+    }
+  }
+
+  private static void decodeInts(ByteBuffer in, ByteBuffer out, int offset, int n) {
+    long base = in.getInt();
+    BitReader bits = new BitReader(in, in.get());
+    for (int j = 0; j < n; ++j) {
+      out.putInt(offset + j * Integer.BYTES, (int) (base + bits.next()));
+    }
+  }
+
+  private static void decodeStrings(ByteBuffer in, ByteBuffer out, int offset, int n, int m) {
+    if (in.get() == PLAIN) {
+      byte[] s = new byte[m];
+      for (int j = 0; j < n; ++j) {
+        in.get(s);
+        out.position(offset + j * m);
+        out.put(s);
+      }
+      return;
+    }
+    int d = in.getInt();
+    byte[][] dictionary = new byte[d][];
+    for (int k = 0; k < d; ++k) {
+      byte[] s = new byte[m];
+      int length = in.getShort() & 0xFFFF;
+      in.get(s, 0, length);
+      Arrays.fill(s, length, m, (byte) ' ');
+      dictionary[k] = s;
+    }
+    BitReader bits = new BitReader(in, bitsFor(d - 1));
+    for (int j = 0; j < n; ++j) {
+      out.position(offset + j * m);
+      out.put(dictionary[(int) bits.next()]);
+    }
+  }
+
+  // Encoders //////////////////////////////////////////////////////////////////
+  /**
+   * A ColumnEncoder collects what it needs to know about the values of one
+   * column of the records of a page to size and write its column chunk.
+   */
+  private abstract static class ColumnEncoder {
+    // The number of values added.
+    int n = 0;
+
+    static ColumnEncoder forType(Type type) {
+      switch (type.getTypeId()) {
+        case BOOL:
+          return new BoolEncoder();
+        case INT:
+          return new IntEncoder();
+        case FLOAT:
+          return new FloatEncoder();
+        case STRING:
+          return new StringEncoder();
+        default:
+          String err = String.format("Unknown TypeId %s.", type.getTypeId());
+          throw new IllegalArgumentException(err);
+      }
+    }
+
+    /**
+     * Returns the size of the column chunk if value were added.
+     */
+    abstract int getSizeInBytesWith(DataBox value);
+
+    abstract void add(DataBox value);
+
+    /**
+     * Writes the column chunk of field i of records[from:to], whose values
+     * are the values that were added.
+     */
+    abstract void write(ByteBuffer buf, List<Record> records, int from, int to, int i);
+  }
+
+  private static class BoolEncoder extends ColumnEncoder {
+    private int numRuns = 0;
+    private boolean last;
+
+    private boolean startsRun(boolean value) {
+      return n == 0 || value != last;
+    }
+
+    @Override
+    int getSizeInBytesWith(DataBox value) {
+      int runs = numRuns + (startsRun(value.getBool()) ? 1 : 0);
+      return Integer.BYTES + runs * RUN_SIZE;
+    }
+
+    @Override
+    void add(DataBox value) {
+      if (startsRun(value.getBool())) {
+        numRuns++;
+      }
+      last = value.getBool();
+      n++;
+    }
+
+    @Override
+    void write(ByteBuffer buf, List<Record> records, int from, int to, int i) {
+      buf.putInt(numRuns);
+      int start = from;
+      for (int j = from + 1; j <= to; ++j) {
+        boolean value = records.get(start).getValues().get(i).getBool();
+        if (j == to || records.get(j).getValues().get(i).getBool() != value) {
+          buf.put((byte) (value ? 1 : 0));
+          buf.putShort((short) (j - start));
+          start = j;
+        }
+      }
+    }
+  }
+
+  private static class IntEncoder extends ColumnEncoder {
+    private int min;
+    private int max;
+
+    @Override
+    int getSizeInBytesWith(DataBox value) {
+      int v = value.getInt();
+      long range = n == 0 ? 0 : (long) Math.max(max, v) - Math.min(min, v);
+      return Integer.BYTES + Byte.BYTES + packedSize(n + 1, bitsFor(range));
+    }
+
+    @Override
+    void add(DataBox value) {
+      int v = value.getInt();
+      min = n == 0 ? v : Math.min(min, v);
+      max = n == 0 ? v : Math.max(max, v);
+      n++;
+    }
+
+    @Override
+    void write(ByteBuffer buf, List<Record> records, int from, int to, int i) {
+      int width = bitsFor((long) max - min);
+      buf.putInt(min);
+      buf.put((byte) width);
+      BitWriter bits = new BitWriter(buf, width);
+      for (int j = from; j < to; ++j) {
+        bits.write((long) records.get(j).getValues().get(i).getInt() - min);
+      }
+      bits.flush();
+    }
+  }
+
+  private static class FloatEncoder extends ColumnEncoder {
+    @Override
+    int getSizeInBytesWith(DataBox value) {
+      return (n + 1) * Float.BYTES;
+    }
+
+    @Override
+    void add(DataBox value) {
+      n++;
+    }
+
+    @Override
+    void write(ByteBuffer buf, List<Record> records, int from, int to, int i) {
+      for (int j = from; j < to; ++j) {
+        buf.putFloat(records.get(j).getValues().get(i).getFloat());
+      }
+    }
+  }
+
+  private static class StringEncoder extends ColumnEncoder {
+    // The index of every distinct string, in the order they were added, and
+    // the size of their compact forms.
+    private Map<String, Integer> dictionary = new LinkedHashMap<>();
+    private int dictionarySizeInBytes = 0;
+
+    private static int getDictionarySize(int n, int d, int dictionarySizeInBytes) {
+      return Byte.BYTES + Integer.BYTES + dictionarySizeInBytes + packedSize(n, bitsFor(d - 1));
+    }
+
+    private static int getPlainSize(int n, DataBox value) {
+      return Byte.BYTES + n * value.type().getSizeInBytes();
+    }
+
+    @Override
+    int getSizeInBytesWith(DataBox value) {
+      String s = trim(value.getString());
+      int d = dictionary.size();
+      int dictionaryBytes = dictionarySizeInBytes;
+      if (!dictionary.containsKey(s)) {
+        d++;
+        dictionaryBytes += Short.BYTES + s.length();
+      }
+      return Math.min(getDictionarySize(n + 1, d, dictionaryBytes), getPlainSize(n + 1, value));
+    }
+
+    @Override
+    void add(DataBox value) {
+      String s = trim(value.getString());
+      if (!dictionary.containsKey(s)) {
+        dictionary.put(s, dictionary.size());
+        dictionarySizeInBytes += Short.BYTES + s.length();
+      }
+      n++;
+    }
+
+    @Override
+    void write(ByteBuffer buf, List<Record> records, int from, int to, int i) {
+      DataBox first = records.get(from).getValues().get(i);
+      if (getPlainSize(n, first) < getDictionarySize(n, dictionary.size(), dictionarySizeInBytes)) {
+        buf.put(PLAIN);
+        for (int j = from; j < to; ++j) {
+          records.get(j).getValues().get(i).serialize(buf);
+        }
+        return;
+      }
+      buf.put(DICTIONARY);
+      buf.putInt(dictionary.size());
+      for (String s : dictionary.keySet()) {
+        buf.putShort((short) s.length());
+        buf.put(s.getBytes(StandardCharsets.US_ASCII));
+      }
+      BitWriter bits = new BitWriter(buf, bitsFor(dictionary.size() - 1));
+      for (int j = from; j < to; ++j) {
+        bits.write(dictionary.get(trim(records.get(j).getValues().get(i).getString())));
+      }
+      bits.flush();
+    }
+
+    private static String trim(String s) {
+      int n = s.length();
+      while (n > 0 && s.charAt(n - 1) == ' ') {
+        n--;
+      }
+      return s.substring(0, n);
+    }
+  }
+
+  // Bit Packing ///////////////////////////////////////////////////////////////
+  /**
+   * Returns the number of bits needed to store every value from 0 to max.
+   */
+  static int bitsFor(long max) {
+    return Long.SIZE - Long.numberOfLeadingZeros(max);
+  }
+
+  private static int packedSize(int n, int width) {
+    return (int) (((long) n * width + 7) / 8);
+  }
+
+  /** Writes width-bit values to a buffer, most significant bit first. */
+  private static class BitWriter {
+    private ByteBuffer buf;
+    private int width;
+    // The low numBits bits of bits have not been written yet.
+    private long bits = 0;
+    private int numBits = 0;
+
+    BitWriter(ByteBuffer buf, int width) {
+      this.buf = buf;
+      this.width = width;
+    }
+
+    void write(long value) {
+      bits = (bits << width) | value;
+      numBits += width;
+      while (numBits >= 8) {
+        numBits -= 8;
+        buf.put((byte) (bits >>> numBits));
+      }
+      bits &= (1L << numBits) - 1;
+    }
+
+    void flush() {
+      if (numBits > 0) {
+        buf.put((byte) (bits << (8 - numBits)));
+      }
+      bits = 0;
+      numBits = 0;
+    }
+  }
+
+  /**
+   * Reads width-bit values written by a BitWriter. Reading the last value
+   * leaves the buffer just after the last byte of packed bits.
+   */
+  private static class BitReader {
+    private ByteBuffer buf;
+    private int width;
+    // The low numBits bits of bits have not been read yet.
+    private long bits = 0;
+    private int numBits = 0;
+
+    BitReader(ByteBuffer buf, int width) {
+      this.buf = buf;
+      this.width = width;
+    }
+
+    long next() {
+      while (numBits < width) {
+        bits = (bits << 8) | (buf.get() & 0xFF);
+        numBits += 8;
+      }
+      numBits -= width;
+      long value = (bits >>> numBits) & ((1L << width) - 1);
+      bits &= (1L << numBits) - 1;
+      return value;
+    }
+  }
+}
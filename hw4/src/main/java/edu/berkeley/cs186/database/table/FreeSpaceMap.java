@@ -0,0 +1,239 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import edu.berkeley.cs186.database.io.BufferPool;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+
+/**
+ * A FreeSpaceMap records how many records are on each data page of a table,
+ * and for tables of variable length records how many bytes are free on it, so
+ * that a table can find a page with room for a record, and count its records,
+ * without reading its data pages. The map is persisted in a file of
+ * its own next to the table's file (see Table.FREE_SPACE_MAP_EXTENSION), which
+ * leaves the format of the table's file unchanged.
+ *
+ * # Storage Format
+ *   1. Page 0 is a header page. Its first int is CLOSED_CLEANLY if the map
+ *      was closed cleanly and 0 if it is (or was, when the process died)
+ *      open. It is followed by the number of records in the table (a long)
+ *      and the number of records in the table's TableStats (an int) as of
+ *      the last clean close, so that a table can be loaded without adding
+ *      up the entries.
+ *   2. Page 1 + i holds an 8-byte entry for each of the data pages
+ *      i * ENTRIES_PER_PAGE through (i + 1) * ENTRIES_PER_PAGE - 1. The first
+ *      int of an entry is 0 if the page is not a data page, and 1 + the
+ *      number of records on the page otherwise. The second int is the number
+ *      of free bytes on the page, or 0 for tables of fixed length records,
+ *      which keep track of free space by record.
+ *
+ * Of the table's TableStats, only the number of records is persisted. Its
+ * histograms are not, so they are rebuilt by a full scan of the table (see
+ * Table.buildStatistics) after the table is loaded.
+ *
+ * Like PageAllocator's allocation bits, the entries are kept in memory and
+ * written through to the pages on every change. The table's data pages and
+ * the map are not updated atomically, so a map that was not closed cleanly is
+ * not trusted (see isValid) and the table rebuilds it instead.
+ */
+class FreeSpaceMap implements Closeable {
+  private static final int ENTRY_SIZE = 2 * Integer.BYTES;
+  private static final int ENTRIES_PER_PAGE = Page.pageSize / ENTRY_SIZE;
+  // The value of the header int of a map that was closed cleanly.
+  private static final int CLOSED_CLEANLY = 1;
+
+  // The offsets of the record counts on the header page.
+  private static final int TABLE_NUM_RECORDS = Integer.BYTES;
+  private static final int STATS_NUM_RECORDS = TABLE_NUM_RECORDS + Long.BYTES;
+
+  private PageAllocator allocator;
+  private boolean valid;
+
+  // entries[pageNum] and freeSpace[pageNum] are the two ints of the entry of
+  // data page pageNum (see above).
+  private int[] entries;
+  private int[] freeSpace;
+
+  // The number of nonzero entries.
+  private int numEntries;
+
+  // The record counts of the header page (see above).
+  private long tableNumRecords;
+  private int statsNumRecords;
+
+  /**
+   * Open (or, if wipe is true, create) the free space map persisted in the
+   * file `filename` whose pages are cached in `bufferPool`.
+   */
+  FreeSpaceMap(String filename, BufferPool bufferPool, boolean wipe) {
+    this.allocator = new PageAllocator(filename, wipe, true, bufferPool);
+    this.entries = new int[0];
+    this.freeSpace = new int[0];
+    this.numEntries = 0;
+
+    if (this.allocator.getNumPages() == 0) {
+      this.allocator.allocPage();
+      // A new map is only valid for a new table.
+      this.valid = wipe;
+      return;
+    }
+
+    Page headerPage = this.allocator.fetchPage(0);
+    this.valid = headerPage.readInt(0) == CLOSED_CLEANLY;
+    if (this.valid) {
+      ByteBuffer header = headerPage.getReadOnlyByteBuffer();
+      this.tableNumRecords = header.getLong(TABLE_NUM_RECORDS);
+      this.statsNumRecords = header.getInt(STATS_NUM_RECORDS);
+    }
+    // Until the map is closed again, it may fall behind the table.
+    headerPage.writeInt(0, 0);
+    headerPage.flush();
+
+    int numEntryPages = this.allocator.getNumPages() - 1;
+    this.entries = new int[numEntryPages * ENTRIES_PER_PAGE];
+    this.freeSpace = new int[numEntryPages * ENTRIES_PER_PAGE];
+    if (!this.valid) {
+      // The entries are rebuilt from scratch.
+      return;
+    }
+    for (int i = 0; i < numEntryPages; ++i) {
+      ByteBuffer buf = ByteBuffer.wrap(this.allocator.fetchPage(1 + i).readBytes());
+      for (int j = 0; j < ENTRIES_PER_PAGE; ++j) {
+        int entry = buf.getInt();
+        this.entries[i * ENTRIES_PER_PAGE + j] = entry;
+        this.freeSpace[i * ENTRIES_PER_PAGE + j] = buf.getInt();
+        if (entry != 0) {
+          this.numEntries++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns whether the map was closed cleanly the last time it was open, so
+   * that it matches the table. A map that is not valid is still usable, but
+   * has to be rebuilt with setNumRecords.
+   */
+  boolean isValid() {
+    return this.valid;
+  }
+
+  /**
+   * Returns the number of records in the table when the map was last closed
+   * cleanly. Only meaningful if the map is valid.
+   */
+  long getTableNumRecords() {
+    return this.tableNumRecords;
+  }
+
+  /**
+   * Returns the number of records in the table's TableStats when the map was
+   * last closed cleanly. Only meaningful if the map is valid.
+   */
+  int getStatsNumRecords() {
+    return this.statsNumRecords;
+  }
+
+  /**
+   * Sets the record counts to write to the header page on close.
+   */
+  void setRecordCounts(long tableNumRecords, int statsNumRecords) {
+    this.tableNumRecords = tableNumRecords;
+    this.statsNumRecords = statsNumRecords;
+  }
+
+  /**
+   * Returns the number of data pages with an entry in the map.
+   */
+  int getNumEntries() {
+    return this.numEntries;
+  }
+
+  /**
+   * Returns a page number larger than that of every data page with an entry.
+   */
+  int getCapacity() {
+    return this.entries.length;
+  }
+
+  /**
+   * Returns the number of records on data page `pageNum`, or -1 if it has no
+   * entry.
+   */
+  int getNumRecords(int pageNum) {
+    if (pageNum >= this.entries.length) {
+      return -1;
+    }
+    return this.entries[pageNum] - 1;
+  }
+
+  /**
+   * Returns the number of free bytes on data page `pageNum`, or 0 if it has
+   * no entry or belongs to a table of fixed length records.
+   */
+  int getFreeSpace(int pageNum) {
+    if (pageNum >= this.freeSpace.length) {
+      return 0;
+    }
+    return this.freeSpace[pageNum];
+  }
+
+  /**
+   * Records that there are `numRecords` records on data page `pageNum` of a
+   * table of fixed length records.
+   */
+  void setNumRecords(int pageNum, int numRecords) {
+    setNumRecords(pageNum, numRecords, 0);
+  }
+
+  /**
+   * Records that there are `numRecords` records and `freeSpace` free bytes on
+   * data page `pageNum`.
+   */
+  void setNumRecords(int pageNum, int numRecords, int freeSpace) {
+    int entryPageNum = 1 + pageNum / ENTRIES_PER_PAGE;
+    while (this.allocator.getNumPages() <= entryPageNum) {
+      this.allocator.allocPage();
+    }
+    if (pageNum >= this.entries.length) {
+      int capacity = (this.allocator.getNumPages() - 1) * ENTRIES_PER_PAGE;
+      this.entries = Arrays.copyOf(this.entries, capacity);
+      this.freeSpace = Arrays.copyOf(this.freeSpace, capacity);
+    }
+
+    if (this.entries[pageNum] == 0) {
+      this.numEntries++;
+    }
+    int entry = numRecords + 1;
+    this.entries[pageNum] = entry;
+    this.freeSpace[pageNum] = freeSpace;
+    Page page = this.allocator.fetchPage(entryPageNum);
+    int offset = (pageNum % ENTRIES_PER_PAGE) * ENTRY_SIZE;
+    page.writeInt(offset, entry);
+    page.writeInt(offset + Integer.BYTES, freeSpace);
+  }
+
+  /**
+   * Marks the map as closed cleanly and closes it. The entries are forced to
+   * disk before the mark, so a mark on disk always comes with the entries it
+   * vouches for. The record counts are written with the mark, in the same
+   * page.
+   */
+  public void close() {
+    if (this.allocator == null) {
+      return;
+    }
+    for (int i = 1; i < this.allocator.getNumPages(); ++i) {
+      this.allocator.fetchPage(i).flush();
+    }
+    Page headerPage = this.allocator.fetchPage(0);
+    ByteBuffer header = ByteBuffer.allocate(STATS_NUM_RECORDS + Integer.BYTES);
+    header.putInt(CLOSED_CLEANLY).putLong(this.tableNumRecords).putInt(this.statsNumRecords);
+    headerPage.writeBytes(0, header.capacity(), header.array());
+    this.allocator.close();
+    this.allocator = null;
+  }
+}
@@ -2,10 +2,13 @@ package edu.berkeley.cs186.database.table;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
 
 /** A Record is just list of DataBoxes. */
 public class Record {
@@ -21,12 +24,85 @@ public class Record {
 
   public byte[] toBytes(Schema schema) {
     ByteBuffer byteBuffer = ByteBuffer.allocate(schema.getSizeInBytes());
-    for (DataBox value : values) {
-      byteBuffer.put(value.toBytes());
-    }
+    serialize(byteBuffer);
     return byteBuffer.array();
   }
 
+  /**
+   * Serializes this record (exactly like toBytes) straight into buf at its
+   * current position, advancing the position, without allocating anything.
+   * Tables use this to write records into their pages.
+   */
+  public void serialize(ByteBuffer buf) {
+    for (int i = 0; i < values.size(); ++i) {
+      values.get(i).serialize(buf);
+    }
+  }
+
+  /**
+   * Returns the number of bytes in the compact form of this record (see
+   * serializeCompact).
+   */
+  public int getCompactSizeInBytes() {
+    int size = 0;
+    for (int i = 0; i < values.size(); ++i) {
+      DataBox value = values.get(i);
+      if (value.type().getTypeId() == TypeId.STRING) {
+        size += ((StringDataBox) value).getCompactSizeInBytes();
+      } else {
+        size += value.type().getSizeInBytes();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Serializes the compact form of this record into buf at its current
+   * position, advancing the position. Variable length records (see
+   * Schema.isVariableLength) are stored in this form. It begins with the
+   * record's fields that are not strings, serialized as usual, so that each
+   * of them is at a fixed offset. The record's strings follow in their compact
+   * form (see StringDataBox.serializeCompact). For example, the record
+   * (1, "ab", 2.0) of schema (x: int, y: 20-byte string, z: float) is
+   * serialized as the 12 bytes
+   *
+   *   | 1 (4 bytes) | 2.0 (4 bytes) | 2 (2 bytes) | 'a' | 'b' |
+   *
+   * rather than the 28 bytes of its usual form.
+   */
+  public void serializeCompact(ByteBuffer buf) {
+    for (int i = 0; i < values.size(); ++i) {
+      if (values.get(i).type().getTypeId() != TypeId.STRING) {
+        values.get(i).serialize(buf);
+      }
+    }
+    for (int i = 0; i < values.size(); ++i) {
+      if (values.get(i).type().getTypeId() == TypeId.STRING) {
+        ((StringDataBox) values.get(i)).serializeCompact(buf);
+      }
+    }
+  }
+
+  /**
+   * Decodes the compact form of a record of schema `schema` (see
+   * serializeCompact) from buf at its current position.
+   */
+  public static Record fromCompactBytes(ByteBuffer buf, Schema schema) {
+    List<Type> fieldTypes = schema.getFieldTypes();
+    DataBox[] values = new DataBox[fieldTypes.size()];
+    for (int i = 0; i < fieldTypes.size(); ++i) {
+      if (fieldTypes.get(i).getTypeId() != TypeId.STRING) {
+        values[i] = DataBox.fromBytes(buf, fieldTypes.get(i));
+      }
+    }
+    for (int i = 0; i < fieldTypes.size(); ++i) {
+      if (fieldTypes.get(i).getTypeId() == TypeId.STRING) {
+        values[i] = StringDataBox.fromCompactBytes(buf, fieldTypes.get(i).getSizeInBytes());
+      }
+    }
+    return new Record(new ArrayList<DataBox>(Arrays.asList(values)));
+  }
+
   /**
    * Takes a byte[] and decodes it into a Record. This method assumes that the
    * input byte[] represents a record that corresponds to this schema.
@@ -36,9 +112,10 @@ public class Record {
    * @return the decoded Record
    */
   public static Record fromBytes(ByteBuffer buf, Schema schema) {
-    List<DataBox> values = new ArrayList<DataBox>();
-    for (Type t : schema.getFieldTypes()) {
-      values.add(DataBox.fromBytes(buf, t));
+    List<Type> fieldTypes = schema.getFieldTypes();
+    List<DataBox> values = new ArrayList<DataBox>(fieldTypes.size());
+    for (int i = 0; i < fieldTypes.size(); ++i) {
+      values.add(DataBox.fromBytes(buf, fieldTypes.get(i)));
     }
     return new Record(values);
   }
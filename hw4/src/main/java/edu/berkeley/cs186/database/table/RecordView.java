@@ -0,0 +1,234 @@
+package edu.berkeley.cs186.database.table;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.DataBoxException;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+
+/**
+ * A RecordView is a window onto a record where it is stored, in a page of a
+ * table. Its fields are decoded only when they are asked for, so that reading
+ * one field of a record does not decode (or allocate) the others:
+ *
+ *   Iterator<RecordView> iter = table.viewIterator();
+ *   while (iter.hasNext()) {
+ *     RecordView view = iter.next();
+ *     if (view.getInt(1) == 42) {
+ *       output(view.toRecord());
+ *     }
+ *   }
+ *
+ * Views are reused: an iterator moves the same view from record to record, so
+ * a view is only valid until the next call to next. Use toRecord to keep a
+ * record.
+ *
+ * Views read records of slotted pages (see Table.PageFormat) in their compact
+ * form (see Record.serializeCompact), and records of PAX tables
+ * (see Table.Layout) from the minipages of their fields.
+ */
+public class RecordView {
+  private Schema schema;
+  private ByteBuffer buf;
+  private int offset;
+
+  // Whether records are in their compact form. If they are, compactOffsets[i]
+  // is the offset of field i if it is not a string, and the number of strings
+  // before it if it is; the strings begin fixedSizeInBytes bytes in.
+  private boolean compact;
+  private int[] compactOffsets;
+  private int fixedSizeInBytes;
+
+  // For a PAX page, the offsets of the minipages of the fields and the entry
+  // number of the record, or null and 0.
+  private int[] columnOffsets;
+  private int entryNum;
+
+  /**
+   * Creates a view onto records of row pages, which are in their compact form
+   * if compact is true.
+   */
+  RecordView(Schema schema, boolean compact) {
+    this.schema = schema;
+    this.compact = compact;
+    if (compact) {
+      List<Type> fieldTypes = schema.getFieldTypes();
+      this.compactOffsets = new int[fieldTypes.size()];
+      int numStrings = 0;
+      for (int i = 0; i < fieldTypes.size(); ++i) {
+        if (fieldTypes.get(i).getTypeId() == TypeId.STRING) {
+          compactOffsets[i] = numStrings++;
+        } else {
+          compactOffsets[i] = fixedSizeInBytes;
+          fixedSizeInBytes += fieldTypes.get(i).getSizeInBytes();
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates a view onto records of PAX pages, on which the minipage of field
+   * i is at offset columnOffsets[i].
+   */
+  RecordView(Schema schema, int[] columnOffsets) {
+    this.schema = schema;
+    this.columnOffsets = columnOffsets;
+  }
+
+  /**
+   * Points this view at record entryNum of the PAX page buf.
+   */
+  void moveToEntry(ByteBuffer buf, int entryNum) {
+    this.buf = buf;
+    this.entryNum = entryNum;
+  }
+
+  /**
+   * Points this view at the record serialized at offset `offset` of buf.
+   */
+  void moveTo(ByteBuffer buf, int offset) {
+    this.buf = buf;
+    this.offset = offset;
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  public boolean getBool(int i) {
+    checkType(i, TypeId.BOOL, "not boolean type");
+    return buf.get(fieldOffset(i)) == 1;
+  }
+
+  public int getInt(int i) {
+    checkType(i, TypeId.INT, "not int type");
+    return buf.getInt(fieldOffset(i));
+  }
+
+  public float getFloat(int i) {
+    checkType(i, TypeId.FLOAT, "not float type");
+    return buf.getFloat(fieldOffset(i));
+  }
+
+  public String getString(int i) {
+    checkType(i, TypeId.STRING, "not String type");
+    if (compact || columnOffsets != null) {
+      return getField(i).getString();
+    }
+    byte[] bytes = new byte[schema.getFieldTypes().get(i).getSizeInBytes()];
+    buf.position(fieldOffset(i));
+    buf.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Compares field i of this record with the value of the same type
+   * serialized at offset valueOffset of value (see FieldComparator), without
+   * decoding either of them.
+   */
+  public int compareField(int i, ByteBuffer value, int valueOffset) {
+    if (compact && schema.getFieldTypes().get(i).getTypeId() == TypeId.STRING) {
+      return compareCompactString(i, value, valueOffset);
+    }
+    return schema.getFieldComparator(i).compare(buf, fieldOffset(i), value, valueOffset);
+  }
+
+  /**
+   * Returns whether field i equals the value serialized at offset valueOffset
+   * of value, like DataBox.equals (see FieldComparator.equals), without
+   * decoding either of them.
+   */
+  public boolean fieldEquals(int i, ByteBuffer value, int valueOffset) {
+    if (compact && schema.getFieldTypes().get(i).getTypeId() == TypeId.STRING) {
+      return compareCompactString(i, value, valueOffset) == 0;
+    }
+    return schema.getFieldComparator(i).equals(buf, fieldOffset(i), value, valueOffset);
+  }
+
+  /**
+   * Decodes field i into a DataBox.
+   */
+  public DataBox getField(int i) {
+    if (!compact && columnOffsets == null) {
+      return schema.readField(buf, offset, i);
+    }
+    Type type = schema.getFieldTypes().get(i);
+    buf.position(fieldOffset(i));
+    if (compact && type.getTypeId() == TypeId.STRING) {
+      return StringDataBox.fromCompactBytes(buf, type.getSizeInBytes());
+    }
+    return DataBox.fromBytes(buf, type);
+  }
+
+  /**
+   * Decodes the whole record. Unlike the view, the record stays valid after
+   * the view is moved.
+   */
+  public Record toRecord() {
+    if (columnOffsets != null) {
+      List<DataBox> values = new ArrayList<DataBox>(columnOffsets.length);
+      for (int i = 0; i < columnOffsets.length; ++i) {
+        values.add(getField(i));
+      }
+      return new Record(values);
+    }
+    buf.position(offset);
+    return compact ? Record.fromCompactBytes(buf, schema) : Record.fromBytes(buf, schema);
+  }
+
+  /**
+   * Returns the offset in buf of field i. A string of a compact record is
+   * found by skipping the strings before it.
+   */
+  private int fieldOffset(int i) {
+    if (columnOffsets != null) {
+      return columnOffsets[i] + entryNum * schema.getFieldTypes().get(i).getSizeInBytes();
+    }
+    if (!compact) {
+      return offset + schema.getFieldOffset(i);
+    }
+    if (schema.getFieldTypes().get(i).getTypeId() != TypeId.STRING) {
+      return offset + compactOffsets[i];
+    }
+    int fieldOffset = offset + fixedSizeInBytes;
+    for (int j = 0; j < compactOffsets[i]; ++j) {
+      fieldOffset += Short.BYTES + (buf.getShort(fieldOffset) & 0xFFFF);
+    }
+    return fieldOffset;
+  }
+
+  /**
+   * Compares compact string field i with the full-width string serialized at
+   * offset valueOffset of value. The missing trailing spaces of the field
+   * compare as spaces.
+   */
+  private int compareCompactString(int i, ByteBuffer value, int valueOffset) {
+    int fieldOffset = fieldOffset(i);
+    int n = buf.getShort(fieldOffset) & 0xFFFF;
+    int width = schema.getFieldTypes().get(i).getSizeInBytes();
+    for (int j = 0; j < width; ++j) {
+      int a = j < n ? buf.get(fieldOffset + Short.BYTES + j) & 0xFF : ' ';
+      int cmp = Integer.compare(a, value.get(valueOffset + j) & 0xFF);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return 0;
+  }
+
+  private void checkType(int i, TypeId expected, String msg) {
+    if (schema.getFieldTypes().get(i).getTypeId() != expected) {
+      throw new DataBoxException(msg);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return toRecord().toString();
+  }
+}
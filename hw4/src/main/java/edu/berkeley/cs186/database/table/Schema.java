@@ -8,7 +8,10 @@ import java.util.Objects;
 
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FieldComparator;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
 
 /**
  * The schema of a table includes the name and type of every one of its
@@ -21,19 +24,56 @@ import edu.berkeley.cs186.database.databox.Type;
  * represents a table with an int field named "x" and a float field named "y".
  */
 public class Schema {
+  // A schema with a string field at least this many bytes wide has variable
+  // length records (see isVariableLength).
+  public static final int MIN_VARIABLE_LENGTH_STRING_SIZE = 16;
+
   private List<String> fieldNames;
   private List<Type> fieldTypes;
   private int sizeInBytes;
 
+  // See isVariableLength, getMinCompactSizeInBytes, and
+  // getMaxCompactSizeInBytes.
+  private boolean variableLength;
+  private int minCompactSizeInBytes;
+  private int maxCompactSizeInBytes;
+
+  // fieldOffsets[i] is the offset of field i in a serialized record.
+  private int[] fieldOffsets;
+
+  // fieldComparators[i] compares serialized values of field i.
+  private FieldComparator[] fieldComparators;
+
   public Schema(List<String> fieldNames, List<Type> fieldTypes) {
     assert(fieldNames.size() == fieldTypes.size());
     this.fieldNames = fieldNames;
     this.fieldTypes = fieldTypes;
 
     sizeInBytes = 0;
+    fieldOffsets = new int[fieldTypes.size()];
+    fieldComparators = new FieldComparator[fieldTypes.size()];
+    for (int i = 0; i < fieldTypes.size(); ++i) {
+      fieldOffsets[i] = sizeInBytes;
+      fieldComparators[i] = FieldComparator.forType(fieldTypes.get(i));
+      sizeInBytes += fieldTypes.get(i).getSizeInBytes();
+    }
+
+    variableLength = false;
+    boolean compactable = true;
+    minCompactSizeInBytes = 0;
+    maxCompactSizeInBytes = 0;
     for (Type t : fieldTypes) {
-      sizeInBytes += t.getSizeInBytes();
+      if (t.getTypeId() == TypeId.STRING) {
+        variableLength |= t.getSizeInBytes() >= MIN_VARIABLE_LENGTH_STRING_SIZE;
+        compactable &= t.getSizeInBytes() <= StringDataBox.MAX_COMPACT_SIZE;
+        minCompactSizeInBytes += Short.BYTES;
+        maxCompactSizeInBytes += Short.BYTES + t.getSizeInBytes();
+      } else {
+        minCompactSizeInBytes += t.getSizeInBytes();
+        maxCompactSizeInBytes += t.getSizeInBytes();
+      }
     }
+    variableLength &= compactable;
   }
 
   public List<String> getFieldNames() {
@@ -48,6 +88,58 @@ public class Schema {
     return sizeInBytes;
   }
 
+  /**
+   * Returns whether records of this schema vary in length, which is the case
+   * if it has a wide string field (of at least MIN_VARIABLE_LENGTH_STRING_SIZE
+   * bytes). Such records are stored in their compact form (see
+   * Record.serializeCompact), in which strings take up as many bytes as they
+   * have characters rather than their full width, and tables created with
+   * such records store them in slotted pages (see Table.PageFormat).
+   */
+  public boolean isVariableLength() {
+    return variableLength;
+  }
+
+  /**
+   * Returns the size of the smallest compact record of this schema, whose
+   * strings are all empty.
+   */
+  public int getMinCompactSizeInBytes() {
+    return minCompactSizeInBytes;
+  }
+
+  /**
+   * Returns the size of the largest compact record of this schema, whose
+   * strings are all full.
+   */
+  public int getMaxCompactSizeInBytes() {
+    return maxCompactSizeInBytes;
+  }
+
+  /**
+   * Returns the offset of field i from the start of a serialized record. For
+   * example, field y of the schema (x: int, y: float) is at offset 4.
+   */
+  public int getFieldOffset(int i) {
+    return fieldOffsets[i];
+  }
+
+  /**
+   * Returns a comparator for serialized values of field i.
+   */
+  public FieldComparator getFieldComparator(int i) {
+    return fieldComparators[i];
+  }
+
+  /**
+   * Decodes just field i of the record serialized at offset recordOffset of
+   * buf, without decoding the rest of the record. Moves the position of buf.
+   */
+  public DataBox readField(ByteBuffer buf, int recordOffset, int i) {
+    buf.position(recordOffset + fieldOffsets[i]);
+    return DataBox.fromBytes(buf, fieldTypes.get(i));
+  }
+
   // TODO(mwhittaker): Rename to something more descriptive.
   public Record verify(List<DataBox> values) throws DatabaseException {
     if (values.size() != fieldNames.size()) {
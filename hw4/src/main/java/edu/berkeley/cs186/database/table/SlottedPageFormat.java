@@ -0,0 +1,315 @@
+package edu.berkeley.cs186.database.table;
+
+import java.nio.ByteBuffer;
+
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+
+/**
+ * A SlottedPageFormat reads and writes the data pages of a table of variable
+ * length records (see Table.PageFormat), which are slotted pages. A
+ * record's id names its slot, which holds the offset of the record on the
+ * page, so records can be moved around on their page (to make room for other
+ * records, or for themselves when they grow) without changing their ids.
+ *
+ * # Storage Format
+ *   1. A page begins with a HEADER_SIZE-byte header of four ints: the number
+ *      of slots, the number of slots in use, the offset of the first byte of
+ *      record data (or 0, meaning the end of the page, if there is none), and
+ *      the number of bytes of record data.
+ *   2. The slots follow the header. A slot is an int that is 0 if the slot is
+ *      empty, and otherwise holds the offset of its record in its low bits
+ *      and the kind of the record (see below) in its high bits.
+ *   3. Records are stored in their compact form (see Record.serializeCompact)
+ *      from the end of the page towards the slots. Free space is between the
+ *      last slot and the first record, and in the holes left by deleted or
+ *      shrunk records, which are squeezed out when needed.
+ *
+ * A page of all zeros is an empty page, so new pages need not be formatted.
+ *
+ * A record that grows too large for its page is moved to another page (as a
+ * MOVED record), and leaves behind a STUB_SIZE-byte FORWARDED record holding
+ * the id of its new slot, so that its id does not change. Every record takes
+ * up at least STUB_SIZE bytes, so that it can always be replaced by a stub.
+ */
+class SlottedPageFormat {
+  static final int HEADER_SIZE = 4 * Integer.BYTES;
+  static final int SLOT_SIZE = Integer.BYTES;
+  static final int STUB_SIZE = Integer.BYTES + Short.BYTES;
+
+  // The kinds of records.
+  static final int RECORD = 0;
+  static final int FORWARDED = 1 << 30;
+  static final int MOVED = 1 << 29;
+  private static final int OFFSET_MASK = MOVED - 1;
+
+  // The offsets of the ints of the header.
+  private static final int NUM_SLOTS = 0;
+  private static final int NUM_USED_SLOTS = 4;
+  private static final int DATA_START = 8;
+  private static final int DATA_SIZE = 12;
+
+  private int pageSize;
+  private int maxNumSlots;
+
+  // Every compact record of the schema begins with fixedSizeInBytes bytes of
+  // fields that are not strings, followed by numStrings strings.
+  private int fixedSizeInBytes;
+  private int numStrings;
+
+  SlottedPageFormat(Schema schema, int pageSize) {
+    this.pageSize = pageSize;
+    for (Type t : schema.getFieldTypes()) {
+      if (t.getTypeId() == TypeId.STRING) {
+        numStrings++;
+      } else {
+        fixedSizeInBytes += t.getSizeInBytes();
+      }
+    }
+    int minRecordSize = getAllocatedSize(schema.getMinCompactSizeInBytes());
+    this.maxNumSlots = Math.min((pageSize - HEADER_SIZE) / (SLOT_SIZE + minRecordSize),
+                                Table.MAX_RECORDS_PER_PAGE);
+  }
+
+  /**
+   * Returns the largest number of slots a page can have.
+   */
+  int getMaxNumSlots() {
+    return maxNumSlots;
+  }
+
+  /**
+   * Returns the number of bytes a record of recordSize bytes takes up on a
+   * page, not counting its slot.
+   */
+  int getAllocatedSize(int recordSize) {
+    return Math.max(recordSize, STUB_SIZE);
+  }
+
+  /**
+   * Returns the number of free bytes a page needs to be sure to have room for
+   * a record of recordSize bytes.
+   */
+  int getSpaceNeeded(int recordSize) {
+    return getAllocatedSize(recordSize) + SLOT_SIZE;
+  }
+
+  /**
+   * Returns the number of free bytes on an empty page.
+   */
+  int getEmptyPageFreeSpace() {
+    return pageSize - HEADER_SIZE;
+  }
+
+  int getNumSlots(ByteBuffer buf) {
+    return buf.getInt(NUM_SLOTS);
+  }
+
+  /**
+   * Returns the number of free bytes on the page.
+   */
+  int getFreeSpace(ByteBuffer buf) {
+    return pageSize - HEADER_SIZE - SLOT_SIZE * getNumSlots(buf) - buf.getInt(DATA_SIZE);
+  }
+
+  /**
+   * Returns the kind of the record in slot `slot`, or -1 if the slot does not
+   * exist or is empty.
+   */
+  int getKind(ByteBuffer buf, int slot) {
+    if (slot >= getNumSlots(buf) || getSlot(buf, slot) == 0) {
+      return -1;
+    }
+    return getSlot(buf, slot) & ~OFFSET_MASK;
+  }
+
+  /**
+   * Returns the offset of the record in slot `slot`.
+   */
+  int getOffset(ByteBuffer buf, int slot) {
+    return getSlot(buf, slot) & OFFSET_MASK;
+  }
+
+  /**
+   * Returns the number of records on the page that are not MOVED records,
+   * which are those that have their ids on the page.
+   */
+  int getNumRecords(ByteBuffer buf) {
+    int n = 0;
+    for (int slot = 0; slot < getNumSlots(buf); ++slot) {
+      int kind = getKind(buf, slot);
+      if (kind == RECORD || kind == FORWARDED) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Reads the id of the slot a FORWARDED record points to.
+   */
+  RecordId readStub(ByteBuffer buf, int slot) {
+    int offset = getOffset(buf, slot);
+    return new RecordId(buf.getInt(offset), buf.getShort(offset + Integer.BYTES));
+  }
+
+  /**
+   * Points the FORWARDED record in slot `slot` at `rid`.
+   */
+  void writeStub(ByteBuffer buf, int slot, RecordId rid) {
+    int offset = getOffset(buf, slot);
+    buf.putInt(offset, rid.getPageNum());
+    buf.putShort(offset + Integer.BYTES, rid.getEntryNum());
+  }
+
+  /**
+   * Makes room for a record of recordSize bytes of kind `kind` in an empty
+   * slot, and returns the slot, or -1 if there is not enough room on the page.
+   * The caller writes the record at getOffset(buf, slot).
+   */
+  int insert(ByteBuffer buf, int recordSize, int kind) {
+    int size = getAllocatedSize(recordSize);
+    int numSlots = getNumSlots(buf);
+    int slot;
+    if (buf.getInt(NUM_USED_SLOTS) < numSlots) {
+      slot = 0;
+      while (getSlot(buf, slot) != 0) {
+        slot++;
+      }
+    } else if (numSlots < maxNumSlots) {
+      slot = numSlots;
+    } else {
+      return -1;
+    }
+
+    boolean newSlot = slot == numSlots;
+    int offset = allocate(buf, size, newSlot ? SLOT_SIZE : 0);
+    if (offset == -1) {
+      return -1;
+    }
+    if (newSlot) {
+      buf.putInt(NUM_SLOTS, numSlots + 1);
+    }
+    buf.putInt(NUM_USED_SLOTS, buf.getInt(NUM_USED_SLOTS) + 1);
+    setSlot(buf, slot, offset | kind);
+    return slot;
+  }
+
+  /**
+   * Makes room in slot `slot` for a record of recordSize bytes of kind
+   * `kind`, which replaces the record in the slot, and returns whether there
+   * was enough room on the page. The caller writes the record at
+   * getOffset(buf, slot).
+   */
+  boolean replace(ByteBuffer buf, int slot, int recordSize, int kind) {
+    int size = getAllocatedSize(recordSize);
+    int offset = getOffset(buf, slot);
+    int oldSize = getStoredSize(buf, slot);
+    if (size <= oldSize) {
+      // The record shrinks in place, leaving a hole after it.
+      buf.putInt(DATA_SIZE, buf.getInt(DATA_SIZE) - (oldSize - size));
+      setSlot(buf, slot, offset | kind);
+      return true;
+    }
+    if (getFreeSpace(buf) + oldSize < size) {
+      return false;
+    }
+    // Free the old record, keeping its slot, then allocate as for a new one.
+    buf.putInt(DATA_SIZE, buf.getInt(DATA_SIZE) - oldSize);
+    setSlot(buf, slot, 0);
+    setSlot(buf, slot, allocate(buf, size, 0) | kind);
+    return true;
+  }
+
+  /**
+   * Empties slot `slot`.
+   */
+  void remove(ByteBuffer buf, int slot) {
+    int offset = getOffset(buf, slot);
+    int size = getStoredSize(buf, slot);
+    buf.putInt(DATA_SIZE, buf.getInt(DATA_SIZE) - size);
+    if (offset == getDataStart(buf)) {
+      buf.putInt(DATA_START, offset + size);
+    }
+    setSlot(buf, slot, 0);
+    buf.putInt(NUM_USED_SLOTS, buf.getInt(NUM_USED_SLOTS) - 1);
+
+    // Trailing empty slots are given back.
+    int numSlots = getNumSlots(buf);
+    while (numSlots > 0 && getSlot(buf, numSlots - 1) == 0) {
+      numSlots--;
+    }
+    buf.putInt(NUM_SLOTS, numSlots);
+  }
+
+  // Helpers ///////////////////////////////////////////////////////////////////
+  private int getSlot(ByteBuffer buf, int slot) {
+    return buf.getInt(HEADER_SIZE + slot * SLOT_SIZE);
+  }
+
+  private void setSlot(ByteBuffer buf, int slot, int value) {
+    buf.putInt(HEADER_SIZE + slot * SLOT_SIZE, value);
+  }
+
+  private int getDataStart(ByteBuffer buf) {
+    int dataStart = buf.getInt(DATA_START);
+    return dataStart == 0 ? pageSize : dataStart;
+  }
+
+  /**
+   * Returns the number of bytes the record in slot `slot` takes up.
+   */
+  private int getStoredSize(ByteBuffer buf, int slot) {
+    if ((getSlot(buf, slot) & FORWARDED) != 0) {
+      return STUB_SIZE;
+    }
+    int offset = getOffset(buf, slot);
+    int end = offset + fixedSizeInBytes;
+    for (int i = 0; i < numStrings; ++i) {
+      end += Short.BYTES + (buf.getShort(end) & 0xFFFF);
+    }
+    return getAllocatedSize(end - offset);
+  }
+
+  /**
+   * Allocates size bytes of record data, squeezing out the holes between
+   * records if need be, and returns their offset, or -1 if there are not
+   * size free bytes on the page after growing the slots by extraSlotBytes.
+   */
+  private int allocate(ByteBuffer buf, int size, int extraSlotBytes) {
+    if (getFreeSpace(buf) - extraSlotBytes < size) {
+      return -1;
+    }
+    int slotsEnd = HEADER_SIZE + SLOT_SIZE * getNumSlots(buf) + extraSlotBytes;
+    if (getDataStart(buf) - slotsEnd < size) {
+      compact(buf);
+    }
+    int offset = getDataStart(buf) - size;
+    buf.putInt(DATA_START, offset);
+    buf.putInt(DATA_SIZE, buf.getInt(DATA_SIZE) + size);
+    return offset;
+  }
+
+  /**
+   * Moves every record to the end of the page, so that all of the free space
+   * is between the slots and the records.
+   */
+  private void compact(ByteBuffer buf) {
+    byte[] data = new byte[pageSize];
+    int end = pageSize;
+    for (int slot = 0; slot < getNumSlots(buf); ++slot) {
+      int value = getSlot(buf, slot);
+      if (value == 0) {
+        continue;
+      }
+      int size = getStoredSize(buf, slot);
+      end -= size;
+      buf.position(value & OFFSET_MASK);
+      buf.get(data, end, size);
+      setSlot(buf, slot, end | (value & ~OFFSET_MASK));
+    }
+    buf.position(end);
+    buf.put(data, end, pageSize - end);
+    buf.putInt(DATA_START, end);
+  }
+}
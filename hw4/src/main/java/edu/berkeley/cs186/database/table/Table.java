@@ -1,5 +1,6 @@
 package edu.berkeley.cs186.database.table;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.io.Closeable;
 import java.nio.ByteBuffer;
@@ -13,8 +14,10 @@ import edu.berkeley.cs186.database.common.ArrayBacktrackingIterator;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.BufferPool;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -53,6 +56,24 @@ import edu.berkeley.cs186.database.table.stats.TableStats;
  *   // Don't forget to close the table.
  *   t.close();
  *
+ * By default, tables use Page.pageSize byte pages. A table can instead be
+ * created with a larger page size (see PageAllocator), which is recorded in
+ * its file, so loading the table picks it up again.
+ *
+ * Alongside its file, every table keeps a free space map (see FreeSpaceMap)
+ * in a file with the same name followed by FREE_SPACE_MAP_EXTENSION. It
+ * records the number of records on each data page, and the number of records
+ * in the table and in its stats, so loading a table that was closed cleanly
+ * does not read its data pages. Only these counts are persisted, and they are
+ * kept in the map rather than in the table's header page: the histograms of
+ * the table's stats are not, and are rebuilt by a full scan of the table the
+ * next time buildStatistics is called.
+ *
+ * By default, every table caches its pages in a buffer pool of its own. A
+ * table can instead be handed a BufferPool shared with other tables and
+ * indexes (see Database), in which case the pool bounds the number of pages
+ * cached across all of them.
+ *
  * # Storage Format
  * Now, we discuss how tables serialize their data into files.
  *
@@ -92,12 +113,86 @@ import edu.berkeley.cs186.database.table.stats.TableStats;
  *  - The third and fourth page (Page 2 and 3) are also data pages and are
  *    formatted similar to Page 1.
  *
- *  When we add a record to a table, we add it to the very first free slot in
- *  the table. See addRecord for more information.
+ *  When we add a record to a table, we add it to the first free slot of the
+ *  first page with room for it. See addRecord for more information.
+ *
+ * # Variable Length Records
+ * The format above gives every record its full width, which wastes most of a
+ * page on tables with wide strings that are mostly short. So tables whose
+ * schema has variable length records (see Schema.isVariableLength) instead
+ * store their records in their compact form (see Record.serializeCompact) on
+ * slotted pages (see SlottedPageFormat), where each record takes up only as
+ * many bytes as it needs. The format is picked from the schema when the table
+ * is created and stored in the header page (see PageFormat), so a loaded
+ * table keeps the format it was created with. On slotted pages, the free space map also records
+ * the number of free bytes on each page, and a record is added to the first
+ * page with enough of them. A record that outgrows its page when it is
+ * updated is moved to another page and leaves a forwarding stub behind, so
+ * that its record id does not change.
+ *
+ * # PAX Layout
+ * A table can instead be created with the PAX layout (see Layout), which
+ * keeps the bitmap and the number of records per page of the format above,
+ * but stores each page's records column by column: the bitmap is followed by
+ * a minipage for each field, holding that field of every record on the page.
+ * Scans that read a few fields of wide records through a RecordView (see
+ * viewIterator) then only touch those fields' minipages. Records are stored
+ * at their full width in PAX tables, even variable length ones. The layout
+ * is recorded in the header page, right after the schema.
+ *
+ * # Compressed Layout
+ * Tables that are written once and then only read, such as historical
+ * tables, can instead be created with the compressed layout, which stores
+ * each page's records column by column with every column compressed (see
+ * CompressedPageFormat). Records are added to compressed tables in bulk with
+ * insertRecords: each call fills new pages, packing as many records into each
+ * as fit, and pages are never changed after. Records of compressed tables
+ * cannot be updated or deleted. Pages are decompressed when they are read:
+ * once per page by the iterators, and getRecord keeps the last page it
+ * decompressed.
  */
 public class Table implements Iterable<Record>, Closeable {
   public static final String FILENAME_PREFIX = "db";
   public static final String FILENAME_EXTENSION = ".table";
+  public static final String FREE_SPACE_MAP_EXTENSION = ".fsm";
+
+  // When a table runs out of free pages, it allocates a physically contiguous
+  // extent of 1/EXTENT_GROWTH_DIVISOR of its current size (at least 1 and at
+  // most MAX_EXTENT_PAGES pages), so that large tables are laid out in long
+  // contiguous runs while small tables do not waste space.
+  static final int EXTENT_GROWTH_DIVISOR = 8;
+  static final int MAX_EXTENT_PAGES = 64;
+
+  // Entry numbers of record ids are shorts.
+  static final int MAX_RECORDS_PER_PAGE = Short.MAX_VALUE + 1;
+
+  /**
+   * The layout of the records on a table's data pages (see the class
+   * comment). Its ordinal is stored in the header page, so layouts must only
+   * be added at the end.
+   */
+  public enum Layout {
+    // Records are stored one after another: in slotted pages if they are of
+    // variable length, and after a bitmap otherwise.
+    ROW,
+    // Records are stored column by column after a bitmap.
+    PAX,
+    // Records are stored column by column, compressed, and cannot change.
+    COMPRESSED
+  }
+
+  /**
+   * The format of the data pages of a ROW table (see the class comment). Its
+   * ordinal is stored in the header page after the layout. Tables written
+   * before there were slotted pages have a zero there, which is the ordinal
+   * of BITMAP, so formats must only be added at the end.
+   */
+  public enum PageFormat {
+    // Fixed length records after a bitmap.
+    BITMAP,
+    // Variable length records in slots (see SlottedPageFormat).
+    SLOTTED
+  }
 
   // The name of the database.
   private String name;
@@ -117,12 +212,36 @@ public class Table implements Iterable<Record>, Closeable {
   // The number of records on each data page.
   private int numRecordsPerPage;
 
+  // The format of the data pages of a table of variable length records, or
+  // null for a table of fixed length records.
+  private SlottedPageFormat slottedFormat;
+
+  // The layout of the table's data pages. In a PAX table, columnOffsets[i] is
+  // the offset of the minipage of field i on every data page.
+  private Layout layout;
+  private int[] columnOffsets;
+
+  // The format of the data pages of a ROW table; BITMAP for other layouts.
+  private PageFormat pageFormat;
+
+  // The format of the data pages of a compressed table, or null. The last
+  // page getRecord decompressed is kept in decodedPage (see
+  // decodeCompressedPage), with the offsets of its minipages in
+  // decodedColumnOffsets.
+  private CompressedPageFormat compressedFormat;
+  private int decodedPageNum = 0;
+  private ByteBuffer decodedPage;
+  private int[] decodedColumnOffsets;
+
   // Statistics about the contents of the database.
   private TableStats stats;
 
   // The page numbers of all allocated pages which have room for more records.
   private TreeSet<Integer> freePageNums;
 
+  // The number of records on every data page.
+  private FreeSpaceMap freeSpaceMap;
+
   // The number of records in the table.
   private long numRecords;
 
@@ -132,17 +251,48 @@ public class Table implements Iterable<Record>, Closeable {
    * file `filename`.
    */
   public Table(String name, Schema schema, String filename) {
+    this(name, schema, filename, new BufferPool());
+  }
+
+  /**
+   * Construct a brand new table named `name` with schema `schema` persisted in
+   * file `filename` whose pages are cached in `bufferPool`.
+   */
+  public Table(String name, Schema schema, String filename, BufferPool bufferPool) {
+    this(name, schema, filename, bufferPool, Page.pageSize);
+  }
+
+  /**
+   * Construct a brand new table named `name` with schema `schema` persisted in
+   * file `filename` with pages of `pageSize` bytes, whose pages are cached in
+   * `bufferPool`.
+   */
+  public Table(String name, Schema schema, String filename, BufferPool bufferPool,
+               int pageSize) {
+    this(name, schema, filename, bufferPool, pageSize, Layout.ROW);
+  }
+
+  /**
+   * Construct a brand new table named `name` with schema `schema` persisted in
+   * file `filename` with pages of `pageSize` bytes laid out with `layout`,
+   * whose pages are cached in `bufferPool`.
+   */
+  public Table(String name, Schema schema, String filename, BufferPool bufferPool,
+               int pageSize, Layout layout) {
     this.name = name;
     this.filename = filename;
     this.schema = schema;
-    this.allocator = new PageAllocator(filename, true);
-    this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, schema);
-    numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, schema);
-    this.stats = new TableStats(this.schema);
+    this.layout = layout;
+    this.pageFormat = layout == Layout.ROW && schema.isVariableLength()
+                      ? PageFormat.SLOTTED : PageFormat.BITMAP;
+    this.allocator = new PageAllocator(filename, true, true, bufferPool, pageSize);
+    initDataPageFormat(pageSize);
+    this.stats = new TableStats(this.schema, pageSize);
     this.freePageNums = new TreeSet<Integer>();
+    this.freeSpaceMap = new FreeSpaceMap(filename + FREE_SPACE_MAP_EXTENSION, bufferPool, true);
     this.numRecords = 0;
 
-    writeSchemaToHeaderPage(allocator, schema);
+    writeHeaderPage(allocator, schema, layout, pageFormat);
   }
 
   /**
@@ -150,37 +300,57 @@ public class Table implements Iterable<Record>, Closeable {
    * table will be read from the header page of the file.
    */
   public Table(String name, String filename) throws DatabaseException {
+    this(name, filename, new BufferPool());
+  }
+
+  /**
+   * Load a table named `name` from the file `filename` whose pages are cached
+   * in `bufferPool`.
+   */
+  public Table(String name, String filename, BufferPool bufferPool) throws DatabaseException {
     this.name = name;
     this.filename = filename;
-    this.allocator = new PageAllocator(filename, false);
-    this.schema = readSchemaFromHeaderPage(this.allocator);
-    this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, this.schema);
-    this.numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, this.schema);
-
-    // We compute the stats, free pages, and number of records naively. We
-    // iterate through every single data page of the file, and for each data
-    // data page, we use the bitmap to read every single record.
-    this.stats = new TableStats(this.schema);
+    this.allocator = new PageAllocator(filename, false, bufferPool);
+    readHeaderPage();
+    int pageSize = this.allocator.getPageSize();
+    initDataPageFormat(pageSize);
+
+    // We compute the free pages from the free space map, and take the number
+    // of records (in the table and in its stats) from its header. If the map
+    // was not closed cleanly (or does not cover every data page), we instead
+    // count the records on every data page using its bitmap, and rebuild the
+    // map as we go.
     this.freePageNums = new TreeSet<Integer>();
+    this.freeSpaceMap = new FreeSpaceMap(filename + FREE_SPACE_MAP_EXTENSION, bufferPool, false);
     this.numRecords = 0;
 
-    Iterator<Page> iter = this.allocator.iterator();
-    iter.next(); // Skip the header page.
-    while(iter.hasNext()) {
-      Page page = iter.next();
-      byte[] bitmap = getBitMap(page);
-
-      for (short i = 0; i < numRecordsPerPage; ++i) {
-        if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
-          Record r = getRecord(new RecordId(page.getPageNum(), i));
-          stats.addRecord(r);
-          numRecords++;
+    if (freeSpaceMap.isValid() && freeSpaceMap.getNumEntries() == getNumDataPages()) {
+      for (int pageNum = 1; pageNum < freeSpaceMap.getCapacity(); ++pageNum) {
+        int numRecordsOnPage = freeSpaceMap.getNumRecords(pageNum);
+        if (numRecordsOnPage >= 0
+            && hasRoom(numRecordsOnPage, freeSpaceMap.getFreeSpace(pageNum))) {
+          freePageNums.add(pageNum);
         }
       }
-
-      if (numRecordsOnPage(page) != numRecordsPerPage) {
-        freePageNums.add(page.getPageNum());
+      this.numRecords = freeSpaceMap.getTableNumRecords();
+      this.stats = new TableStats(this.schema, pageSize, freeSpaceMap.getStatsNumRecords());
+    } else {
+      Iterator<Page> iter = this.allocator.iterator();
+      iter.next(); // Skip the header page.
+      while(iter.hasNext()) {
+        Page page = iter.next();
+        int numRecordsOnPage = numRecordsOnPage(page);
+        int freeSpace = 0;
+        if (slottedFormat != null) {
+          freeSpace = slottedFormat.getFreeSpace(page.getReadOnlyByteBuffer());
+        }
+        freeSpaceMap.setNumRecords(page.getPageNum(), numRecordsOnPage, freeSpace);
+        numRecords += numRecordsOnPage;
+        if (hasRoom(numRecordsOnPage, freeSpace)) {
+          freePageNums.add(page.getPageNum());
+        }
       }
+      this.stats = new TableStats(this.schema, pageSize, (int) numRecords);
     }
   }
 
@@ -209,6 +379,18 @@ public class Table implements Iterable<Record>, Closeable {
     return numRecordsPerPage;
   }
 
+  public int getPageSize() {
+    return allocator.getPageSize();
+  }
+
+  public Layout getLayout() {
+    return layout;
+  }
+
+  public PageFormat getPageFormat() {
+    return pageFormat;
+  }
+
   public TableStats getStats() {
     return stats;
   }
@@ -223,10 +405,29 @@ public class Table implements Iterable<Record>, Closeable {
   }
 
   // elsewhere reads the bitmap of tables, so we're forced to make it public.
-  // We should refactor to avoid this.
+  // We should refactor to avoid this. Slotted and compressed pages have no
+  // bitmap, so for them, we make one up from their slots or record counts.
   public byte[] getBitMap(Page page) {
     byte[] bytes = new byte[bitmapSizeInBytes];
-    page.getByteBuffer().get(bytes);
+    if (compressedFormat != null) {
+      ByteBuffer bitmap = ByteBuffer.wrap(bytes);
+      int n = compressedFormat.getNumRecords(page.getReadOnlyByteBuffer());
+      for (int i = 0; i < n; ++i) {
+        Bits.setBit(bitmap, i, Bits.Bit.ONE);
+      }
+      return bytes;
+    }
+    if (slottedFormat == null) {
+      page.getReadOnlyByteBuffer().get(bytes);
+      return bytes;
+    }
+    ByteBuffer buf = page.getReadOnlyByteBuffer();
+    ByteBuffer bitmap = ByteBuffer.wrap(bytes);
+    for (int slot = 0; slot < slottedFormat.getNumSlots(buf); ++slot) {
+      if (isSlottedRecord(buf, slot)) {
+        Bits.setBit(bitmap, slot, Bits.Bit.ONE);
+      }
+    }
     return bytes;
   }
 
@@ -253,11 +454,25 @@ public class Table implements Iterable<Record>, Closeable {
   }
 
   private synchronized void insertRecord(Page page, int entryNum, Record record) {
-    int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
-    byte[] bytes = record.toBytes(schema);
-    ByteBuffer buf = page.getByteBuffer();
-    buf.position(offset);
-    buf.put(bytes);
+    writeRecord(page.getByteBuffer(), entryNum, record);
+  }
+
+  /**
+   * Serializes record straight into slot entryNum of buf, the buffer of a
+   * data page, without allocating anything (see Record#serialize). In a PAX
+   * table, each field goes into its own minipage.
+   */
+  private void writeRecord(ByteBuffer buf, int entryNum, Record record) {
+    if (layout == Layout.PAX) {
+      List<DataBox> values = record.getValues();
+      for (int i = 0; i < values.size(); ++i) {
+        buf.position(getColumnEntryOffset(i, entryNum));
+        values.get(i).serialize(buf);
+      }
+      return;
+    }
+    buf.position(bitmapSizeInBytes + (entryNum * schema.getSizeInBytes()));
+    record.serialize(buf);
   }
 
   /**
@@ -267,40 +482,136 @@ public class Table implements Iterable<Record>, Closeable {
    * page (if one exists, otherwise one is allocated). For example, if the
    * first free page has bitmap 0b11101000, then the record is inserted into
    * the page with index 3 and the bitmap is updated to 0b11111000.
+   *
+   * The free slot is found 64 bits of the bitmap at a time (see
+   * Bits.firstZeroBit), and the number of records on the page comes from the
+   * free space map, so adding a record does not depend on how full its page
+   * is.
+   *
+   * Records cannot be added to compressed tables one at a time, as each would
+   * take up a page of its own; they are added in bulk with insertRecords.
    */
   public synchronized RecordId addRecord(List<DataBox> values) throws DatabaseException {
+    if (compressedFormat != null) {
+      String msg = String.format("Table %s is compressed, so its records are added in bulk " +
+                                 "with insertRecords (or Transaction#addRecords).", name);
+      throw new DatabaseException(msg);
+    }
     Record record = schema.verify(values);
+    if (slottedFormat != null) {
+      RecordId rid = insertSlottedRecord(record, SlottedPageFormat.RECORD, 0);
+      stats.addRecord(record);
+      numRecords++;
+      return rid;
+    }
 
-    // Get a free page, allocating a new one if necessary.
+    // Get a free page, allocating a new extent if necessary.
     if (freePageNums.isEmpty()) {
-      freePageNums.add(allocator.allocPage());
+      allocateExtent(1);
     }
-    Page page = allocator.fetchPage(freePageNums.first());
-
-    // Find the first empty slot in the bitmap.
-    // entry number of the first free slot and store it in entryNum; and (2) we
-    // count the total number of entries on this page.
-    byte[] bitmap = getBitMap(page);
-    int entryNum = 0;
-    for (; entryNum < numRecordsPerPage; ++entryNum) {
-      if (Bits.getBit(bitmap, entryNum) == Bits.Bit.ZERO) {
-        break;
+    int pageNum = freePageNums.first();
+    Page page = allocator.pinPage(pageNum);
+    try {
+      // Find the first empty slot in the bitmap.
+      int entryNum = Bits.firstZeroBit(page.getByteBuffer(), bitmapSizeInBytes);
+      assert(0 <= entryNum && entryNum < numRecordsPerPage);
+
+      // Insert the record and update the bitmap.
+      insertRecord(page, entryNum, record);
+      Bits.setBit(page.getByteBuffer(), entryNum, Bits.Bit.ONE);
+
+      // Update the metadata.
+      stats.addRecord(record);
+      int numRecordsOnPage = freeSpaceMap.getNumRecords(pageNum) + 1;
+      freeSpaceMap.setNumRecords(pageNum, numRecordsOnPage);
+      if (numRecordsOnPage == numRecordsPerPage) {
+        freePageNums.pollFirst();
       }
+      numRecords++;
+
+      return new RecordId(page.getPageNum(), (short) entryNum);
+    } finally {
+      allocator.unpinPage(page, true);
     }
-    assert(entryNum < numRecordsPerPage);
+  }
 
-    // Insert the record and update the bitmap.
-    insertRecord(page, entryNum, record);
-    Bits.setBit(page.getByteBuffer(), entryNum, Bits.Bit.ONE);
+  /**
+   * insertRecords adds many records to this table at once and returns their
+   * record ids, in order. It is equivalent to calling addRecord on each of the
+   * records, but much cheaper: every record is verified before any is added
+   * (so either all of the records are added or none are), and records are
+   * added a page at a time, filling the free slots of a page before moving on
+   * to the next. Each page is pinned once and its records are written
+   * straight into it, and stats, freePageNums, and the free space map are
+   * updated once per page rather than once per record. A table that runs out
+   * of free pages grows by an extent big enough for the remaining records (up
+   * to MAX_EXTENT_PAGES pages). Records of variable length (see
+   * Schema.isVariableLength) are still verified up front, but are then added
+   * one at a time, as it is their sizes that decide how many fit on a page.
+   * Records of compressed tables are compressed into new pages, as many to a
+   * page as fit (see CompressedPageFormat), so they should be added in large
+   * batches.
+   *
+   *   List<List<DataBox>> rows = new ArrayList<>();
+   *   rows.add(Arrays.asList(new IntDataBox(1), new IntDataBox(2)));
+   *   rows.add(Arrays.asList(new IntDataBox(3), new IntDataBox(4)));
+   *   List<RecordId> rids = t.insertRecords(rows);
+   */
+  public synchronized List<RecordId> insertRecords(List<List<DataBox>> rows)
+      throws DatabaseException {
+    List<Record> records = new ArrayList<Record>(rows.size());
+    for (List<DataBox> values : rows) {
+      records.add(schema.verify(values));
+    }
 
-    // Update the metadata.
-    stats.addRecord(record);
-    if (numRecordsOnPage(page) == numRecordsPerPage) {
-      freePageNums.pollFirst();
+    List<RecordId> rids = new ArrayList<RecordId>(records.size());
+    if (compressedFormat != null) {
+      insertCompressedRecords(records, rids);
+      return rids;
+    }
+    if (slottedFormat != null) {
+      for (Record record : records) {
+        rids.add(insertSlottedRecord(record, SlottedPageFormat.RECORD, 0));
+      }
+      stats.addRecords(records);
+      numRecords += records.size();
+      return rids;
     }
-    numRecords++;
 
-    return new RecordId(page.getPageNum(), (short) entryNum);
+    int next = 0;
+    while (next < records.size()) {
+      if (freePageNums.isEmpty()) {
+        int remaining = records.size() - next;
+        allocateExtent((remaining + numRecordsPerPage - 1) / numRecordsPerPage);
+      }
+      int pageNum = freePageNums.first();
+      int first = next;
+      Page page = allocator.pinPage(pageNum);
+      try {
+        ByteBuffer buf = page.getByteBuffer();
+        int entryNum = Bits.firstZeroBit(buf, bitmapSizeInBytes);
+        while (entryNum != -1 && next < records.size()) {
+          writeRecord(buf, entryNum, records.get(next));
+          buf.position(0);
+          Bits.setBit(buf, entryNum, Bits.Bit.ONE);
+          rids.add(new RecordId(pageNum, (short) entryNum));
+          next++;
+          entryNum = Bits.nextZeroBit(buf, bitmapSizeInBytes, entryNum + 1);
+        }
+      } finally {
+        allocator.unpinPage(page, true);
+      }
+
+      // Update the metadata.
+      stats.addRecords(records.subList(first, next));
+      int numRecordsOnPage = freeSpaceMap.getNumRecords(pageNum) + (next - first);
+      freeSpaceMap.setNumRecords(pageNum, numRecordsOnPage);
+      if (numRecordsOnPage == numRecordsPerPage) {
+        freePageNums.pollFirst();
+      }
+      numRecords += next - first;
+    }
+    return rids;
   }
 
   /**
@@ -309,17 +620,37 @@ public class Table implements Iterable<Record>, Closeable {
    */
   public synchronized Record getRecord(RecordId rid) throws DatabaseException {
     validateRecordId(rid);
-    Page page = allocator.fetchPage(rid.getPageNum());
-    byte[] bitmap = getBitMap(page);
-    if (Bits.getBit(bitmap, rid.getEntryNum()) == Bits.Bit.ZERO) {
-      String msg = String.format("Record %s does not exist.", rid);
-      throw new DatabaseException(msg);
+    if (slottedFormat != null) {
+      return getSlottedRecord(rid);
+    }
+    if (compressedFormat != null) {
+      return getCompressedRecord(rid);
     }
+    Page page = allocator.pinPage(rid.getPageNum());
+    try {
+      byte[] bitmap = getBitMap(page);
+      if (Bits.getBit(bitmap, rid.getEntryNum()) == Bits.Bit.ZERO) {
+        String msg = String.format("Record %s does not exist.", rid);
+        throw new DatabaseException(msg);
+      }
 
-    int offset = bitmapSizeInBytes + (rid.getEntryNum() * schema.getSizeInBytes());
-    ByteBuffer buf = page.getByteBuffer();
-    buf.position(offset);
-    return Record.fromBytes(buf, schema);
+      if (layout == Layout.PAX) {
+        ByteBuffer buf = page.getReadOnlyByteBuffer();
+        List<DataBox> values = new ArrayList<DataBox>();
+        for (int i = 0; i < columnOffsets.length; ++i) {
+          buf.position(getColumnEntryOffset(i, rid.getEntryNum()));
+          values.add(DataBox.fromBytes(buf, schema.getFieldTypes().get(i)));
+        }
+        return new Record(values);
+      }
+
+      int offset = bitmapSizeInBytes + (rid.getEntryNum() * schema.getSizeInBytes());
+      ByteBuffer buf = page.getReadOnlyByteBuffer();
+      buf.position(offset);
+      return Record.fromBytes(buf, schema);
+    } finally {
+      allocator.unpinPage(page, false);
+    }
   }
 
   /**
@@ -329,11 +660,20 @@ public class Table implements Iterable<Record>, Closeable {
    */
   public synchronized Record updateRecord(List<DataBox> values, RecordId rid) throws DatabaseException {
     validateRecordId(rid);
+    checkNotCompressed();
     Record newRecord = schema.verify(values);
     Record oldRecord = getRecord(rid);
 
-    Page page = allocator.fetchPage(rid.getPageNum());
-    insertRecord(page, rid.getEntryNum(), newRecord);
+    if (slottedFormat != null) {
+      updateSlottedRecord(rid, newRecord);
+    } else {
+      Page page = allocator.pinPage(rid.getPageNum());
+      try {
+        insertRecord(page, rid.getEntryNum(), newRecord);
+      } finally {
+        allocator.unpinPage(page, true);
+      }
+    }
     this.stats.removeRecord(oldRecord);
     this.stats.addRecord(newRecord);
     return oldRecord;
@@ -346,35 +686,448 @@ public class Table implements Iterable<Record>, Closeable {
    */
   public synchronized Record deleteRecord(RecordId rid) throws DatabaseException {
     validateRecordId(rid);
-    Page page = allocator.fetchPage(rid.getPageNum());
+    checkNotCompressed();
     Record record = getRecord(rid);
-    Bits.setBit(page.getByteBuffer(), rid.getEntryNum(), Bits.Bit.ZERO);
-
-    stats.removeRecord(record);
-    if(numRecordsOnPage(page) == numRecordsPerPage - 1) {
-      freePageNums.add(page.getPageNum());
+    if (slottedFormat != null) {
+      RecordId target = getForwardingTarget(rid);
+      if (target != null) {
+        removeSlottedRecord(target);
+      }
+      removeSlottedRecord(rid);
+      stats.removeRecord(record);
+      numRecords--;
+      return record;
     }
-    numRecords--;
 
-    return record;
+    Page page = allocator.pinPage(rid.getPageNum());
+    try {
+      Bits.setBit(page.getByteBuffer(), rid.getEntryNum(), Bits.Bit.ZERO);
+
+      stats.removeRecord(record);
+      int numRecordsOnPage = freeSpaceMap.getNumRecords(rid.getPageNum()) - 1;
+      freeSpaceMap.setNumRecords(rid.getPageNum(), numRecordsOnPage);
+      if (numRecordsOnPage == numRecordsPerPage - 1) {
+        freePageNums.add(page.getPageNum());
+      }
+      numRecords--;
+
+      return record;
+    } finally {
+      allocator.unpinPage(page, true);
+    }
   }
 
   public void close() {
     allocator.close();
+    freeSpaceMap.setRecordCounts(numRecords, stats.getNumRecords());
+    freeSpaceMap.close();
   }
 
   // Helpers ///////////////////////////////////////////////////////////////////
-  private static Schema readSchemaFromHeaderPage(PageAllocator allocator) {
+  /**
+   * Allocates an extent of at least minPages free pages and returns the page
+   * number of its first page.
+   */
+  private int allocateExtent(int minPages) {
+    int extentSize = Math.max(minPages, getNumDataPages() / EXTENT_GROWTH_DIVISOR);
+    extentSize = Math.max(1, Math.min(extentSize, MAX_EXTENT_PAGES));
+    int firstPageNum;
+    try {
+      firstPageNum = allocator.allocExtent(extentSize);
+    } catch (PageException e) {
+      // The file is too fragmented for a contiguous extent.
+      extentSize = 1;
+      firstPageNum = allocator.allocPage();
+    }
+    int freeSpace = slottedFormat == null ? 0 : slottedFormat.getEmptyPageFreeSpace();
+    for (int i = 0; i < extentSize; i++) {
+      freePageNums.add(firstPageNum + i);
+      freeSpaceMap.setNumRecords(firstPageNum + i, 0, freeSpace);
+    }
+    return firstPageNum;
+  }
+
+  /**
+   * Sets up the layout of data pages: slotted pages (see SlottedPageFormat)
+   * for variable length records, and bitmap pages otherwise. On slotted
+   * pages, numRecordsPerPage is the largest number of slots a page can have,
+   * and bitmapSizeInBytes the size of the bitmap getBitMap makes up.
+   */
+  private void initDataPageFormat(int pageSize) {
+    if (layout == Layout.COMPRESSED) {
+      // How many records fit on a compressed page depends on the records.
+      compressedFormat = new CompressedPageFormat(schema, pageSize);
+      numRecordsPerPage = MAX_RECORDS_PER_PAGE;
+      bitmapSizeInBytes = numRecordsPerPage / 8;
+    } else if (layout == Layout.PAX) {
+      bitmapSizeInBytes = computeBitmapSizeInBytes(pageSize, schema);
+      numRecordsPerPage = computeNumRecordsPerPage(pageSize, schema);
+      columnOffsets = new int[schema.getFieldTypes().size()];
+      for (int i = 0; i < columnOffsets.length; ++i) {
+        // The minipages of the fields before field i hold numRecordsPerPage
+        // values each.
+        columnOffsets[i] = bitmapSizeInBytes + numRecordsPerPage * schema.getFieldOffset(i);
+      }
+    } else if (pageFormat == PageFormat.SLOTTED) {
+      slottedFormat = new SlottedPageFormat(schema, pageSize);
+      numRecordsPerPage = slottedFormat.getMaxNumSlots();
+      bitmapSizeInBytes = (numRecordsPerPage + 7) / 8;
+    } else {
+      bitmapSizeInBytes = computeBitmapSizeInBytes(pageSize, schema);
+      numRecordsPerPage = computeNumRecordsPerPage(pageSize, schema);
+    }
+  }
+
+  /**
+   * Returns whether a data page with numRecordsOnPage records and freeSpace
+   * free bytes (see FreeSpaceMap) belongs in freePageNums. A slotted page
+   * does if it has room for the smallest record, and a compressed page does if
+   * it is empty.
+   */
+  private boolean hasRoom(int numRecordsOnPage, int freeSpace) {
+    if (compressedFormat != null) {
+      // Compressed pages are written once.
+      return numRecordsOnPage == 0;
+    }
+    if (slottedFormat == null) {
+      return numRecordsOnPage < numRecordsPerPage;
+    }
+    return freeSpace >= slottedFormat.getSpaceNeeded(schema.getMinCompactSizeInBytes());
+  }
+
+  /**
+   * Compresses records into empty pages, allocating more if need be, and adds
+   * their ids to rids.
+   */
+  private void insertCompressedRecords(List<Record> records, List<RecordId> rids)
+      throws DatabaseException {
+    int next = 0;
+    while (next < records.size()) {
+      if (freePageNums.isEmpty()) {
+        allocateExtent(1);
+      }
+      int pageNum = freePageNums.pollFirst();
+      int numRecordsOnPage;
+      Page page = allocator.pinPage(pageNum);
+      try {
+        numRecordsOnPage = compressedFormat.encode(records, next, page.getByteBuffer());
+      } catch (IllegalArgumentException e) {
+        freePageNums.add(pageNum);
+        throw new DatabaseException(e.getMessage());
+      } finally {
+        allocator.unpinPage(page, true);
+      }
+      for (int i = 0; i < numRecordsOnPage; ++i) {
+        rids.add(new RecordId(pageNum, (short) i));
+      }
+
+      // Update the metadata.
+      stats.addRecords(records.subList(next, next + numRecordsOnPage));
+      freeSpaceMap.setNumRecords(pageNum, numRecordsOnPage);
+      numRecords += numRecordsOnPage;
+      next += numRecordsOnPage;
+    }
+  }
+
+  private Record getCompressedRecord(RecordId rid) throws DatabaseException {
+    // Only pages with records are decompressed, as they never change again.
+    if (rid.getEntryNum() >= freeSpaceMap.getNumRecords(rid.getPageNum())) {
+      String msg = String.format("Record %s does not exist.", rid);
+      throw new DatabaseException(msg);
+    }
+    if (decodedPageNum != rid.getPageNum()) {
+      Page page = allocator.pinPage(rid.getPageNum());
+      try {
+        if (decodedColumnOffsets == null) {
+          decodedColumnOffsets = new int[schema.getFieldTypes().size()];
+        }
+        decodedPage = decodeCompressedPage(page, decodedPage, decodedColumnOffsets);
+        decodedPageNum = rid.getPageNum();
+      } finally {
+        allocator.unpinPage(page, false);
+      }
+    }
+    RecordView view = new RecordView(schema, decodedColumnOffsets);
+    view.moveToEntry(decodedPage, rid.getEntryNum());
+    return view.toRecord();
+  }
+
+  /**
+   * Decompresses compressed page `page` into the PAX buffer decoded (see
+   * CompressedPageFormat.decode), or into a new buffer if decoded is null or
+   * too small, and returns the buffer.
+   */
+  private ByteBuffer decodeCompressedPage(Page page, ByteBuffer decoded, int[] columnOffsets) {
+    ByteBuffer buf = page.getReadOnlyByteBuffer();
+    int size = compressedFormat.getNumRecords(buf) * schema.getSizeInBytes();
+    if (decoded == null || decoded.capacity() < size) {
+      decoded = ByteBuffer.allocate(size);
+    }
+    compressedFormat.decode(buf, decoded, columnOffsets);
+    return decoded;
+  }
+
+  private void checkNotCompressed() throws DatabaseException {
+    if (compressedFormat != null) {
+      String msg = String.format("Table %s is compressed, so its records cannot change.", name);
+      throw new DatabaseException(msg);
+    }
+  }
+
+  /**
+   * Returns the offset of field i of record entryNum on a PAX page.
+   */
+  private int getColumnEntryOffset(int i, int entryNum) {
+    return columnOffsets[i] + entryNum * schema.getFieldTypes().get(i).getSizeInBytes();
+  }
+
+  private boolean isSlottedRecord(ByteBuffer buf, int slot) {
+    int kind = slottedFormat.getKind(buf, slot);
+    return kind == SlottedPageFormat.RECORD || kind == SlottedPageFormat.FORWARDED;
+  }
+
+  /**
+   * Adds record to a slotted page other than page excludedPageNum and returns
+   * the id of its slot, where it is stored as a record of kind `kind`. Pages
+   * are tried first fit, in the order of freePageNums, by the free space the
+   * free space map records for them; a page that turns out too full for this
+   * record and also too full for the largest record of the schema is dropped
+   * from freePageNums, until something is deleted from it, so that later
+   * additions do not try it again. If no page has room, a new extent is
+   * allocated. numRecords and stats are left to the caller.
+   */
+  private RecordId insertSlottedRecord(Record record, int kind, int excludedPageNum)
+      throws DatabaseException {
+    int spaceNeeded = slottedFormat.getSpaceNeeded(record.getCompactSizeInBytes());
+    if (spaceNeeded > slottedFormat.getEmptyPageFreeSpace()) {
+      String msg = String.format("Record %s does not fit on a %d-byte page.",
+                                 record, getPageSize());
+      throw new DatabaseException(msg);
+    }
+    int maxSpaceNeeded = slottedFormat.getSpaceNeeded(schema.getMaxCompactSizeInBytes());
+
+    Iterator<Integer> iter = freePageNums.iterator();
+    while (iter.hasNext()) {
+      int pageNum = iter.next();
+      if (pageNum == excludedPageNum) {
+        continue;
+      }
+      int freeSpace = freeSpaceMap.getFreeSpace(pageNum);
+      if (freeSpace >= spaceNeeded) {
+        RecordId rid = insertSlottedRecord(pageNum, record, kind);
+        if (rid != null) {
+          return rid;
+        }
+        // Every slot of the page is taken.
+        iter.remove();
+      } else if (freeSpace < maxSpaceNeeded) {
+        iter.remove();
+      }
+    }
+
+    RecordId rid = insertSlottedRecord(allocateExtent(1), record, kind);
+    assert(rid != null);
+    return rid;
+  }
+
+  /**
+   * Adds record to slotted page pageNum as a record of kind `kind` and
+   * returns the id of its slot, or returns null if the page has no room for
+   * it.
+   */
+  private RecordId insertSlottedRecord(int pageNum, Record record, int kind) {
+    Page page = allocator.pinPage(pageNum);
+    try {
+      ByteBuffer buf = page.getByteBuffer();
+      int slot = slottedFormat.insert(buf, record.getCompactSizeInBytes(), kind);
+      if (slot == -1) {
+        return null;
+      }
+      buf.position(slottedFormat.getOffset(buf, slot));
+      record.serializeCompact(buf);
+
+      // MOVED records are counted on the page of their FORWARDED records.
+      int numRecordsOnPage = freeSpaceMap.getNumRecords(pageNum);
+      if (kind != SlottedPageFormat.MOVED) {
+        numRecordsOnPage++;
+      }
+      updateSlottedPage(pageNum, buf, numRecordsOnPage);
+      return new RecordId(pageNum, (short) slot);
+    } finally {
+      allocator.unpinPage(page, true);
+    }
+  }
+
+  /**
+   * Removes the record in slot rid from its slotted page.
+   */
+  private void removeSlottedRecord(RecordId rid) {
+    int pageNum = rid.getPageNum();
+    Page page = allocator.pinPage(pageNum);
+    try {
+      ByteBuffer buf = page.getByteBuffer();
+      int numRecordsOnPage = freeSpaceMap.getNumRecords(pageNum);
+      if (slottedFormat.getKind(buf, rid.getEntryNum()) != SlottedPageFormat.MOVED) {
+        numRecordsOnPage--;
+      }
+      slottedFormat.remove(buf, rid.getEntryNum());
+      updateSlottedPage(pageNum, buf, numRecordsOnPage);
+    } finally {
+      allocator.unpinPage(page, true);
+    }
+  }
+
+  /**
+   * Updates the free space map and freePageNums after slotted page pageNum,
+   * whose buffer is buf, has changed.
+   */
+  private void updateSlottedPage(int pageNum, ByteBuffer buf, int numRecordsOnPage) {
+    int freeSpace = slottedFormat.getFreeSpace(buf);
+    freeSpaceMap.setNumRecords(pageNum, numRecordsOnPage, freeSpace);
+    if (hasRoom(numRecordsOnPage, freeSpace)) {
+      freePageNums.add(pageNum);
+    } else {
+      freePageNums.remove(pageNum);
+    }
+  }
+
+  private Record getSlottedRecord(RecordId rid) throws DatabaseException {
+    Page page = allocator.pinPage(rid.getPageNum());
+    try {
+      ByteBuffer buf = page.getReadOnlyByteBuffer();
+      int kind = slottedFormat.getKind(buf, rid.getEntryNum());
+      if (kind == SlottedPageFormat.RECORD) {
+        buf.position(slottedFormat.getOffset(buf, rid.getEntryNum()));
+        return Record.fromCompactBytes(buf, schema);
+      } else if (kind == SlottedPageFormat.FORWARDED) {
+        return getMovedRecord(slottedFormat.readStub(buf, rid.getEntryNum()));
+      }
+      String msg = String.format("Record %s does not exist.", rid);
+      throw new DatabaseException(msg);
+    } finally {
+      allocator.unpinPage(page, false);
+    }
+  }
+
+  private Record getMovedRecord(RecordId target) {
+    Page page = allocator.pinPage(target.getPageNum());
+    try {
+      ByteBuffer buf = page.getReadOnlyByteBuffer();
+      assert(slottedFormat.getKind(buf, target.getEntryNum()) == SlottedPageFormat.MOVED);
+      buf.position(slottedFormat.getOffset(buf, target.getEntryNum()));
+      return Record.fromCompactBytes(buf, schema);
+    } finally {
+      allocator.unpinPage(page, false);
+    }
+  }
+
+  /**
+   * Returns the id of the slot the existing record rid was moved to, or null
+   * if it was not moved.
+   */
+  private RecordId getForwardingTarget(RecordId rid) {
+    Page page = allocator.pinPage(rid.getPageNum());
+    try {
+      ByteBuffer buf = page.getReadOnlyByteBuffer();
+      if (slottedFormat.getKind(buf, rid.getEntryNum()) != SlottedPageFormat.FORWARDED) {
+        return null;
+      }
+      return slottedFormat.readStub(buf, rid.getEntryNum());
+    } finally {
+      allocator.unpinPage(page, false);
+    }
+  }
+
+  /**
+   * Overwrites the existing record rid of a slotted page with record. If
+   * record fits on the record's own page, it is stored there. Otherwise, it
+   * is stored as a MOVED record on another page (in place of the record it
+   * replaces if that was already moved and there is room), and the record's
+   * own slot becomes a FORWARDED record pointing at it, so that rid still
+   * names the record.
+   */
+  private void updateSlottedRecord(RecordId rid, Record record) throws DatabaseException {
+    RecordId target = getForwardingTarget(rid);
+    int size = record.getCompactSizeInBytes();
+
+    if (replaceSlottedRecord(rid, record, size, SlottedPageFormat.RECORD)) {
+      if (target != null) {
+        removeSlottedRecord(target);
+      }
+      return;
+    }
+    if (target != null && replaceSlottedRecord(target, record, size, SlottedPageFormat.MOVED)) {
+      return;
+    }
+
+    if (target != null) {
+      removeSlottedRecord(target);
+    }
+    RecordId newTarget = insertSlottedRecord(record, SlottedPageFormat.MOVED, rid.getPageNum());
+    Page page = allocator.pinPage(rid.getPageNum());
+    try {
+      ByteBuffer buf = page.getByteBuffer();
+      // Every record takes up at least SlottedPageFormat.STUB_SIZE bytes, so
+      // there is always room for the stub.
+      boolean replaced = slottedFormat.replace(buf, rid.getEntryNum(), SlottedPageFormat.STUB_SIZE,
+                                               SlottedPageFormat.FORWARDED);
+      assert(replaced);
+      slottedFormat.writeStub(buf, rid.getEntryNum(), newTarget);
+      updateSlottedPage(rid.getPageNum(), buf, freeSpaceMap.getNumRecords(rid.getPageNum()));
+    } finally {
+      allocator.unpinPage(page, true);
+    }
+  }
+
+  /**
+   * Replaces the record in slot rid with record, of size bytes, as a record
+   * of kind `kind`, and returns whether its page had room for it.
+   */
+  private boolean replaceSlottedRecord(RecordId rid, Record record, int size, int kind) {
+    Page page = allocator.pinPage(rid.getPageNum());
+    try {
+      ByteBuffer buf = page.getByteBuffer();
+      if (!slottedFormat.replace(buf, rid.getEntryNum(), size, kind)) {
+        return false;
+      }
+      buf.position(slottedFormat.getOffset(buf, rid.getEntryNum()));
+      record.serializeCompact(buf);
+      updateSlottedPage(rid.getPageNum(), buf, freeSpaceMap.getNumRecords(rid.getPageNum()));
+      return true;
+    } finally {
+      allocator.unpinPage(page, true);
+    }
+  }
+
+  /**
+   * Reads the schema, the layout, and the page format of the table from the
+   * header page. Tables written before there were layouts have zeros after
+   * their schema, which are the ordinals of Layout.ROW and PageFormat.BITMAP.
+   */
+  private void readHeaderPage() throws DatabaseException {
     Page headerPage = allocator.fetchPage(0);
-    ByteBuffer buf = headerPage.getByteBuffer();
-    return Schema.fromBytes(buf);
+    ByteBuffer buf = headerPage.getReadOnlyByteBuffer();
+    this.schema = Schema.fromBytes(buf);
+    int ordinal = buf.get();
+    if (ordinal < 0 || ordinal >= Layout.values().length) {
+      throw new DatabaseException(String.format("Unknown table layout %d.", ordinal));
+    }
+    this.layout = Layout.values()[ordinal];
+    ordinal = buf.get();
+    if (ordinal < 0 || ordinal >= PageFormat.values().length) {
+      throw new DatabaseException(String.format("Unknown page format %d.", ordinal));
+    }
+    this.pageFormat = PageFormat.values()[ordinal];
   }
 
-  private static void writeSchemaToHeaderPage(PageAllocator allocator, Schema schema) {
+  private static void writeHeaderPage(PageAllocator allocator, Schema schema, Layout layout,
+                                      PageFormat pageFormat) {
     Page headerPage = allocator.fetchPage(allocator.allocPage());
     assert(0 == headerPage.getPageNum());
     ByteBuffer buf = headerPage.getByteBuffer();
     buf.put(schema.toBytes());
+    buf.put((byte) layout.ordinal());
+    buf.put((byte) pageFormat.ordinal());
   }
 
   /**
@@ -394,24 +1147,27 @@ public class Table implements Iterable<Record>, Closeable {
    *   | 17 bytes  | 1 byte      | 1                 | 8                 |
    *   | 18 bytes  | 2 byte      | 2                 | 16                |
    *   | 19 bytes  | 2 byte      | 2                 | 16                |
+   *
+   * Record ids number the records of a page with shorts, so on large pages n
+   * is capped at MAX_RECORDS_PER_PAGE (and the rest of the page goes unused).
    */
   private static int computeUnroundedNumRecordsPerPage(int pageSize, Schema schema) {
     // Storing each record requires 1 bit for the bitmap and 8 *
     // schema.getSizeInBytes() bits for the record.
     int recordOverheadInBits = 1 + 8 * schema.getSizeInBytes();
-    int pageSizeInBits = pageSize * 8;
-    return pageSizeInBits / recordOverheadInBits;
+    long pageSizeInBits = pageSize * 8L;
+    return (int) Math.min(pageSizeInBits / recordOverheadInBits, MAX_RECORDS_PER_PAGE);
   }
 
   private int numRecordsOnPage(Page page) {
-    byte[] bitmap = getBitMap(page);
-    int numRecords = 0;
-    for (int i = 0; i < numRecordsPerPage; ++i) {
-      if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
-        numRecords++;
-      }
+    if (compressedFormat != null) {
+      return compressedFormat.getNumRecords(page.getReadOnlyByteBuffer());
     }
-    return numRecords;
+    if (slottedFormat != null) {
+      return slottedFormat.getNumRecords(page.getReadOnlyByteBuffer());
+    }
+    byte[] bitmap = getBitMap(page);
+    return Bits.countOnes(ByteBuffer.wrap(bitmap), bitmapSizeInBytes);
   }
 
   private void validateRecordId(RecordId rid) throws DatabaseException {
@@ -444,6 +1200,16 @@ public class Table implements Iterable<Record>, Closeable {
       return new RecordIterator(this, ridIterator());
   }
 
+  /**
+   * Returns an iterator over views of the records of the table (see
+   * RecordView), which reads records in place rather than decoding each of
+   * them into a Record. The iterator returns the same view every time, moved
+   * to the next record.
+   */
+  public Iterator<RecordView> viewIterator() {
+      return new ViewIterator();
+  }
+
 
   /**
    * Helper function to create a BacktrackingIterator from an Iterator of
@@ -480,6 +1246,7 @@ public class Table implements Iterable<Record>, Closeable {
     private Iterator<Page> iter;
     private Page page = null;
     private byte[] bitmap = null;
+    private int numCompressedRecords;
     private int entryNum;
     private long numRecordsReturned = 0;
 
@@ -502,15 +1269,151 @@ public class Table implements Iterable<Record>, Closeable {
         entryNum++;
         if (entryNum >= Table.this.numRecordsPerPage) {
           page = iter.next();
-          bitmap = Table.this.getBitMap(page);
           entryNum = 0;
+          if (compressedFormat != null) {
+            // Every entry of a compressed page up to its count is a record.
+            numCompressedRecords = compressedFormat.getNumRecords(page.getReadOnlyByteBuffer());
+          } else {
+            bitmap = Table.this.getBitMap(page);
+          }
         }
 
-        if (Bits.getBit(bitmap, entryNum) == Bits.Bit.ONE) {
+        if (compressedFormat != null) {
+          if (entryNum < numCompressedRecords) {
+            numRecordsReturned++;
+            return new RecordId(page.getPageNum(), (short) entryNum);
+          }
+          entryNum = Table.this.numRecordsPerPage - 1;
+        } else if (Bits.getBit(bitmap, entryNum) == Bits.Bit.ONE) {
           numRecordsReturned++;
           return new RecordId(page.getPageNum(), (short) entryNum);
         }
       }
     }
   }
+
+  /** An iterator over views of the records of a table. */
+  private class ViewIterator implements Iterator<RecordView> {
+    private Iterator<Page> iter;
+    private ByteBuffer buf = null;
+    private byte[] bitmap;
+    private int entryNum;
+    // The number of entries (bitmap bits, slots, or compressed records) of the
+    // current page.
+    private int numEntriesOnPage;
+    // The current page of a compressed table, decompressed.
+    private ByteBuffer decoded;
+    private int[] decodedColumnOffsets;
+    private long numRecordsReturned = 0;
+    private RecordView view;
+    // The page a FORWARDED record was moved to, pinned while the view is on
+    // it, or null.
+    private Page forwardedPage = null;
+
+    public ViewIterator() {
+      this.iter = Table.this.allocator.iterator();
+      this.bitmap = new byte[Table.this.bitmapSizeInBytes];
+      this.entryNum = Table.this.numRecordsPerPage;
+      this.numEntriesOnPage = Table.this.numRecordsPerPage;
+      if (Table.this.layout == Layout.PAX) {
+        this.view = new RecordView(Table.this.schema, Table.this.columnOffsets);
+      } else if (Table.this.layout == Layout.COMPRESSED) {
+        // Every page is decompressed into decoded, and the view reads it like
+        // a PAX page whose minipages move as pages are decoded.
+        this.decodedColumnOffsets = new int[Table.this.schema.getFieldTypes().size()];
+        this.view = new RecordView(Table.this.schema, this.decodedColumnOffsets);
+      } else {
+        this.view = new RecordView(Table.this.schema, Table.this.slottedFormat != null);
+      }
+      iter.next(); // Skip the header page.
+    }
+
+    public boolean hasNext() {
+      if (numRecordsReturned < Table.this.numRecords) {
+        return true;
+      }
+      releaseForwardedPage();
+      return false;
+    }
+
+    public RecordView next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      releaseForwardedPage();
+
+      while (true) {
+        entryNum++;
+        if (entryNum >= numEntriesOnPage) {
+          Page page = iter.next();
+          buf = page.getReadOnlyByteBuffer();
+          entryNum = 0;
+          if (slottedFormat != null) {
+            numEntriesOnPage = slottedFormat.getNumSlots(buf);
+            if (numEntriesOnPage == 0) {
+              continue;
+            }
+          } else if (compressedFormat != null) {
+            decoded = decodeCompressedPage(page, decoded, decodedColumnOffsets);
+            numEntriesOnPage = compressedFormat.getNumRecords(buf);
+            if (numEntriesOnPage == 0) {
+              continue;
+            }
+          } else {
+            page.readBytes(0, bitmap.length, bitmap);
+          }
+        }
+
+        if (slottedFormat != null) {
+          RecordView slotted = nextSlottedView();
+          if (slotted != null) {
+            return slotted;
+          }
+        } else if (compressedFormat != null) {
+          numRecordsReturned++;
+          view.moveToEntry(decoded, entryNum);
+          return view;
+        } else if (Bits.getBit(bitmap, entryNum) == Bits.Bit.ONE) {
+          numRecordsReturned++;
+          if (Table.this.layout == Layout.PAX) {
+            view.moveToEntry(buf, entryNum);
+          } else {
+            int offset = Table.this.bitmapSizeInBytes + entryNum * Table.this.schema.getSizeInBytes();
+            view.moveTo(buf, offset);
+          }
+          return view;
+        }
+      }
+    }
+
+    /**
+     * Moves the view to the record in slot entryNum of the current slotted
+     * page and returns it, or returns null if the slot has no record. A
+     * FORWARDED record is read from the page it was moved to; MOVED records
+     * are skipped, as they are returned from their FORWARDED records.
+     */
+    private RecordView nextSlottedView() {
+      int kind = slottedFormat.getKind(buf, entryNum);
+      if (kind == SlottedPageFormat.RECORD) {
+        view.moveTo(buf, slottedFormat.getOffset(buf, entryNum));
+      } else if (kind == SlottedPageFormat.FORWARDED) {
+        RecordId target = slottedFormat.readStub(buf, entryNum);
+        forwardedPage = allocator.pinPage(target.getPageNum());
+        ByteBuffer targetBuf = forwardedPage.getReadOnlyByteBuffer();
+        view.moveTo(targetBuf, slottedFormat.getOffset(targetBuf, target.getEntryNum()));
+      } else {
+        return null;
+      }
+      numRecordsReturned++;
+      return view;
+    }
+
+    /** Unpins the page of the last FORWARDED record, once the view has moved on from it. */
+    private void releaseForwardedPage() {
+      if (forwardedPage != null) {
+        allocator.unpinPage(forwardedPage, false);
+        forwardedPage = null;
+      }
+    }
+  }
 }
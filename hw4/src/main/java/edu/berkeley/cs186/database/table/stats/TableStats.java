@@ -47,20 +47,41 @@ import edu.berkeley.cs186.database.table.Table;
  */
 public class TableStats {
   private Schema tableSchema;
+  private int pageSize;
   private int numRecords;
   private List<Histogram> histograms;
 
   /** Construct a TableStats for an empty table with schema `tableSchema`. */
   public TableStats(Schema tableSchema) {
+    this(tableSchema, Page.pageSize);
+  }
+
+  /**
+   * Construct a TableStats for an empty table with schema `tableSchema` whose
+   * pages are `pageSize` bytes.
+   */
+  public TableStats(Schema tableSchema, int pageSize) {
 
     this.tableSchema = tableSchema;
+    this.pageSize = pageSize;
     this.numRecords = 0;
     this.histograms = new ArrayList<Histogram>();
     
   }
 
-  private TableStats(Schema tableSchema, int numRecords, List<Histogram> histograms) {
+  /**
+   * Construct a TableStats for a table with schema `tableSchema` whose pages
+   * are `pageSize` bytes and which already holds `numRecords` records. The
+   * histograms are empty until refreshHistograms is called.
+   */
+  public TableStats(Schema tableSchema, int pageSize, int numRecords) {
+    this(tableSchema, pageSize, numRecords, new ArrayList<Histogram>());
+  }
+
+  private TableStats(Schema tableSchema, int pageSize, int numRecords,
+                     List<Histogram> histograms) {
     this.tableSchema = tableSchema;
+    this.pageSize = pageSize;
     this.numRecords = numRecords;
     this.histograms = histograms;
   }
@@ -71,6 +92,14 @@ public class TableStats {
 
   }
 
+  /**
+   * Adds a batch of records at once, e.g. those that Table.insertRecords
+   * wrote to one page.
+   */
+  public void addRecords(List<Record> records) {
+    numRecords += records.size();
+  }
+
   public void refreshHistograms(int buckets, Table tab) {
 
     int count = 0;
@@ -106,7 +135,7 @@ public class TableStats {
    * assuming that all records are stored as densely as possible in the pages.
    */
   public int getNumPages() {
-    int numRecordsPerPage = Table.computeNumRecordsPerPage(Page.pageSize, tableSchema);
+    int numRecordsPerPage = Table.computeNumRecordsPerPage(pageSize, tableSchema);
     if (numRecords % numRecordsPerPage == 0) {
       return numRecords / numRecordsPerPage;
     } else {
@@ -174,7 +203,7 @@ public class TableStats {
 
     Histogram qhistogram = histograms.get(column);
     int numRecords = qhistogram.getCount();
-    return new TableStats(this.tableSchema, numRecords, copyHistograms);
+    return new TableStats(this.tableSchema, this.pageSize, numRecords, copyHistograms);
   }
 
   /**
@@ -235,6 +264,8 @@ public class TableStats {
 
     int outputSize = (int)(reductionFactor*inputSize);
 
-    return new TableStats(joinedSchema, outputSize, copyHistograms);
+    // Join outputs are materialized in temporary tables, which use the default
+    // page size.
+    return new TableStats(joinedSchema, Page.pageSize, outputSize, copyHistograms);
   }
 }
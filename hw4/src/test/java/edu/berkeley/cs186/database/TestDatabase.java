@@ -2,8 +2,18 @@ package edu.berkeley.cs186.database;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.table.*;
 import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.io.BufferPool;
+import edu.berkeley.cs186.database.io.IOMetrics;
+import edu.berkeley.cs186.database.io.MetricsRegistry;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageFlusher;
+import edu.berkeley.cs186.database.query.IndexOnlyScanOperator;
+import edu.berkeley.cs186.database.query.ProjectOperator;
+import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.query.SequentialScanOperator;
 
 import org.junit.After;
 import org.junit.Before;
@@ -17,9 +27,11 @@ import org.junit.experimental.categories.Category;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Optional;
 
 public class TestDatabase {
   public static final String TestDir = "testDatabase";
@@ -136,6 +148,87 @@ public class TestDatabase {
     t1.end();
   }
 
+  @Test
+  public void testWritesAreForcedWithoutFlusher() throws DatabaseException {
+    assertNull(db.getBufferPool().getFlusher());
+    db.createTable(TestUtils.createSchemaWithAllTypes(), "table1");
+    String tableFile = this.filename + "/table1" + Table.FILENAME_EXTENSION;
+    MetricsRegistry metrics = db.getMetrics();
+    long before = metrics.snapshot().getFile(tableFile).get(IOMetrics.Counter.FLUSHES);
+
+    // Allocating the record's page forces the file's metadata before the
+    // write returns, without waiting for the transaction to end.
+    Database.Transaction t = db.beginTransaction();
+    t.addRecord("table1", TestUtils.createRecordWithAllTypes().getValues());
+    assertTrue(metrics.snapshot().getFile(tableFile).get(IOMetrics.Counter.FLUSHES) > before);
+    t.end();
+  }
+
+  @Test
+  public void testGroupCommit() throws DatabaseException {
+    db.close();
+    PageFlusher flusher = new PageFlusher();
+    db = new Database(this.filename, 5, BufferPool.DEFAULT_CAPACITY, BufferPool.DEFAULT_POLICY,
+                      flusher);
+    assertSame(flusher, db.getBufferPool().getFlusher());
+    db.createTable(TestUtils.createSchemaWithAllTypes(), "table1");
+
+    // Ending the transaction waits for the flusher to force its pages.
+    Database.Transaction t = db.beginTransaction();
+    List<RecordId> rids = new ArrayList<>();
+    for (int i = 0; i < 100; ++i) {
+      rids.add(t.addRecord("table1", TestUtils.createRecordWithAllTypesWithValue(i).getValues()));
+    }
+    t.end();
+    assertTrue(flusher.getNumForces() > 0);
+    db.close();
+
+    db = new Database(this.filename);
+    t = db.beginTransaction();
+    for (int i = 0; i < 100; ++i) {
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), t.getRecord("table1", rids.get(i)));
+    }
+    t.end();
+  }
+
+  @Test
+  public void testTablesLoadLazily() throws DatabaseException {
+    Schema s = TestUtils.createSchemaWithAllTypes();
+    db.createTable(s, "table1");
+    db.createTable(s, "table2");
+    Database.Transaction t = db.beginTransaction();
+    for (int i = 0; i < 100; ++i) {
+      t.addRecord("table1", TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+    t.end();
+    db.close();
+
+    // Opening the database reads none of its tables.
+    db = new Database(this.filename);
+    MetricsRegistry metrics = db.getMetrics();
+    assertEquals(0, metrics.snapshot().getTotal().get(IOMetrics.Counter.LOGICAL_READS));
+
+    // A table is loaded when it is first used, from its header page and free
+    // space map alone.
+    t = db.beginTransaction();
+    assertEquals(100, t.getNumRecords("table1"));
+    assertEquals(100, t.getStats("table1").getNumRecords());
+    assertEquals(1, metrics.snapshot().getFile(this.filename + "/table1" + Table.FILENAME_EXTENSION)
+                           .get(IOMetrics.Counter.LOGICAL_READS));
+    assertSame(db.getTable("table1"), db.getTable("table1"));
+    t.end();
+
+    // Tables that were never loaded can still be found and deleted.
+    try {
+      db.createTable(s, "table2");
+      fail();
+    } catch (DatabaseException e) {
+      // Expected.
+    }
+    assertTrue(db.deleteTable("table2"));
+    assertNull(db.getTable("table2"));
+  }
+
   @Test
   public void testAtomicTransactions1() throws DatabaseException {
     Schema s = TestUtils.createSchemaWithAllTypes();
@@ -181,4 +274,299 @@ public class TestDatabase {
 
     assertEquals(table.getNumRecords(),200);
   }
+
+  @Test
+  public void testTransactionIOMetrics() throws DatabaseException {
+    Schema s = TestUtils.createSchemaWithAllTypes();
+    Record input = TestUtils.createRecordWithAllTypes();
+    String tableName = "testTable1";
+    db.createTable(s, tableName);
+    String tableFile = db.getTable(tableName).getFilename();
+    String fsmFile = tableFile + Table.FREE_SPACE_MAP_EXTENSION;
+    MetricsRegistry.Snapshot before = db.getMetrics().snapshot();
+
+    Database.Transaction t1 = db.beginTransaction();
+    RecordId rid = t1.addRecord(tableName, input.getValues());
+    t1.getRecord(tableName, rid);
+    long reads = t1.getIOMetrics().get(IOMetrics.Counter.LOGICAL_READS);
+    assertTrue(reads > 0);
+    assertEquals(reads, db.getMetrics().snapshot().getTransaction(t1.transNum)
+                          .get(IOMetrics.Counter.LOGICAL_READS));
+    // The table's reads and those of its free space map.
+    MetricsRegistry.Snapshot after = db.getMetrics().snapshot();
+    assertEquals(reads, after.getFile(tableFile).minus(before.getFile(tableFile))
+                          .plus(after.getFile(fsmFile).minus(before.getFile(fsmFile)))
+                          .get(IOMetrics.Counter.LOGICAL_READS));
+    t1.end();
+
+    // Work outside of the transaction is not counted against it.
+    db.getTable(tableName).getRecord(rid);
+    assertEquals(reads, t1.getIOMetrics().get(IOMetrics.Counter.LOGICAL_READS));
+  }
+
+  @Test
+  public void testTransactionAddRecords() throws DatabaseException {
+    Schema s = TestUtils.createSchemaWithAllTypes();
+    String tableName = "testTable1";
+    db.createTableWithIndices(s, tableName, Arrays.asList("int"));
+
+    List<List<DataBox>> rows = new ArrayList<List<DataBox>>();
+    for (int i = 0; i < 500; i++) {
+      rows.add(TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+    Database.Transaction t1 = db.beginTransaction();
+    List<RecordId> rids = t1.addRecords(tableName, rows);
+    assertEquals(500, rids.size());
+    assertEquals(500, t1.getNumRecords(tableName));
+    for (int i = 0; i < 500; i += 50) {
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), t1.getRecord(tableName, rids.get(i)));
+      Iterator<Record> iter = t1.lookupKey(tableName, "int", new IntDataBox(i));
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), iter.next());
+      assertFalse(iter.hasNext());
+    }
+
+    // The first batch was bulk loaded into the index; later batches, in any
+    // order, are put into it.
+    rows.clear();
+    for (int i = 549; i >= 500; i--) {
+      rows.add(TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+    t1.addRecords(tableName, rows);
+    Iterator<Record> iter = t1.sortedScan(tableName, "int");
+    for (int i = 0; i < 550; i++) {
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), iter.next());
+    }
+    assertFalse(iter.hasNext());
+    t1.end();
+  }
+
+  @Test
+  public void testAddRecordsThenPutDuplicates() throws DatabaseException {
+    Schema s = TestUtils.createSchemaWithAllTypes();
+    String tableName = "testTable1";
+    db.createTableWithIndices(s, tableName, Arrays.asList("int"));
+
+    List<List<DataBox>> rows = new ArrayList<List<DataBox>>();
+    for (int i = 0; i < 3000; i++) {
+      rows.add(TestUtils.createRecordWithAllTypesWithValue(i % 3).getValues());
+    }
+    Database.Transaction t1 = db.beginTransaction();
+    List<RecordId> ones = new ArrayList<RecordId>();
+    List<RecordId> rids = t1.addRecords(tableName, rows);
+    for (int i = 1; i < rids.size(); i += 3) {
+      ones.add(rids.get(i));
+    }
+
+    // The bulk loaded leaves have room left, so a put does not split one.
+    int numIndexPages = t1.getNumIndexPages(tableName, "int");
+    ones.add(t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(1).getValues()));
+    assertEquals(numIndexPages, t1.getNumIndexPages(tableName, "int"));
+    for (int i = 0; i < 20; i++) {
+      ones.add(t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(1).getValues()));
+    }
+
+    // The bulk loaded duplicates come in record id order, followed by the
+    // ones put after them.
+    Optional<DataBox> one = Optional.<DataBox>of(new IntDataBox(1));
+    Iterator<Pair<DataBox, RecordId>> entries = t1.indexScanRange(tableName, "int", one, true,
+                                                                  one, true);
+    for (RecordId rid : ones) {
+      Pair<DataBox, RecordId> entry = entries.next();
+      assertEquals(new IntDataBox(1), entry.getFirst());
+      assertEquals(rid, entry.getSecond());
+    }
+    assertFalse(entries.hasNext());
+
+    Iterator<Record> iter = t1.sortedScan(tableName, "int");
+    for (int i = 0; i < 3; i++) {
+      int n = i == 1 ? 1021 : 1000;
+      for (int j = 0; j < n; j++) {
+        assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), iter.next());
+      }
+    }
+    assertFalse(iter.hasNext());
+    t1.end();
+  }
+
+  @Test
+  public void testNonUniqueIndex() throws DatabaseException {
+    Schema s = TestUtils.createSchemaWithAllTypes();
+    String tableName = "testTable1";
+    db.createTableWithIndices(s, tableName, Arrays.asList("bool", "int"));
+
+    Database.Transaction t1 = db.beginTransaction();
+    List<RecordId> rids = new ArrayList<RecordId>();
+    for (int i = 0; i < 300; i++) {
+      rids.add(t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(i % 3).getValues()));
+    }
+    for (int i = 0; i < 3; i++) {
+      Iterator<Record> iter = t1.lookupKey(tableName, "int", new IntDataBox(i));
+      for (int j = 0; j < 100; j++) {
+        assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), iter.next());
+      }
+      assertFalse(iter.hasNext());
+    }
+
+    // Deleting or updating a record removes just its own entries from the
+    // indices.
+    t1.deleteRecord(tableName, rids.get(0));
+    t1.updateRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(1).getValues(), rids.get(3));
+    int numZeros = 0;
+    Iterator<Record> iter = t1.lookupKey(tableName, "int", new IntDataBox(0));
+    while (iter.hasNext()) {
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(0), iter.next());
+      numZeros++;
+    }
+    assertEquals(98, numZeros);
+    int numOnes = 0;
+    iter = t1.sortedScanFrom(tableName, "int", new IntDataBox(1));
+    while (iter.hasNext() && iter.next().getValues().get(1).equals(new IntDataBox(1))) {
+      numOnes++;
+    }
+    assertEquals(101, numOnes);
+    t1.end();
+  }
+
+  @Test
+  public void testSortedScanRange() throws DatabaseException {
+    Schema s = TestUtils.createSchemaWithAllTypes();
+    String tableName = "testTable1";
+    db.createTableWithIndices(s, tableName, Arrays.asList("int"));
+    Database.Transaction t1 = db.beginTransaction();
+    for (int i = 99; i >= 0; i--) {
+      t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+
+    // The scans end at the bound, having fetched no records past it.
+    MetricsRegistry metrics = db.getMetrics();
+    String tableFile = db.getTable(tableName).getFilename();
+    Iterator<Record> iter = t1.sortedScanRange(tableName, "int", Optional.<DataBox>empty(), true,
+                                               Optional.<DataBox>of(new IntDataBox(3)), false);
+    long before = metrics.snapshot().getFile(tableFile).get(IOMetrics.Counter.LOGICAL_READS);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), iter.next());
+    }
+    assertFalse(iter.hasNext());
+    assertEquals(before + 3,
+                 metrics.snapshot().getFile(tableFile).get(IOMetrics.Counter.LOGICAL_READS));
+
+    iter = t1.sortedScanRange(tableName, "int", Optional.<DataBox>of(new IntDataBox(50)), false,
+                              Optional.<DataBox>of(new IntDataBox(60)), true);
+    for (int i = 51; i <= 60; i++) {
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), iter.next());
+    }
+    assertFalse(iter.hasNext());
+    t1.end();
+  }
+
+  @Test
+  public void testIndexOnlyScan() throws Exception {
+    Schema s = TestUtils.createSchemaWithAllTypes();
+    String tableName = "testTable1";
+    db.createTableWithIndices(s, tableName, Arrays.asList("int"));
+    Database.Transaction t1 = db.beginTransaction();
+    for (int i = 99; i >= 0; i--) {
+      t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+
+    // A query that needs only the indexed column reads its values from the index, and reads
+    // none of the table's records.
+    MetricsRegistry metrics = db.getMetrics();
+    String tableFile = db.getTable(tableName).getFilename();
+    long before = metrics.snapshot().getFile(tableFile).get(IOMetrics.Counter.LOGICAL_READS);
+    QueryPlan query = t1.query(tableName);
+    query.select("int", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(90));
+    query.project(Arrays.asList("int"));
+    Iterator<Record> iter = query.execute();
+    assertTrue(query.getFinalOperator().getSource().isIndexOnlyScan());
+    for (int i = 90; i < 100; i++) {
+      assertEquals(new Record(Arrays.<DataBox>asList(new IntDataBox(i))), iter.next());
+    }
+    assertFalse(iter.hasNext());
+
+    query = t1.query(tableName);
+    query.select("int", QueryPlan.PredicateOperator.LESS_THAN, new IntDataBox(10));
+    query.count();
+    iter = query.execute();
+    assertTrue(query.getFinalOperator().getSource().isIndexOnlyScan());
+    assertEquals(new Record(Arrays.<DataBox>asList(new IntDataBox(10))), iter.next());
+    assertFalse(iter.hasNext());
+    assertEquals(before,
+                 metrics.snapshot().getFile(tableFile).get(IOMetrics.Counter.LOGICAL_READS));
+    t1.end();
+  }
+
+  @Test
+  public void testSlottedTableHasNoFixedPageLayout() throws Exception {
+    Schema s = new Schema(Arrays.asList("id", "name"),
+                          Arrays.asList(Type.intType(), Type.stringType(100)));
+    db.createTable(s, "slotted");
+    db.createTable(TestUtils.createSchemaWithAllTypes(), "fixed");
+    Database.Transaction t = db.beginTransaction();
+    assertEquals(Table.PageFormat.SLOTTED, db.getTable("slotted").getPageFormat());
+    assertEquals(TestUtils.createSchemaWithAllTypes().getSizeInBytes(), t.getEntrySize("fixed"));
+    try {
+      t.getEntrySize("slotted");
+      fail();
+    } catch (DatabaseException e) {
+      // Expected.
+    }
+    try {
+      t.getPageHeaderSize("slotted");
+      fail();
+    } catch (DatabaseException e) {
+      // Expected.
+    }
+    t.end();
+  }
+
+  @Test
+  public void testIndexOnlyScanStatsUseTablePageSize() throws Exception {
+    Schema s = TestUtils.createSchemaWithAllTypes();
+    String tableName = "bigPages";
+    db.createTableWithIndices(s, tableName, Arrays.asList("int"), 4 * Page.pageSize);
+    Database.Transaction t1 = db.beginTransaction();
+    int numRecords = 2000;
+    for (int i = 0; i < numRecords; i++) {
+      t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+
+    // The scan's single int column fits on one of the table's pages, but
+    // would need several of the default size.
+    IndexOnlyScanOperator scan = new IndexOnlyScanOperator(
+        t1, tableName, "int", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(0));
+    assertEquals(numRecords, scan.getStats().getNumRecords());
+    assertEquals(1, scan.getStats().getNumPages());
+    t1.end();
+  }
+
+  @Test
+  public void testProjectPaxTable() throws Exception {
+    Schema s = TestUtils.createSchemaWithAllTypes();
+    db.createTable(s, "paxTable", Page.pageSize, Table.Layout.PAX);
+    Database.Transaction t = db.beginTransaction();
+    int numRecords = 1000;
+    for (int i = 0; i < numRecords; ++i) {
+      t.addRecord("paxTable", TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+
+    SequentialScanOperator scan = new SequentialScanOperator(t, "paxTable");
+    List<String> columns = new ArrayList<>(Arrays.asList("string", "int"));
+    ProjectOperator project = new ProjectOperator(scan, columns, false, null, null);
+    Iterator<Record> iter = project.iterator();
+    for (int i = 0; i < numRecords; ++i) {
+      Record expected = TestUtils.createRecordWithAllTypesWithValue(i);
+      List<DataBox> values = Arrays.asList(expected.getValues().get(2), expected.getValues().get(1));
+      assertEquals(new Record(values), iter.next());
+    }
+    assertFalse(iter.hasNext());
+
+    scan = new SequentialScanOperator(t, "paxTable");
+    project = new ProjectOperator(scan, new ArrayList<String>(), true, null, "int");
+    iter = project.iterator();
+    List<DataBox> values = Arrays.asList(new IntDataBox(numRecords),
+                                         new IntDataBox(numRecords * (numRecords - 1) / 2));
+    assertEquals(new Record(values), iter.next());
+    t.end();
+  }
 }
@@ -139,4 +139,56 @@ public class TestBits {
       assertEquals(1, buf.position());
     }
   }
+
+  @Test
+  public void testFirstZeroBitAndCountOnes() {
+    // 21 bytes: two full words and five trailing bytes.
+    byte[] bytes = new byte[21];
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    for (int i = 0; i < 21 * 8; ++i) {
+      assertEquals(i, Bits.firstZeroBit(buf, bytes.length));
+      assertEquals(i, Bits.countOnes(buf, bytes.length));
+      Bits.setBit(buf, i, Bits.Bit.ONE);
+    }
+    assertEquals(-1, Bits.firstZeroBit(buf, bytes.length));
+    assertEquals(21 * 8, Bits.countOnes(buf, bytes.length));
+
+    Bits.setBit(buf, 70, Bits.Bit.ZERO);
+    Bits.setBit(buf, 165, Bits.Bit.ZERO);
+    assertEquals(70, Bits.firstZeroBit(buf, bytes.length));
+    assertEquals(21 * 8 - 2, Bits.countOnes(buf, bytes.length));
+
+    // Relative to the position of the buffer, which is left unchanged.
+    buf.position(9);
+    assertEquals(165 - 72, Bits.firstZeroBit(buf, 12));
+    assertEquals(-1, Bits.firstZeroBit(buf, 11));
+    assertEquals(12 * 8 - 1, Bits.countOnes(buf, 12));
+    assertEquals(9, buf.position());
+  }
+
+  @Test
+  public void testNextZeroBit() {
+    // 21 bytes: two full words and five trailing bytes, all ONE but bits 3,
+    // 64, 100, and 161.
+    byte[] bytes = new byte[21];
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    for (int i = 0; i < 21 * 8; ++i) {
+      Bits.setBit(buf, i, Bits.Bit.ONE);
+    }
+    int[] zeros = {3, 64, 100, 161};
+    for (int zero : zeros) {
+      Bits.setBit(buf, zero, Bits.Bit.ZERO);
+    }
+
+    for (int from = 0; from <= 21 * 8; ++from) {
+      int expected = -1;
+      for (int zero : zeros) {
+        if (zero >= from) {
+          expected = zero;
+          break;
+        }
+      }
+      assertEquals(expected, Bits.nextZeroBit(buf, bytes.length, from));
+    }
+  }
 }
@@ -0,0 +1,71 @@
+package edu.berkeley.cs186.database.databox;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestFieldComparator {
+  // Checks that comparator orders the serialized boxes like compareTo does,
+  // and finds them equal like equals does, wherever in a buffer they are.
+  private static void checkOrder(FieldComparator comparator, List<DataBox> boxes) {
+    for (DataBox x : boxes) {
+      for (DataBox y : boxes) {
+        ByteBuffer a = ByteBuffer.allocate(3 + x.type().getSizeInBytes());
+        a.position(3);
+        x.serialize(a);
+        ByteBuffer b = ByteBuffer.wrap(y.toBytes());
+        String msg = x + " vs " + y;
+        assertEquals(msg, Integer.signum(x.compareTo(y)),
+                     Integer.signum(comparator.compare(a, 3, b, 0)));
+        // A copy of y, as x.equals(x) even if x is NaN.
+        DataBox yCopy = DataBox.fromBytes(ByteBuffer.wrap(y.toBytes()), y.type());
+        assertEquals(msg, x.equals(yCopy), comparator.equals(a, 3, b, 0));
+      }
+    }
+  }
+
+  @Test
+  public void testBool() {
+    List<DataBox> boxes = new ArrayList<>();
+    boxes.add(new BoolDataBox(false));
+    boxes.add(new BoolDataBox(true));
+    checkOrder(FieldComparator.forType(Type.boolType()), boxes);
+  }
+
+  @Test
+  public void testInt() {
+    List<DataBox> boxes = new ArrayList<>();
+    for (int i : new int[] {Integer.MIN_VALUE, -256, -1, 0, 1, 255, 256, Integer.MAX_VALUE}) {
+      boxes.add(new IntDataBox(i));
+    }
+    checkOrder(FieldComparator.forType(Type.intType()), boxes);
+  }
+
+  @Test
+  public void testFloat() {
+    List<DataBox> boxes = new ArrayList<>();
+    // -0.0 orders before 0.0 but equals it, and NaN orders last but equals
+    // nothing.
+    for (float f : new float[] {Float.NEGATIVE_INFINITY, -1.5f, -0.0f, 0.0f, 1e-30f, 2.5f,
+                                Float.POSITIVE_INFINITY, Float.NaN}) {
+      boxes.add(new FloatDataBox(f));
+    }
+    checkOrder(FieldComparator.forType(Type.floatType()), boxes);
+  }
+
+  @Test
+  public void testString() {
+    // Longer than 8 bytes, so that some of each string is compared 8 bytes at
+    // a time and the rest a byte at a time.
+    List<DataBox> boxes = new ArrayList<>();
+    for (String s : new String[] {"", " ", "0", "9", "A", "Z", "a", "z", "abcdefgh",
+                                  "abcdefghi", "abcdefghij", "abcdefgz", "zzzzzzzzzzz"}) {
+      boxes.add(new StringDataBox(s, 11));
+    }
+    checkOrder(FieldComparator.forType(Type.stringType(11)), boxes);
+  }
+}
@@ -73,6 +73,20 @@ public class TestStringDataBox {
     }
   }
 
+  @Test
+  public void testToAndFromCompactBytes() {
+    // Trailing spaces are not stored.
+    for (String s : new String[]{"", "f", "foo", "foo  ", " f o"}) {
+      StringDataBox d = new StringDataBox(s, 6);
+      ByteBuffer buf = ByteBuffer.allocate(d.getCompactSizeInBytes());
+      d.serializeCompact(buf);
+      assertEquals(Short.BYTES + s.replaceAll(" +$", "").length(), buf.position());
+      buf.flip();
+      assertEquals(d, StringDataBox.fromCompactBytes(buf, 6));
+      assertEquals(buf.limit(), buf.position());
+    }
+  }
+
   @Test
   public void testEquals() {
     StringDataBox foo = new StringDataBox("foo", 3);
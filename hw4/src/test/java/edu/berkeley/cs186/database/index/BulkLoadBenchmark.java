@@ -0,0 +1,57 @@
+package edu.berkeley.cs186.database.index;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.BufferPool;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * Compares building a B+ tree over sorted keys by putting them one at a time
+ * against bulk loading them (see BPlusTree.bulkLoad), and reports the time
+ * each takes and the number of pages of the resulting trees.
+ *
+ * This is not run as part of the test suite. Run it by hand with:
+ *
+ *   java -cp target/classes:target/test-classes \
+ *     edu.berkeley.cs186.database.index.BulkLoadBenchmark [numKeys] [numPasses]
+ */
+public class BulkLoadBenchmark {
+  public static void main(String[] args) throws Exception {
+    int numKeys = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int numPasses = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+    int order = BPlusTree.maxOrder(Page.pageSize, Type.intType());
+
+    List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+    for (int i = 0; i < numKeys; i++) {
+      data.add(new Pair<DataBox, RecordId>(new IntDataBox(i), new RecordId(i, (short) 0)));
+    }
+
+    File f = File.createTempFile("BulkLoadBenchmark", BPlusTree.FILENAME_EXTENSION);
+    f.deleteOnExit();
+    for (int pass = 0; pass < numPasses; pass++) {
+      long start = System.nanoTime();
+      BPlusTree tree = new BPlusTree(f.getAbsolutePath(), Type.intType(), order, new BufferPool(numKeys / order + 1024));
+      for (Pair<DataBox, RecordId> p : data) {
+        tree.put(p.getFirst(), p.getSecond());
+      }
+      long elapsed = System.nanoTime() - start;
+      System.out.printf("put      %.1f ns/key, %d pages%n", (double) elapsed / numKeys,
+                        tree.getNumPages());
+
+      start = System.nanoTime();
+      tree = new BPlusTree(f.getAbsolutePath(), Type.intType(), order, new BufferPool(numKeys / order + 1024));
+      tree.bulkLoad(data.iterator(), 1.0f);
+      elapsed = System.nanoTime() - start;
+      System.out.printf("bulkLoad %.1f ns/key, %d pages%n", (double) elapsed / numKeys,
+                        tree.getNumPages());
+    }
+    f.delete();
+  }
+}
@@ -0,0 +1,67 @@
+package edu.berkeley.cs186.database.index;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.BufferPool;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * Measures the throughput of point lookups (BPlusTree.get) of random keys in
+ * a B+ tree of the largest order that fits on a page (over 100 for int keys).
+ * Half of the lookups are of keys that are not in the tree. The tree is
+ * cached whole, so that the lookups measure searching nodes rather than
+ * reading them from disk.
+ *
+ * This is not run as part of the test suite. Run it by hand with:
+ *
+ *   java -cp target/classes:target/test-classes \
+ *     edu.berkeley.cs186.database.index.LookupBenchmark [numKeys] [numLookups] [numPasses]
+ */
+public class LookupBenchmark {
+  public static void main(String[] args) throws Exception {
+    int numKeys = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int numLookups = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+    int numPasses = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+    int order = BPlusTree.maxOrder(Page.pageSize, Type.intType());
+
+    // Even keys are in the tree; odd keys are not.
+    List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+    for (int i = 0; i < numKeys; i++) {
+      data.add(new Pair<DataBox, RecordId>(new IntDataBox(2 * i), new RecordId(i, (short) 0)));
+    }
+    File f = File.createTempFile("LookupBenchmark", BPlusTree.FILENAME_EXTENSION);
+    f.deleteOnExit();
+    BPlusTree tree = new BPlusTree(f.getAbsolutePath(), Type.intType(), order,
+                                   new BufferPool(2 * numKeys / order + 1024));
+    tree.bulkLoad(data.iterator(), 1.0f);
+
+    Random random = new Random(42);
+    List<DataBox> keys = new ArrayList<>();
+    for (int i = 0; i < numLookups; i++) {
+      keys.add(new IntDataBox(random.nextInt(2 * numKeys)));
+    }
+
+    System.out.printf("order %d, %d pages%n", order, tree.getNumPages());
+    for (int pass = 0; pass < numPasses; pass++) {
+      long start = System.nanoTime();
+      int found = 0;
+      for (DataBox key : keys) {
+        if (tree.get(key).isPresent()) {
+          found++;
+        }
+      }
+      long elapsed = System.nanoTime() - start;
+      System.out.printf("%.1f ns/lookup, %.0f lookups/s (%d found)%n",
+                        (double) elapsed / numLookups, numLookups * 1e9 / elapsed, found);
+    }
+    f.delete();
+  }
+}
@@ -1,6 +1,7 @@
 package edu.berkeley.cs186.database.index;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.io.File;
 import java.io.IOException;
@@ -67,4 +68,27 @@ public class TestBPlusNode {
       assertEquals(leaf, BPlusNode.fromBytes(meta, leafPageNum));
       assertEquals(inner, BPlusNode.fromBytes(meta, innerPageNum));
     }
+
+    @Test
+    public void testFromBytesCachesInnerNodes() throws IOException {
+      int d = 2;
+      BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType(), d);
+      List<DataBox> keys = new ArrayList<>();
+      List<Integer> children = new ArrayList<>();
+      keys.add(new IntDataBox(0));
+      children.add(0);
+      children.add(1);
+      int pageNum = new InnerNode(meta, keys, children).getPage().getPageNum();
+
+      // Inner nodes are decoded once and then shared, so a change made
+      // through one is seen through the other.
+      BPlusNode node = BPlusNode.fromBytes(meta, pageNum);
+      assertSame(node, BPlusNode.fromBytes(meta, pageNum));
+      assertEquals(node, InnerNode.fromBytes(meta, pageNum));
+
+      meta.uncacheInnerNode(pageNum);
+      BPlusNode reloaded = BPlusNode.fromBytes(meta, pageNum);
+      assertEquals(node, reloaded);
+      assertSame(reloaded, BPlusNode.fromBytes(meta, pageNum));
+    }
 }
@@ -1,9 +1,13 @@
 package edu.berkeley.cs186.database.index;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -18,9 +22,11 @@ import org.junit.rules.TemporaryFolder;
 import org.junit.rules.TestRule;
 import org.junit.rules.Timeout;
 
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.BufferPool;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.table.RecordId;
 
@@ -552,6 +558,338 @@ public class TestBPlusTree {
       assertEquals(rids, iteratorToList(tree.scanAll()));
     }
 
+    @Test
+    public void testNodeSizes() {
+      assertEquals(Arrays.asList(3), BPlusTree.nodeSizes(3, 6, 3, 6));
+      assertEquals(Arrays.asList(6, 6), BPlusTree.nodeSizes(12, 6, 3, 6));
+      assertEquals(Arrays.asList(6, 3), BPlusTree.nodeSizes(9, 6, 3, 6));
+      // A last node that is too small shares the entries of the one before it.
+      assertEquals(Arrays.asList(6, 6, 6, 3, 4), BPlusTree.nodeSizes(25, 6, 3, 6));
+      // Or is merged into it, if they fit in one node.
+      assertEquals(Arrays.asList(4), BPlusTree.nodeSizes(4, 3, 3, 5));
+      assertEquals(Arrays.asList(3, 3, 5), BPlusTree.nodeSizes(11, 3, 3, 5));
+    }
+
+    @Test
+    public void testBulkLoadLowFillFactor() throws BPlusTreeException, IOException {
+      BPlusTree tree = getBPlusTree(Type.intType(), 2);
+      List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+      for (int i = 1; i <= 8; ++i) {
+        data.add(new Pair<>(new IntDataBox(i), new RecordId(i, (short) i)));
+      }
+      tree.bulkLoad(data.iterator(), 0.5f);
+
+      // Four leaves of two keys each. A second inner node would only have one
+      // child, so the root takes all four.
+      //
+      //                (3 5 7)
+      //         /     |      |     \
+      //   (1 2)  (3 4)  (5 6)  (7 8)
+      List<String> leaves = new ArrayList<>();
+      for (int i = 1; i <= 8; i += 2) {
+        leaves.add(String.format("((%d (%d %d)) (%d (%d %d)))", i, i, i, i + 1, i + 1, i + 1));
+      }
+      assertEquals(String.format("(%s 3 %s 5 %s 7 %s)", leaves.toArray()), tree.toSexp());
+
+      // A last leaf of one key is merged into the leaf before it.
+      tree = getBPlusTree(Type.intType(), 2);
+      data = data.subList(0, 5);
+      tree.bulkLoad(data.iterator(), 0.5f);
+      assertEquals(String.format("(%s 3 ((3 (3 3)) (4 (4 4)) (5 (5 5))))", leaves.get(0)),
+                   tree.toSexp());
+      // The header page, the two leaves and the root.
+      assertEquals(4, tree.getNumPages());
+    }
+
+    @Test
+    public void testBulkLoadWhiteBox() throws BPlusTreeException, IOException {
+      BPlusTree tree = getBPlusTree(Type.intType(), 1);
+      List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+      for (int i = 1; i <= 5; ++i) {
+        data.add(new Pair<>(new IntDataBox(i), new RecordId(i, (short) i)));
+      }
+      tree.bulkLoad(data.iterator(), 1.0f);
+
+      //          (3 5)
+      //         /  |  \
+      //   (1 2) (3 4) (5)
+      String l = "((1 (1 1)) (2 (2 2)))";
+      String m = "((3 (3 3)) (4 (4 4)))";
+      String r = "((5 (5 5)))";
+      assertEquals(String.format("(%s 3 %s 5 %s)", l, m, r), tree.toSexp());
+      // The header page, the three leaves and the root. The page of the empty
+      // root the tree started with is given back.
+      assertEquals(5, tree.getNumPages());
+    }
+
+    @Test
+    public void testBulkLoad() throws BPlusTreeException, IOException {
+      BPlusTree tree = getBPlusTree(Type.intType(), 3);
+      List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+      List<RecordId> rids = new ArrayList<>();
+      int n = 1000;
+      for (int i = 0; i < n; ++i) {
+        RecordId rid = new RecordId(i, (short) i);
+        data.add(new Pair<>(new IntDataBox(2 * i), rid));
+        rids.add(rid);
+      }
+      tree.bulkLoad(data.iterator(), 0.75f);
+      assertEquals(rids, iteratorToList(tree.scanAll()));
+      assertEquals(rids.subList(n / 2, n),
+                   iteratorToList(tree.scanGreaterEqual(new IntDataBox(n - 1))));
+
+      // The tree takes puts and removes as usual, including in the gaps
+      // between keys that the fill factor left room for.
+      for (int i = 0; i < n; ++i) {
+        tree.put(new IntDataBox(2 * i + 1), new RecordId(i, (short) -i));
+      }
+      tree.remove(new IntDataBox(0));
+
+      tree = new BPlusTree(file.getAbsolutePath());
+      assertEquals(Optional.empty(), tree.get(new IntDataBox(0)));
+      for (int i = 1; i < n; ++i) {
+        assertEquals(Optional.of(new RecordId(i, (short) i)), tree.get(new IntDataBox(2 * i)));
+        assertEquals(Optional.of(new RecordId(i, (short) -i)),
+                     tree.get(new IntDataBox(2 * i + 1)));
+      }
+      assertEquals(2 * n - 1, iteratorToList(tree.scanAll()).size());
+    }
+
+    @Test
+    public void testIsEmpty() throws BPlusTreeException, IOException {
+      BPlusTree tree = getBPlusTree(Type.intType(), 2);
+      assertTrue(tree.isEmpty());
+      tree.put(new IntDataBox(1), new RecordId(1, (short) 1));
+      assertFalse(tree.isEmpty());
+      tree.remove(new IntDataBox(1));
+      assertTrue(tree.isEmpty());
+
+      // Once the root is an inner node, the tree is never empty again.
+      for (int i = 0; i < 10; ++i) {
+        tree.put(new IntDataBox(i), new RecordId(i, (short) i));
+      }
+      for (int i = 0; i < 10; ++i) {
+        tree.remove(new IntDataBox(i));
+      }
+      assertFalse(tree.isEmpty());
+      assertFalse(tree.scanAll().hasNext());
+    }
+
+    @Test
+    public void testBulkLoadUnsorted() throws BPlusTreeException, IOException {
+      BPlusTree tree = getBPlusTree(Type.intType(), 2);
+      List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+      for (int i = 0; i < 100; ++i) {
+        data.add(new Pair<>(new IntDataBox(i == 50 ? 49 : i), new RecordId(i, (short) i)));
+      }
+      int numPages = tree.getNumPages();
+      try {
+        tree.bulkLoad(data.iterator(), 1.0f);
+        fail();
+      } catch (BPlusTreeException e) {
+        // The tree is left empty, and the pages of the leaves written before
+        // the keys went out of order are given back.
+        assertFalse(tree.scanAll().hasNext());
+        assertEquals(numPages, tree.getNumPages());
+      }
+    }
+
+    @Test(expected = BPlusTreeException.class)
+    public void testBulkLoadNonEmptyTree() throws BPlusTreeException, IOException {
+      BPlusTree tree = getBPlusTree(Type.intType(), 2);
+      tree.put(new IntDataBox(0), new RecordId(0, (short) 0));
+      List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+      data.add(new Pair<>(new IntDataBox(1), new RecordId(1, (short) 1)));
+      tree.bulkLoad(data.iterator(), 1.0f);
+    }
+
+    @Test
+    public void testNonUniqueTree() throws BPlusTreeException, IOException {
+      BPlusTree tree = new BPlusTree(file.getAbsolutePath(), Type.intType(), 2,
+                                     new BufferPool(), Page.pageSize, false);
+      // Runs of equal keys far longer than a leaf, put in out of order.
+      int n = 200;
+      int numKeys = 5;
+      List<List<RecordId>> ridsByKey = new ArrayList<>();
+      for (int k = 0; k < numKeys; ++k) {
+        ridsByKey.add(new ArrayList<RecordId>());
+      }
+      for (int i = 0; i < n; ++i) {
+        int k = (i * 3) % numKeys;
+        RecordId rid = new RecordId(i, (short) i);
+        tree.put(new IntDataBox(k), rid);
+        ridsByKey.get(k).add(rid);
+      }
+
+      // Reading the tree back keeps it from being unique.
+      tree = new BPlusTree(file.getAbsolutePath());
+      tree.put(new IntDataBox(0), new RecordId(n, (short) 0));
+      ridsByKey.get(0).add(new RecordId(n, (short) 0));
+
+      List<RecordId> all = new ArrayList<>();
+      for (int k = 0; k < numKeys; ++k) {
+        List<RecordId> rids = ridsByKey.get(k);
+        assertEquals(rids, iteratorToList(tree.scanEqual(new IntDataBox(k))));
+        assertEquals(Optional.of(rids.get(0)), tree.get(new IntDataBox(k)));
+        all.addAll(rids);
+      }
+      assertEquals(all, iteratorToList(tree.scanAll()));
+      assertEquals(all.subList(ridsByKey.get(0).size() + ridsByKey.get(1).size(), all.size()),
+                   iteratorToList(tree.scanGreaterEqual(new IntDataBox(2))));
+      assertEquals(Optional.empty(), tree.get(new IntDataBox(numKeys)));
+
+      // remove(k, rid) removes one pair; remove(k) removes all of k's.
+      List<RecordId> threes = ridsByKey.get(3);
+      tree.remove(new IntDataBox(3), threes.remove(threes.size() / 2));
+      tree.remove(new IntDataBox(3), threes.remove(0));
+      tree.remove(new IntDataBox(3), new RecordId(n + 1, (short) 0));
+      assertEquals(threes, iteratorToList(tree.scanEqual(new IntDataBox(3))));
+      tree.remove(new IntDataBox(2));
+      assertFalse(tree.scanEqual(new IntDataBox(2)).hasNext());
+      assertEquals(threes.get(0), tree.scanGreaterEqual(new IntDataBox(2)).next());
+    }
+
+    @Test
+    public void testRemoveKeyAndRid() throws BPlusTreeException, IOException {
+      BPlusTree tree = getBPlusTree(Type.intType(), 2);
+      for (int i = 0; i < 20; ++i) {
+        tree.put(new IntDataBox(i), new RecordId(i, (short) i));
+      }
+      // In a unique tree, a pair is only removed if its record id matches.
+      tree.remove(new IntDataBox(7), new RecordId(8, (short) 8));
+      assertEquals(Optional.of(new RecordId(7, (short) 7)), tree.get(new IntDataBox(7)));
+      tree.remove(new IntDataBox(7), new RecordId(7, (short) 7));
+      assertEquals(Optional.empty(), tree.get(new IntDataBox(7)));
+    }
+
+    @Test
+    public void testBulkLoadDuplicates() throws BPlusTreeException, IOException {
+      BPlusTree tree = new BPlusTree(file.getAbsolutePath(), Type.intType(), 2,
+                                     new BufferPool(), Page.pageSize, false);
+      List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+      List<RecordId> sevens = new ArrayList<>();
+      for (int i = 0; i < 100; ++i) {
+        RecordId rid = new RecordId(i, (short) i);
+        data.add(new Pair<DataBox, RecordId>(new IntDataBox(i / 20 + 5), rid));
+        if (i / 20 + 5 == 7) {
+          sevens.add(rid);
+        }
+      }
+      tree.bulkLoad(data.iterator(), 0.75f);
+      assertEquals(sevens, iteratorToList(tree.scanEqual(new IntDataBox(7))));
+
+      // Pairs put later go after the bulk loaded ones.
+      RecordId rid = new RecordId(100, (short) 0);
+      tree.put(new IntDataBox(7), rid);
+      sevens.add(rid);
+      assertEquals(sevens, iteratorToList(tree.scanEqual(new IntDataBox(7))));
+      assertEquals(101, iteratorToList(tree.scanAll()).size());
+    }
+
+    // Returns the record ids of `entries` whose keys are in the range given
+    // as to scanRange.
+    private static List<RecordId> inRange(List<Pair<DataBox, RecordId>> entries,
+                                          Optional<DataBox> lo, boolean loInclusive,
+                                          Optional<DataBox> hi, boolean hiInclusive) {
+      List<RecordId> rids = new ArrayList<>();
+      for (Pair<DataBox, RecordId> e : entries) {
+        int loCmp = lo.isPresent() ? e.getFirst().compareTo(lo.get()) : 1;
+        int hiCmp = hi.isPresent() ? e.getFirst().compareTo(hi.get()) : -1;
+        if ((loCmp > 0 || (loCmp == 0 && loInclusive)) &&
+            (hiCmp < 0 || (hiCmp == 0 && hiInclusive))) {
+          rids.add(e.getSecond());
+        }
+      }
+      return rids;
+    }
+
+    // Checks every scanRange, scanRangeEntries and scanRangeReverse of `tree`, whose entries in
+    // order are `entries`, with bounds from -1 to maxKey + 1.
+    private static void checkRanges(BPlusTree tree, List<Pair<DataBox, RecordId>> entries,
+                                    int maxKey) {
+      List<Optional<DataBox>> bounds = new ArrayList<>();
+      bounds.add(Optional.<DataBox>empty());
+      for (int i = -1; i <= maxKey + 1; ++i) {
+        bounds.add(Optional.<DataBox>of(new IntDataBox(i)));
+      }
+      boolean[] inclusive = {true, false};
+      for (Optional<DataBox> lo : bounds) {
+        for (Optional<DataBox> hi : bounds) {
+          for (boolean loInclusive : inclusive) {
+            for (boolean hiInclusive : inclusive) {
+              List<RecordId> expected = inRange(entries, lo, loInclusive, hi, hiInclusive);
+              assertEquals(expected,
+                           iteratorToList(tree.scanRange(lo, loInclusive, hi, hiInclusive)));
+              List<RecordId> rids = new ArrayList<>();
+              for (Pair<DataBox, RecordId> e :
+                   iteratorToList(tree.scanRangeEntries(lo, loInclusive, hi, hiInclusive))) {
+                assertTrue(entries.contains(e));
+                rids.add(e.getSecond());
+              }
+              assertEquals(expected, rids);
+              Collections.reverse(expected);
+              assertEquals(expected,
+                           iteratorToList(tree.scanRangeReverse(lo, loInclusive, hi, hiInclusive)));
+            }
+          }
+        }
+      }
+    }
+
+    @Test
+    public void testScanRange() throws BPlusTreeException, IOException {
+      // Even keys only, so that bounds fall both on and between keys.
+      BPlusTree tree = getBPlusTree(Type.intType(), 2);
+      List<Integer> keys = new ArrayList<>();
+      for (int i = 0; i < 40; ++i) {
+        keys.add(2 * i);
+      }
+      Collections.shuffle(keys, new Random(42));
+      for (int key : keys) {
+        tree.put(new IntDataBox(key), new RecordId(key, (short) 0));
+      }
+      Collections.sort(keys);
+      List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+      for (int key : keys) {
+        entries.add(new Pair<DataBox, RecordId>(new IntDataBox(key), new RecordId(key, (short) 0)));
+      }
+      checkRanges(tree, entries, 80);
+
+      // Removes leave empty leaves behind, which scans skip over.
+      for (int i = 10; i < 50; i += 2) {
+        tree.remove(new IntDataBox(i));
+      }
+      entries.subList(5, 25).clear();
+      checkRanges(tree, entries, 80);
+    }
+
+    @Test
+    public void testScanRangeNonUnique() throws BPlusTreeException, IOException {
+      BPlusTree tree = new BPlusTree(file.getAbsolutePath(), Type.intType(), 2,
+                                     new BufferPool(), Page.pageSize, false);
+      // Runs of 12 equal keys, put in in a random order.
+      List<Pair<DataBox, RecordId>> puts = new ArrayList<>();
+      for (int i = 0; i < 60; ++i) {
+        puts.add(new Pair<DataBox, RecordId>(new IntDataBox(i / 12), new RecordId(i, (short) 0)));
+      }
+      Collections.shuffle(puts, new Random(42));
+      for (Pair<DataBox, RecordId> p : puts) {
+        tree.put(p.getFirst(), p.getSecond());
+      }
+
+      // The entries in order of key, with equal keys in the order they were
+      // put in.
+      List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+      for (int key = 0; key < 5; ++key) {
+        for (Pair<DataBox, RecordId> p : puts) {
+          if (p.getFirst().equals(new IntDataBox(key))) {
+            entries.add(p);
+          }
+        }
+      }
+      checkRanges(tree, entries, 4);
+    }
+
     @Test
     public void testMaxOrder() {
       // Note that this white box test depend critically on the implementation
@@ -565,4 +903,31 @@ public class TestBPlusTree {
       assertEquals(5, InnerNode.maxOrder(pageSizeInBytes, keySchema));
       assertEquals(4, BPlusTree.maxOrder(pageSizeInBytes, keySchema));
     }
+
+    @Test
+    public void testLargePages() throws BPlusTreeException, IOException {
+      int pageSize = 4 * Page.pageSize;
+      int order = BPlusTree.maxOrder(pageSize, Type.intType());
+      assertTrue(order > BPlusTree.maxOrder(Page.pageSize, Type.intType()));
+      BPlusTree tree = new BPlusTree(file.getAbsolutePath(), Type.intType(), order,
+                                     new BufferPool(), pageSize);
+
+      // Enough keys to split full leaves a few times.
+      int n = 5 * order;
+      for (int i = 0; i < n; ++i) {
+        tree.put(new IntDataBox(i), new RecordId(i, (short) i));
+      }
+
+      // The page size is read back from the file.
+      tree = new BPlusTree(file.getAbsolutePath());
+      for (int i = 0; i < n; ++i) {
+        assertEquals(Optional.of(new RecordId(i, (short) i)), tree.get(new IntDataBox(i)));
+      }
+    }
+
+    @Test(expected = BPlusTreeException.class)
+    public void testOrderTooLargeForPageSize() throws BPlusTreeException, IOException {
+      int order = BPlusTree.maxOrder(2 * Page.pageSize, Type.intType());
+      getBPlusTree(Type.intType(), order);
+    }
 }
@@ -24,6 +24,7 @@ import org.junit.rules.Timeout;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
@@ -373,4 +374,28 @@ public class TestLeafNode {
         assertEquals(leaf, LeafNode.fromBytes(meta, pageNum));
       }
     }
+
+    @Test
+    public void testFindInPage() throws BPlusTreeException, IOException {
+      int d = 5;
+      BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.stringType(3), d);
+      LeafNode leaf = getEmptyLeaf(meta, Optional.empty());
+      Page page = leaf.getPage();
+      assertEquals(Optional.empty(), LeafNode.find(meta, page, new StringDataBox("b", 3)));
+
+      // Put "b", "d", ..., out of order, and look up every key from "a" on,
+      // so that half of the lookups miss, including before the first key and
+      // after the last.
+      for (int i = 2 * d - 1; i >= 0; --i) {
+        String s = String.valueOf((char) ('b' + 2 * i));
+        leaf.put(new StringDataBox(s, 3), new RecordId(i, (short) i));
+      }
+      for (int i = 0; i < 4 * d + 2; ++i) {
+        DataBox key = new StringDataBox(String.valueOf((char) ('a' + i)), 3);
+        Optional<RecordId> expected = leaf.getKey(key);
+        assertEquals(i % 2 == 1 && i < 4 * d, expected.isPresent());
+        assertEquals(expected, LeafNode.find(meta, page, key));
+        assertEquals(expected, BPlusNode.find(meta, page.getPageNum(), key));
+      }
+    }
 }
@@ -0,0 +1,73 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures fetchPage throughput when several threads scan their own files at
+ * the same time. Each thread owns one PageAllocator and repeatedly scans all of
+ * its pages, so every fetch after the first pass is a buffer pool hit.
+ *
+ * This is not run as part of the test suite. Run it by hand with:
+ *
+ *   java -cp target/classes:target/test-classes \
+ *     edu.berkeley.cs186.database.io.BufferPoolBenchmark [numPages] [numPasses]
+ */
+public class BufferPoolBenchmark {
+  private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+
+  public static void main(String[] args) throws Exception {
+    final int numPages = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+    final int numPasses = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+    for (int numThreads : THREAD_COUNTS) {
+      List<PageAllocator> allocators = new ArrayList<PageAllocator>();
+      List<File> files = new ArrayList<File>();
+      for (int i = 0; i < numThreads; i++) {
+        File f = File.createTempFile("BufferPoolBenchmark", ".temp");
+        f.deleteOnExit();
+        files.add(f);
+        PageAllocator pA = new PageAllocator(f.getAbsolutePath(), true, false);
+        for (int j = 0; j < numPages; j++) {
+          pA.allocPage();
+        }
+        allocators.add(pA);
+      }
+
+      List<Thread> threads = new ArrayList<Thread>();
+      for (final PageAllocator pA : allocators) {
+        threads.add(new Thread(new Runnable() {
+          public void run() {
+            for (int pass = 0; pass < numPasses; pass++) {
+              for (int j = 0; j < numPages; j++) {
+                pA.fetchPage(j);
+              }
+            }
+          }
+        }));
+      }
+
+      long start = System.nanoTime();
+      for (Thread t : threads) {
+        t.start();
+      }
+      for (Thread t : threads) {
+        t.join();
+      }
+      long elapsed = System.nanoTime() - start;
+
+      long fetches = (long) numThreads * numPasses * numPages;
+      System.out.printf("%d thread(s): %d fetches in %.1f ms, %.0f pages/sec%n",
+                        numThreads, fetches, elapsed / 1e6, fetches / (elapsed / 1e9));
+
+      for (PageAllocator pA : allocators) {
+        pA.close();
+      }
+      for (File f : files) {
+        f.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Compares MAPPED and POSITIONAL page storage (see PageStorage). The benchmark
+ * builds a file of the given size, then reopens it with each kind of storage
+ * and a buffer pool that is much smaller than the file, and times a full scan
+ * with the page iterator followed by as many lookups of random pages. With
+ * mapped storage a pool miss only creates a view of the mapping; with
+ * positional storage it is a read system call into a buffer.
+ *
+ * This is not run as part of the test suite. Run it by hand with:
+ *
+ *   java -cp target/classes:target/test-classes \
+ *     edu.berkeley.cs186.database.io.PageStorageBenchmark [fileSizeMB] [numPasses]
+ */
+public class PageStorageBenchmark {
+  private static final int POOL_CAPACITY = 1024;
+
+  public static void main(String[] args) throws Exception {
+    int fileSizeMB = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+    int numPasses = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+    int numPages = (int) ((long) fileSizeMB * 1024 * 1024 / Page.pageSize);
+
+    File f = File.createTempFile("PageStorageBenchmark", ".temp");
+    f.deleteOnExit();
+    PageAllocator pA = new PageAllocator(f.getAbsolutePath(), true, false);
+    for (int allocated = 0; allocated < numPages; allocated += Page.pageSize) {
+      pA.allocExtent(Math.min(Page.pageSize, numPages - allocated));
+    }
+    pA.close();
+
+    for (int pass = 0; pass < numPasses; pass++) {
+      for (PageStorage.Kind kind : PageStorage.Kind.values()) {
+        pA = new PageAllocator(f.getAbsolutePath(), false, false,
+                               new BufferPool(POOL_CAPACITY), Page.pageSize, kind);
+
+        long start = System.nanoTime();
+        long sum = 0;
+        Iterator<Page> iter = pA.iterator();
+        while (iter.hasNext()) {
+          sum += iter.next().readInt(0);
+        }
+        long scan = System.nanoTime() - start;
+
+        Random random = new Random(pass);
+        start = System.nanoTime();
+        for (int i = 0; i < numPages; i++) {
+          sum += pA.fetchPage(random.nextInt(numPages)).readInt(0);
+        }
+        long lookups = System.nanoTime() - start;
+        pA.close();
+
+        System.out.printf("%-10s %d MB: scan %.0f ns/page, random lookup %.0f ns/page (%d)%n",
+                          kind, fileSizeMB, (double) scan / numPages,
+                          (double) lookups / numPages, sum);
+      }
+    }
+    f.delete();
+  }
+}
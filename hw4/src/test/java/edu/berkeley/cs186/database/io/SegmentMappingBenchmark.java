@@ -0,0 +1,71 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Compares mapping a file one page at a time against mapping it in large
+ * segments (FileMapping.DEFAULT_SEGMENT_SIZE). The benchmark builds a file of
+ * the given size, then reopens it with each mapping strategy and a buffer pool
+ * that is much smaller than the file, so that almost every fetch creates a new
+ * Page: with one mapping per page that is one mmap call per fetch, with
+ * segments it is a slice of an existing mapping.
+ *
+ * This is not run as part of the test suite. Run it by hand with:
+ *
+ *   java -cp target/classes:target/test-classes \
+ *     edu.berkeley.cs186.database.io.SegmentMappingBenchmark [fileSizeMB] [numPasses]
+ *
+ * e.g. with a fileSizeMB of 1024 for a 1GB table. Large files with one mapping
+ * per page may need a larger vm.max_map_count.
+ */
+public class SegmentMappingBenchmark {
+  private static final int POOL_CAPACITY = 64;
+
+  public static void main(String[] args) throws Exception {
+    int fileSizeMB = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+    int numPasses = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+    int numPages = (int) ((long) fileSizeMB * 1024 * 1024 / Page.pageSize);
+
+    File f = File.createTempFile("SegmentMappingBenchmark", ".temp");
+    f.deleteOnExit();
+    PageAllocator pA = new PageAllocator(f.getAbsolutePath(), true, false);
+    for (int allocated = 0; allocated < numPages; allocated += Page.pageSize) {
+      pA.allocExtent(Math.min(Page.pageSize, numPages - allocated));
+    }
+    pA.close();
+
+    long[] segmentSizes = {Page.pageSize, FileMapping.DEFAULT_SEGMENT_SIZE};
+    for (int pass = 0; pass < numPasses; pass++) {
+      for (long segmentSize : segmentSizes) {
+        String name = segmentSize == Page.pageSize ? "page-at-a-time" : "segments";
+        pA = new PageAllocator(f.getAbsolutePath(), false, false,
+                               new BufferPool(POOL_CAPACITY), Page.pageSize,
+                               PageStorage.Kind.MAPPED, segmentSize);
+
+        long start = System.nanoTime();
+        long sum = 0;
+        for (int i = 0; i < numPages; i++) {
+          sum += pA.fetchPage(i).readInt(0);
+        }
+        long sequential = System.nanoTime() - start;
+
+        Random random = new Random(pass);
+        start = System.nanoTime();
+        for (int i = 0; i < numPages; i++) {
+          sum += pA.fetchPage(random.nextInt(numPages)).readInt(0);
+        }
+        long randomElapsed = System.nanoTime() - start;
+        pA.close();
+        // Unmapping only happens when the mappings are garbage collected; with one mapping per
+        // page, a few passes over a large file otherwise run into the kernel's mapping limit.
+        System.gc();
+
+        System.out.printf("%-14s %d MB: sequential %.0f ns/page, random %.0f ns/page (%d)%n",
+                          name, fileSizeMB, (double) sequential / numPages,
+                          (double) randomElapsed / numPages, sum);
+      }
+    }
+    f.delete();
+  }
+}
@@ -0,0 +1,192 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestBufferPool {
+  private final String fName = "TestBufferPool.temp";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Page newPage(int pageNum) throws IOException {
+    File tempFile = tempFolder.newFile(fName + pageNum);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    return new Page(fc, 0, pageNum, false);
+  }
+
+  @Test
+  public void testPutGetRemove() throws IOException {
+    BufferPool pool = new BufferPool(8, 4);
+    Page p = newPage(0);
+    assertNull(pool.get(0L));
+    pool.put(0L, p);
+    assertSame(p, pool.get(0L));
+    assertSame(p, pool.remove(0L));
+    assertNull(pool.get(0L));
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void testPutIfAbsent() throws IOException {
+    BufferPool pool = new BufferPool(8, 4);
+    Page p = newPage(0);
+    Page q = newPage(1);
+    assertSame(p, pool.putIfAbsent(7L, p));
+    assertSame(p, pool.putIfAbsent(7L, q));
+    assertSame(p, pool.get(7L));
+  }
+
+  @Test
+  public void testStripesEvictIndependently() throws IOException {
+    // 4 stripes of 2 pages each. Keys 0, 4, 8, ... all map to stripe 0.
+    BufferPool pool = new BufferPool(8, 4);
+    Page p = newPage(0);
+    pool.put(0L, p);
+    pool.put(4L, p);
+    pool.put(1L, p);
+    pool.put(2L, p);
+    pool.put(8L, p);
+    assertNull(pool.get(0L));
+    assertNotNull(pool.get(4L));
+    assertNotNull(pool.get(8L));
+    assertNotNull(pool.get(1L));
+    assertNotNull(pool.get(2L));
+    assertEquals(4, pool.size());
+  }
+
+  @Test
+  public void testClear() throws IOException {
+    BufferPool pool = new BufferPool(16);
+    Page p = newPage(0);
+    for (long i = 0; i < 10; i++) {
+      pool.put(i, p);
+    }
+    assertEquals(10, pool.clear().size());
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void testPinnedPagesAreNotEvicted() throws IOException {
+    BufferPool pool = new BufferPool(2, 1);
+    Page p0 = newPage(0);
+    Page p1 = newPage(1);
+    pool.putIfAbsent(0L, p0, true);
+    pool.put(1L, p1);
+    pool.put(2L, newPage(2));
+    assertSame(p0, pool.get(0L));
+    assertNull(pool.get(1L));
+
+    pool.unpin(0L, p0);
+    assertFalse(p0.isPinned());
+    pool.put(3L, newPage(3));
+    pool.put(4L, newPage(4));
+    assertNull(pool.get(0L));
+  }
+
+  @Test(expected = PageException.class)
+  public void testAllPinned() throws IOException {
+    BufferPool pool = new BufferPool(2, 1);
+    pool.putIfAbsent(0L, newPage(0), true);
+    pool.putIfAbsent(1L, newPage(1), true);
+    pool.put(2L, newPage(2));
+  }
+
+  @Test
+  public void testRemoveAll() throws IOException {
+    BufferPool pool = new BufferPool(16);
+    Page p = newPage(0);
+    pool.put((1L << 32) | 0, p);
+    pool.put((1L << 32) | 1, p);
+    pool.put((2L << 32) | 0, p);
+    assertEquals(2, pool.removeAll(1).size());
+    assertEquals(1, pool.size());
+    assertNotNull(pool.get((2L << 32) | 0));
+  }
+
+  @Test
+  public void testSharedPoolIsBounded() throws IOException {
+    BufferPool pool = new BufferPool(8);
+    PageAllocator a = new PageAllocator(tempFolder.newFile(fName + "a").getAbsolutePath(), true, false, pool);
+    PageAllocator b = new PageAllocator(tempFolder.newFile(fName + "b").getAbsolutePath(), true, false, pool);
+    for (int i = 0; i < 20; i++) {
+      a.allocPage();
+      b.allocPage();
+    }
+    assertTrue(pool.size() <= 8);
+
+    a.close();
+    b.close();
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void testPinUnpinPage() throws IOException {
+    BufferPool pool = new BufferPool(1);
+    PageAllocator pA = new PageAllocator(tempFolder.newFile(fName).getAbsolutePath(), true, false, pool);
+    int p0 = pA.allocPage();
+    int p1 = pA.allocPage();
+
+    Page page = pA.pinPage(p0);
+    assertTrue(page.isPinned());
+    try {
+      pA.fetchPage(p1);
+      fail("the only frame is pinned");
+    } catch (PageException e) {
+      // Expected.
+    }
+
+    page.writeInt(0, 42);
+    pA.unpinPage(page, true);
+    assertFalse(page.isPinned());
+    assertEquals(p1, pA.fetchPage(p1).getPageNum());
+    assertEquals(42, pA.fetchPage(p0).readInt(0));
+    pA.close();
+  }
+
+  @Test
+  public void testConcurrentFetchSharesPages() throws Exception {
+    File tempFile = tempFolder.newFile(fName);
+    final PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+    final int numPages = 64;
+    for (int i = 0; i < numPages; i++) {
+      pA.allocPage();
+    }
+
+    final Page[][] seen = new Page[4][numPages];
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < seen.length; t++) {
+      final int id = t;
+      threads.add(new Thread(new Runnable() {
+        public void run() {
+          for (int i = 0; i < numPages; i++) {
+            seen[id][i] = pA.fetchPage(i);
+          }
+        }
+      }));
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    for (int i = 0; i < numPages; i++) {
+      for (int t = 1; t < seen.length; t++) {
+        assertSame(seen[0][i], seen[t][i]);
+      }
+    }
+    pA.close();
+  }
+}
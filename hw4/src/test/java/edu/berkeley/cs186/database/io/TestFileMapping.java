@@ -0,0 +1,117 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestFileMapping {
+  private final String fName = "TestFileMapping.temp";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private FileChannel open(File file) throws IOException {
+    return new RandomAccessFile(file, "rw").getChannel();
+  }
+
+  private Page mapBlock(FileMapping mapping, int blockNum, int pageNum, boolean durable) {
+    return mapping.openPage((long) blockNum * Page.pageSize, Page.pageSize, pageNum, durable);
+  }
+
+  @Test
+  public void testPagesShareOneSegment() throws IOException {
+    FileChannel fc = open(tempFolder.newFile(fName));
+    fc.write(ByteBuffer.allocate(Page.pageSize * 32));
+    FileMapping mapping = new FileMapping(fc);
+
+    for (int i = 0; i < 32; i++) {
+      mapBlock(mapping, i, i, false).writeInt(0, i);
+    }
+    assertEquals(1, mapping.getNumMappings());
+    for (int i = 0; i < 32; i++) {
+      assertEquals(i, mapBlock(mapping, i, i, false).readInt(0));
+    }
+    assertEquals(1, mapping.getNumMappings());
+    assertEquals(Page.pageSize * 32, fc.size());
+  }
+
+  @Test
+  public void testGrowsFileOnlyAsFarAsNeeded() throws IOException {
+    FileChannel fc = open(tempFolder.newFile(fName));
+    FileMapping mapping = new FileMapping(fc);
+
+    mapBlock(mapping, 0, 0, false);
+    assertEquals(Page.pageSize, fc.size());
+    mapBlock(mapping, 4, 4, false);
+    assertEquals(Page.pageSize * 5, fc.size());
+    mapping.reserve(Page.pageSize * 10L);
+    assertEquals(Page.pageSize * 10, fc.size());
+    int numMappings = mapping.getNumMappings();
+    for (int i = 5; i < 10; i++) {
+      mapBlock(mapping, i, i, false);
+    }
+    assertEquals(numMappings, mapping.getNumMappings());
+  }
+
+  @Test
+  public void testGrowingAPageAtATimeRemapsLogarithmically() throws IOException {
+    FileChannel fc = open(tempFolder.newFile(fName));
+    FileMapping mapping = new FileMapping(fc, Page.pageSize * 64);
+
+    // Segments are mapped 1, 2, 4, ..., 64 pages long, but the file only
+    // grows as far as its pages reach.
+    for (int i = 0; i < 128; i++) {
+      mapBlock(mapping, i, i, false).writeInt(0, i);
+      assertEquals(Page.pageSize * (i + 1), fc.size());
+    }
+    assertEquals(14, mapping.getNumMappings());
+    for (int i = 0; i < 128; i++) {
+      assertEquals(i, mapBlock(mapping, i, i, false).readInt(0));
+    }
+  }
+
+  @Test
+  public void testPagesAcrossSegments() throws IOException {
+    File file = tempFolder.newFile(fName);
+    FileChannel fc = open(file);
+    FileMapping mapping = new FileMapping(fc, Page.pageSize * 4);
+
+    Page[] pages = new Page[10];
+    for (int i = 0; i < 10; i++) {
+      pages[i] = mapBlock(mapping, i, i, true);
+      pages[i].writeInt(Page.pageSize - 4, i);
+    }
+    // A page mapped before its segment was remapped still works.
+    pages[4].writeInt(0, 42);
+    for (Page p : pages) {
+      p.flush();
+    }
+    fc.close();
+
+    FileMapping reopened = new FileMapping(open(file), Page.pageSize * 4);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, mapBlock(reopened, i, i, false).readInt(Page.pageSize - 4));
+    }
+    assertEquals(42, mapBlock(reopened, 4, 4, false).readInt(0));
+    assertEquals(3, reopened.getNumMappings());
+  }
+
+  @Test(expected = PageException.class)
+  public void testPagesCannotStraddleSegments() throws IOException {
+    FileMapping mapping = new FileMapping(open(tempFolder.newFile(fName)), Page.pageSize * 3);
+    mapping.openPage(Page.pageSize * 2, Page.pageSize * 2, 1, false);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSegmentSizeMustBeMultipleOfPageSize() throws IOException {
+    new FileMapping(open(tempFolder.newFile(fName)), Page.pageSize + 1);
+  }
+}
@@ -0,0 +1,129 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.berkeley.cs186.database.io.IOMetrics.Counter;
+
+public class TestMetricsRegistry {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testReadsAndEvictions() throws IOException {
+    BufferPool pool = new BufferPool(8, 1);
+    File file = tempFolder.newFile("a.temp");
+    PageAllocator pA = new PageAllocator(file.getAbsolutePath(), true, false, pool);
+    for (int i = 0; i < 16; i++) {
+      pA.allocPage();
+    }
+    IOMetrics.Snapshot before = pA.getMetrics().snapshot();
+
+    // The last 8 pages allocated are cached; the first 8 are not.
+    for (int i = 0; i < 16; i++) {
+      pA.fetchPage(i);
+    }
+    IOMetrics.Snapshot delta = pA.getMetrics().snapshot().minus(before);
+    assertEquals(16, delta.get(Counter.LOGICAL_READS));
+    assertEquals(16, delta.get(Counter.PHYSICAL_READS));
+    assertEquals(16, delta.get(Counter.EVICTIONS));
+    assertEquals(0, delta.get(Counter.FLUSHES));
+
+    // Hits are logical reads only.
+    before = pA.getMetrics().snapshot();
+    pA.fetchPage(15);
+    delta = pA.getMetrics().snapshot().minus(before);
+    assertEquals(1, delta.get(Counter.LOGICAL_READS));
+    assertEquals(0, delta.get(Counter.PHYSICAL_READS));
+    pA.close();
+  }
+
+  @Test
+  public void testWritesAndFlushes() throws IOException {
+    BufferPool pool = new BufferPool();
+    File file = tempFolder.newFile("a.temp");
+    PageAllocator pA = new PageAllocator(file.getAbsolutePath(), true, pool);
+    IOMetrics.Snapshot before = pA.getMetrics().snapshot();
+    pA.allocPage();
+    // The master page and the header page.
+    IOMetrics.Snapshot delta = pA.getMetrics().snapshot().minus(before);
+    assertEquals(2, delta.get(Counter.FLUSHES));
+    assertEquals(2, delta.get(Counter.WRITES));
+
+    Page p = pA.pinPage(0);
+    p.writeInt(0, 1);
+    pA.unpinPage(p, true);
+    p.flush();
+    assertEquals(3, pA.getMetrics().snapshot().minus(before).get(Counter.FLUSHES));
+    assertTrue(pA.getMetrics().get(Counter.PIN_WAIT_NANOS) > 0);
+    pA.close();
+  }
+
+  @Test
+  public void testPerFileAndPerTransaction() throws IOException {
+    BufferPool pool = new BufferPool();
+    MetricsRegistry registry = pool.getMetrics();
+    String a = tempFolder.newFile("a.temp").getAbsolutePath();
+    String b = tempFolder.newFile("b.temp").getAbsolutePath();
+    PageAllocator pA = new PageAllocator(a, true, false, pool);
+    PageAllocator pB = new PageAllocator(b, true, false, pool);
+    pA.allocPage();
+    pB.allocPage();
+
+    IOMetrics t1 = registry.beginTransaction(1);
+    assertNull(registry.bind(t1));
+    pA.fetchPage(0);
+    pA.fetchPage(0);
+    pB.fetchPage(0);
+    registry.endTransaction(1);
+    pB.fetchPage(0);
+
+    assertEquals(3, t1.get(Counter.LOGICAL_READS));
+    MetricsRegistry.Snapshot snapshot = registry.snapshot();
+    assertEquals(2, snapshot.getFile(a).get(Counter.LOGICAL_READS));
+    assertEquals(2, snapshot.getFile(b).get(Counter.LOGICAL_READS));
+    assertEquals(4, snapshot.getTotal().get(Counter.LOGICAL_READS));
+    // Ended transactions are no longer in the registry.
+    assertEquals(IOMetrics.Snapshot.EMPTY, snapshot.getTransaction(1));
+
+    // A file's counters survive reopening it.
+    pA.close();
+    pA = new PageAllocator(a, false, false, pool);
+    pA.fetchPage(0);
+    assertEquals(3, registry.snapshot().getFile(a).get(Counter.LOGICAL_READS));
+    pA.close();
+    pB.close();
+  }
+
+  @Test
+  public void testTransactionsOnOtherThreads() throws Exception {
+    BufferPool pool = new BufferPool();
+    final MetricsRegistry registry = pool.getMetrics();
+    final PageAllocator pA = new PageAllocator(tempFolder.newFile("a.temp").getAbsolutePath(),
+                                               true, false, pool);
+    pA.allocPage();
+    final IOMetrics t1 = registry.beginTransaction(1);
+    registry.bind(t1);
+
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        // Not bound to this thread.
+        pA.fetchPage(0);
+      }
+    });
+    thread.start();
+    thread.join();
+    assertEquals(0, t1.get(Counter.LOGICAL_READS));
+    pA.fetchPage(0);
+    assertEquals(1, registry.snapshot().getTransaction(1).get(Counter.LOGICAL_READS));
+
+    registry.endTransaction(1);
+    pA.close();
+  }
+}
@@ -0,0 +1,801 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.io.RandomAccessFile;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+* Tests PageAllocator.java
+* Should be optional tests for student unless for debugging
+* @author  Sammy Sidhu
+* @version 1.0
+*/
+
+public class TestPageAllocator {
+  private final String fName = "TestPageAllocator.temp";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  static private int byteEstimate(int pageNum) {
+    return Page.pageSize*((pageNum/Page.pageSize)*(Page.pageSize + 1) + (pageNum % Page.pageSize) + 2);
+  }
+
+  @Test
+  public void TestPageAllocatorConstructor() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+    pA.close();
+    FileChannel fc = new RandomAccessFile(tempFile, "r").getChannel();
+
+    assertEquals(Page.pageSize, fc.size());
+
+    ByteBuffer bb = ByteBuffer.allocate(Page.pageSize);
+    fc.read(bb, 0);
+    byte[] masterPage = bb.array();
+    for (int i = 0; i < Page.pageSize; i++) {
+      assertEquals((byte) 0, masterPage[i]);
+    }
+  }
+
+  @Test
+  public void TestPageAllocatorConstructorTwice() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+    pA.close();
+    FileChannel fc = new RandomAccessFile(tempFile, "r").getChannel();
+
+    assertEquals(Page.pageSize, fc.size());
+
+    ByteBuffer bb = ByteBuffer.allocate(Page.pageSize);
+    fc.read(bb, 0);
+    byte[] masterPage = bb.array();
+    for (int i = 0; i < Page.pageSize; i++) {
+      assertEquals((byte) 0, masterPage[i]);
+    }
+    fc.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, false);
+    pA.close();
+    fc = new RandomAccessFile(tempFile, "r").getChannel();
+
+
+    bb = ByteBuffer.allocate(Page.pageSize);
+    fc.read(bb, 0);
+    masterPage = bb.array();
+    for (int i = 0; i < Page.pageSize; i++) {
+      assertEquals((byte) 0, masterPage[i]);
+    }
+    fc.close();
+  }
+
+  @Test
+  public void TestPageAllocatorAllocPage() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    assertEquals(0, pA.allocPage());
+    pA.close();
+    FileChannel fc = new RandomAccessFile(tempFile, "r").getChannel();
+    assertEquals(byteEstimate(1), fc.size());
+    fc.close();
+  }
+
+  @Test
+  public void TestPageAllocatorAllocPageMass() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 9000; i++) {
+      assertEquals(i, pA.allocPage());
+    }
+    // The file's one segment is remapped as it doubles, not once per page.
+    assertEquals(15, ((FileMapping) pA.getStorage()).getNumMappings());
+
+    pA.close();
+    FileChannel fc = new RandomAccessFile(tempFile, "r").getChannel();
+    assertEquals(byteEstimate(9000), fc.size());
+    fc.close();
+  }
+
+  @Test
+  public void TestPageAllocatorFetchPage() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 4097; i++) {
+      assertEquals(i, pA.allocPage());
+      Page p = pA.fetchPage(i);
+
+      for (int j = 0; j < 1024; j++) {
+        int count = i*1024 + j;
+        byte[] countBytes = ByteBuffer.allocate(4).putInt(count).array();
+        p.writeBytes(j*4, 4, countBytes);
+      }
+    }
+    pA.close();
+    FileChannel fc = new RandomAccessFile(tempFile, "r").getChannel();
+    assertEquals(byteEstimate(4097), fc.size());
+    fc.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, false);
+
+    for (int i = 0; i < 4097; i++) {
+      Page p = pA.fetchPage(i);
+      assertEquals(i, p.getPageNum());
+
+      for (int j = 0; j < 1024; j++) {
+        byte[] countBytes = p.readBytes(j*4,4);
+        int count = ByteBuffer.wrap(countBytes).getInt();
+        assertEquals(i*1024 + j, count);
+      }
+    }
+  }
+
+  @Test
+  public void TestPageAllocatorFetchPageWithFree() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, pA.allocPage());
+      Page p = pA.fetchPage(i);
+
+      for (int j = 0; j < 1024; j++) {
+        int count = i*1024 + j;
+        byte[] countBytes = ByteBuffer.allocate(4).putInt(count).array();
+        p.writeBytes(j*4, 4, countBytes);
+      }
+    }
+    pA.close();
+    FileChannel fc = new RandomAccessFile(tempFile, "r").getChannel();
+    assertEquals(byteEstimate(10), fc.size());
+    fc.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, false);
+
+    for (int i = 0; i < 5; i++) {
+      assertTrue(pA.freePage(i));
+    }
+
+    for (int i = 0; i < 5; i++) {
+      boolean thrown = false;
+
+      try {
+        pA.fetchPage(i);
+      } catch (PageException e) {
+        thrown = true;
+      }
+      assertTrue(thrown);
+    }
+
+    for (int i = 5; i < 10; i++) {
+      Page p = pA.fetchPage(i);
+      assertEquals(i, p.getPageNum());
+
+      for (int j = 0; j < 1024; j++) {
+        byte[] countBytes = p.readBytes(j*4,4);
+        int count = ByteBuffer.wrap(countBytes).getInt();
+        assertEquals(i*1024 + j, count);
+      }
+    }
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorFetchPageInvalid() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = -5; i < 5; i++) {
+      boolean thrown = false;
+
+      try {
+        pA.fetchPage(i);
+      } catch (PageException e) {
+        thrown = true;
+      }
+      assertTrue(thrown);
+    }
+
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorFetchPageInvalid2() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, pA.allocPage());
+    }
+    boolean thrown = false;
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, pA.fetchPage(i).getPageNum());
+    }
+
+    try {
+      pA.fetchPage(10);
+    } catch (PageException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorFreePageReturn() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 10; i++) {
+      assertFalse(pA.freePage(i));
+    }
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i,pA.allocPage());
+    }
+    for (int i = 0; i < 10; i++) {
+      assertTrue(pA.freePage(i));
+    }
+    for (int i = 0; i < 10; i++) {
+      assertFalse(pA.freePage(i));
+    }
+
+    pA.close();
+  }
+  @Test
+  public void TestPageAllocatorFreePageReAlloc() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i,pA.allocPage());
+    }
+    for (int i = 0; i < 5; i++) {
+      assertTrue(pA.freePage(i));
+    }
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i,pA.allocPage());
+    }
+
+    pA.close();
+  }
+  @Test
+  public void TestPageAllocatorFreePageReAlloc2() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i,pA.allocPage());
+    }
+    for (int i = 0; i < 20; i += 2) {
+      assertTrue(pA.freePage(i));
+    }
+    for (int i = 0; i < 20; i += 2) {
+      assertEquals(i,pA.allocPage());
+    }
+
+    pA.close();
+  }
+  @Test
+  public void TestPageAllocatorIterator() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i,pA.allocPage());
+    }
+    Iterator<Page> pI= pA.iterator();
+
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i, pI.next().getPageNum());
+    }
+    assertFalse(pI.hasNext());
+    pA.close();
+  }
+  @Test
+  public void TestPageAllocatorIteratorGap() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i,pA.allocPage());
+    }
+
+    for (int i = 0; i < 20; i += 2) {
+      assertTrue(pA.freePage(i));
+    }
+
+    Iterator<Page> pI= pA.iterator();
+
+    for (int i = 1; i < 20; i += 2) {
+      assertEquals(i, pI.next().getPageNum());
+    }
+    assertFalse(pI.hasNext());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorIteratorGap2() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i,pA.allocPage());
+    }
+
+    for (int i = 0; i < 10; i++) {
+      assertTrue(pA.freePage(i));
+    }
+
+    Iterator<Page> pI= pA.iterator();
+
+    for (int i = 10; i < 20; i++) {
+      assertEquals(i, pI.next().getPageNum());
+    }
+    assertFalse(pI.hasNext());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorIteratorGap3() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i,pA.allocPage());
+    }
+
+    for (int i = 10; i < 20; i++) {
+      assertTrue(pA.freePage(i));
+    }
+
+    Iterator<Page> pI= pA.iterator();
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, pI.next().getPageNum());
+    }
+    assertFalse(pI.hasNext());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorMultiPageAlloc() throws IOException, FileNotFoundException {
+    List<PageAllocator> allocs = new ArrayList<PageAllocator>();
+    byte[] data = new byte[Page.pageSize];
+    File[] tempFiles = new File[16];
+    for (int i = 0; i < 16; i++) {
+      final String FName = fName + i;
+      tempFiles[i] = tempFolder.newFile(FName);
+      PageAllocator pA = new PageAllocator(tempFiles[i].getAbsolutePath(), true, false);
+      allocs.add(pA);
+
+      for (int j = 0; j < Page.pageSize; j++) {
+        data[j] = (byte) i;
+      }
+
+      for (int j = 0; j < 256; j++) {
+        assertEquals(j, pA.allocPage());
+        Page p = pA.fetchPage(j);
+        p.writeBytes(0, Page.pageSize, data);
+      }
+    }
+
+    for (int j = 0; j < 256; j++) {
+      for (int i = 0; i < 16; i++) {
+        byte[] bytes = allocs.get(i).fetchPage(j).readBytes();
+        for (byte b : bytes) {
+          assertEquals((byte) i, b);
+        }
+      }
+    }
+
+    for (int i = 0; i < 16; i++) {
+      allocs.get(i).close();
+    }
+  }
+
+  @Test
+  public void TestPageAllocatorMultiPageAllocClose() throws IOException, FileNotFoundException {
+    List<PageAllocator> allocs = new ArrayList<PageAllocator>();
+    byte[] data = new byte[Page.pageSize];
+    File[] tempFiles = new File[16];
+    for (int i = 0; i < 16; i++) {
+      final String FName = fName + i;
+      tempFiles[i] = tempFolder.newFile(FName);
+      PageAllocator pA = new PageAllocator(tempFiles[i].getAbsolutePath(), true, false);
+      allocs.add(pA);
+
+      for (int j = 0; j < Page.pageSize; j++) {
+        data[j] = (byte) i;
+      }
+
+      for (int j = 0; j < 256; j++) {
+        assertEquals(j, pA.allocPage());
+        Page p = pA.fetchPage(j);
+        p.writeBytes(0, Page.pageSize, data);
+      }
+    }
+    for (int i = 0; i < 16; i++) {
+      for (int j = 0; j < 256; j++) {
+        byte[] bytes = allocs.get(i).fetchPage(j).readBytes();
+        for (byte b : bytes) {
+          assertEquals((byte) i, b);
+        }
+      }
+      allocs.get(i).close();
+    }
+  }
+
+  @Test
+  public void TestPageAllocatorReopenKeepsFreePages() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+    for (int i = 0; i < Page.pageSize + 10; i++) {
+      assertEquals(i, pA.allocPage());
+    }
+    assertTrue(pA.freePage(3));
+    assertTrue(pA.freePage(Page.pageSize + 2));
+    assertFalse(pA.freePage(3));
+    pA.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, false);
+    assertEquals(Page.pageSize + 8, pA.getNumPages());
+    try {
+      pA.fetchPage(3);
+      fail();
+    } catch (PageException e) {
+      // Page 3 was freed.
+    }
+    assertEquals(3, pA.allocPage());
+    assertEquals(Page.pageSize + 2, pA.allocPage());
+    assertEquals(Page.pageSize + 10, pA.allocPage());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorAllocExtent() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    assertEquals(0, pA.allocExtent(10));
+    assertEquals(10, pA.getNumPages());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, pA.fetchPage(i).getPageNum());
+    }
+    assertEquals(10, pA.allocPage());
+
+    pA.close();
+    FileChannel fc = new RandomAccessFile(tempFile, "r").getChannel();
+    assertEquals(byteEstimate(11), fc.size());
+    fc.close();
+  }
+
+  @Test
+  public void TestPageAllocatorAllocExtentSkipsHoles() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 200; i++) {
+      assertEquals(i, pA.allocPage());
+    }
+    // Holes of size 1, 3, and 100.
+    assertTrue(pA.freePage(5));
+    for (int i = 20; i < 23; i++) {
+      assertTrue(pA.freePage(i));
+    }
+    for (int i = 50; i < 150; i++) {
+      assertTrue(pA.freePage(i));
+    }
+
+    assertEquals(20, pA.allocExtent(2));
+    assertEquals(50, pA.allocExtent(70));
+    assertEquals(200, pA.allocExtent(40));
+    assertEquals(5, pA.allocPage());
+    assertEquals(22, pA.allocPage());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorAllocExtentNextHeader() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    assertEquals(0, pA.allocExtent(Page.pageSize - 5));
+    assertEquals(Page.pageSize, pA.allocExtent(6));
+    assertEquals(Page.pageSize - 5, pA.allocExtent(5));
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorIteratorAcrossHeaders() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    assertEquals(0, pA.allocExtent(Page.pageSize));
+    assertEquals(Page.pageSize, pA.allocExtent(10));
+    // Leaves only page 3 in the first header page.
+    for (int i = 0; i < Page.pageSize; i++) {
+      if (i != 3) {
+        assertTrue(pA.freePage(i));
+      }
+    }
+
+    Iterator<Page> pI = pA.iterator();
+    assertEquals(3, pI.next().getPageNum());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(Page.pageSize + i, pI.next().getPageNum());
+    }
+    assertFalse(pI.hasNext());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorIteratorReadAhead() throws Exception {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 64; i++) {
+      assertEquals(i, pA.allocPage());
+    }
+    Iterator<Page> pI = pA.iterator(8);
+    for (int i = 0; i < 64; i++) {
+      assertEquals(i, pI.next().getPageNum());
+    }
+    assertFalse(pI.hasNext());
+
+    for (int i = 0; i < 500 && pA.getNumPagesReadAhead() < 64 - PageAllocator.SEQUENTIAL_THRESHOLD; i++) {
+      Thread.sleep(10);
+    }
+    // Every page after the first SEQUENTIAL_THRESHOLD pages is read ahead exactly once.
+    assertEquals(64 - PageAllocator.SEQUENTIAL_THRESHOLD, pA.getNumPagesReadAhead());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorIteratorNoReadAhead() throws Exception {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 64; i++) {
+      assertEquals(i, pA.allocPage());
+    }
+    Iterator<Page> pI = pA.iterator(0);
+    for (int i = 0; i < 64; i++) {
+      assertEquals(i, pI.next().getPageNum());
+    }
+    assertEquals(0, pA.getNumPagesReadAhead());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorIteratorMarkReset() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 40; i++) {
+      assertEquals(i, pA.allocPage());
+    }
+    for (int i = 0; i < 40; i += 3) {
+      assertTrue(pA.freePage(i));
+    }
+
+    PageAllocator.PageIterator pI = pA.iterator(4);
+    assertEquals(1, pI.next().getPageNum());
+    assertEquals(2, pI.next().getPageNum());
+    assertEquals(4, pI.next().getPageNum());
+    pI.mark();
+    for (int i = 5; i < 40; i++) {
+      if (i % 3 != 0) {
+        assertEquals(i, pI.next().getPageNum());
+      }
+    }
+    assertFalse(pI.hasNext());
+
+    pI.reset();
+    assertEquals(4, pI.next().getPageNum());
+    assertEquals(5, pI.next().getPageNum());
+    assertEquals(7, pI.next().getPageNum());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorPageSize() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    int pageSize = 4 * Page.pageSize;
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false,
+                                         new BufferPool(), pageSize);
+    assertEquals(pageSize, pA.getPageSize());
+
+    // Enough pages to need a second header page.
+    for (int i = 0; i < pageSize + 10; i++) {
+      assertEquals(i, pA.allocPage());
+    }
+    Page p = pA.fetchPage(pageSize + 5);
+    assertEquals(pageSize, p.getPageSize());
+    p.writeInt(pageSize - 4, 42);
+    pA.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false);
+    assertEquals(pageSize, pA.getPageSize());
+    assertEquals(pageSize + 10, pA.getNumPages());
+    assertEquals(42, pA.fetchPage(pageSize + 5).readInt(pageSize - 4));
+    pA.close();
+
+    // Wiping the file lets it be recreated with a different page size.
+    pA = new PageAllocator(tempFile.getAbsolutePath(), true);
+    assertEquals(Page.pageSize, pA.getPageSize());
+    assertEquals(0, pA.getNumPages());
+    pA.close();
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false);
+    assertEquals(Page.pageSize, pA.getPageSize());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorEmptyFileKeepsPageSize() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    int pageSize = 4 * Page.pageSize;
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false,
+                                         new BufferPool(), pageSize);
+    pA.close();
+
+    // An existing file keeps its page size even if it has no pages.
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false);
+    assertEquals(pageSize, pA.getPageSize());
+    pA.close();
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, false, new BufferPool(),
+                           2 * pageSize);
+    assertEquals(pageSize, pA.getPageSize());
+    for (int i = 0; i < 3; i++) {
+      pA.allocPage();
+    }
+    pA.close();
+
+    // The page size shares the first page count of the master page, and takes up no header page
+    // slot of its own.
+    FileChannel fc = new RandomAccessFile(tempFile, "r").getChannel();
+    ByteBuffer bb = ByteBuffer.allocate(Page.pageSize);
+    fc.read(bb, 0);
+    fc.close();
+    assertEquals((2 << 24) | 3, bb.getInt(0));
+    assertEquals(0, bb.getInt(Page.pageSize - 4));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void TestPageAllocatorPageSizeMustBePowerOfTwo() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    new PageAllocator(tempFile.getAbsolutePath(), true, false, new BufferPool(), 3 * Page.pageSize);
+  }
+
+  @Test
+  public void TestPageAllocatorPositionalStorage() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false,
+                                         new BufferPool(4), Page.pageSize,
+                                         PageStorage.Kind.POSITIONAL);
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i, pA.allocPage());
+      pA.fetchPage(i).writeInt(8, i * 7);
+    }
+    // Most of the pages were written back when they were evicted.
+    assertTrue(pA.getMetrics().get(IOMetrics.Counter.WRITES) >= 16);
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i * 7, pA.fetchPage(i).readInt(8));
+    }
+    pA.close();
+    assertEquals(byteEstimate(20), tempFile.length());
+
+    // The file does not depend on the kind of storage that wrote it.
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false);
+    assertEquals(20, pA.getNumPages());
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i * 7, pA.fetchPage(i).readInt(8));
+    }
+    pA.fetchPage(3).writeInt(8, 99);
+    pA.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, true, new BufferPool(4),
+                           Page.pageSize, PageStorage.Kind.POSITIONAL);
+    assertEquals(20, pA.getNumPages());
+    assertEquals(99, pA.fetchPage(3).readInt(8));
+    assertEquals(4 * 7, pA.fetchPage(4).readInt(8));
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorPositionalStaleWrite() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false,
+                                         new BufferPool(1), Page.pageSize,
+                                         PageStorage.Kind.POSITIONAL);
+    pA.allocPage();
+    pA.allocPage();
+    pA.allocPage();
+    Page p0 = pA.fetchPage(0);
+    Page p1 = pA.fetchPage(1);
+    pA.fetchPage(2);
+
+    // Both pages have been evicted, but they are still the only Pages of their blocks.
+    p0.writeInt(0, 10);
+    assertSame(p0, pA.fetchPage(0));
+    assertEquals(10, pA.fetchPage(0).readInt(0));
+    p1.writeInt(0, 11);
+    pA.fetchPage(2);
+    pA.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, false, new BufferPool(1),
+                           Page.pageSize, PageStorage.Kind.POSITIONAL);
+    assertEquals(10, pA.fetchPage(0).readInt(0));
+    assertEquals(11, pA.fetchPage(1).readInt(0));
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorPositionalReusesBuffers() throws Exception {
+    File tempFile = tempFolder.newFile(fName);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    ChannelPageStorage storage = new ChannelPageStorage(fc, null);
+    Page p = storage.openPage(0, Page.pageSize, 0, false);
+    p.writeInt(0, 5);
+    p.flush();
+    assertFalse(p.isDirty());
+    assertEquals(1, storage.getNumLivePages());
+
+    p = null;
+    for (int i = 0; i < 50 && storage.getNumLivePages() > 0; i++) {
+      // Collected pages are enqueued by another thread shortly after the collection.
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertEquals(0, storage.getNumLivePages());
+    assertEquals(5, storage.openPage(0, Page.pageSize, 0, false).readInt(0));
+    storage.close();
+    fc.close();
+  }
+
+  @Test
+  public void TestPageAllocatorPositionalViewOutlivesPage() throws Exception {
+    File tempFile = tempFolder.newFile(fName);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    ChannelPageStorage storage = new ChannelPageStorage(fc, null);
+    Page p = storage.openPage(0, Page.pageSize, 0, false);
+    p.writeInt(0, 5);
+    p.flush();
+    ByteBuffer view = p.getReadOnlyByteBuffer();
+
+    // The view keeps the page's buffer from being reused by other blocks.
+    p = null;
+    for (int i = 0; i < 10; i++) {
+      System.gc();
+      Thread.sleep(10);
+      Page other = storage.openPage((i + 1) * Page.pageSize, Page.pageSize, i + 1, false);
+      other.writeInt(0, 100 + i);
+      other.flush();
+    }
+    assertEquals(5, view.getInt(0));
+    assertTrue(storage.getNumLivePages() >= 1);
+
+    view = null;
+    for (int i = 0; i < 50 && storage.getNumLivePages() > 0; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertEquals(0, storage.getNumLivePages());
+    storage.close();
+    fc.close();
+  }
+}
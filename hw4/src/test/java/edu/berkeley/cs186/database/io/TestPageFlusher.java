@@ -0,0 +1,151 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestPageFlusher {
+  private final String fName = "TestPageFlusher.temp";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testSyncFlushesScheduledPages() throws IOException {
+    // A batch is never cut on its own during this test.
+    PageFlusher flusher = new PageFlusher(60 * 1000, 1000);
+    FileChannel fc = new RandomAccessFile(tempFolder.newFile(fName), "rw").getChannel();
+    Page p = new Page(fc, 0, 0);
+    Page q = new Page(fc, 1, 1);
+
+    p.writeInt(0, 1);
+    q.writeInt(0, 2);
+    flusher.schedule(p);
+    flusher.schedule(q);
+    flusher.schedule(p);
+    assertTrue(p.isDirty());
+
+    flusher.sync();
+    assertFalse(p.isDirty());
+    assertFalse(q.isDirty());
+    assertEquals(1, flusher.getNumBatches());
+    assertEquals(2, flusher.getNumPagesFlushed());
+    flusher.close();
+  }
+
+  @Test
+  public void testBatchSizeCutsBatchEarly() throws Exception {
+    PageFlusher flusher = new PageFlusher(60 * 1000, 2);
+    FileChannel fc = new RandomAccessFile(tempFolder.newFile(fName), "rw").getChannel();
+    Page p = new Page(fc, 0, 0);
+    Page q = new Page(fc, 1, 1);
+    p.markDirty();
+    q.markDirty();
+    flusher.schedule(p);
+    flusher.schedule(q);
+
+    for (int i = 0; i < 500 && flusher.getNumBatches() == 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, flusher.getNumBatches());
+    assertFalse(p.isDirty());
+    flusher.close();
+  }
+
+  @Test
+  public void testIntervalCutsBatch() throws Exception {
+    PageFlusher flusher = new PageFlusher(1, 1000);
+    FileChannel fc = new RandomAccessFile(tempFolder.newFile(fName), "rw").getChannel();
+    Page p = new Page(fc, 0, 0);
+    p.markDirty();
+    flusher.schedule(p);
+
+    for (int i = 0; i < 500 && p.isDirty(); i++) {
+      Thread.sleep(10);
+    }
+    assertFalse(p.isDirty());
+    flusher.close();
+  }
+
+  @Test
+  public void testAllocatorCoalescesMetadataFlushes() throws IOException {
+    PageFlusher flusher = new PageFlusher(60 * 1000, 1000);
+    BufferPool pool = new BufferPool(128, ReplacementPolicy.Kind.LRU, flusher);
+    File file = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(file.getAbsolutePath(), true, pool);
+
+    for (int i = 0; i < 100; i++) {
+      pA.allocPage();
+    }
+    pA.sync();
+    // The master page and the one header page, once each.
+    assertEquals(2, flusher.getNumPagesFlushed());
+    pA.close();
+
+    pA = new PageAllocator(file.getAbsolutePath(), false, pool);
+    assertEquals(100, pA.getNumPages());
+    pA.close();
+    flusher.close();
+  }
+
+  @Test
+  public void testBatchForcesEachSegmentOnce() throws IOException {
+    PageFlusher flusher = new PageFlusher(60 * 1000, 1000);
+    FileChannel fc = new RandomAccessFile(tempFolder.newFile(fName), "rw").getChannel();
+    FileMapping mapping = new FileMapping(fc, Page.pageSize * 4);
+    // Two segments of four pages each.
+    Page[] pages = new Page[8];
+    for (int i = 0; i < pages.length; i++) {
+      pages[i] = mapping.openPage((long) i * Page.pageSize, Page.pageSize, i, true);
+      pages[i].writeInt(0, i);
+      flusher.schedule(pages[i]);
+    }
+
+    flusher.sync();
+    for (Page p : pages) {
+      assertFalse(p.isDirty());
+    }
+    assertEquals(8, flusher.getNumPagesFlushed());
+    assertEquals(2, flusher.getNumForces());
+    flusher.close();
+  }
+
+  @Test
+  public void testBatchForcesPositionalFileOnce() throws IOException {
+    PageFlusher flusher = new PageFlusher(60 * 1000, 1000);
+    FileChannel fc = new RandomAccessFile(tempFolder.newFile(fName), "rw").getChannel();
+    ChannelPageStorage storage = new ChannelPageStorage(fc, null);
+    Page[] pages = new Page[8];
+    for (int i = 0; i < pages.length; i++) {
+      pages[i] = storage.openPage((long) i * Page.pageSize, Page.pageSize, i, true);
+      pages[i].writeInt(0, i);
+      flusher.schedule(pages[i]);
+    }
+
+    flusher.sync();
+    for (Page p : pages) {
+      assertFalse(p.isDirty());
+    }
+    assertEquals(1, flusher.getNumForces());
+    assertEquals(Page.pageSize * 8, fc.size());
+    flusher.close();
+  }
+
+  @Test
+  public void testScheduleAfterCloseFlushesSynchronously() throws IOException {
+    PageFlusher flusher = new PageFlusher();
+    flusher.close();
+    FileChannel fc = new RandomAccessFile(tempFolder.newFile(fName), "rw").getChannel();
+    Page p = new Page(fc, 0, 0);
+    p.markDirty();
+    flusher.schedule(p);
+    assertFalse(p.isDirty());
+  }
+}
@@ -0,0 +1,144 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestReplacementPolicy {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static ReplacementPolicy fill(ReplacementPolicy.Kind kind, int n) {
+    ReplacementPolicy policy = kind.create(n);
+    for (long i = 0; i < n; i++) {
+      policy.recordInsert(i);
+    }
+    return policy;
+  }
+
+  @Test
+  public void testLRU() {
+    ReplacementPolicy policy = fill(ReplacementPolicy.Kind.LRU, 3);
+    policy.recordAccess(0);
+    assertEquals(1, policy.evict(p -> true));
+    assertEquals(0, policy.evict(p -> p != 2));
+    assertEquals(2, policy.evict(p -> true));
+    assertEquals(ReplacementPolicy.NO_VICTIM, policy.evict(p -> true));
+  }
+
+  @Test
+  public void testClock() {
+    ReplacementPolicy policy = fill(ReplacementPolicy.Kind.CLOCK, 3);
+    // Every reference bit is set, so the hand clears all of them and wraps
+    // around to page 0.
+    assertEquals(0, policy.evict(p -> true));
+
+    // Page 3 takes frame 0 with its bit set; 1 and 2 now have theirs cleared.
+    policy.recordInsert(3);
+    policy.recordAccess(1);
+    assertEquals(2, policy.evict(p -> true));
+  }
+
+  @Test
+  public void testClockRemoveFreesFrame() {
+    ReplacementPolicy policy = fill(ReplacementPolicy.Kind.CLOCK, 2);
+    policy.recordRemove(0);
+    policy.recordInsert(5);
+    assertEquals(ReplacementPolicy.NO_VICTIM, policy.evict(p -> false));
+    assertEquals(1, policy.evict(p -> p != 5));
+  }
+
+  @Test
+  public void testLRU2() {
+    ReplacementPolicy policy = fill(ReplacementPolicy.Kind.LRU_2, 3);
+    // 0 and 2 are accessed twice, 1 only once, so 1 goes first even though 0
+    // was least recently used.
+    policy.recordAccess(0);
+    policy.recordAccess(2);
+    assertEquals(1, policy.evict(p -> true));
+    assertEquals(0, policy.evict(p -> true));
+  }
+
+  @Test
+  public void testLRU2SkipsPinnedAndRemovedPages() {
+    ReplacementPolicy policy = fill(ReplacementPolicy.Kind.LRU_2, 4);
+    policy.recordAccess(3);
+    policy.recordAccess(0);
+    policy.recordRemove(1);
+    // 2 was only accessed once, so it goes first, but may not be evicted yet.
+    // 0's second most recent access is older than 3's.
+    assertEquals(ReplacementPolicy.NO_VICTIM, policy.evict(p -> p == 1));
+    assertEquals(0, policy.evict(p -> p != 2));
+    assertEquals(2, policy.evict(p -> true));
+    assertEquals(3, policy.evict(p -> true));
+    assertEquals(ReplacementPolicy.NO_VICTIM, policy.evict(p -> true));
+  }
+
+  @Test
+  public void testLRU2RetainsHistory() {
+    ReplacementPolicy policy = fill(ReplacementPolicy.Kind.LRU_2, 2);
+    assertEquals(0, policy.evict(p -> true));
+    // 0 comes back and remembers its earlier access, so it now has two.
+    policy.recordInsert(0);
+    assertEquals(1, policy.evict(p -> true));
+  }
+
+  @Test
+  public void testTwoQIsScanResistant() {
+    ReplacementPolicy policy = ReplacementPolicy.Kind.TWO_Q.create(8);
+    int size = 0;
+
+    // Page 100 is fetched, evicted, and fetched again, which promotes it to Am.
+    policy.recordInsert(100);
+    assertEquals(100, policy.evict(p -> true));
+    policy.recordInsert(100);
+    size++;
+
+    // A long scan never evicts page 100.
+    for (long i = 0; i < 1000; i++) {
+      if (size == 8) {
+        assertNotEquals(100, policy.evict(p -> true));
+        size--;
+      }
+      policy.recordInsert(1000 + i);
+      size++;
+    }
+
+    // Whereas under LRU the scan flushes it right away.
+    ReplacementPolicy lru = ReplacementPolicy.Kind.LRU.create(8);
+    lru.recordInsert(100);
+    for (long i = 0; i < 7; i++) {
+      lru.recordInsert(1000 + i);
+    }
+    assertEquals(100, lru.evict(p -> true));
+  }
+
+  @Test
+  public void testPoolCountsHitsAndMisses() throws IOException {
+    File f = tempFolder.newFile("TestReplacementPolicy.temp");
+    FileChannel fc = new RandomAccessFile(f, "rw").getChannel();
+    Page page = new Page(fc, 0, 0, false);
+
+    for (ReplacementPolicy.Kind kind : ReplacementPolicy.Kind.values()) {
+      BufferPool pool = new BufferPool(4, 1, kind);
+      assertEquals(kind, pool.getPolicyKind());
+      for (long i = 0; i < 6; i++) {
+        assertNull(pool.get(i));
+        pool.put(i, page);
+        assertNotNull(pool.get(i));
+      }
+      assertEquals(6, pool.getNumHits());
+      assertEquals(6, pool.getNumMisses());
+      assertEquals(2, pool.getNumEvictions());
+      assertEquals(4, pool.size());
+      assertEquals(0.5, pool.getHitRatio(), 1e-9);
+    }
+  }
+}
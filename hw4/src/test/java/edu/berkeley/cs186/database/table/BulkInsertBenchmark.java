@@ -0,0 +1,60 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+
+/**
+ * Compares loading a table one record at a time with addRecord against
+ * loading it in batches with insertRecords, and reports rows per second for
+ * each. Every run loads a new table with the same rows.
+ *
+ * This is not run as part of the test suite. Run it by hand with:
+ *
+ *   java -cp target/classes:target/test-classes \
+ *     edu.berkeley.cs186.database.table.BulkInsertBenchmark [numRows] [batchSize] [numPasses]
+ */
+public class BulkInsertBenchmark {
+  public static void main(String[] args) throws Exception {
+    int numRows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+    int numPasses = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    Schema schema = TestUtils.createSchemaWithAllTypes();
+    List<List<DataBox>> rows = new ArrayList<List<DataBox>>(numRows);
+    for (int i = 0; i < numRows; i++) {
+      rows.add(TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+
+    File f = File.createTempFile("BulkInsertBenchmark", Table.FILENAME_EXTENSION);
+    File fsm = new File(f.getAbsolutePath() + Table.FREE_SPACE_MAP_EXTENSION);
+    f.deleteOnExit();
+    fsm.deleteOnExit();
+    for (int pass = 0; pass < numPasses; pass++) {
+      Table table = new Table("t", schema, f.getAbsolutePath());
+      long start = System.nanoTime();
+      for (List<DataBox> row : rows) {
+        table.addRecord(row);
+      }
+      long single = System.nanoTime() - start;
+      table.close();
+
+      table = new Table("t", schema, f.getAbsolutePath());
+      start = System.nanoTime();
+      for (int i = 0; i < numRows; i += batchSize) {
+        table.insertRecords(rows.subList(i, Math.min(numRows, i + batchSize)));
+      }
+      long batched = System.nanoTime() - start;
+      table.close();
+
+      System.out.printf("%d rows: addRecord %.0f rows/s, insertRecords(%d) %.0f rows/s%n",
+                        numRows, numRows / (single / 1e9), batchSize,
+                        numRows / (batched / 1e9));
+    }
+    f.delete();
+    fsm.delete();
+  }
+}
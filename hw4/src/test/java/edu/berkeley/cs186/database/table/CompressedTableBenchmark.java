@@ -0,0 +1,90 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.BufferPool;
+import edu.berkeley.cs186.database.io.Page;
+
+/**
+ * Compares the size of a table, and the speed of scanning it, with the row
+ * layout against the compressed layout (see Table.Layout). The records are
+ * the kind that compress well: sorted ids, a low cardinality string, and a
+ * bool in long runs. Each scan reads every column of every record through a
+ * RecordView. The tables are cached whole, so that the scans measure decoding
+ * pages rather than reading them from disk.
+ *
+ * This is not run as part of the test suite. Run it by hand with:
+ *
+ *   java -cp target/classes:target/test-classes \
+ *     edu.berkeley.cs186.database.table.CompressedTableBenchmark [numRecords] [numPasses]
+ */
+public class CompressedTableBenchmark {
+  private static final int PAGE_SIZE = 16 * Page.pageSize;
+  private static final String[] CITIES = {"Berkeley", "Oakland", "Albany", "Emeryville"};
+
+  public static void main(String[] args) throws Exception {
+    int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int numPasses = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    Schema schema = new Schema(Arrays.asList("id", "city", "active"),
+                               Arrays.asList(Type.intType(), Type.stringType(20),
+                                             Type.boolType()));
+
+    int numPages = numRecords / Table.computeNumRecordsPerPage(PAGE_SIZE, schema) + 2;
+    Table.Layout[] layouts = {Table.Layout.ROW, Table.Layout.COMPRESSED};
+    Table[] tables = new Table[layouts.length];
+    List<File> files = new ArrayList<>();
+    for (int t = 0; t < layouts.length; t++) {
+      File f = File.createTempFile("CompressedTableBenchmark", Table.FILENAME_EXTENSION);
+      File fsm = new File(f.getAbsolutePath() + Table.FREE_SPACE_MAP_EXTENSION);
+      f.deleteOnExit();
+      fsm.deleteOnExit();
+      files.add(f);
+      files.add(fsm);
+      tables[t] = new Table("t", schema, f.getAbsolutePath(), new BufferPool(2 * numPages),
+                            PAGE_SIZE, layouts[t]);
+      List<List<DataBox>> rows = new ArrayList<>();
+      for (int i = 0; i < numRecords; i++) {
+        rows.add(Arrays.<DataBox>asList(new IntDataBox(i),
+                                        new StringDataBox(CITIES[(i / 100) % CITIES.length], 20),
+                                        new BoolDataBox(i % 10000 < 5000)));
+        if (rows.size() == 10000) {
+          tables[t].insertRecords(rows);
+          rows.clear();
+        }
+      }
+      tables[t].insertRecords(rows);
+      System.out.printf("%-10s %d data pages%n", layouts[t], tables[t].getNumDataPages());
+    }
+
+    for (int pass = 0; pass < numPasses; pass++) {
+      for (int t = 0; t < layouts.length; t++) {
+        long start = System.nanoTime();
+        long sum = 0;
+        Iterator<RecordView> views = tables[t].viewIterator();
+        while (views.hasNext()) {
+          RecordView view = views.next();
+          sum += view.getInt(0) + view.getString(1).length() + (view.getBool(2) ? 1 : 0);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-10s %.1f ns/record (%d)%n", layouts[t],
+                          (double) elapsed / numRecords, sum);
+      }
+    }
+    for (Table table : tables) {
+      table.close();
+    }
+    for (File f : files) {
+      f.delete();
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.BufferPool;
+import edu.berkeley.cs186.database.io.Page;
+
+/**
+ * Compares scanning two columns of a wide (30 int column) table with the row
+ * layout against the PAX layout (see Table.Layout). Each scan sums two of the
+ * columns of every record through a RecordView, as ProjectOperator does on a
+ * sequential scan. The tables are cached whole, so that the scans measure
+ * reading pages from memory rather than from disk, and use large pages, so
+ * that the cost of moving from page to page does not hide the cost of
+ * reading records.
+ *
+ * This is not run as part of the test suite. Run it by hand with:
+ *
+ *   java -cp target/classes:target/test-classes \
+ *     edu.berkeley.cs186.database.table.PaxLayoutBenchmark [numRecords] [numPasses]
+ */
+public class PaxLayoutBenchmark {
+  private static final int NUM_COLUMNS = 30;
+  private static final int PAGE_SIZE = 16 * Page.pageSize;
+
+  public static void main(String[] args) throws Exception {
+    int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int numPasses = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    List<String> fieldNames = new ArrayList<>();
+    List<Type> fieldTypes = new ArrayList<>();
+    for (int i = 0; i < NUM_COLUMNS; i++) {
+      fieldNames.add("c" + i);
+      fieldTypes.add(Type.intType());
+    }
+    Schema schema = new Schema(fieldNames, fieldTypes);
+
+    int numPages = numRecords / Table.computeNumRecordsPerPage(PAGE_SIZE, schema) + 2;
+    Table.Layout[] layouts = {Table.Layout.ROW, Table.Layout.PAX};
+    Table[] tables = new Table[layouts.length];
+    List<File> files = new ArrayList<>();
+    for (int t = 0; t < layouts.length; t++) {
+      File f = File.createTempFile("PaxLayoutBenchmark", Table.FILENAME_EXTENSION);
+      File fsm = new File(f.getAbsolutePath() + Table.FREE_SPACE_MAP_EXTENSION);
+      f.deleteOnExit();
+      fsm.deleteOnExit();
+      files.add(f);
+      files.add(fsm);
+      tables[t] = new Table("t", schema, f.getAbsolutePath(), new BufferPool(2 * numPages),
+                            PAGE_SIZE, layouts[t]);
+      List<List<DataBox>> rows = new ArrayList<>();
+      for (int i = 0; i < numRecords; i++) {
+        List<DataBox> values = new ArrayList<>();
+        for (int c = 0; c < NUM_COLUMNS; c++) {
+          values.add(new IntDataBox(i + c));
+        }
+        rows.add(values);
+        if (rows.size() == 10000) {
+          tables[t].insertRecords(rows);
+          rows.clear();
+        }
+      }
+      tables[t].insertRecords(rows);
+    }
+
+    for (int pass = 0; pass < numPasses; pass++) {
+      for (int t = 0; t < layouts.length; t++) {
+        long start = System.nanoTime();
+        long sum = 0;
+        Iterator<RecordView> views = tables[t].viewIterator();
+        while (views.hasNext()) {
+          RecordView view = views.next();
+          sum += view.getInt(3) + view.getInt(17);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-4s %.1f ns/record (%d)%n", layouts[t],
+                          (double) elapsed / numRecords, sum);
+      }
+    }
+    for (Table table : tables) {
+      table.close();
+    }
+    for (File f : files) {
+      f.delete();
+    }
+  }
+}
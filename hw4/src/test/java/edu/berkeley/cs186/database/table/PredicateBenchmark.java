@@ -0,0 +1,77 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+
+/**
+ * Measures how many records per second a scan can test a predicate on, for an
+ * int and a string column. The "boxed" scans decode every record and compare
+ * DataBoxes with compareTo, as SelectOperator does on a source of records; the
+ * "in place" scans compare the serialized field with a serialized value
+ * (RecordView.compareField), as SelectOperator does on a sequential scan.
+ *
+ * This is not run as part of the test suite. Run it by hand with:
+ *
+ *   java -cp target/classes:target/test-classes \
+ *     edu.berkeley.cs186.database.table.PredicateBenchmark [numRecords] [numPasses]
+ */
+public class PredicateBenchmark {
+  public static void main(String[] args) throws Exception {
+    int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int numPasses = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    File f = File.createTempFile("PredicateBenchmark", Table.FILENAME_EXTENSION);
+    File fsm = new File(f.getAbsolutePath() + Table.FREE_SPACE_MAP_EXTENSION);
+    f.deleteOnExit();
+    fsm.deleteOnExit();
+    Table table = new Table("t", TestUtils.createSchemaWithAllTypes(), f.getAbsolutePath());
+    for (int i = 0; i < numRecords; i++) {
+      table.addRecord(TestUtils.createRecordWithAllTypesWithValue(i % 100000).getValues());
+    }
+
+    DataBox[] values = {new IntDataBox(500), new StringDataBox("00500", 5)};
+    int[] columns = {1, 2};
+    for (int pass = 0; pass < numPasses; pass++) {
+      for (int c = 0; c < columns.length; c++) {
+        int column = columns[c];
+        DataBox value = values[c];
+
+        long start = System.nanoTime();
+        long matches = 0;
+        Iterator<Record> records = table.iterator();
+        while (records.hasNext()) {
+          if (records.next().getValues().get(column).compareTo(value) < 0) {
+            matches++;
+          }
+        }
+        report("boxed " + value.type(), numRecords, start, matches);
+
+        ByteBuffer serialized = ByteBuffer.wrap(value.toBytes());
+        start = System.nanoTime();
+        matches = 0;
+        Iterator<RecordView> views = table.viewIterator();
+        while (views.hasNext()) {
+          if (views.next().compareField(column, serialized, 0) < 0) {
+            matches++;
+          }
+        }
+        report("in place " + value.type(), numRecords, start, matches);
+      }
+    }
+    table.close();
+    f.delete();
+    fsm.delete();
+  }
+
+  private static void report(String name, int numRecords, long start, long matches) {
+    long elapsed = System.nanoTime() - start;
+    System.out.printf("%-24s %.0f records/s (%d matches)%n", name,
+                      numRecords / (elapsed / 1e9), matches);
+  }
+}
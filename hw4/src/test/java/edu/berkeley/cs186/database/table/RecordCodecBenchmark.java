@@ -0,0 +1,76 @@
+package edu.berkeley.cs186.database.table;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import edu.berkeley.cs186.database.TestUtils;
+
+/**
+ * Measures the time and the heap allocated per record to write records into a
+ * page-sized buffer with Record.toBytes (a new array per record and per field)
+ * and with Record.serialize (no allocation), and to read them back with
+ * Record.fromBytes.
+ *
+ * This is not run as part of the test suite. Run it by hand with:
+ *
+ *   java -cp target/classes:target/test-classes \
+ *     edu.berkeley.cs186.database.table.RecordCodecBenchmark [numRecords] [numPasses]
+ */
+public class RecordCodecBenchmark {
+  private static final com.sun.management.ThreadMXBean threads =
+    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  public static void main(String[] args) throws Exception {
+    int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+    int numPasses = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    Schema schema = TestUtils.createSchemaWithAllTypes();
+    Record record = TestUtils.createRecordWithAllTypesWithValue(42);
+    int recordsPerBuffer = 4096 / schema.getSizeInBytes();
+    ByteBuffer buf = ByteBuffer.allocateDirect(recordsPerBuffer * schema.getSizeInBytes());
+
+    for (int pass = 0; pass < numPasses; pass++) {
+      long bytes = allocatedBytes();
+      long start = System.nanoTime();
+      for (int i = 0; i < numRecords; i++) {
+        if (i % recordsPerBuffer == 0) {
+          buf.clear();
+        }
+        buf.put(record.toBytes(schema));
+      }
+      report("toBytes", numRecords, start, bytes);
+
+      bytes = allocatedBytes();
+      start = System.nanoTime();
+      for (int i = 0; i < numRecords; i++) {
+        if (i % recordsPerBuffer == 0) {
+          buf.clear();
+        }
+        record.serialize(buf);
+      }
+      report("serialize", numRecords, start, bytes);
+
+      bytes = allocatedBytes();
+      start = System.nanoTime();
+      long sum = 0;
+      for (int i = 0; i < numRecords; i++) {
+        if (i % recordsPerBuffer == 0) {
+          buf.clear();
+        }
+        sum += Record.fromBytes(buf, schema).getValues().get(1).getInt();
+      }
+      report("fromBytes (" + sum + ")", numRecords, start, bytes);
+    }
+  }
+
+  private static long allocatedBytes() {
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static void report(String name, int numRecords, long start, long bytes) {
+    long elapsed = System.nanoTime() - start;
+    System.out.printf("%-24s %.1f ns/record, %.1f bytes allocated/record%n", name,
+                      (double) elapsed / numRecords,
+                      (double) (allocatedBytes() - bytes) / numRecords);
+  }
+}
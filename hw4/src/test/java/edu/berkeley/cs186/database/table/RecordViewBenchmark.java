@@ -0,0 +1,72 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+import edu.berkeley.cs186.database.TestUtils;
+
+/**
+ * Compares scanning a table with its record iterator, which decodes every
+ * record, against scanning it with its view iterator (see RecordView), which
+ * only decodes the field that is read. Each scan sums the int field of every
+ * record, and the benchmark reports the time and the heap allocated per
+ * record.
+ *
+ * This is not run as part of the test suite. Run it by hand with:
+ *
+ *   java -cp target/classes:target/test-classes \
+ *     edu.berkeley.cs186.database.table.RecordViewBenchmark [numRecords] [numPasses]
+ */
+public class RecordViewBenchmark {
+  private static final com.sun.management.ThreadMXBean threads =
+    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  public static void main(String[] args) throws Exception {
+    int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int numPasses = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    File f = File.createTempFile("RecordViewBenchmark", Table.FILENAME_EXTENSION);
+    File fsm = new File(f.getAbsolutePath() + Table.FREE_SPACE_MAP_EXTENSION);
+    f.deleteOnExit();
+    fsm.deleteOnExit();
+    Table table = new Table("t", TestUtils.createSchemaWithAllTypes(), f.getAbsolutePath());
+    for (int i = 0; i < numRecords; i++) {
+      table.addRecord(TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+
+    for (int pass = 0; pass < numPasses; pass++) {
+      long bytes = allocatedBytes();
+      long start = System.nanoTime();
+      long sum = 0;
+      Iterator<Record> records = table.iterator();
+      while (records.hasNext()) {
+        sum += records.next().getValues().get(1).getInt();
+      }
+      report("iterator (" + sum + ")", numRecords, start, bytes);
+
+      bytes = allocatedBytes();
+      start = System.nanoTime();
+      sum = 0;
+      Iterator<RecordView> views = table.viewIterator();
+      while (views.hasNext()) {
+        sum += views.next().getInt(1);
+      }
+      report("viewIterator (" + sum + ")", numRecords, start, bytes);
+    }
+    table.close();
+    f.delete();
+    fsm.delete();
+  }
+
+  private static long allocatedBytes() {
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static void report(String name, int numRecords, long start, long bytes) {
+    long elapsed = System.nanoTime() - start;
+    System.out.printf("%-32s %.1f ns/record, %.1f bytes allocated/record%n", name,
+                      (double) elapsed / numRecords,
+                      (double) (allocatedBytes() - bytes) / numRecords);
+  }
+}
@@ -0,0 +1,123 @@
+package edu.berkeley.cs186.database.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+
+public class TestCompressedPageFormat {
+  private static final Schema SCHEMA =
+    new Schema(Arrays.asList("b", "i", "s", "f"),
+               Arrays.asList(Type.boolType(), Type.intType(), Type.stringType(10),
+                             Type.floatType()));
+
+  private static Record record(boolean b, int i, String s, float f) {
+    return new Record(Arrays.asList(new BoolDataBox(b), new IntDataBox(i),
+                                    new StringDataBox(s, 10), new FloatDataBox(f)));
+  }
+
+  // Compresses records into pages and checks that decoding the pages gives
+  // the records back. Returns the number of pages.
+  private static int checkRoundTrip(List<Record> records, int pageSize) {
+    CompressedPageFormat format = new CompressedPageFormat(SCHEMA, pageSize);
+    int numPages = 0;
+    int next = 0;
+    while (next < records.size()) {
+      ByteBuffer page = ByteBuffer.allocate(pageSize);
+      int n = format.encode(records, next, page);
+      assertTrue(n > 0);
+      assertEquals(n, format.getNumRecords(page));
+
+      ByteBuffer decoded = ByteBuffer.allocate(n * SCHEMA.getSizeInBytes());
+      int[] columnOffsets = new int[4];
+      format.decode(page, decoded, columnOffsets);
+      RecordView view = new RecordView(SCHEMA, columnOffsets);
+      for (int j = 0; j < n; ++j) {
+        view.moveToEntry(decoded, j);
+        assertEquals(records.get(next + j), view.toRecord());
+      }
+      next += n;
+      numPages++;
+    }
+    return numPages;
+  }
+
+  @Test
+  public void testBitsFor() {
+    assertEquals(0, CompressedPageFormat.bitsFor(0));
+    assertEquals(1, CompressedPageFormat.bitsFor(1));
+    assertEquals(2, CompressedPageFormat.bitsFor(3));
+    assertEquals(3, CompressedPageFormat.bitsFor(4));
+    assertEquals(32, CompressedPageFormat.bitsFor(0xFFFFFFFFL));
+  }
+
+  @Test
+  public void testConstantColumns() {
+    // Every column is one run, one dictionary entry, or zero bits per int.
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 1000; ++i) {
+      records.add(record(true, 42, "same", 1.5f));
+    }
+    assertEquals(1, checkRoundTrip(records, Page.pageSize));
+  }
+
+  @Test
+  public void testExtremeValues() {
+    // Ints spanning the whole int range take 32 bits each; strings may be
+    // empty, full, or have inner spaces.
+    int[] ints = {Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1, 1};
+    String[] strings = {"", "0123456789", "a b", " ", "a"};
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 3000; ++i) {
+      records.add(record(i % 7 < 3, ints[i % ints.length], strings[i % strings.length],
+                         -i / 3.0f));
+    }
+    checkRoundTrip(records, Page.pageSize);
+  }
+
+  @Test
+  public void testUniqueStrings() {
+    // A dictionary of distinct strings is bigger than the strings, so they
+    // are stored plain.
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 3000; ++i) {
+      records.add(record(true, i, String.format("%010d", i), i));
+    }
+    int numPages = checkRoundTrip(records, Page.pageSize);
+    int fixedPages = records.size() / Table.computeNumRecordsPerPage(Page.pageSize, SCHEMA) + 1;
+    assertTrue(numPages <= fixedPages);
+  }
+
+  @Test
+  public void testCompresses() {
+    // Sorted ids, low cardinality strings, and long runs of bools compress
+    // far better than full-width records.
+    String[] cities = {"Berkeley", "Oakland", "Albany", "Emeryville"};
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 10000; ++i) {
+      records.add(record(i < 5000, 1000000 + i, cities[(i / 10) % cities.length], i));
+    }
+    int numPages = checkRoundTrip(records, Page.pageSize);
+    int fixedPages = records.size() / Table.computeNumRecordsPerPage(Page.pageSize, SCHEMA) + 1;
+    assertTrue(numPages * 2 < fixedPages);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRecordTooBig() {
+    List<Record> records = new ArrayList<>();
+    records.add(record(true, 0, "0123456789", 0));
+    new CompressedPageFormat(SCHEMA, 16).encode(records, 0, ByteBuffer.allocate(16));
+  }
+}
@@ -1,7 +1,9 @@
 package edu.berkeley.cs186.database.table;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -15,6 +17,35 @@ import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 
 public class TestRecord {
+  @Test
+  public void testSerializeAndReadField() {
+    Schema s = new Schema(Arrays.asList("w", "x", "y", "z"),
+                          Arrays.asList(Type.boolType(), Type.intType(),
+                                        Type.floatType(), Type.stringType(3)));
+    Record r = new Record(Arrays.asList(
+      new BoolDataBox(true),
+      new IntDataBox(-7),
+      new FloatDataBox(2.5f),
+      new StringDataBox("ab", 3)
+    ));
+
+    // Serialized at an offset, exactly like toBytes.
+    ByteBuffer buf = ByteBuffer.allocate(s.getSizeInBytes() + 10);
+    buf.position(10);
+    r.serialize(buf);
+    assertEquals(10 + s.getSizeInBytes(), buf.position());
+    byte[] bytes = new byte[s.getSizeInBytes()];
+    buf.position(10);
+    buf.get(bytes);
+    assertEquals(ByteBuffer.wrap(r.toBytes(s)), ByteBuffer.wrap(bytes));
+
+    buf.position(10);
+    assertEquals(r, Record.fromBytes(buf, s));
+    for (int i = 3; i >= 0; --i) {
+      assertEquals(r.getValues().get(i), s.readField(buf, 10, i));
+    }
+  }
+
   @Test
   public void testToAndFromBytes() {
     Schema[] schemas = {
@@ -48,6 +79,32 @@ public class TestRecord {
     }
   }
 
+  @Test
+  public void testToAndFromCompactBytes() {
+    Schema s = new Schema(Arrays.asList("w", "x", "y", "z"),
+                          Arrays.asList(Type.stringType(20), Type.intType(),
+                                        Type.stringType(20), Type.boolType()));
+    assertTrue(s.isVariableLength());
+    assertEquals(2 + 4 + 2 + 1, s.getMinCompactSizeInBytes());
+    assertEquals(22 + 4 + 22 + 1, s.getMaxCompactSizeInBytes());
+
+    Record r = new Record(Arrays.asList(new StringDataBox("ab", 20), new IntDataBox(7),
+                                        new StringDataBox("", 20), new BoolDataBox(true)));
+    assertEquals(4 + 1 + 4 + 2, r.getCompactSizeInBytes());
+    ByteBuffer buf = ByteBuffer.allocate(3 + r.getCompactSizeInBytes());
+    buf.position(3);
+    r.serializeCompact(buf);
+    assertEquals(buf.capacity(), buf.position());
+    // The int and the bool come first, at fixed offsets.
+    assertEquals(7, buf.getInt(3));
+    buf.position(3);
+    assertEquals(r, Record.fromCompactBytes(buf, s));
+
+    // Narrow strings keep records fixed length.
+    assertFalse(new Schema(Arrays.asList("x"), Arrays.asList(Type.stringType(15)))
+                .isVariableLength());
+  }
+
   @Test
   public void testEquals() {
     Record a = new Record(Arrays.asList(new BoolDataBox(false)));
@@ -44,6 +44,18 @@ public class TestSchema {
     }
   }
 
+  @Test
+  public void testFieldOffsets() {
+    Schema schema = new Schema(Arrays.asList("w", "x", "y", "z"),
+                               Arrays.asList(Type.boolType(), Type.stringType(5),
+                                             Type.intType(), Type.floatType()));
+    assertEquals(0, schema.getFieldOffset(0));
+    assertEquals(1, schema.getFieldOffset(1));
+    assertEquals(6, schema.getFieldOffset(2));
+    assertEquals(10, schema.getFieldOffset(3));
+    assertEquals(14, schema.getSizeInBytes());
+  }
+
   @Test
   public void testVerifyValidRecords() {
     try {
@@ -0,0 +1,656 @@
+package edu.berkeley.cs186.database.table;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.DataBoxException;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.BufferPool;
+import edu.berkeley.cs186.database.io.IOMetrics;
+import edu.berkeley.cs186.database.io.Page;
+
+public class TestTable {
+  public static final String TABLENAME = "testtable";
+  private Table table;
+  private Schema schema;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws Exception {
+    this.schema = TestUtils.createSchemaWithAllTypes();
+    File file = tempFolder.newFile(TABLENAME + Table.FILENAME_EXTENSION);
+    this.table = new Table(TABLENAME, this.schema, file.getAbsolutePath());
+  }
+
+  @After
+  public void afterEach() {
+    this.table.close();
+  }
+
+  private List<RecordId> addRecords(int numRecords) throws DatabaseException {
+    List<RecordId> rids = new ArrayList<>();
+    for (int i = 0; i < numRecords; ++i) {
+      rids.add(table.addRecord(TestUtils.createRecordWithAllTypesWithValue(i).getValues()));
+    }
+    return rids;
+  }
+
+  @Test
+  public void testInsertGetDelete() throws DatabaseException {
+    int numRecords = table.getNumRecordsPerPage() * 3 + 42;
+    List<RecordId> rids = addRecords(numRecords);
+    for (int i = 0; i < numRecords; ++i) {
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), table.getRecord(rids.get(i)));
+    }
+
+    for (int i = 0; i < numRecords; i += 2) {
+      table.deleteRecord(rids.get(i));
+    }
+    assertEquals(numRecords / 2, table.getNumRecords());
+
+    Iterator<Record> iter = table.iterator();
+    for (int i = 1; i < numRecords; i += 2) {
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), iter.next());
+    }
+    assertFalse(iter.hasNext());
+  }
+
+  @Test
+  public void testLoadTableFromDisk() throws DatabaseException {
+    int numRecords = table.getNumRecordsPerPage() * 2 + 42;
+    List<RecordId> rids = addRecords(numRecords);
+    table.close();
+
+    table = new Table(table.getName(), table.getFilename());
+    assertEquals(numRecords, table.getNumRecords());
+    for (int i = 0; i < numRecords; ++i) {
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), table.getRecord(rids.get(i)));
+    }
+  }
+
+  @Test
+  public void testSmallTablesGrowOnePageAtATime() throws DatabaseException {
+    addRecords(table.getNumRecordsPerPage() * 3);
+    assertEquals(3, table.getNumDataPages());
+  }
+
+  @Test
+  public void testLargeTablesGrowInContiguousExtents() throws DatabaseException {
+    int numPages = 24;
+    List<RecordId> rids = addRecords(table.getNumRecordsPerPage() * numPages + 1);
+
+    // Records fill pages in page number order, so the pages are contiguous.
+    int lastPageNum = 0;
+    for (RecordId rid : rids) {
+      assertTrue(rid.getPageNum() == lastPageNum || rid.getPageNum() == lastPageNum + 1);
+      lastPageNum = rid.getPageNum();
+    }
+
+    // The table grew by more than a page at a time, but never by more than
+    // an extent's worth of slack.
+    assertTrue(table.getNumDataPages() > numPages + 1);
+    assertTrue(table.getNumDataPages() <= numPages + Table.MAX_EXTENT_PAGES);
+  }
+
+  @Test
+  public void testLargePages() throws DatabaseException {
+    table.close();
+    File file = new File(table.getFilename());
+    table = new Table(TABLENAME, this.schema, file.getAbsolutePath(), new BufferPool(),
+                      4 * Page.pageSize);
+    assertEquals(4 * Page.pageSize, table.getPageSize());
+    assertEquals(Table.computeNumRecordsPerPage(4 * Page.pageSize, this.schema),
+                 table.getNumRecordsPerPage());
+
+    int numRecords = table.getNumRecordsPerPage() + 1;
+    List<RecordId> rids = addRecords(numRecords);
+    assertEquals(2, table.getNumDataPages());
+    table.close();
+
+    // The page size is read back from the file.
+    table = new Table(TABLENAME, file.getAbsolutePath());
+    assertEquals(4 * Page.pageSize, table.getPageSize());
+    assertEquals(numRecords, table.getNumRecords());
+    for (int i = 0; i < numRecords; ++i) {
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), table.getRecord(rids.get(i)));
+    }
+  }
+
+  @Test
+  public void testLoadTableReadsFreeSpaceMap() throws DatabaseException {
+    int numRecords = table.getNumRecordsPerPage() * 3;
+    List<RecordId> rids = addRecords(numRecords);
+    table.deleteRecord(rids.get(5));
+    table.deleteRecord(rids.get(table.getNumRecordsPerPage() * 2 + 1));
+    table.close();
+
+    table = new Table(table.getName(), table.getFilename());
+    assertEquals(numRecords - 2, table.getNumRecords());
+    assertEquals(numRecords - 2, table.getStats().getNumRecords());
+    // Only the header page was read.
+    assertEquals(1, table.getAllocator().getMetrics().get(IOMetrics.Counter.LOGICAL_READS));
+
+    // The holes are filled first, in page order.
+    assertEquals(rids.get(5), table.addRecord(TestUtils.createRecordWithAllTypes().getValues()));
+    assertEquals(rids.get(table.getNumRecordsPerPage() * 2 + 1),
+                 table.addRecord(TestUtils.createRecordWithAllTypes().getValues()));
+  }
+
+  @Test
+  public void testReadsLeavePagesClean() throws DatabaseException {
+    List<RecordId> rids = addRecords(10);
+    Page page = table.getAllocator().fetchPage(rids.get(3).getPageNum());
+    page.flush();
+    assertFalse(page.isDirty());
+
+    assertEquals(TestUtils.createRecordWithAllTypesWithValue(3), table.getRecord(rids.get(3)));
+    table.getBitMap(page);
+    Iterator<Record> records = table.iterator();
+    while (records.hasNext()) {
+      records.next();
+    }
+    assertFalse(page.isDirty());
+  }
+
+  @Test
+  public void testLoadTableRebuildsFreeSpaceMap() throws DatabaseException {
+    int numRecords = table.getNumRecordsPerPage() * 2 + 42;
+    List<RecordId> rids = addRecords(numRecords);
+    table.deleteRecord(rids.get(7));
+    table.close();
+
+    // Without a (cleanly closed) free space map, the table counts its records
+    // from the data pages, and writes a new map.
+    File fsm = new File(table.getFilename() + Table.FREE_SPACE_MAP_EXTENSION);
+    assertTrue(fsm.delete());
+    table = new Table(table.getName(), table.getFilename());
+    assertEquals(numRecords - 1, table.getNumRecords());
+    assertEquals(rids.get(7), table.addRecord(TestUtils.createRecordWithAllTypes().getValues()));
+    table.close();
+
+    table = new Table(table.getName(), table.getFilename());
+    assertEquals(numRecords, table.getNumRecords());
+    assertEquals(1, table.getAllocator().getMetrics().get(IOMetrics.Counter.LOGICAL_READS));
+  }
+
+  @Test
+  public void testInsertRecords() throws DatabaseException {
+    List<RecordId> rids = addRecords(table.getNumRecordsPerPage() + 10);
+    table.deleteRecord(rids.get(3));
+    table.deleteRecord(rids.get(table.getNumRecordsPerPage() + 4));
+
+    int numRows = table.getNumRecordsPerPage() * 5;
+    List<List<DataBox>> rows = new ArrayList<>();
+    for (int i = 0; i < numRows; ++i) {
+      rows.add(TestUtils.createRecordWithAllTypesWithValue(1000 + i).getValues());
+    }
+    List<RecordId> inserted = table.insertRecords(rows);
+    assertEquals(numRows, inserted.size());
+    assertEquals(table.getNumRecordsPerPage() + 8 + numRows, table.getNumRecords());
+    assertEquals(table.getNumRecords(), table.getStats().getNumRecords());
+
+    // The holes are filled first, then the rest of the last page, then new pages.
+    assertEquals(rids.get(3), inserted.get(0));
+    assertEquals(rids.get(table.getNumRecordsPerPage() + 4), inserted.get(1));
+    assertEquals(new RecordId(2, (short) 10), inserted.get(2));
+    for (int i = 0; i < numRows; ++i) {
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(1000 + i),
+                   table.getRecord(inserted.get(i)));
+    }
+
+    // A single invalid row means no row is added.
+    List<List<DataBox>> invalid = new ArrayList<>();
+    invalid.add(TestUtils.createRecordWithAllTypes().getValues());
+    invalid.add(new ArrayList<DataBox>());
+    try {
+      table.insertRecords(invalid);
+      fail();
+    } catch (DatabaseException e) {
+      // Expected.
+    }
+    assertEquals(table.getNumRecordsPerPage() + 8 + numRows, table.getNumRecords());
+
+    table.close();
+    table = new Table(table.getName(), table.getFilename());
+    assertEquals(table.getNumRecordsPerPage() + 8 + numRows, table.getNumRecords());
+  }
+
+  @Test
+  public void testViewIterator() throws DatabaseException {
+    List<RecordId> rids = addRecords(table.getNumRecordsPerPage() * 2 + 10);
+    for (int i = 0; i < rids.size(); i += 3) {
+      table.deleteRecord(rids.get(i));
+    }
+
+    Iterator<Record> records = table.iterator();
+    Iterator<RecordView> views = table.viewIterator();
+    int numRecords = 0;
+    while (records.hasNext()) {
+      Record record = records.next();
+      assertTrue(views.hasNext());
+      RecordView view = views.next();
+      assertEquals(record.getValues().get(0).getBool(), view.getBool(0));
+      assertEquals(record.getValues().get(1).getInt(), view.getInt(1));
+      assertEquals(record.getValues().get(2).getString(), view.getString(2));
+      assertEquals(record.getValues().get(3).getFloat(), view.getFloat(3), 0);
+      assertEquals(record.getValues().get(2), view.getField(2));
+      assertEquals(record, view.toRecord());
+      for (int i = 0; i < schema.getFieldNames().size(); ++i) {
+        ByteBuffer value = ByteBuffer.wrap(record.getValues().get(i).toBytes());
+        assertEquals(0, view.compareField(i, value, 0));
+        assertTrue(view.fieldEquals(i, value, 0));
+      }
+      numRecords++;
+    }
+    assertFalse(views.hasNext());
+    assertEquals(table.getNumRecords(), numRecords);
+  }
+
+  @Test
+  public void testViewFloatEquality() throws DatabaseException {
+    // Views find floats equal like FloatDataBox.equals does: -0.0 equals 0.0,
+    // though it orders before it, and NaN equals nothing.
+    List<DataBox> values = TestUtils.createRecordWithAllTypesWithValue(0).getValues();
+    values.set(3, new FloatDataBox(-0.0f));
+    table.addRecord(values);
+    values.set(3, new FloatDataBox(Float.NaN));
+    table.addRecord(values);
+
+    ByteBuffer zero = ByteBuffer.wrap(new FloatDataBox(0.0f).toBytes());
+    ByteBuffer nan = ByteBuffer.wrap(new FloatDataBox(Float.NaN).toBytes());
+    Iterator<RecordView> views = table.viewIterator();
+    RecordView view = views.next();
+    assertEquals(new FloatDataBox(0.0f), view.getField(3));
+    assertTrue(view.fieldEquals(3, zero, 0));
+    assertTrue(view.compareField(3, zero, 0) < 0);
+    view = views.next();
+    assertNotEquals(new FloatDataBox(Float.NaN), view.getField(3));
+    assertFalse(view.fieldEquals(3, nan, 0));
+  }
+
+  @Test(expected = DataBoxException.class)
+  public void testViewWrongType() throws DatabaseException {
+    addRecords(1);
+    table.viewIterator().next().getFloat(1);
+  }
+
+  // Slotted tables ////////////////////////////////////////////////////////////
+  private static final int WIDE = 100;
+
+  private Table createSlottedTable() throws Exception {
+    Schema s = new Schema(Arrays.asList("x", "s", "y"),
+                          Arrays.asList(Type.intType(), Type.stringType(WIDE), Type.floatType()));
+    assertTrue(s.isVariableLength());
+    File file = tempFolder.newFile("slotted" + Table.FILENAME_EXTENSION);
+    return new Table("slotted", s, file.getAbsolutePath());
+  }
+
+  // A record whose string has i % (WIDE + 1) characters.
+  private static List<DataBox> slottedValues(int i) {
+    char[] chars = new char[i % (WIDE + 1)];
+    Arrays.fill(chars, (char) ('a' + i % 26));
+    return Arrays.asList(new IntDataBox(i), new StringDataBox(new String(chars), WIDE),
+                         new FloatDataBox(i));
+  }
+
+  private static void checkSlottedTable(Table t, List<RecordId> rids, List<Integer> values)
+      throws DatabaseException {
+    assertEquals(rids.size(), t.getNumRecords());
+    for (int i = 0; i < rids.size(); ++i) {
+      assertEquals(new Record(slottedValues(values.get(i))), t.getRecord(rids.get(i)));
+    }
+
+    // Both iterators visit every record once, whether or not it was moved.
+    List<Record> expected = new ArrayList<>();
+    for (int v : values) {
+      expected.add(new Record(slottedValues(v)));
+    }
+    List<Record> fromRids = new ArrayList<>();
+    Iterator<Record> records = t.iterator();
+    while (records.hasNext()) {
+      fromRids.add(records.next());
+    }
+    List<Record> fromViews = new ArrayList<>();
+    Iterator<RecordView> views = t.viewIterator();
+    while (views.hasNext()) {
+      RecordView view = views.next();
+      Record record = view.toRecord();
+      assertEquals(record.getValues().get(0).getInt(), view.getInt(0));
+      assertEquals(record.getValues().get(1).getString(), view.getString(1));
+      assertEquals(record.getValues().get(2).getFloat(), view.getFloat(2), 0);
+      assertEquals(record.getValues().get(1), view.getField(1));
+      for (int i = 0; i < 3; ++i) {
+        ByteBuffer value = ByteBuffer.wrap(record.getValues().get(i).toBytes());
+        assertEquals(0, view.compareField(i, value, 0));
+      }
+      fromViews.add(record);
+    }
+    assertEquals(expected.size(), fromRids.size());
+    assertTrue(fromRids.containsAll(expected) && expected.containsAll(fromRids));
+    assertEquals(fromRids, fromViews);
+    assertEquals(0, numPinnedPages(t));
+  }
+
+  private static int numPinnedPages(Table t) {
+    int numPinned = 0;
+    Iterator<Page> pages = t.getAllocator().iterator();
+    while (pages.hasNext()) {
+      if (pages.next().isPinned()) {
+        numPinned++;
+      }
+    }
+    return numPinned;
+  }
+
+  @Test
+  public void testSlottedInsertGetDelete() throws Exception {
+    Table t = createSlottedTable();
+    try {
+      int numRecords = 3000;
+      List<RecordId> rids = new ArrayList<>();
+      List<Integer> values = new ArrayList<>();
+      for (int i = 0; i < numRecords; ++i) {
+        rids.add(t.addRecord(slottedValues(i)));
+        values.add(i);
+      }
+      checkSlottedTable(t, rids, values);
+
+      // Records take up about half their full width, so they take up about
+      // half as many pages.
+      int fixedPages = numRecords / Table.computeNumRecordsPerPage(Page.pageSize, t.getSchema());
+      assertTrue(t.getNumDataPages() < fixedPages * 2 / 3);
+
+      for (int i = numRecords - 1; i >= 0; i -= 2) {
+        assertEquals(new Record(slottedValues(i)), t.deleteRecord(rids.remove(i)));
+        values.remove(i);
+      }
+      checkSlottedTable(t, rids, values);
+      try {
+        t.getRecord(new RecordId(1, (short) 1));
+        fail();
+      } catch (DatabaseException e) {
+        // Expected.
+      }
+
+      // Deleted space is reused before the table grows.
+      int numDataPages = t.getNumDataPages();
+      for (int i = 0; i < numRecords / 4; ++i) {
+        rids.add(t.addRecord(slottedValues(i)));
+        values.add(i);
+      }
+      assertEquals(numDataPages, t.getNumDataPages());
+      checkSlottedTable(t, rids, values);
+    } finally {
+      t.close();
+    }
+  }
+
+  @Test
+  public void testPageFormatIsStored() throws Exception {
+    Table t = createSlottedTable();
+    List<RecordId> rids = new ArrayList<>();
+    List<Integer> values = new ArrayList<>();
+    try {
+      assertEquals(Table.PageFormat.SLOTTED, t.getPageFormat());
+      // A table written before there were slotted pages has no page format
+      // after its layout, even if its schema has a wide string.
+      Page headerPage = t.getAllocator().fetchPage(0);
+      headerPage.writeByte(t.getSchema().toBytes().length + 1, (byte) 0);
+      t.close();
+
+      t = new Table("slotted", t.getFilename());
+      assertEquals(Table.PageFormat.BITMAP, t.getPageFormat());
+      for (int i = 0; i < 100; ++i) {
+        rids.add(t.addRecord(slottedValues(i)));
+        values.add(i);
+      }
+      t.close();
+
+      t = new Table("slotted", t.getFilename());
+      assertEquals(Table.PageFormat.BITMAP, t.getPageFormat());
+      checkSlottedTable(t, rids, values);
+    } finally {
+      t.close();
+    }
+  }
+
+  @Test
+  public void testSlottedUpdateMovesRecords() throws Exception {
+    Table t = createSlottedTable();
+    try {
+      // Fill the first page with short records.
+      List<RecordId> rids = new ArrayList<>();
+      List<Integer> values = new ArrayList<>();
+      while (t.getNumDataPages() < 2) {
+        rids.add(t.addRecord(slottedValues(1)));
+        values.add(1);
+      }
+
+      // Growing every record of the first page does not fit, so some move to
+      // other pages but keep their ids.
+      for (int i = 0; i < rids.size(); ++i) {
+        if (rids.get(i).getPageNum() == 1) {
+          t.updateRecord(slottedValues(WIDE), rids.get(i));
+          values.set(i, WIDE);
+        }
+      }
+      assertTrue(t.getNumDataPages() > 2);
+      checkSlottedTable(t, rids, values);
+
+      // A view of a moved record keeps the page it was moved to pinned until
+      // the view moves on.
+      int maxPinned = 0;
+      Iterator<RecordView> views = t.viewIterator();
+      while (views.hasNext()) {
+        views.next();
+        maxPinned = Math.max(maxPinned, numPinnedPages(t));
+      }
+      assertEquals(1, maxPinned);
+      assertEquals(0, numPinnedPages(t));
+
+      // Moved records can grow and shrink again, and come home when they fit.
+      for (int i = 0; i < rids.size(); i += 2) {
+        t.updateRecord(slottedValues(WIDE - 1), rids.get(i));
+        values.set(i, WIDE - 1);
+      }
+      checkSlottedTable(t, rids, values);
+      for (int i = 0; i < rids.size(); ++i) {
+        t.updateRecord(slottedValues(0), rids.get(i));
+        values.set(i, 0);
+      }
+      checkSlottedTable(t, rids, values);
+
+      for (int i = rids.size() - 1; i >= 0; i -= 3) {
+        t.deleteRecord(rids.remove(i));
+        values.remove(i);
+      }
+      checkSlottedTable(t, rids, values);
+      t.close();
+
+      // The table is slotted again when it is loaded, with or without its
+      // free space map.
+      t = new Table(t.getName(), t.getFilename());
+      checkSlottedTable(t, rids, values);
+      t.close();
+      assertTrue(new File(t.getFilename() + Table.FREE_SPACE_MAP_EXTENSION).delete());
+      t = new Table(t.getName(), t.getFilename());
+      checkSlottedTable(t, rids, values);
+      rids.add(t.addRecord(slottedValues(WIDE)));
+      values.add(WIDE);
+      checkSlottedTable(t, rids, values);
+    } finally {
+      t.close();
+    }
+  }
+
+  @Test
+  public void testPaxLayout() throws Exception {
+    File file = tempFolder.newFile("pax" + Table.FILENAME_EXTENSION);
+    Table t = new Table("pax", schema, file.getAbsolutePath(), new BufferPool(), Page.pageSize,
+                        Table.Layout.PAX);
+    try {
+      // PAX pages hold as many records as row pages.
+      assertEquals(table.getNumRecordsPerPage(), t.getNumRecordsPerPage());
+      int numRecords = t.getNumRecordsPerPage() * 2 + 10;
+      List<RecordId> rids = new ArrayList<>();
+      for (int i = 0; i < numRecords; ++i) {
+        rids.add(t.addRecord(TestUtils.createRecordWithAllTypesWithValue(i).getValues()));
+      }
+      t.updateRecord(TestUtils.createRecordWithAllTypesWithValue(99999).getValues(), rids.get(1));
+      t.deleteRecord(rids.get(2));
+
+      // The ints of a page are stored next to each other, after the bitmap and
+      // the bools.
+      Page page = t.getAllocator().fetchPage(1);
+      int ints = t.getBitmapSizeInBytes() + t.getNumRecordsPerPage();
+      assertEquals(0, page.getReadOnlyByteBuffer().getInt(ints));
+      assertEquals(99999, page.getReadOnlyByteBuffer().getInt(ints + Integer.BYTES));
+      assertEquals(3, page.getReadOnlyByteBuffer().getInt(ints + 3 * Integer.BYTES));
+      t.close();
+
+      // The layout is picked up again when the table is loaded.
+      t = new Table("pax", file.getAbsolutePath());
+      assertEquals(Table.Layout.PAX, t.getLayout());
+      assertEquals(numRecords - 1, t.getNumRecords());
+      assertEquals(TestUtils.createRecordWithAllTypesWithValue(99999), t.getRecord(rids.get(1)));
+      Iterator<Record> records = t.iterator();
+      Iterator<RecordView> views = t.viewIterator();
+      for (int i = 0; i < numRecords; ++i) {
+        if (i == 2) {
+          continue;
+        }
+        Record expected = TestUtils.createRecordWithAllTypesWithValue(i == 1 ? 99999 : i);
+        assertEquals(expected, t.getRecord(rids.get(i)));
+        assertEquals(expected, records.next());
+        RecordView view = views.next();
+        assertEquals(expected.getValues().get(1).getInt(), view.getInt(1));
+        assertEquals(expected.getValues().get(2).getString(), view.getString(2));
+        assertEquals(expected.getValues().get(3), view.getField(3));
+        ByteBuffer value = ByteBuffer.wrap(expected.getValues().get(1).toBytes());
+        assertEquals(0, view.compareField(1, value, 0));
+        assertEquals(expected, view.toRecord());
+      }
+      assertFalse(records.hasNext());
+      assertFalse(views.hasNext());
+    } finally {
+      t.close();
+    }
+  }
+
+  @Test
+  public void testCompressedAddRecord() throws Exception {
+    File file = tempFolder.newFile("compressed" + Table.FILENAME_EXTENSION);
+    Table t = new Table("compressed", schema, file.getAbsolutePath(), new BufferPool(),
+                        Page.pageSize, Table.Layout.COMPRESSED);
+    try {
+      List<DataBox> values = TestUtils.createRecordWithAllTypesWithValue(0).getValues();
+      try {
+        t.addRecord(values);
+        fail();
+      } catch (DatabaseException e) {
+        assertTrue(e.getMessage().contains("insertRecords"));
+      }
+      assertEquals(0, t.getNumRecords());
+      assertEquals(0, t.getNumDataPages());
+    } finally {
+      t.close();
+    }
+  }
+
+  @Test
+  public void testCompressedLayout() throws Exception {
+    File file = tempFolder.newFile("compressed" + Table.FILENAME_EXTENSION);
+    Table t = new Table("compressed", schema, file.getAbsolutePath(), new BufferPool(),
+                        Page.pageSize, Table.Layout.COMPRESSED);
+    try {
+      int numRecords = table.getNumRecordsPerPage() * 10;
+      List<List<DataBox>> rows = new ArrayList<>();
+      for (int i = 0; i < numRecords; ++i) {
+        rows.add(TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+      }
+      List<RecordId> rids = t.insertRecords(rows);
+      // A later batch goes on new pages, and so does a batch of one record.
+      rids.addAll(t.insertRecords(rows.subList(0, 10)));
+      rids.addAll(t.insertRecords(rows.subList(10, 11)));
+      assertEquals(numRecords + 11, t.getNumRecords());
+      assertEquals(numRecords + 11, t.getStats().getNumRecords());
+      assertEquals(rids.get(numRecords - 1).getPageNum() + 1, rids.get(numRecords).getPageNum());
+      assertEquals(rids.get(numRecords).getPageNum() + 1, rids.get(numRecords + 10).getPageNum());
+      // Even with unique strings, which are not dictionary encoded, the
+      // records take up fewer pages than they would otherwise.
+      assertTrue(rids.get(numRecords - 1).getPageNum() < 10);
+
+      try {
+        t.deleteRecord(rids.get(0));
+        fail();
+      } catch (DatabaseException e) {
+        // Expected.
+      }
+      try {
+        t.updateRecord(rows.get(1), rids.get(0));
+        fail();
+      } catch (DatabaseException e) {
+        // Expected.
+      }
+      try {
+        RecordId last = rids.get(rids.size() - 1);
+        t.getRecord(new RecordId(last.getPageNum(), (short) (last.getEntryNum() + 1)));
+        fail();
+      } catch (DatabaseException e) {
+        // Expected.
+      }
+      t.close();
+
+      for (int reload = 0; reload < 2; ++reload) {
+        if (reload == 1) {
+          // Without its free space map, the table counts its records from the
+          // headers of its pages.
+          t.close();
+          assertTrue(new File(t.getFilename() + Table.FREE_SPACE_MAP_EXTENSION).delete());
+        }
+        t = new Table("compressed", file.getAbsolutePath());
+        assertEquals(Table.Layout.COMPRESSED, t.getLayout());
+        assertEquals(numRecords + 11, t.getNumRecords());
+
+        Iterator<RecordId> ridIter = t.ridIterator();
+        Iterator<Record> records = t.iterator();
+        Iterator<RecordView> views = t.viewIterator();
+        for (int i = 0; i < rids.size(); ++i) {
+          int value = i < numRecords ? i : i - numRecords;
+          Record expected = TestUtils.createRecordWithAllTypesWithValue(value);
+          assertEquals(expected, t.getRecord(rids.get(i)));
+          assertEquals(rids.get(i), ridIter.next());
+          assertEquals(expected, records.next());
+          RecordView view = views.next();
+          assertEquals(value, view.getInt(1));
+          assertEquals(expected.getValues().get(2).getString(), view.getString(2));
+          assertEquals(expected, view.toRecord());
+        }
+        assertFalse(ridIter.hasNext());
+        assertFalse(views.hasNext());
+      }
+    } finally {
+      t.close();
+    }
+  }
+}